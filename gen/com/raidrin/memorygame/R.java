@@ -21,12 +21,8 @@ public final class R {
     }
     public static final class id {
         public static final int LinearLayout1=0x7f080000;
-        public static final int cardsLinearLayout=0x7f080008;
-        public static final int linearLayout1=0x7f080009;
-        public static final int linearLayout2=0x7f08000a;
-        public static final int linearLayout3=0x7f08000b;
-        public static final int linearLayout4=0x7f08000c;
-        public static final int menu_settings=0x7f08000d;
+        public static final int boardView=0x7f080008;
+        public static final int menu_settings=0x7f080009;
         public static final int messageTextView=0x7f080001;
         public static final int scoreLinearLayout=0x7f080002;
         public static final int scoreTextView=0x7f080003;
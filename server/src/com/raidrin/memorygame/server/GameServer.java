@@ -0,0 +1,350 @@
+package com.raidrin.memorygame.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * A server that hosts many games of the Memory Game at the same time.
+ * One thread runs an event loop over a Selector: it reads the messages of
+ * every client, runs the games and their timers and sends the answers, so
+ * a game costs a few objects and no thread. Clients sending the same JOIN
+ * are put in the same game, which starts once enough players joined.
+ *
+ * Usage: javac -d /tmp/server -sourcepath src:server/src server/src/com/raidrin/memorygame/server/GameServer.java
+ *        && java -cp /tmp/server com.raidrin.memorygame.server.GameServer [port]
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameServer
+{
+	private static final int ERROR_SIZE = 3;			// The bytes of an ERROR message
+	private static final long STATS_INTERVAL = 10000;	// Milliseconds between two lines of statistics
+	static final long TIMER_TICK = 10;			// The milliseconds of a tick of the timer wheel, the most a timer runs late
+	static final int TIMER_BUCKETS = 512;		// The buckets of the timer wheel, one turn lasts about 5 seconds
+
+	private final Selector selector;				// Waits for the sockets of the clients
+	private final ServerSocketChannel serverChannel;	// Accepts the clients
+	private final TimerWheel timers;				// The ticks and reveal delays of the games
+	private final HashMap<Long, ServerGame> waitingGames;	// The games waiting for players by the key of their JOIN
+	private final ArrayList<Session> flushQueue;	// The sessions with messages to send at the end of the loop
+	private final SplitMixRandom seeds;				// Gives the seed of each game
+	private final Runnable statsTask;				// Prints the statistics
+	private long now;					// The time of the current loop in milliseconds
+	private int nextGameId;				// The id of the next game
+	private int sessionCount;			// The count of connected clients
+	private int runningCount;			// The count of games being played
+	private long finishedCount;			// The count of games that ended
+	private long messageCount;			// The count of messages read
+
+	/**
+	 * The constructor of the GameServer class
+	 * @param port The port the server listens to
+	 * @throws IOException if the port can't be opened
+	 */
+	public GameServer(int port) throws IOException
+	{
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(new InetSocketAddress(port), 4096);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		timers = new TimerWheel(TIMER_TICK, TIMER_BUCKETS, currentTime());
+		waitingGames = new HashMap<Long, ServerGame>();
+		flushQueue = new ArrayList<Session>();
+		seeds = new SplitMixRandom();
+		statsTask = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				System.out.println(getStats());
+				schedule(this, STATS_INTERVAL);
+			}
+		};
+	} // End of Constructor
+
+	public static void main(String[] args) throws IOException
+	{
+		int port = (args.length > 0)?Integer.parseInt(args[0]):Protocol.DEFAULT_PORT;
+		GameServer server = new GameServer(port);
+		System.out.println("Listening on port " + port);
+		server.schedule(server.statsTask, STATS_INTERVAL);
+		server.run();
+	}
+
+	/**
+	 * Runs the event loop until the thread is interrupted.
+	 * @throws IOException if the selector failed
+	 */
+	public void run() throws IOException
+	{
+		now = currentTime();
+		while(!Thread.currentThread().isInterrupted())
+		{
+			selector.select(timers.getNextDelay(now));
+			now = currentTime();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(keys.hasNext())
+			{
+				SelectionKey key = keys.next();
+				keys.remove();
+				if(!key.isValid())
+					continue;
+				if(key.isAcceptable())
+					accept();
+				else
+				{
+					Session session = (Session)key.attachment();
+					try
+					{
+						if(key.isReadable())
+							read(session);
+						if(key.isValid() && key.isWritable())
+							session.flush();
+					}
+					catch(IOException e)
+					{
+						closeSession(session);
+					} // End of try - catch
+				} // End of isAcceptable If - Else
+			} // End of keys while loop
+			timers.runDue(now);
+			flushSessions();
+		} // End of isInterrupted while loop
+	} // End of run method
+
+	/**
+	 * Accepts every client waiting to connect.
+	 * @throws IOException if the server socket failed
+	 */
+	private void accept() throws IOException
+	{
+		SocketChannel channel;
+		while((channel = serverChannel.accept()) != null)
+		{
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new Session(channel, key));
+			sessionCount++;
+		} // End of accept while loop
+	} // End of accept method
+
+	/**
+	 * Reads and handles the messages of a client.
+	 * @param session the session of the client
+	 * @throws IOException if the socket failed or the client closed it
+	 */
+	private void read(Session session) throws IOException
+	{
+		ByteBuffer input = session.read();
+		int size;
+		while((size = Protocol.getFrameSize(input)) > 0)
+		{
+			int next = input.position() + size;
+			input.get();	// The length
+			if(size > 1)
+				handleMessage(session, input.get(), input, size - 2);
+			else
+				sendError(session, Protocol.ERROR_BAD_MESSAGE);
+			input.position(next);
+			messageCount++;
+		} // End of getFrameSize while loop
+		session.compactInput();
+	} // End of read method
+
+	/**
+	 * Handles a message of a client.
+	 * @param session the session of the client
+	 * @param type the type of the message
+	 * @param input the buffer positioned on the fields of the message
+	 * @param length the bytes of the fields
+	 */
+	private void handleMessage(Session session, byte type, ByteBuffer input, int length)
+	{
+		if(type == Protocol.JOIN && length >= 7 && session.getGame() == null)
+		{
+			byte mode = input.get();
+			int rows = input.get() & 0xff;
+			int columns = input.get() & 0xff;
+			int matchCount = input.get() & 0xff;
+			int maxTime = input.getShort() & 0xffff;
+			int playerCount = input.get() & 0xff;
+			join(session, mode, rows, columns, matchCount, maxTime, playerCount);
+		}
+		else if(type == Protocol.FLIP && length >= 1)
+		{
+			if(session.getGame() == null)
+				sendError(session, Protocol.ERROR_NOT_PLAYING);
+			else
+				session.getGame().flip(session, input.get() & 0xff);
+		}
+		else
+			sendError(session, Protocol.ERROR_BAD_MESSAGE);
+	} // End of handleMessage method
+
+	/**
+	 * Puts a client in a game waiting for players, starting the game when it's full.
+	 * @param session the session of the client
+	 * @param mode the mode of the game
+	 * @param rows the rows of the board
+	 * @param columns the columns of the board
+	 * @param matchCount the count of cards of a match
+	 * @param maxTime the maximum time in seconds
+	 * @param playerCount the count of players
+	 */
+	private void join(Session session, byte mode, int rows, int columns, int matchCount, int maxTime, int playerCount)
+	{
+		if((mode != Protocol.MODE_TURNS && mode != Protocol.MODE_RACE) || maxTime == 0
+				|| playerCount < 1 || playerCount > Protocol.MAX_PLAYERS)
+		{
+			sendError(session, Protocol.ERROR_BAD_GAME);
+			return;
+		} // End of mode If
+		long key = Protocol.getGameKey(mode, rows, columns, matchCount, maxTime, playerCount);
+		ServerGame game = waitingGames.get(key);
+		if(game == null)
+		{
+			BoardConfig boardConfig;
+			try
+			{
+				boardConfig = new BoardConfig(rows, columns, matchCount);
+			}
+			catch(IllegalArgumentException e)
+			{
+				sendError(session, Protocol.ERROR_BAD_GAME);
+				return;
+			} // End of try - catch
+			game = new ServerGame(this, key, nextGameId++, mode, boardConfig, maxTime, playerCount);
+			waitingGames.put(key, game);
+		} // End of game == null If
+		if(game.addPlayer(session))
+		{
+			waitingGames.remove(key);
+			runningCount++;
+			game.start(seeds.nextLong());
+		} // End of addPlayer If
+	} // End of join method
+
+	/**
+	 * Closes the session of a client and takes it out of its game.
+	 * @param session the session of the client
+	 */
+	private void closeSession(Session session)
+	{
+		if(session.isClosed())
+			return;
+		session.close();
+		sessionCount--;
+		if(session.getGame() != null)
+			session.getGame().removePlayer(session);
+	} // End of closeSession method
+
+	/**
+	 * Sends every message written during this loop.
+	 */
+	private void flushSessions()
+	{
+		// A failed flush can end a game and queue more sessions so the size is read each time
+		for(int i=0;i<flushQueue.size();i++)
+		{
+			Session session = flushQueue.get(i);
+			session.clearFlushQueued();
+			try
+			{
+				session.flush();
+			}
+			catch(IOException e)
+			{
+				closeSession(session);
+			} // End of try - catch
+		} // End of flushQueue for loop
+		flushQueue.clear();
+	} // End of flushSessions method
+
+	/**
+	 * Queues a session with new messages to be flushed at the end of the loop.
+	 * Every message written to a session in one loop is sent with one write.
+	 * @param session the session
+	 */
+	public void queueFlush(Session session)
+	{
+		if(session.queueFlush())
+			flushQueue.add(session);
+	} // End of queueFlush method
+
+	/**
+	 * Sends an error to a client.
+	 * @param session the session of the client
+	 * @param code the code of the error
+	 */
+	public void sendError(Session session, byte code)
+	{
+		ByteBuffer buffer = session.getOutput(ERROR_SIZE);
+		int start = Protocol.beginFrame(buffer, Protocol.ERROR);
+		buffer.put(code);
+		Protocol.endFrame(buffer, start);
+		queueFlush(session);
+	} // End of sendError method
+
+	/**
+	 * Schedules a task on the event loop.
+	 * @param task the task
+	 * @param delay the milliseconds before the task runs
+	 * @return the timeout that can cancel the task
+	 */
+	public TimerWheel.Timeout schedule(Runnable task, long delay)
+	{
+		return timers.schedule(task, now, delay);
+	} // End of schedule method
+
+	/**
+	 * Forgets a game that lost all its players before it started.
+	 * @param game the game
+	 */
+	public void removeWaitingGame(ServerGame game)
+	{
+		if(waitingGames.get(game.getKey()) == game)
+			waitingGames.remove(game.getKey());
+	} // End of removeWaitingGame method
+
+	/**
+	 * A game ended.
+	 * @param game the game
+	 */
+	public void onGameOver(ServerGame game)
+	{
+		runningCount--;
+		finishedCount++;
+	} // End of onGameOver method
+
+	/**
+	 * @return a line with the counts of clients, games and messages
+	 */
+	public String getStats()
+	{
+		return "sessions " + sessionCount + ", running games " + runningCount + ", waiting games " + waitingGames.size()
+				+ ", finished games " + finishedCount + ", messages " + messageCount + ", timers " + timers.size();
+	} // End of getStats method
+
+	/**
+	 * @return a monotonic time in milliseconds
+	 */
+	private static long currentTime()
+	{
+		return System.nanoTime() / 1000000;
+	} // End of currentTime method
+}
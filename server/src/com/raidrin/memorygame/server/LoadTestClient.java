@@ -0,0 +1,495 @@
+package com.raidrin.memorygame.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import com.raidrin.memorygame.LatencyHistogram;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * A client that plays many games on a GameServer at the same time to test its load.
+ * All the clients run on one event loop like the server. Each one joins
+ * a game, waits a think time before each tap like a person would, flips
+ * the cards it remembers as a match and otherwise a card it hasn't seen,
+ * and leaves when its game is over. The time between a FLIP and the
+ * SHOWN that answers it is recorded in a LatencyHistogram.
+ *
+ * Usage: javac -d /tmp/server -sourcepath src:server/src server/src/com/raidrin/memorygame/server/LoadTestClient.java
+ *        && java -cp /tmp/server com.raidrin.memorygame.server.LoadTestClient
+ *           [games] [players] [turns|race] [rows] [columns] [match] [max time] [think millis] [host] [port]
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class LoadTestClient
+{
+	private static final int MAX_PENDING_CONNECTS = 512;	// The most connections being opened at the same time
+	private static final long REPORT_INTERVAL = 5000;		// Milliseconds between two lines of progress
+
+	/**
+	 * A client playing one game.
+	 */
+	private class Client implements Runnable
+	{
+		private final SocketChannel channel;	// The socket of the client
+		private final SelectionKey key;			// The key of the socket in the selector
+		private final ByteBuffer input;			// The bytes read that aren't a whole frame yet
+		private final ByteBuffer output;		// The frames waiting to be sent
+		private int playerNumber;		// The number of the client in its game
+		private boolean race;			// States whether the game is a race
+		private int matchCount;			// The count of cards of a match
+		private int[] cards;			// The card seen at each index, -1 if none
+		private boolean[] removed;		// States whether the card at each index is matched
+		private int[] openIndexes;		// The indexes of the open cards of the board of the client
+		private int openCount;			// The count of open cards
+		private boolean myTurn;			// States whether the client can flip
+		private boolean flipPending;	// States whether a FLIP waits for its SHOWN
+		private long flipTime;			// The time in nanoseconds the last FLIP was sent
+		private boolean connected;		// States whether the connection is open
+		private boolean done;			// States whether the client left
+
+		Client(SocketChannel channel, SelectionKey key)
+		{
+			this.channel = channel;
+			this.key = key;
+			input = ByteBuffer.allocate(Protocol.MAX_FRAME_SIZE * 4);
+			output = ByteBuffer.allocate(Protocol.MAX_FRAME_SIZE);
+		}
+
+		/**
+		 * Sends the JOIN once the client is connected.
+		 * @throws IOException if the socket failed
+		 */
+		void onConnected() throws IOException
+		{
+			channel.finishConnect();
+			connected = true;
+			pendingConnects--;
+			connectedCount++;
+			key.interestOps(SelectionKey.OP_READ);
+			int start = Protocol.beginFrame(output, Protocol.JOIN);
+			output.put(mode);
+			output.put((byte)rows);
+			output.put((byte)columns);
+			output.put((byte)match);
+			output.putShort((short)maxTime);
+			output.put((byte)playerCount);
+			Protocol.endFrame(output, start);
+			flush();
+		}
+
+		/**
+		 * Reads and handles the messages of the server.
+		 * @throws IOException if the socket failed or the server closed it
+		 */
+		void read() throws IOException
+		{
+			if(channel.read(input) < 0)
+				throw new IOException("The server closed the connection.");
+			input.flip();
+			int size;
+			while(!done && (size = Protocol.getFrameSize(input)) > 0)
+			{
+				int next = input.position() + size;
+				input.get();	// The length
+				handleMessage(input.get());
+				input.position(next);
+			} // End of getFrameSize while loop
+			input.compact();
+		}
+
+		/**
+		 * Handles a message of the server.
+		 * @param type the type of the message
+		 */
+		void handleMessage(byte type)
+		{
+			switch(type)
+			{
+				case Protocol.STARTED:
+					input.getInt();
+					playerNumber = input.get();
+					input.get();
+					race = input.get() == Protocol.MODE_RACE;
+					int cardCount = (input.get() & 0xff) * (input.get() & 0xff);
+					matchCount = input.get();
+					cards = new int[cardCount];
+					for(int i=0;i<cardCount;i++)
+						cards[i] = -1;
+					removed = new boolean[cardCount];
+					openIndexes = new int[matchCount];
+					startedCount++;
+					runningCount++;
+					peakRunningCount = Math.max(peakRunningCount, runningCount);
+					if(race)
+						scheduleFlip();
+					break;
+				case Protocol.TURN:
+					myTurn = input.get() == playerNumber;
+					if(myTurn)
+						scheduleFlip();
+					break;
+				case Protocol.SHOWN:
+					onShown(input.get(), input.get() & 0xff, input.get());
+					break;
+				case Protocol.RESOLVED:
+					int player = input.get();
+					boolean matched = input.get() != 0;
+					// Other players only change the shared board
+					if(race && player != playerNumber)
+						break;
+					for(int i=0;i<openCount;i++)
+						removed[openIndexes[i]] |= matched;
+					openCount = 0;
+					// A match keeps the turn
+					if(race || (matched && player == playerNumber))
+						scheduleFlip();
+					break;
+				case Protocol.TIME:
+					break;
+				case Protocol.OVER:
+					finishedCount++;
+					runningCount--;
+					leave();
+					break;
+				case Protocol.ERROR:
+					errorCount++;
+					break;
+				default:
+					errorCount++;
+					leave();
+			} // End of type switch
+		}
+
+		/**
+		 * Remembers a card that was flipped and flips the next one when the turn isn't over.
+		 * @param player the player that flipped the card
+		 * @param index the index of the card
+		 * @param card the Deck card
+		 */
+		void onShown(int player, int index, int card)
+		{
+			cards[index] = card;
+			openIndexes[openCount++] = index;
+			if(player != playerNumber)
+				return;
+			if(flipPending)
+			{
+				flipLatency.record(System.nanoTime() - flipTime);
+				flipPending = false;
+			} // End of flipPending If
+			// The turn ends with a match or a mismatch, wait for them to be resolved
+			if(openCount < matchCount && card == cards[openIndexes[0]])
+				scheduleFlip();
+		}
+
+		/**
+		 * Flips a card after the think time.
+		 */
+		void scheduleFlip()
+		{
+			timers.schedule(this, now, thinkMillis);
+		}
+
+		@Override
+		public void run()
+		{
+			if(done || flipPending || (!race && !myTurn))
+				return;
+			int index = chooseCard();
+			if(index < 0)
+				return;
+			int start = Protocol.beginFrame(output, Protocol.FLIP);
+			output.put((byte)index);
+			Protocol.endFrame(output, start);
+			flipPending = true;
+			flipTime = System.nanoTime();
+			try
+			{
+				flush();
+			}
+			catch(IOException e)
+			{
+				fail();
+			} // End of try - catch
+		}
+
+		/**
+		 * Picks the next card: a remembered match, else a card never seen.
+		 * @return the index of the card, -1 if no card can be flipped
+		 */
+		int chooseCard()
+		{
+			int wanted = (openCount > 0)?cards[openIndexes[0]]:-1;
+			if(wanted == -1)
+			{
+				// Start a match when all of its cards are remembered
+				for(int i=0;i<cards.length;i++)
+					if(cards[i] != -1 && !removed[i] && countKnown(cards[i]) >= matchCount)
+						return i;
+			} // End of wanted == -1 If
+			int unknown = -1;
+			int unknownCount = 0;
+			for(int i=0;i<cards.length;i++)
+			{
+				if(removed[i] || isOpen(i))
+					continue;
+				if(wanted != -1 && cards[i] == wanted)
+					return i;
+				// Pick one of the unseen cards at random
+				if(cards[i] == -1 && random.nextInt(++unknownCount) == 0)
+					unknown = i;
+			} // End of cards for loop
+			if(unknown != -1)
+				return unknown;
+			for(int i=0;i<cards.length;i++)
+				if(!removed[i] && !isOpen(i))
+					return i;
+			return -1;
+		}
+
+		int countKnown(int card)
+		{
+			int count = 0;
+			for(int i=0;i<cards.length;i++)
+				if(cards[i] == card && !removed[i])
+					count++;
+			return count;
+		}
+
+		boolean isOpen(int index)
+		{
+			for(int i=0;i<openCount;i++)
+				if(openIndexes[i] == index)
+					return true;
+			return false;
+		}
+
+		void flush() throws IOException
+		{
+			output.flip();
+			channel.write(output);
+			output.compact();
+			if(output.position() > 0)
+				throw new IOException("The server doesn't read the messages.");
+		}
+
+		/**
+		 * Leaves after the game is over.
+		 */
+		void leave()
+		{
+			if(done)
+				return;
+			done = true;
+			doneCount++;
+			key.cancel();
+			try
+			{
+				channel.close();
+			}
+			catch(IOException e)
+			{
+				// The socket is closed anyway
+			} // End of try - catch
+		}
+
+		/**
+		 * Leaves because the connection failed.
+		 */
+		void fail()
+		{
+			if(done)
+				return;
+			if(!connected)
+				pendingConnects--;
+			failedCount++;
+			leave();
+		}
+	} // End of Client class
+
+	private final InetSocketAddress address;	// The address of the server
+	private final int gameCount;	// The count of games to play
+	private final int playerCount;	// The count of players of each game
+	private final byte mode;		// The mode of the games
+	private final int rows;			// The rows of the boards
+	private final int columns;		// The columns of the boards
+	private final int match;		// The count of cards of a match
+	private final int maxTime;		// The maximum time of the games in seconds
+	private final long thinkMillis;	// The milliseconds a client waits before each tap
+	private final Selector selector;	// Waits for the sockets of the clients
+	private final TimerWheel timers;	// The taps waiting for their think time
+	private final SplitMixRandom random;	// Picks the unseen cards
+	private final LatencyHistogram flipLatency;	// The times between a FLIP and its SHOWN
+	private long now;				// The time of the current loop in milliseconds
+	private int pendingConnects;	// The count of connections being opened
+	private int connectedCount;		// The count of clients connected
+	private int startedCount;		// The count of clients whose game started
+	private int finishedCount;		// The count of clients whose game is over
+	private int runningCount;		// The count of clients playing
+	private int peakRunningCount;	// The most clients playing at the same time
+	private int failedCount;		// The count of clients whose connection failed
+	private int doneCount;			// The count of clients that left
+	private int errorCount;			// The count of ERROR messages
+
+	/**
+	 * The constructor of the LoadTestClient class
+	 * @param address The address of the server
+	 * @param gameCount The count of games to play
+	 * @param playerCount The count of players of each game
+	 * @param mode The mode of the games
+	 * @param rows The rows of the boards
+	 * @param columns The columns of the boards
+	 * @param match The count of cards of a match
+	 * @param maxTime The maximum time of the games in seconds
+	 * @param thinkMillis The milliseconds a client waits before each tap
+	 * @throws IOException if the selector can't be opened
+	 */
+	public LoadTestClient(InetSocketAddress address, int gameCount, int playerCount, byte mode,
+			int rows, int columns, int match, int maxTime, long thinkMillis) throws IOException
+	{
+		this.address = address;
+		this.gameCount = gameCount;
+		this.playerCount = playerCount;
+		this.mode = mode;
+		this.rows = rows;
+		this.columns = columns;
+		this.match = match;
+		this.maxTime = maxTime;
+		this.thinkMillis = thinkMillis;
+		selector = Selector.open();
+		timers = new TimerWheel(GameServer.TIMER_TICK, GameServer.TIMER_BUCKETS, currentTime());
+		random = new SplitMixRandom();
+		flipLatency = new LatencyHistogram("flip to shown");
+	} // End of Constructor
+
+	public static void main(String[] args) throws IOException
+	{
+		int games = (args.length > 0)?Integer.parseInt(args[0]):10000;
+		int players = (args.length > 1)?Integer.parseInt(args[1]):1;
+		byte mode = (args.length > 2 && args[2].equals("turns"))?Protocol.MODE_TURNS:Protocol.MODE_RACE;
+		int rows = (args.length > 3)?Integer.parseInt(args[3]):4;
+		int columns = (args.length > 4)?Integer.parseInt(args[4]):4;
+		int match = (args.length > 5)?Integer.parseInt(args[5]):2;
+		int maxTime = (args.length > 6)?Integer.parseInt(args[6]):60;
+		long think = (args.length > 7)?Long.parseLong(args[7]):500;
+		String host = (args.length > 8)?args[8]:"localhost";
+		int port = (args.length > 9)?Integer.parseInt(args[9]):Protocol.DEFAULT_PORT;
+		LoadTestClient client = new LoadTestClient(new InetSocketAddress(host, port), games, players, mode,
+				rows, columns, match, maxTime, think);
+		client.run();
+		System.out.println(client.getReport());
+	}
+
+	/**
+	 * Plays every game and returns when all the clients left.
+	 * @throws IOException if the selector failed
+	 */
+	public void run() throws IOException
+	{
+		int clientCount = gameCount * playerCount;
+		int openedCount = 0;
+		long start = currentTime();
+		long nextReport = start + REPORT_INTERVAL;
+		now = start;
+		while(doneCount < clientCount)
+		{
+			// Open the connections a few at a time so the backlog of the server isn't overrun
+			while(openedCount < clientCount && pendingConnects < MAX_PENDING_CONNECTS)
+			{
+				openedCount++;
+				connect();
+			} // End of openedCount < clientCount while loop
+			long delay = timers.getNextDelay(now);
+			selector.select((delay == 0)?REPORT_INTERVAL:Math.min(delay, REPORT_INTERVAL));
+			now = currentTime();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(keys.hasNext())
+			{
+				SelectionKey key = keys.next();
+				keys.remove();
+				Client client = (Client)key.attachment();
+				try
+				{
+					if(key.isValid() && key.isConnectable())
+						client.onConnected();
+					else if(key.isValid() && key.isReadable())
+						client.read();
+				}
+				catch(IOException e)
+				{
+					client.fail();
+				} // End of try - catch
+			} // End of keys while loop
+			timers.runDue(now);
+			if(now >= nextReport)
+			{
+				System.out.println((now - start) / 1000 + " s: " + getProgress());
+				nextReport += REPORT_INTERVAL;
+			} // End of now >= nextReport If
+		} // End of doneCount < clientCount while loop
+	} // End of run method
+
+	/**
+	 * Opens the connection of a new client.
+	 * @throws IOException if the socket can't be opened
+	 */
+	private void connect() throws IOException
+	{
+		SocketChannel channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
+		Client client = new Client(channel, key);
+		key.attach(client);
+		pendingConnects++;
+		try
+		{
+			if(channel.connect(address))
+				client.onConnected();
+		}
+		catch(IOException e)
+		{
+			client.fail();
+		} // End of try - catch
+	} // End of connect method
+
+	/**
+	 * @return a line with the counts of the clients
+	 */
+	public String getProgress()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("connected ").append(connectedCount).append(", playing ").append(runningCount)
+				.append(", finished ").append(finishedCount).append(", failed ").append(failedCount)
+				.append(", errors ").append(errorCount).append(", ");
+		flipLatency.appendSummary(builder);
+		return builder.toString();
+	} // End of getProgress method
+
+	/**
+	 * @return the counts of the clients and the distribution of the flip latency
+	 */
+	public String getReport()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append(getProgress()).append('\n');
+		builder.append("games ").append(gameCount).append(" of ").append(playerCount).append(" players, most clients playing at once ")
+				.append(peakRunningCount).append(", started ").append(startedCount).append('\n');
+		flipLatency.appendDistribution(builder);
+		return builder.toString();
+	} // End of getReport method
+
+	/**
+	 * @return a monotonic time in milliseconds
+	 */
+	private static long currentTime()
+	{
+		return System.nanoTime() / 1000000;
+	} // End of currentTime method
+}
@@ -0,0 +1,114 @@
+package com.raidrin.memorygame.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary protocol between the GameServer and its clients.
+ * Every message is a frame of one byte with the length of the rest of
+ * the frame, one byte with the type and the fields of that type, all
+ * numbers in big endian. A client sends JOIN once and then FLIP for each
+ * card it taps, the server answers with the other messages.
+ *
+ * JOIN     mode, rows, columns, match count, max time (short), player count
+ * FLIP     index
+ * STARTED  game id (int), player number, player count, mode, rows, columns, match count, max time (short)
+ * SHOWN    player number, index, card
+ * RESOLVED player number, matched (0 or 1), score of the player (short)
+ * TURN     player number
+ * TIME     seconds left (short)
+ * OVER     seed (long), player count, score of each player (short)
+ * ERROR    error code
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public final class Protocol
+{
+	public static final int DEFAULT_PORT = 7878;	// The port the server listens to
+
+	// The modes of a game
+	public static final byte MODE_TURNS = 0;	// The players take turns on one shared board, a match keeps the turn
+	public static final byte MODE_RACE = 1;		// Each player gets a copy of the same board, the first to clear it wins
+
+	public static final int MAX_PLAYERS = 8;		// The most players of a game
+	public static final int MAX_FRAME_SIZE = 256;	// The most bytes of a frame, with its length
+
+	// The types of the messages of the clients
+	public static final byte JOIN = 1;
+	public static final byte FLIP = 2;
+
+	// The types of the messages of the server
+	public static final byte STARTED = 10;
+	public static final byte SHOWN = 11;
+	public static final byte RESOLVED = 12;
+	public static final byte TURN = 13;
+	public static final byte TIME = 14;
+	public static final byte OVER = 15;
+	public static final byte ERROR = 16;
+
+	// The codes of the ERROR message
+	public static final byte ERROR_BAD_MESSAGE = 1;	// The message is unknown or too short
+	public static final byte ERROR_BAD_GAME = 2;	// The mode, board or player count of a JOIN is invalid
+	public static final byte ERROR_NOT_PLAYING = 3;	// A FLIP was sent before the game started
+	public static final byte ERROR_PLAYER_LEFT = 4;	// Another player left so the game ended
+
+	/**
+	 * The Protocol class only has constants and static methods.
+	 */
+	private Protocol()
+	{
+	} // End of Constructor
+
+	/**
+	 * Starts a frame.
+	 * The length is written by endFrame once all the fields are written.
+	 * @param buffer the buffer the frame is written to
+	 * @param type the type of the message
+	 * @return the position of the frame, given to endFrame
+	 */
+	public static int beginFrame(ByteBuffer buffer, byte type)
+	{
+		int start = buffer.position();
+		buffer.put((byte)0);
+		buffer.put(type);
+		return start;
+	} // End of beginFrame method
+
+	/**
+	 * Ends a frame by writing its length.
+	 * @param buffer the buffer the frame is written to
+	 * @param start the position returned by beginFrame
+	 */
+	public static void endFrame(ByteBuffer buffer, int start)
+	{
+		buffer.put(start, (byte)(buffer.position() - start - 1));
+	} // End of endFrame method
+
+	/**
+	 * Gets the length of the next complete frame of a buffer.
+	 * @param buffer a buffer ready to be read
+	 * @return the bytes of the frame with its length, or 0 if the frame isn't complete yet
+	 */
+	public static int getFrameSize(ByteBuffer buffer)
+	{
+		if(buffer.remaining() < 1)
+			return 0;
+		int size = (buffer.get(buffer.position()) & 0xff) + 1;
+		return (buffer.remaining() >= size)?size:0;
+	} // End of getFrameSize method
+
+	/**
+	 * Makes the key of the games a JOIN can be matched with.
+	 * @param mode the mode of the game
+	 * @param rows the rows of the board
+	 * @param columns the columns of the board
+	 * @param matchCount the count of cards of a match
+	 * @param maxTime the maximum time in seconds
+	 * @param playerCount the count of players
+	 * @return the key
+	 */
+	public static long getGameKey(int mode, int rows, int columns, int matchCount, int maxTime, int playerCount)
+	{
+		return ((long)mode << 48) | ((long)rows << 40) | ((long)columns << 32)
+				| ((long)matchCount << 24) | ((long)maxTime << 8) | playerCount;
+	} // End of getGameKey method
+}
@@ -0,0 +1,359 @@
+package com.raidrin.memorygame.server;
+
+import java.nio.ByteBuffer;
+
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.GameEngine;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * A game hosted by the GameServer for one or more players.
+ * The rules are the ones of the app: each board is a GameEngine, the last
+ * card of a turn is shown for the reveal delay before the open cards are
+ * resolved, and the clock ticks every second. In MODE_TURNS the players
+ * share one board and a mismatch passes the turn, in MODE_RACE each player
+ * gets a board dealt from the same seed and the game ends when one of them
+ * clears it. A game only runs on the thread of the event loop of the
+ * server so it needs no lock.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class ServerGame
+{
+	public static final long CARD_REVEAL_DELAY = 300;	// Milliseconds that the last card is shown before the open cards are resolved
+	private static final long TICK_MILLIS = 1000;		// Milliseconds between the ticks of the clock
+	private static final int MESSAGE_SIZE = 4 + Protocol.MAX_PLAYERS * 2 + 8;	// The most bytes of a message of a game
+
+	private final GameServer server;	// The server hosting the game
+	private final long key;				// The key of the JOINs the game is matched with
+	private final int id;				// The number of the game on the server
+	private final byte mode;			// The mode of the game
+	private final BoardConfig boardConfig;	// The size of the board and the count of cards of a match
+	private final int maxTime;			// The maximum time of the game in seconds
+	private final Session[] players;	// The sessions of the players
+	private final int[] scores;			// The score of each player
+	private final GameEngine[] engines;	// One board for all the players or one for each
+	private final TimerWheel.Timeout[] reveals;	// The reveal delay of each board, null when no cards wait
+	private final Runnable[] resolveTasks;	// Resolves the open cards of each board
+	private final Runnable tickTask;	// Ticks the clock
+	private TimerWheel.Timeout tick;	// The next tick of the clock
+	private int playerCount;			// The count of players that joined
+	private int turn;					// The player whose turn it is in MODE_TURNS
+	private int secondsLeft;			// The seconds left in the game
+	private long seed;					// The seed all the boards are dealt from
+	private boolean started;			// States whether the game started
+	private boolean over;				// States whether the game is over
+
+	/**
+	 * The constructor of the ServerGame class
+	 * @param server The server hosting the game
+	 * @param key The key of the JOINs the game is matched with
+	 * @param id The number of the game on the server
+	 * @param mode The mode of the game
+	 * @param boardConfig The size of the board and the count of cards of a match
+	 * @param maxTime The maximum time of the game in seconds
+	 * @param playerCount The count of players that must join before the game starts
+	 */
+	public ServerGame(GameServer server, long key, int id, byte mode, BoardConfig boardConfig, int maxTime, int playerCount)
+	{
+		this.server = server;
+		this.key = key;
+		this.id = id;
+		this.mode = mode;
+		this.boardConfig = boardConfig;
+		this.maxTime = maxTime;
+		players = new Session[playerCount];
+		scores = new int[playerCount];
+		engines = new GameEngine[(mode == Protocol.MODE_RACE)?playerCount:1];
+		reveals = new TimerWheel.Timeout[engines.length];
+		resolveTasks = new Runnable[engines.length];
+		for(int i=0;i<engines.length;i++)
+		{
+			// The boards are only dealt from the seed given to start
+			engines[i] = new GameEngine(maxTime, boardConfig, new SplitMixRandom(0));
+			final int board = i;
+			resolveTasks[i] = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					resolve(board);
+				}
+			};
+		} // End of engines for loop
+		tickTask = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				tick();
+			}
+		};
+	} // End of Constructor
+
+	/**
+	 * Adds a player to the game.
+	 * @param session the session of the player
+	 * @return true if every player joined and the game can start
+	 */
+	public boolean addPlayer(Session session)
+	{
+		session.setGame(this, playerCount);
+		players[playerCount++] = session;
+		return playerCount == players.length;
+	} // End of addPlayer method
+
+	/**
+	 * Starts the game once every player joined.
+	 * @param seed the seed all the boards are dealt from
+	 */
+	public void start(long seed)
+	{
+		this.seed = seed;
+		started = true;
+		secondsLeft = maxTime;
+		for(GameEngine gameEngine : engines)
+			gameEngine.startGame(seed);
+		for(int player=0;player<players.length;player++)
+		{
+			ByteBuffer buffer = begin(players[player]);
+			int start = Protocol.beginFrame(buffer, Protocol.STARTED);
+			buffer.putInt(id);
+			buffer.put((byte)player);
+			buffer.put((byte)players.length);
+			buffer.put(mode);
+			buffer.put((byte)boardConfig.getRows());
+			buffer.put((byte)boardConfig.getColumns());
+			buffer.put((byte)boardConfig.getMatchCount());
+			buffer.putShort((short)maxTime);
+			end(players[player], buffer, start);
+		} // End of players for loop
+		if(mode == Protocol.MODE_TURNS)
+			sendTurn();
+		tick = server.schedule(tickTask, TICK_MILLIS);
+	} // End of start method
+
+	/**
+	 * Flips a card for a player.
+	 * @param session the session of the player
+	 * @param index the index of the card on the board
+	 */
+	public void flip(Session session, int index)
+	{
+		if(!started || over)
+		{
+			server.sendError(session, Protocol.ERROR_NOT_PLAYING);
+			return;
+		} // End of !started || over If
+		if(index >= boardConfig.getCardCount())
+		{
+			server.sendError(session, Protocol.ERROR_BAD_MESSAGE);
+			return;
+		} // End of index >= getCardCount If
+		int player = session.getPlayerNumber();
+		// Only the player whose turn it is flips the shared board
+		if(mode == Protocol.MODE_TURNS && player != turn)
+			return;
+		int board = (mode == Protocol.MODE_RACE)?player:0;
+		GameEngine gameEngine = engines[board];
+		GameEngine.FlipResult result = gameEngine.flip(index);
+		if(result == GameEngine.FlipResult.IGNORED)
+			return;
+		if(result != GameEngine.FlipResult.SAME_CARD)
+		{
+			// Everyone sees the shared board, only the player sees its own board in a race
+			if(mode == Protocol.MODE_RACE)
+				sendShown(session, player, index, gameEngine.getCard(index));
+			else
+				for(Session other : players)
+					sendShown(other, player, index, gameEngine.getCard(index));
+		} // End of result != SAME_CARD If
+		if(gameEngine.isCardsOpen())
+			reveals[board] = server.schedule(resolveTasks[board], CARD_REVEAL_DELAY);
+	} // End of flip method
+
+	/**
+	 * Resolves the open cards of a board when their reveal delay ended.
+	 * @param board the index of the board
+	 */
+	private void resolve(int board)
+	{
+		reveals[board] = null;
+		GameEngine gameEngine = engines[board];
+		int player = (mode == Protocol.MODE_RACE)?board:turn;
+		int score = gameEngine.getScore();
+		gameEngine.resolve();
+		boolean matched = gameEngine.getScore() != score;
+		if(matched)
+			scores[player]++;
+		for(Session session : players)
+		{
+			ByteBuffer buffer = begin(session);
+			int start = Protocol.beginFrame(buffer, Protocol.RESOLVED);
+			buffer.put((byte)player);
+			buffer.put((byte)(matched?1:0));
+			buffer.putShort((short)scores[player]);
+			end(session, buffer, start);
+		} // End of players for loop
+		// The game ends as soon as a board is cleared
+		if(gameEngine.getScore() == boardConfig.getMatchTotal())
+			finish();
+		else if(mode == Protocol.MODE_TURNS && !matched)
+		{
+			turn = (turn + 1) % players.length;
+			sendTurn();
+		} // End of getMatchTotal If - Else If
+	} // End of resolve method
+
+	/**
+	 * Counts down one second of the game.
+	 */
+	private void tick()
+	{
+		tick = null;
+		--secondsLeft;
+		for(GameEngine gameEngine : engines)
+			gameEngine.tick();
+		for(Session session : players)
+		{
+			ByteBuffer buffer = begin(session);
+			int start = Protocol.beginFrame(buffer, Protocol.TIME);
+			buffer.putShort((short)secondsLeft);
+			end(session, buffer, start);
+		} // End of players for loop
+		if(secondsLeft == 0)
+			finish();
+		else
+			tick = server.schedule(tickTask, TICK_MILLIS);
+	} // End of tick method
+
+	/**
+	 * A player left the game.
+	 * A game that didn't start waits for another player, a started game ends for the others.
+	 * @param session the session of the player
+	 */
+	public void removePlayer(Session session)
+	{
+		int player = session.getPlayerNumber();
+		session.setGame(null, 0);
+		if(over)
+			return;
+		if(!started)
+		{
+			// Move the later players down so the numbers stay in the order they joined
+			for(int i=player;i<playerCount-1;i++)
+			{
+				players[i] = players[i + 1];
+				players[i].setGame(this, i);
+			} // End of playerCount for loop
+			players[--playerCount] = null;
+			if(playerCount == 0)
+				server.removeWaitingGame(this);
+			return;
+		} // End of !started If
+		players[player] = null;
+		for(Session other : players)
+			if(other != null)
+				server.sendError(other, Protocol.ERROR_PLAYER_LEFT);
+		finish();
+	} // End of removePlayer method
+
+	/**
+	 * Ends the game and sends the final scores.
+	 */
+	private void finish()
+	{
+		over = true;
+		if(tick != null)
+			tick.cancel();
+		for(int i=0;i<reveals.length;i++)
+		{
+			if(reveals[i] != null)
+				reveals[i].cancel();
+			reveals[i] = null;
+		} // End of reveals for loop
+		for(Session session : players)
+		{
+			if(session == null)
+				continue;
+			ByteBuffer buffer = begin(session);
+			int start = Protocol.beginFrame(buffer, Protocol.OVER);
+			buffer.putLong(seed);
+			buffer.put((byte)scores.length);
+			for(int score : scores)
+				buffer.putShort((short)score);
+			end(session, buffer, start);
+			session.setGame(null, 0);
+		} // End of players for loop
+		server.onGameOver(this);
+	} // End of finish method
+
+	/**
+	 * Sends whose turn it is to every player.
+	 */
+	private void sendTurn()
+	{
+		for(Session session : players)
+		{
+			ByteBuffer buffer = begin(session);
+			int start = Protocol.beginFrame(buffer, Protocol.TURN);
+			buffer.put((byte)turn);
+			end(session, buffer, start);
+		} // End of players for loop
+	} // End of sendTurn method
+
+	/**
+	 * Sends a card that was flipped.
+	 * @param session the session the message is sent to
+	 * @param player the player that flipped the card
+	 * @param index the index of the card on the board
+	 * @param card the Deck card
+	 */
+	private void sendShown(Session session, int player, int index, int card)
+	{
+		ByteBuffer buffer = begin(session);
+		int start = Protocol.beginFrame(buffer, Protocol.SHOWN);
+		buffer.put((byte)player);
+		buffer.put((byte)index);
+		buffer.put((byte)card);
+		end(session, buffer, start);
+	} // End of sendShown method
+
+	/**
+	 * Gets the buffer a message to a player is written to.
+	 * @param session the session of the player
+	 * @return the output buffer of the session
+	 */
+	private ByteBuffer begin(Session session)
+	{
+		return session.getOutput(MESSAGE_SIZE);
+	} // End of begin method
+
+	/**
+	 * Ends a message to a player and queues the session to be flushed.
+	 * @param session the session of the player
+	 * @param buffer the output buffer of the session
+	 * @param start the position returned by beginFrame
+	 */
+	private void end(Session session, ByteBuffer buffer, int start)
+	{
+		Protocol.endFrame(buffer, start);
+		server.queueFlush(session);
+	} // End of end method
+
+	/**
+	 * @return the key of the JOINs the game is matched with
+	 */
+	public long getKey()
+	{
+		return key;
+	} // End of getKey method
+
+	/**
+	 * @return true if the game started
+	 */
+	public boolean isStarted()
+	{
+		return started;
+	} // End of isStarted method
+}
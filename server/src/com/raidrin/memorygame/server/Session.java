@@ -0,0 +1,177 @@
+package com.raidrin.memorygame.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A connection of a client to the GameServer.
+ * The messages to the client are written to a buffer and sent when the
+ * socket can take them, so a slow client never blocks the event loop.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class Session
+{
+	private static final int INITIAL_OUTPUT_SIZE = 512;	// The first size of the output buffer
+	private static final int MAX_OUTPUT_SIZE = 1 << 16;	// The most bytes waiting for a client before it's dropped
+
+	private final SocketChannel channel;	// The socket of the client
+	private final SelectionKey key;			// The key of the socket in the selector of the loop
+	private final ByteBuffer input;			// The bytes read that aren't a whole frame yet
+	private ByteBuffer output;				// The frames waiting to be sent
+	private ServerGame game;				// The game of the client, null before its JOIN
+	private int playerNumber;				// The number of the client in its game
+	private boolean closed;					// States whether the session is closed
+	private boolean flushQueued;			// States whether the session waits to be flushed by the loop
+
+	/**
+	 * The constructor of the Session class
+	 * @param channel The socket of the client
+	 * @param key The key of the socket in the selector of the loop
+	 */
+	public Session(SocketChannel channel, SelectionKey key)
+	{
+		this.channel = channel;
+		this.key = key;
+		input = ByteBuffer.allocate(Protocol.MAX_FRAME_SIZE);
+		output = ByteBuffer.allocate(INITIAL_OUTPUT_SIZE);
+	} // End of Constructor
+
+	/**
+	 * Reads the bytes the client sent.
+	 * @return the input buffer ready to be read, compact it after taking its frames
+	 * @throws IOException if the socket failed or the client closed it
+	 */
+	public ByteBuffer read() throws IOException
+	{
+		if(channel.read(input) < 0)
+			throw new IOException("The client closed the connection.");
+		input.flip();
+		return input;
+	} // End of read method
+
+	/**
+	 * Keeps the bytes of a frame that isn't complete for the next read.
+	 */
+	public void compactInput()
+	{
+		input.compact();
+	} // End of compactInput method
+
+	/**
+	 * Gets the buffer a message is written to.
+	 * The message is sent by flush.
+	 * @param size the most bytes of the message
+	 * @return the output buffer
+	 */
+	public ByteBuffer getOutput(int size)
+	{
+		if(output.remaining() < size)
+		{
+			int capacity = output.capacity();
+			while(capacity - output.position() < size)
+				capacity *= 2;
+			ByteBuffer bigger = ByteBuffer.allocate(capacity);
+			output.flip();
+			bigger.put(output);
+			output = bigger;
+		} // End of output.remaining() < size If
+		return output;
+	} // End of getOutput method
+
+	/**
+	 * Sends the messages written to the output buffer.
+	 * What the socket can't take now is sent when it's writable again.
+	 * @throws IOException if the socket failed or the client is too slow
+	 */
+	public void flush() throws IOException
+	{
+		if(closed || output.position() == 0)
+			return;
+		output.flip();
+		channel.write(output);
+		output.compact();
+		if(output.position() > MAX_OUTPUT_SIZE)
+			throw new IOException("The client doesn't read its messages.");
+		// Wait for the socket to be writable only while there's something to send
+		int interest = (output.position() == 0)?SelectionKey.OP_READ:(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		if(key.interestOps() != interest)
+			key.interestOps(interest);
+	} // End of flush method
+
+	/**
+	 * Closes the socket.
+	 */
+	public void close()
+	{
+		if(closed)
+			return;
+		closed = true;
+		key.cancel();
+		try
+		{
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			// The socket is closed anyway
+		} // End of try - catch
+	} // End of close method
+
+	/**
+	 * @return true if the session is closed
+	 */
+	public boolean isClosed()
+	{
+		return closed;
+	} // End of isClosed method
+
+	/**
+	 * Marks the session as waiting to be flushed.
+	 * @return true if it wasn't already waiting
+	 */
+	public boolean queueFlush()
+	{
+		if(flushQueued)
+			return false;
+		flushQueued = true;
+		return true;
+	} // End of queueFlush method
+
+	/**
+	 * Marks the session as flushed.
+	 */
+	public void clearFlushQueued()
+	{
+		flushQueued = false;
+	} // End of clearFlushQueued method
+
+	/**
+	 * Joins a game.
+	 * @param game the game
+	 * @param playerNumber the number of the client in the game
+	 */
+	public void setGame(ServerGame game, int playerNumber)
+	{
+		this.game = game;
+		this.playerNumber = playerNumber;
+	} // End of setGame method
+
+	/**
+	 * @return the game of the client, null before its JOIN or after the game ended
+	 */
+	public ServerGame getGame()
+	{
+		return game;
+	} // End of getGame method
+
+	/**
+	 * @return the number of the client in its game
+	 */
+	public int getPlayerNumber()
+	{
+		return playerNumber;
+	} // End of getPlayerNumber method
+}
@@ -0,0 +1,185 @@
+package com.raidrin.memorygame.server;
+
+/**
+ * The timers of an event loop, run by the thread of the loop.
+ * A hashed timer wheel: time is cut in ticks of tickMillis and each
+ * timeout is put in the bucket of the tick it's due in, the tick modulo
+ * the count of buckets. Each bucket is a linked list, so scheduling and
+ * cancelling a timeout cost the same with ten timers or a million. The
+ * loop waits for its sockets at most until the next bucket with a
+ * timeout and then runs the buckets of the ticks that passed, so the
+ * ticks and the reveal delays of all the games run on the same thread as
+ * their messages and a timeout runs at most about one tick late.
+ * A timeout due more than a turn of the wheel away stays in its bucket
+ * until the turn it's due in.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class TimerWheel
+{
+	/**
+	 * A task that runs once after a delay and can be cancelled before it runs.
+	 */
+	public static class Timeout
+	{
+		private final TimerWheel wheel;	// The wheel the timeout is scheduled on
+		private final Runnable task;	// Runs when the timeout is due
+		private final long deadlineTick;// The tick the timeout is due in
+		private final int bucket;		// The index of the bucket of the timeout
+		private Timeout previous;		// The timeout before this one in its bucket
+		private Timeout next;			// The timeout after this one in its bucket
+		private boolean scheduled;		// States whether the timeout is in its bucket
+
+		Timeout(TimerWheel wheel, Runnable task, long deadlineTick, int bucket)
+		{
+			this.wheel = wheel;
+			this.task = task;
+			this.deadlineTick = deadlineTick;
+			this.bucket = bucket;
+		}
+
+		/**
+		 * Stops the task from running, does nothing if it already ran.
+		 */
+		public void cancel()
+		{
+			if(scheduled)
+				wheel.remove(this);
+		} // End of cancel method
+	} // End of Timeout class
+
+	private final long tickMillis;		// The milliseconds of a tick of the wheel
+	private final long startTime;		// The time in milliseconds of the start of the first tick
+	private final int mask;				// The bits of a tick that give its bucket
+	private final Timeout[] heads;		// The first timeout of each bucket
+	private final Timeout[] tails;		// The last timeout of each bucket
+	private long currentTick;			// The next tick to run
+	private int size;					// The count of scheduled timeouts
+
+	/**
+	 * The constructor of the TimerWheel class
+	 * @param tickMillis The milliseconds of a tick, the most a timeout can run late
+	 * @param bucketCount The count of buckets, a power of two, a turn of the wheel is bucketCount ticks
+	 * @param now The current time in milliseconds
+	 */
+	public TimerWheel(long tickMillis, int bucketCount, long now)
+	{
+		if(tickMillis < 1)
+			throw new IllegalArgumentException("A tick must last at least a millisecond.");
+		if(bucketCount < 1 || (bucketCount & (bucketCount - 1)) != 0)
+			throw new IllegalArgumentException("The count of buckets must be a power of two.");
+		this.tickMillis = tickMillis;
+		startTime = now;
+		mask = bucketCount - 1;
+		heads = new Timeout[bucketCount];
+		tails = new Timeout[bucketCount];
+	} // End of Constructor
+
+	/**
+	 * Schedules a task.
+	 * @param task the task
+	 * @param now the current time in milliseconds
+	 * @param delay the milliseconds before the task runs
+	 * @return the timeout that can cancel the task
+	 */
+	public Timeout schedule(Runnable task, long now, long delay)
+	{
+		// The first tick that starts at or after the deadline, never one that already ran
+		long tick = (now + delay - startTime + tickMillis - 1) / tickMillis;
+		if(tick < currentTick)
+			tick = currentTick;
+		int bucket = (int)tick & mask;
+		Timeout timeout = new Timeout(this, task, tick, bucket);
+		timeout.previous = tails[bucket];
+		if(tails[bucket] == null)
+			heads[bucket] = timeout;
+		else
+			tails[bucket].next = timeout;
+		tails[bucket] = timeout;
+		timeout.scheduled = true;
+		size++;
+		return timeout;
+	} // End of schedule method
+
+	/**
+	 * Takes a timeout out of its bucket.
+	 * @param timeout the timeout
+	 */
+	private void remove(Timeout timeout)
+	{
+		if(timeout.previous == null)
+			heads[timeout.bucket] = timeout.next;
+		else
+			timeout.previous.next = timeout.next;
+		if(timeout.next == null)
+			tails[timeout.bucket] = timeout.previous;
+		else
+			timeout.next.previous = timeout.previous;
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.scheduled = false;
+		size--;
+	} // End of remove method
+
+	/**
+	 * Runs every task that is due, tick by tick.
+	 * A task can schedule other tasks, the ones due now run in the same call.
+	 * @param now the current time in milliseconds
+	 * @return the count of tasks run
+	 */
+	public int runDue(long now)
+	{
+		long lastTick = (now - startTime) / tickMillis;
+		int count = 0;
+		while(currentTick <= lastTick)
+		{
+			// Skip the empty turns of the wheel when nothing is scheduled
+			if(size == 0)
+			{
+				currentTick = lastTick + 1;
+				break;
+			} // End of size == 0 If
+			Timeout timeout = heads[(int)currentTick & mask];
+			while(timeout != null)
+			{
+				Timeout next = timeout.next;
+				if(timeout.deadlineTick <= currentTick)
+				{
+					remove(timeout);
+					timeout.task.run();
+					count++;
+					// The task can cancel the next timeout, start again from the head then
+					if(next != null && !next.scheduled)
+						next = heads[(int)currentTick & mask];
+				} // End of deadlineTick <= currentTick If
+				timeout = next;
+			} // End of timeout != null while loop
+			currentTick++;
+		} // End of currentTick <= lastTick while loop
+		return count;
+	} // End of runDue method
+
+	/**
+	 * Gets the time to wait for the next task.
+	 * Only looks at one turn of the wheel, a task due later wakes the loop once a turn.
+	 * @param now the current time in milliseconds
+	 * @return the milliseconds until the next tick with a task, at least 1, or 0 if no task is scheduled
+	 */
+	public long getNextDelay(long now)
+	{
+		if(size == 0)
+			return 0;
+		long tick = currentTick;
+		while(tick < currentTick + mask && heads[(int)tick & mask] == null)
+			tick++;
+		return Math.max(1, startTime + tick * tickMillis - now);
+	} // End of getNextDelay method
+
+	/**
+	 * @return the count of scheduled timeouts
+	 */
+	public int size()
+	{
+		return size;
+	} // End of size method
+}
@@ -0,0 +1,255 @@
+package com.raidrin.memorygame.server;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.GameEngine;
+import com.raidrin.memorygame.LatencyHistogram;
+import com.raidrin.memorygame.RandomPlayer;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * Drives many games from one thread with a TimerWheel, the way the
+ * GameServer does, and measures how late their timers run.
+ * Each game is a GameEngine played by a RandomPlayer: the clock ticks
+ * every second, a card is tapped every tapMillis and the last card of a
+ * turn is shown for the reveal delay before it's resolved. A game that
+ * ends starts again. The games start spread over the first second so
+ * their ticks don't all fall in the same tick of the wheel.
+ * The jitter is the time between the deadline of a timer and the time
+ * its task ran. The cost of scheduling and cancelling is measured at the end.
+ *
+ * Usage: javac -d /tmp/server -sourcepath src:server/src server/src/com/raidrin/memorygame/server/TimerWheelBenchmark.java
+ *        && java -cp /tmp/server com.raidrin.memorygame.server.TimerWheelBenchmark [games] [seconds] [tap millis]
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class TimerWheelBenchmark
+{
+	private static final long TICK_MILLIS = 1000;	// Milliseconds between the ticks of the clock of a game
+	private static final int MAX_TIME = 60;			// The maximum time of each game in seconds
+	private static final long WARMUP_MILLIS = 5000;	// Milliseconds played before the jitter is recorded
+	private static final int CANCEL_COUNT = 1000000;	// The count of timeouts scheduled and cancelled at the end
+
+	/**
+	 * A game driven by the timers of the wheel.
+	 */
+	private class Game
+	{
+		private final GameEngine gameEngine;	// The engine of the game
+		private final RandomPlayer player;		// Taps the cards
+		private final int[] openIndexes;		// The cards open in this turn
+		private int openCount;					// The count of open cards
+		private long tickDeadline;				// The time in milliseconds the next tick is due
+		private long tapDeadline;				// The time in milliseconds the next tap or resolve is due
+		private final Runnable tickTask = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				tick();
+			}
+		};
+		private final Runnable tapTask = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				tap();
+			}
+		};
+		private final Runnable resolveTask = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				resolve();
+			}
+		};
+
+		Game(long seed)
+		{
+			gameEngine = new GameEngine(MAX_TIME, BoardConfig.DEFAULT, new SplitMixRandom(seed));
+			player = new RandomPlayer(new SplitMixRandom(~seed));
+			openIndexes = new int[BoardConfig.DEFAULT.getMatchCount()];
+		}
+
+		void start(long delay)
+		{
+			gameEngine.startGame();
+			player.startGame(gameEngine);
+			openCount = 0;
+			tickDeadline = now + delay + TICK_MILLIS;
+			timers.schedule(tickTask, now, tickDeadline - now);
+			scheduleTap(delay + tapMillis);
+		}
+
+		void scheduleTap(long delay)
+		{
+			tapDeadline = now + delay;
+			timers.schedule(tapTask, now, delay);
+		}
+
+		void tick()
+		{
+			recordJitter(tickDeadline);
+			gameEngine.tick();
+			if(gameEngine.isRunning())
+			{
+				tickDeadline += TICK_MILLIS;
+				timers.schedule(tickTask, now, tickDeadline - now);
+			}
+			else
+				restartCount++;
+		}
+
+		void tap()
+		{
+			recordJitter(tapDeadline);
+			if(!gameEngine.isRunning())
+			{
+				// The clock ended the game, play the next one
+				start(0);
+				return;
+			} // End of !isRunning If
+			int index = player.chooseCard(openIndexes, openCount);
+			if(index >= 0)
+			{
+				gameEngine.flip(index);
+				openIndexes[openCount++] = index;
+			} // End of index >= 0 If
+			if(gameEngine.isCardsOpen())
+			{
+				tapDeadline = now + ServerGame.CARD_REVEAL_DELAY;
+				timers.schedule(resolveTask, now, ServerGame.CARD_REVEAL_DELAY);
+			}
+			else
+				scheduleTap(tapMillis);
+		}
+
+		void resolve()
+		{
+			recordJitter(tapDeadline);
+			gameEngine.resolve();
+			openCount = 0;
+			scheduleTap(tapMillis);
+		}
+	} // End of Game class
+
+	private final int gameCount;	// The count of games
+	private final long tapMillis;	// The milliseconds between two taps of a game
+	private final TimerWheel timers;	// Drives every game
+	private final LatencyHistogram jitter;	// The time each task ran after its deadline
+	private long now;				// The time of the current loop in milliseconds
+	private long nowNanos;			// The time of the current loop in nanoseconds
+	private long restartCount;		// The count of games that ended and started again
+
+	/**
+	 * The constructor of the TimerWheelBenchmark class
+	 * @param gameCount The count of games
+	 * @param tapMillis The milliseconds between two taps of a game
+	 */
+	public TimerWheelBenchmark(int gameCount, long tapMillis)
+	{
+		this.gameCount = gameCount;
+		this.tapMillis = tapMillis;
+		nowNanos = System.nanoTime();
+		now = nowNanos / 1000000;
+		timers = new TimerWheel(GameServer.TIMER_TICK, GameServer.TIMER_BUCKETS, now);
+		jitter = new LatencyHistogram("timer jitter");
+	} // End of Constructor
+
+	public static void main(String[] args)
+	{
+		int games = (args.length > 0)?Integer.parseInt(args[0]):100000;
+		int seconds = (args.length > 1)?Integer.parseInt(args[1]):30;
+		long tap = (args.length > 2)?Long.parseLong(args[2]):700;
+		TimerWheelBenchmark benchmark = new TimerWheelBenchmark(games, tap);
+		System.out.println(benchmark.run(seconds * 1000L));
+		System.out.println(measureScheduleCancel());
+	}
+
+	/**
+	 * Plays the games.
+	 * @param millis the milliseconds the games are played
+	 * @return the report of the run
+	 */
+	public String run(long millis)
+	{
+		Game[] games = new Game[gameCount];
+		for(int i=0;i<gameCount;i++)
+		{
+			games[i] = new Game(i);
+			games[i].start(i * TICK_MILLIS / gameCount);
+		} // End of gameCount for loop
+		long start = now;
+		long end = start + millis;
+		long taskCount = 0;
+		long busyNanos = 0;
+		while(now < end)
+		{
+			long delay = timers.getNextDelay(now);
+			if(delay > 0)
+				LockSupport.parkNanos(delay * 1000000);
+			nowNanos = System.nanoTime();
+			now = nowNanos / 1000000;
+			// The jitter of the first seconds is the start of the games and the warm up of the JIT
+			if(now - start < WARMUP_MILLIS)
+				jitter.reset();
+			taskCount += timers.runDue(now);
+			busyNanos += System.nanoTime() - nowNanos;
+		} // End of now < end while loop
+
+		StringBuilder builder = new StringBuilder();
+		builder.append(gameCount).append(" games for ").append(millis / 1000).append(" s, ")
+				.append(taskCount).append(" tasks, ").append(taskCount * 1000 / millis).append(" tasks/s, ")
+				.append(restartCount).append(" games restarted, loop busy ")
+				.append(String.format("%.1f%%", busyNanos / 1e4 / millis)).append('\n');
+		jitter.appendDistribution(builder);
+		return builder.toString();
+	} // End of run method
+
+	/**
+	 * Records how late a task ran.
+	 * @param deadline the time in milliseconds the task was due
+	 */
+	private void recordJitter(long deadline)
+	{
+		jitter.record(Math.max(0, nowNanos - deadline * 1000000));
+	} // End of recordJitter method
+
+	/**
+	 * Measures the cost of scheduling and cancelling timeouts spread over a turn of the wheel.
+	 * @return a line with the nanoseconds of each operation
+	 */
+	private static String measureScheduleCancel()
+	{
+		Runnable task = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+			}
+		};
+		TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[CANCEL_COUNT];
+		long scheduleNanos = Long.MAX_VALUE;
+		long cancelNanos = Long.MAX_VALUE;
+		for(int round=0;round<5;round++)
+		{
+			TimerWheel wheel = new TimerWheel(GameServer.TIMER_TICK, GameServer.TIMER_BUCKETS, 0);
+			long start = System.nanoTime();
+			for(int i=0;i<CANCEL_COUNT;i++)
+				timeouts[i] = wheel.schedule(task, 0, (i * 7919L) % 10000);
+			long middle = System.nanoTime();
+			for(int i=0;i<CANCEL_COUNT;i++)
+				timeouts[(int)((i * 104729L) % CANCEL_COUNT)].cancel();
+			long end = System.nanoTime();
+			scheduleNanos = Math.min(scheduleNanos, middle - start);
+			cancelNanos = Math.min(cancelNanos, end - middle);
+			if(wheel.size() != 0)
+				throw new IllegalStateException("Timeouts are left after cancelling all of them.");
+		} // End of round for loop
+		return String.format("schedule %.1f ns, cancel %.1f ns, best of 5 rounds of %d timeouts",
+				(double)scheduleNanos / CANCEL_COUNT, (double)cancelNanos / CANCEL_COUNT, CANCEL_COUNT);
+	} // End of measureScheduleCancel method
+}
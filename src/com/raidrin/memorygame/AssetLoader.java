@@ -0,0 +1,184 @@
+package com.raidrin.memorygame;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Decodes the images of the cards in the background and saves them in
+ * the ImageCache so that binding the cards on the UI thread doesn't
+ * decode anything.
+ * The loader uses a small bounded pool of low priority threads. Each
+ * prefetch returns a Future that can be cancelled when the images are
+ * not needed anymore.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class AssetLoader
+{
+	private static final String LOG_NAME = "AndroidType";
+	private static final int THREAD_COUNT = 2;		// The maximum count of threads that decode images
+	private static final int QUEUE_CAPACITY = 8;	// The maximum count of prefetches waiting to run
+	private static final long KEEP_ALIVE_SECONDS = 30;	// How long an idle thread is kept
+
+	private final ImageCache imageCache;		// The cache where the decoded images are saved
+	private final CardAtlas cardAtlas;			// The sheet that holds the packed card images
+	private final ThreadPoolExecutor executor;	// The executor that runs the prefetches
+	private final AtomicInteger pendingCount;	// The tasks given to the executor that haven't ended or been dropped
+
+	/**
+	 * The constructor of the AssetLoader class
+	 * @param context The context in which the AssetLoader is created
+	 */
+	public AssetLoader(Context context)
+	{
+		imageCache = ImageCache.getInstance(context);
+		cardAtlas = CardAtlas.getInstance(context);
+		pendingCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+				KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+				loaderThreadFactory,
+				// A prefetch is only speculative so the oldest one is dropped when the queue is full
+				new RejectedExecutionHandler()
+				{
+					@Override
+					public void rejectedExecution(Runnable task, ThreadPoolExecutor executor)
+					{
+						// Like the DiscardOldestPolicy, but the dropped tasks aren't pending anymore
+						if(executor.isShutdown())
+						{
+							pendingCount.decrementAndGet();
+							return;
+						} // End of isShutdown If
+						if(executor.getQueue().poll() != null)
+							pendingCount.decrementAndGet();
+						executor.execute(task);
+					} // End of rejectedExecution method
+				}) // End of RejectedExecutionHandler anonymous inner class
+		{
+			// Called after every task a thread takes, a cancelled prefetch too
+			@Override
+			protected void afterExecute(Runnable task, Throwable error)
+			{
+				super.afterExecute(task, error);
+				pendingCount.decrementAndGet();
+			} // End of afterExecute method
+		}; // End of ThreadPoolExecutor anonymous inner class
+		// The idle threads can only be stopped from Gingerbread on, before it they wait for the next prefetch
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD)
+			executor.allowCoreThreadTimeOut(true);
+	} // End of Constructor
+
+	/**
+	 * Decodes the images in the background.
+	 * Images that are already in the cache are skipped and images that
+	 * are packed in the CardAtlas only make sure the sheet is decoded.
+	 * The images that the ThemePack doesn't have are taken from the assets folder.
+	 * @param themePack the pack the images are decoded from, null for the assets folder
+	 * @param filenames the filenames of the images in the pack or in the assets folder
+	 * @param targetWidth the width the images are drawn at, each one gets the sample size of its own width
+	 * @return the Future of the prefetch which can be used to cancel it
+	 */
+	public Future<?> prefetch(final ThemePack themePack, Collection<String> filenames, final int targetWidth)
+	{
+		// Copy the filenames because the collection may be changed by the UI thread
+		final ArrayList<String> pendingFilenames = new ArrayList<String>(filenames);
+		pendingCount.incrementAndGet();
+		try
+		{
+			return executor.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for(int i=0;i<pendingFilenames.size();i++)
+					{
+						// Stop decoding when the prefetch is cancelled
+						if(Thread.currentThread().isInterrupted())
+							return;
+						String filename = pendingFilenames.get(i);
+						// Packed images only need the sheet to be decoded
+						boolean packed = (themePack == null || !themePack.contains(filename)) && cardAtlas.contains(filename);
+						int sampleSize = imageCache.getSampleSize(themePack, filename, targetWidth);
+						if(packed)
+							cardAtlas.getSheet(sampleSize);
+						else if(!imageCache.contains(themePack, filename, sampleSize))
+							imageCache.getBitmap(themePack, filename, sampleSize);
+					} // End of pendingFilenames for loop
+				} // End of run method
+			}); // End of Runnable anonymous inner class
+		}
+		catch (RejectedExecutionException e) {
+			pendingCount.decrementAndGet();
+			Log.e(LOG_NAME,"The prefetch was rejected."+e.getMessage());
+			return null;
+		} // End of Try - Catch
+	} // End of prefetch method
+
+	/**
+	 * Runs a task that reads files in the background on the threads of
+	 * the loader, like opening the ThemePack or the GameHistoryStore.
+	 * Called before any prefetch, each of the first THREAD_COUNT tasks
+	 * starts a thread of its own, so it's never dropped like a prefetch.
+	 * @param task the task
+	 */
+	public void execute(Runnable task)
+	{
+		pendingCount.incrementAndGet();
+		try
+		{
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			pendingCount.decrementAndGet();
+			Log.e(LOG_NAME,"The task was rejected."+e.getMessage());
+		} // End of Try - Catch
+	} // End of execute method
+
+	/**
+	 * Checks if every prefetch and task given to the loader has ended.
+	 * @return true if nothing is running or waiting to run
+	 */
+	public boolean isIdle()
+	{
+		// The counts of the executor miss a task a thread has taken from the queue but not started yet
+		return pendingCount.get() == 0;
+	} // End of isIdle method
+
+	/**
+	 * Cancels all the prefetches and stops the threads.
+	 * The AssetLoader can't be used anymore after this call.
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	} // End of shutdown method
+
+	/**
+	 * Creates the threads of the loader with the minimum priority
+	 * so that decoding never competes with the UI thread.
+	 */
+	private static final ThreadFactory loaderThreadFactory = new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "AssetLoader");
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.setDaemon(true);
+			return thread;
+		} // End of newThread method
+	}; // End of loaderThreadFactory anonymous inner class
+}
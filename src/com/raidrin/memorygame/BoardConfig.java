@@ -0,0 +1,107 @@
+package com.raidrin.memorygame;
+
+/**
+ * The size of the board and how many cards make a match.
+ * The board has rows * columns cards, each distinct card is on the
+ * board matchCount times and the user has to open matchCount equal
+ * cards to match them. A BoardConfig can't be changed once created.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public final class BoardConfig
+{
+	public static final int MIN_MATCH_COUNT = 2;	// Pairs
+	public static final int MAX_MATCH_COUNT = 4;	// Every suit of a rank
+
+	// The board of the original game, 4 rows of 4 cards and pairs
+	public static final BoardConfig DEFAULT = new BoardConfig(4, 4, 2);
+
+	private final int rows;			// The count of rows of the board
+	private final int columns;		// The count of columns of the board
+	private final int matchCount;	// The count of equal cards that make a match
+
+	/**
+	 * The constructor of the BoardConfig class
+	 * @param rows The count of rows of the board
+	 * @param columns The count of columns of the board
+	 * @param matchCount The count of equal cards that make a match
+	 * @throws IllegalArgumentException if the board can't be dealt from the deck
+	 */
+	public BoardConfig(int rows, int columns, int matchCount)
+	{
+		if(rows <= 0 || columns <= 0)
+			throw new IllegalArgumentException("The board needs at least one row and one column.");
+		if(matchCount < MIN_MATCH_COUNT || matchCount > MAX_MATCH_COUNT)
+			throw new IllegalArgumentException("The match count must be from " + MIN_MATCH_COUNT + " to " + MAX_MATCH_COUNT + ".");
+		if((rows * columns) % matchCount != 0)
+			throw new IllegalArgumentException("The count of cards must be a multiple of the match count.");
+		if((rows * columns) / matchCount > Deck.SIZE)
+			throw new IllegalArgumentException("The board needs more cards than the deck has.");
+		this.rows = rows;
+		this.columns = columns;
+		this.matchCount = matchCount;
+	} // End of Constructor
+
+	/**
+	 * @return the count of rows of the board
+	 */
+	public int getRows()
+	{
+		return rows;
+	} // End of getRows method
+
+	/**
+	 * @return the count of columns of the board
+	 */
+	public int getColumns()
+	{
+		return columns;
+	} // End of getColumns method
+
+	/**
+	 * @return the count of equal cards that make a match
+	 */
+	public int getMatchCount()
+	{
+		return matchCount;
+	} // End of getMatchCount method
+
+	/**
+	 * @return the count of cards on the board
+	 */
+	public int getCardCount()
+	{
+		return rows * columns;
+	} // End of getCardCount method
+
+	/**
+	 * The count of matches on the board, which is also the highest score.
+	 * Each match is a distinct card of the deck.
+	 * @return the count of matches on the board
+	 */
+	public int getMatchTotal()
+	{
+		return getCardCount() / matchCount;
+	} // End of getMatchTotal method
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if(!(other instanceof BoardConfig))
+			return false;
+		BoardConfig config = (BoardConfig)other;
+		return rows == config.rows && columns == config.columns && matchCount == config.matchCount;
+	} // End of equals method
+
+	@Override
+	public int hashCode()
+	{
+		return (rows * 31 + columns) * 31 + matchCount;
+	} // End of hashCode method
+
+	@Override
+	public String toString()
+	{
+		return rows + "x" + columns + " match " + matchCount;
+	} // End of toString method
+}
@@ -0,0 +1,442 @@
+package com.raidrin.memorygame;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * A single view that draws the whole board of a GameEngine.
+ * The cards are not views, they are drawn one after the other on the
+ * same Canvas from the shared bitmaps of the CardAtlas, and a touch is
+ * mapped to a card by its position in the grid. When a card changes,
+ * only its own rectangle is invalidated so flipping a card never
+ * needs a layout pass. The images are decoded at the smallest fraction
+ * of their size that is still as big as the cards are drawn.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class BoardView extends View
+{
+	public static final String CARD_BACK_FILENAME = "cardback.png";		// The filename off all the cards' back
+	public static final String GLOW_BACKGROUND_FILENAME = "glow.png";	// The filename off all the cards' glow
+	static final int CARD_WIDTH = 65;			// The width of the card images in the assets folder
+	private static final int CARD_HEIGHT = 87;	// The height of the card images in the assets folder
+	private static final int GLOW_PADDING_DIVISOR = 15;	// The glow around a face up card is 1/GLOW_PADDING_DIVISOR of the cell
+	private static final float OVERLAY_TEXT_SIZE = 12;	// The size of the text of the debug overlay
+	private static final int OVERLAY_BACKGROUND = 0xb0000000;	// The color behind the text of the debug overlay
+
+	/**
+	 * Listens to the cards that are clicked.
+	 */
+	public interface OnCardClickListener
+	{
+		/**
+		 * A card of the board is clicked.
+		 * @param index the index of the card on the board
+		 */
+		void onCardClick(int index);
+	} // End of OnCardClickListener interface
+
+	private GameEngine gameEngine;	// The engine whose board is drawn
+	private OnCardClickListener onCardClickListener;	// Listens to the cards that are clicked
+	private int columnCount;	// The count of columns of the board
+	private int rowCount;		// The count of rows of the board
+	private int cellWidth;		// The width of each card measured by onMeasure
+	private int cellHeight;		// The height of each card measured by onMeasure
+	private int offsetLeft;		// The left of the first column
+	private int offsetTop;		// The top of the first row
+
+	private Bitmap[] faceBitmaps;	// The bitmap that holds the front of each card
+	private Rect[] faceRegions;		// The region of the front of each card in its bitmap
+	private Bitmap backBitmap;		// The bitmap that holds the back of the cards
+	private Rect backRegion;		// The region of the back in its bitmap
+	private Bitmap glowBitmap;		// The bitmap that holds the glow of the face up cards
+	private Rect glowRegion;		// The region of the glow in its bitmap
+	private int boundTargetWidth;	// The width the bound bitmaps were decoded for, 0 when none are bound
+	private ThemePack themePack;	// The pack the faces and the back are taken from, null for the assets folder
+	private final int[] cardFaces;	// The face of the themePack of each Deck card in the bound game
+
+	private final Paint paint;		// The paint used to draw the bitmaps
+	private final Rect cellRect;	// Reused to draw and invalidate a card without allocating
+	private final Rect cardRect;	// Reused to draw the card inside its glow
+	private final Rect clipRect;	// Reused to skip the cards outside of the area to draw
+	private long lastDrawNanos;		// How long the last onDraw took
+	private final GameMetrics gameMetrics;	// Measures the time from an invalidate to its draw
+	private String[] overlayLines;	// The lines of the debug overlay, null when it's hidden
+	private Paint overlayPaint;		// The paint of the debug overlay, created when it's first shown
+
+	/**
+	 * The constructor used when the view is created in code
+	 * @param context The context in which the view is created
+	 */
+	public BoardView(Context context)
+	{
+		super(context);
+		paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		cellRect = new Rect();
+		cardRect = new Rect();
+		clipRect = new Rect();
+		cardFaces = new int[Deck.SIZE];
+		gameMetrics = GameMetrics.getInstance();
+	} // End of Constructor
+
+	/**
+	 * The constructor used when the view is inflated from a layout
+	 * @param context The context in which the view is created
+	 * @param attrs The attributes of the view in the layout
+	 */
+	public BoardView(Context context, AttributeSet attrs)
+	{
+		super(context, attrs);
+		paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		cellRect = new Rect();
+		cardRect = new Rect();
+		clipRect = new Rect();
+		cardFaces = new int[Deck.SIZE];
+		gameMetrics = GameMetrics.getInstance();
+	} // End of Constructor
+
+	/**
+	 * Setter of the onCardClickListener property
+	 * @param onCardClickListener the listener of the cards that are clicked
+	 */
+	public void setOnCardClickListener(OnCardClickListener onCardClickListener)
+	{
+		this.onCardClickListener = onCardClickListener;
+	} // End of onCardClickListener setter
+
+	/**
+	 * Sets the engine whose board is drawn.
+	 * The size of the grid is taken from the BoardConfig of the engine.
+	 * @param gameEngine the engine whose board is drawn
+	 */
+	public void setGameEngine(GameEngine gameEngine)
+	{
+		this.gameEngine = gameEngine;
+		BoardConfig boardConfig = gameEngine.getBoardConfig();
+		columnCount = boardConfig.getColumns();
+		rowCount = boardConfig.getRows();
+		faceBitmaps = new Bitmap[boardConfig.getCardCount()];
+		faceRegions = new Rect[boardConfig.getCardCount()];
+		requestLayout();
+	} // End of setGameEngine method
+
+	/**
+	 * Sets the pack the images of the cards are taken from.
+	 * The images change the next time bindCards is called.
+	 * @param themePack the pack, null for the playing cards of the assets folder
+	 */
+	public void setThemePack(ThemePack themePack)
+	{
+		this.themePack = themePack;
+	} // End of setThemePack method
+
+	/**
+	 * Takes the images of the cards that are on the board now.
+	 * Has to be called each time a game starts.
+	 */
+	public void bindCards()
+	{
+		Context context = getContext();
+		CardAtlas cardAtlas = CardAtlas.getInstance(context);
+		ImageCache imageCache = ImageCache.getInstance(context);
+		int targetWidth = getTargetWidth();
+		int sampleSize = getSampleSize();
+		Bitmap sheet = cardAtlas.getSheet(sampleSize);
+		String backFilename = getBackFilename(themePack);
+		backBitmap = findBitmap(cardAtlas, imageCache, sheet, backFilename, sampleSize, targetWidth);
+		backRegion = findRegion(cardAtlas, sheet, backBitmap, backFilename, sampleSize);
+		glowBitmap = findBitmap(cardAtlas, imageCache, sheet, GLOW_BACKGROUND_FILENAME, sampleSize, targetWidth);
+		glowRegion = findRegion(cardAtlas, sheet, glowBitmap, GLOW_BACKGROUND_FILENAME, sampleSize);
+		if(themePack != null)
+			themePack.selectFaces(gameEngine.getGameSeed(), cardFaces);
+		for(int i=0;i<faceBitmaps.length;i++)
+		{
+			String filename = getFaceFilename(themePack, cardFaces, gameEngine.getCard(i));
+			faceBitmaps[i] = findBitmap(cardAtlas, imageCache, sheet, filename, sampleSize, targetWidth);
+			faceRegions[i] = findRegion(cardAtlas, sheet, faceBitmaps[i], filename, sampleSize);
+		} // End of faceBitmaps for loop
+		boundTargetWidth = targetWidth;
+		gameMetrics.onInvalidate();
+		invalidate();
+	} // End of bindCards method
+
+	/**
+	 * Redraws only the rectangle of one card.
+	 * @param index the index of the card on the board
+	 */
+	public void invalidateCard(int index)
+	{
+		setCellRect(index);
+		gameMetrics.onInvalidate();
+		invalidate(cellRect);
+	} // End of invalidateCard method
+
+	/**
+	 * Gets the filename of the front of a card.
+	 * @param themePack the pack of the faces, null for the playing cards of the assets folder
+	 * @param cardFaces the faces chosen by ThemePack.selectFaces for the game, not used without a pack
+	 * @param card the Deck card
+	 * @return the filename of the face in the pack or in the assets folder
+	 */
+	public static String getFaceFilename(ThemePack themePack, int[] cardFaces, int card)
+	{
+		return (themePack != null)?themePack.getFaceName(cardFaces[card]):Deck.getFilename(card);
+	} // End of getFaceFilename method
+
+	/**
+	 * Gets the filename of the back of the cards.
+	 * @param themePack the pack of the cards, null for the assets folder
+	 * @return the back of the pack if it has one, or CARD_BACK_FILENAME
+	 */
+	public static String getBackFilename(ThemePack themePack)
+	{
+		String backFilename = (themePack != null)?themePack.getBackFilename():null;
+		return (backFilename != null)?backFilename:CARD_BACK_FILENAME;
+	} // End of getBackFilename method
+
+	/**
+	 * Gets the width the images are drawn at.
+	 * Before the view is measured, the cards are assumed to fill the width of the screen.
+	 * @return the width of the front of a face up card in pixels
+	 */
+	public int getTargetWidth()
+	{
+		int columns = Math.max(1, columnCount);
+		int width = (cellWidth > 0)?cellWidth:getResources().getDisplayMetrics().widthPixels / columns;
+		// The front of a face up card is the smallest image that's drawn
+		return width - 2 * (width / GLOW_PADDING_DIVISOR);
+	} // End of getTargetWidth method
+
+	/**
+	 * Gets the fraction of their size the images of the assets folder and the CardAtlas are decoded at.
+	 * The images of a ThemePack get their own sample size from ImageCache.getSampleSize.
+	 * @return the sample size, a power of 2
+	 */
+	public int getSampleSize()
+	{
+		return ImageFormat.computeSampleSize(CARD_WIDTH, getTargetWidth());
+	} // End of getSampleSize method
+
+	/**
+	 * Gets the bytes of memory used by the front of a card.
+	 * A card in the CardAtlas only counts its own region of the sheet.
+	 * @param index the index of the card on the board
+	 * @return the bytes or 0 if the card isn't bound
+	 */
+	public int getCardByteCount(int index)
+	{
+		if(faceBitmaps == null || faceBitmaps[index] == null)
+			return 0;
+		return faceRegions[index].width() * faceRegions[index].height() * ImageCache.getBytesPerPixel(faceBitmaps[index]);
+	} // End of getCardByteCount method
+
+	/**
+	 * Shows text over the top of the board, used by the debug overlay.
+	 * @param text the lines of text to show or null to hide the overlay
+	 */
+	public void setOverlayText(String text)
+	{
+		overlayLines = (text != null)?text.split("\n"):null;
+		if(overlayLines != null && overlayPaint == null)
+		{
+			overlayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+			overlayPaint.setTextSize(OVERLAY_TEXT_SIZE * getResources().getDisplayMetrics().density);
+		} // End of overlayPaint == null If
+		invalidate();
+	} // End of setOverlayText method
+
+	/**
+	 * Getter of the lastDrawNanos property
+	 * @return how long the last onDraw took in nanoseconds
+	 */
+	public long getLastDrawNanos()
+	{
+		return lastDrawNanos;
+	} // End of lastDrawNanos getter
+
+	/**
+	 * Measures the biggest card size that lets every row and column fit
+	 * while keeping the shape of a card.
+	 */
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+	{
+		int columns = Math.max(1, columnCount);
+		int rows = Math.max(1, rowCount);
+		int horizontalPadding = getPaddingLeft() + getPaddingRight();
+		int verticalPadding = getPaddingTop() + getPaddingBottom();
+
+		// The width of the cards is limited by the width of the view
+		int width = MeasureSpec.getSize(widthMeasureSpec) - horizontalPadding;
+		if(MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED)
+			width = CARD_WIDTH * columns;
+		cellWidth = width / columns;
+		cellHeight = cellWidth * CARD_HEIGHT / CARD_WIDTH;
+
+		// And by its height if it's limited too
+		if(MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.UNSPECIFIED)
+		{
+			int maxCellHeight = (MeasureSpec.getSize(heightMeasureSpec) - verticalPadding) / rows;
+			if(cellHeight > maxCellHeight)
+			{
+				cellHeight = maxCellHeight;
+				cellWidth = cellHeight * CARD_WIDTH / CARD_HEIGHT;
+			} // End of cellHeight > maxCellHeight If
+		} // End of UNSPECIFIED If
+
+		setMeasuredDimension(
+				resolveSize(cellWidth * columns + horizontalPadding, widthMeasureSpec),
+				resolveSize(cellHeight * rows + verticalPadding, heightMeasureSpec));
+	} // End of onMeasure method
+
+	/**
+	 * Centers the grid in the view.
+	 */
+	@Override
+	protected void onLayout(boolean changed, int left, int top, int right, int bottom)
+	{
+		super.onLayout(changed, left, top, right, bottom);
+		offsetLeft = getPaddingLeft() + (right - left - getPaddingLeft() - getPaddingRight() - cellWidth * columnCount) / 2;
+		offsetTop = getPaddingTop();
+		// Decode the images again when the cards are now drawn at another size
+		if(boundTargetWidth != 0 && getTargetWidth() != boundTargetWidth)
+			bindCards();
+	} // End of onLayout method
+
+	/**
+	 * Draws every card that is inside the area to draw.
+	 * Removed cards are not drawn, face up cards are drawn with their
+	 * glow and the other cards show their back.
+	 */
+	@Override
+	protected void onDraw(Canvas canvas)
+	{
+		long drawStart = System.nanoTime();
+		if(gameEngine != null && backBitmap != null)
+		{
+			canvas.getClipBounds(clipRect);
+			for(int i=0;i<faceBitmaps.length;i++)
+			{
+				if(gameEngine.isRemoved(i))
+					continue;
+				setCellRect(i);
+				// Skip the cards that are not invalidated
+				if(!clipRect.intersects(cellRect.left, cellRect.top, cellRect.right, cellRect.bottom))
+					continue;
+				if(gameEngine.isFaceUp(i) && faceBitmaps[i] != null)
+				{
+					// The glow fills the cell and the card is drawn inside it
+					if(glowBitmap != null)
+						canvas.drawBitmap(glowBitmap, glowRegion, cellRect, paint);
+					int inset = cellWidth / GLOW_PADDING_DIVISOR;
+					cardRect.set(cellRect.left + inset, cellRect.top + inset, cellRect.right - inset, cellRect.bottom - inset);
+					canvas.drawBitmap(faceBitmaps[i], faceRegions[i], cardRect, paint);
+				}
+				else
+					canvas.drawBitmap(backBitmap, backRegion, cellRect, paint);
+			} // End of faceBitmaps for loop
+		} // End of gameEngine != null If
+		if(overlayLines != null)
+			drawOverlay(canvas);
+		long drawEnd = System.nanoTime();
+		lastDrawNanos = drawEnd - drawStart;
+		gameMetrics.onDrawn(drawStart, drawEnd);
+	} // End of onDraw method
+
+	/**
+	 * Draws the lines of the debug overlay over a dark background at the top of the board.
+	 * @param canvas the canvas of the board
+	 */
+	private void drawOverlay(Canvas canvas)
+	{
+		float lineHeight = overlayPaint.getTextSize() * 1.2f;
+		overlayPaint.setColor(OVERLAY_BACKGROUND);
+		canvas.drawRect(0, 0, getWidth(), lineHeight * overlayLines.length + lineHeight / 2, overlayPaint);
+		overlayPaint.setColor(Color.WHITE);
+		for(int i=0;i<overlayLines.length;i++)
+			canvas.drawText(overlayLines[i], lineHeight / 4, lineHeight * (i + 1), overlayPaint);
+	} // End of drawOverlay method
+
+	/**
+	 * Maps a touch to the card under it.
+	 * The card is clicked when the touch ends on the card it started on.
+	 */
+	@Override
+	public boolean onTouchEvent(MotionEvent event)
+	{
+		if(gameEngine == null)
+			return false;
+		switch(event.getAction())
+		{
+			case MotionEvent.ACTION_DOWN:
+				return findCard(event.getX(), event.getY()) != -1;
+			case MotionEvent.ACTION_UP:
+				int index = findCard(event.getX(), event.getY());
+				if(index != -1 && !gameEngine.isRemoved(index) && onCardClickListener != null)
+					onCardClickListener.onCardClick(index);
+				return true;
+			default:
+				return true;
+		} // End of action switch
+	} // End of onTouchEvent method
+
+	/**
+	 * Finds the card at a position of the view.
+	 * @param x the x position
+	 * @param y the y position
+	 * @return the index of the card or -1 if there is no card there
+	 */
+	private int findCard(float x, float y)
+	{
+		if(cellWidth == 0 || cellHeight == 0 || x < offsetLeft || y < offsetTop)
+			return -1;
+		int column = (int)(x - offsetLeft) / cellWidth;
+		int row = (int)(y - offsetTop) / cellHeight;
+		if(column >= columnCount || row >= rowCount)
+			return -1;
+		int index = row * columnCount + column;
+		return (index < faceBitmaps.length)?index:-1;
+	} // End of findCard method
+
+	/**
+	 * Sets the cellRect to the rectangle of a card.
+	 * @param index the index of the card on the board
+	 */
+	private void setCellRect(int index)
+	{
+		int left = offsetLeft + (index % columnCount) * cellWidth;
+		int top = offsetTop + (index / columnCount) * cellHeight;
+		cellRect.set(left, top, left + cellWidth, top + cellHeight);
+	} // End of setCellRect method
+
+	/**
+	 * Finds the bitmap that holds an image, the sheet if it's packed or its own decoded bitmap.
+	 * An image of the themePack is decoded at the sample size of its own width.
+	 */
+	private Bitmap findBitmap(CardAtlas cardAtlas, ImageCache imageCache, Bitmap sheet, String filename, int sampleSize,
+			int targetWidth)
+	{
+		if(themePack != null && themePack.contains(filename))
+			return imageCache.getBitmap(themePack, filename, imageCache.getSampleSize(themePack, filename, targetWidth));
+		return (sheet != null && cardAtlas.contains(filename))?sheet:imageCache.getBitmap(filename, sampleSize);
+	} // End of findBitmap method
+
+	/**
+	 * Finds the region of an image in the bitmap returned by findBitmap.
+	 */
+	private static Rect findRegion(CardAtlas cardAtlas, Bitmap sheet, Bitmap bitmap, String filename, int sampleSize)
+	{
+		if(bitmap == null)
+			return null;
+		if(bitmap == sheet)
+			return cardAtlas.getRegion(filename, sampleSize);
+		return new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+	} // End of findRegion method
+}
@@ -0,0 +1,138 @@
+package com.raidrin.memorygame;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * The sprite sheet that holds all the card images of the assets folder.
+ * The sheet and its index are made at build time by tools/AtlasPacker,
+ * so the whole deck is decoded once into a single Bitmap and every
+ * card only draws its own region of it. The sheet can be decoded at a
+ * fraction of its size, the regions are then scaled the same way.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class CardAtlas
+{
+	public static final String SHEET_FILENAME = "cards_atlas.png";	// The filename of the sprite sheet
+	public static final String INDEX_FILENAME = "cards_atlas.idx";	// The filename of the index of the sheet
+	private static final int MAGIC = 0x41544C53;	// "ATLS", the first int of a valid index
+	private static final String LOG_NAME = "AndroidType";
+
+	private static CardAtlas instance;	// The single instance shared by the whole process
+
+	private final ImageCache imageCache;		// The cache that holds the decoded sheet
+	private final HashMap<String, Rect> regions;// The region of each image in the sheet keyed by filename
+	private final ArrayList<HashMap<String, Rect>> sampledRegions;	// The regions scaled for each power of 2 sample size, made when needed
+
+	/**
+	 * Gets the single CardAtlas of the process and reads its index when needed.
+	 * @param context Any context of the application
+	 * @return the shared CardAtlas
+	 */
+	public static synchronized CardAtlas getInstance(Context context)
+	{
+		if(instance == null)
+			instance = new CardAtlas(context.getApplicationContext());
+		return instance;
+	} // End of getInstance method
+
+	/**
+	 * The constructor of the CardAtlas class
+	 * @param context The application context
+	 */
+	private CardAtlas(Context context)
+	{
+		imageCache = ImageCache.getInstance(context);
+		regions = new HashMap<String, Rect>();
+		sampledRegions = new ArrayList<HashMap<String, Rect>>();
+		sampledRegions.add(regions);
+		DataInputStream index = null;
+		try
+		{
+			index = new DataInputStream(context.getAssets().open(INDEX_FILENAME));
+			if(index.readInt() != MAGIC)
+				throw new IOException("Invalid atlas index.");
+			int count = index.readShort();
+			for(int i=0;i<count;i++)
+			{
+				String filename = index.readUTF();
+				int x = index.readShort();
+				int y = index.readShort();
+				int width = index.readShort();
+				int height = index.readShort();
+				regions.put(filename, new Rect(x, y, x + width, y + height));
+			} // End of count for loop
+		}
+		catch (IOException e) {
+			// Without an index the cards are decoded one by one from their own files
+			Log.e(LOG_NAME,"Error in reading the atlas index."+e.getMessage());
+			regions.clear();
+		}
+		finally {
+			if(index != null)
+			{
+				try
+				{
+					index.close();
+				}
+				catch (IOException e) {
+					Log.e(LOG_NAME,"Error in closing the atlas index."+e.getMessage());
+				}
+			} // End of index != null If
+		} // End of Try - Catch
+	} // End of Constructor
+
+	/**
+	 * Checks if an image is packed in the sheet.
+	 * @param filename the filename of the image in the assets folder
+	 * @return true if the image is in the sheet
+	 */
+	public boolean contains(String filename)
+	{
+		return regions.containsKey(filename);
+	} // End of contains method
+
+	/**
+	 * Gets the region of an image in the sheet decoded at a fraction of its size.
+	 * The region is shrunk to the pixels that only belong to the image.
+	 * @param filename the filename of the image in the assets folder
+	 * @param sampleSize the fraction of the size the sheet is decoded at, a power of 2
+	 * @return the region of the image or null if the image isn't in the sheet
+	 */
+	public synchronized Rect getRegion(String filename, int sampleSize)
+	{
+		int level = Integer.numberOfTrailingZeros(sampleSize);
+		while(sampledRegions.size() <= level)
+		{
+			// Scale the regions of the next sample size once
+			int size = 1 << sampledRegions.size();
+			HashMap<String, Rect> scaledRegions = new HashMap<String, Rect>();
+			for(String name : regions.keySet())
+			{
+				Rect region = regions.get(name);
+				scaledRegions.put(name, new Rect((region.left + size - 1) / size, (region.top + size - 1) / size,
+						region.right / size, region.bottom / size));
+			} // End of regions for loop
+			sampledRegions.add(scaledRegions);
+		} // End of sampledRegions while loop
+		return sampledRegions.get(level).get(filename);
+	} // End of getRegion method
+
+	/**
+	 * Gets the decoded sheet. It's decoded only once for each sample size and kept in the ImageCache.
+	 * @param sampleSize the sheet is decoded at 1/sampleSize of its width and height, a power of 2
+	 * @return the sheet or null if it can't be decoded
+	 */
+	public Bitmap getSheet(int sampleSize)
+	{
+		return imageCache.getBitmap(SHEET_FILENAME, sampleSize);
+	} // End of getSheet method
+}
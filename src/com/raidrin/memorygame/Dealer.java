@@ -0,0 +1,93 @@
+package com.raidrin.memorygame;
+
+/**
+ * Deals and shuffles the cards of a board.
+ * The distinct cards are sampled with a partial Fisher-Yates shuffle of
+ * the deck, so dealing k cards only takes k swaps, and the board is
+ * shuffled with a full Fisher-Yates shuffle which gives every order of
+ * the cards the same chance. Nothing is allocated after the Dealer is created.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class Dealer
+{
+	private final int[] deck;		// All the cards of the deck in the order of the last deal
+	private RandomSource random;	// The source of the random numbers
+
+	/**
+	 * The constructor of the Dealer class
+	 * @param random The source of the random numbers
+	 */
+	public Dealer(RandomSource random)
+	{
+		this.random = random;
+		deck = new int[Deck.SIZE];
+		for(int card=0;card<deck.length;card++)
+			deck[card] = card;
+	} // End of Constructor
+
+	/**
+	 * Getter of the random property
+	 * @return the source of the random numbers
+	 */
+	public RandomSource getRandom()
+	{
+		return random;
+	} // End of random getter
+
+	/**
+	 * Setter of the random property
+	 * The deck is put back in order so the same seed always deals the same cards.
+	 * @param random the new source of the random numbers
+	 */
+	public void setRandom(RandomSource random)
+	{
+		this.random = random;
+		for(int card=0;card<deck.length;card++)
+			deck[card] = card;
+	} // End of random setter
+
+	/**
+	 * Deals distinct cards from the deck and duplicates each of them.
+	 * The duplicates are next to each other, the board has to be shuffled after.
+	 * @param board The board where the dealt cards are put
+	 * @param distinctCardCount The count of distinct cards to deal, at most Deck.SIZE
+	 * @param duplicateCount The count of each card on the board
+	 */
+	public void deal(int[] board, int distinctCardCount, int duplicateCount)
+	{
+		for(int i=0;i<distinctCardCount;i++)
+		{
+			// Swap a random card of the part of the deck that isn't dealt yet to the dealt part
+			swap(deck, i, i + random.nextInt(deck.length - i));
+			// Create duplicates by the value of the duplicateCount then put them on the board
+			for(int a=0;a<duplicateCount;a++)
+				board[i * duplicateCount + a] = deck[i];
+		} // End of distinctCardCount for loop
+	} // End of deal method
+
+	/**
+	 * Shuffles the cards in place.
+	 * @param cards The cards to shuffle
+	 * @param length The count of cards from the start of the array to shuffle
+	 */
+	public void shuffle(int[] cards, int length)
+	{
+		// Swap each card from the end with a random card before it or itself
+		for(int i=length - 1;i>0;i--)
+			swap(cards, i, random.nextInt(i + 1));
+	} // End of shuffle method
+
+	/**
+	 * Swaps two cards of an array.
+	 * @param cards The array of cards
+	 * @param i The index of the first card
+	 * @param j The index of the second card
+	 */
+	private static void swap(int[] cards, int i, int j)
+	{
+		int card = cards[i];
+		cards[i] = cards[j];
+		cards[j] = card;
+	} // End of swap method
+}
@@ -0,0 +1,68 @@
+package com.raidrin.memorygame;
+
+/**
+ * The 52 playing cards of the deck as small ints.
+ * A card is rank * SUIT_COUNT + suit, where the rank is the card
+ * number minus 1 and the suit is the index in the SUITS array.
+ * The filename of each card is built once and only looked up when
+ * the card is rendered.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public final class Deck
+{
+	public static final int RANK_COUNT = 13;	// The count of the type of cards. 1 - 13
+	public static final int SUIT_COUNT = 4;		// The count of the suits
+	public static final int SIZE = RANK_COUNT * SUIT_COUNT;	// The total distinct cards of the deck
+
+	// The suit array represents the suits in a playing card deck
+	// c = clover, s = spade, h = heart, d = diamond
+	private static final char[] SUITS = {'c','s','h','d'};
+
+	// The filenames of all the cards indexed by card
+	private static final String[] FILENAMES = new String[SIZE];
+
+	static
+	{
+		// build card's filenames by concatenating their card number and their suit
+			// and add .png at the bottom. (this is how the files in the assets folder are named)
+		for(int rank=0;rank<RANK_COUNT;rank++)
+			for(int suit=0;suit<SUIT_COUNT;suit++)
+				FILENAMES[rank * SUIT_COUNT + suit] = (rank + 1) + Character.toString(SUITS[suit]) + ".png";
+	} // End of static initializer
+
+	/**
+	 * The Deck class only has static methods.
+	 */
+	private Deck()
+	{
+	} // End of Constructor
+
+	/**
+	 * Gets the filename of a card in the assets folder.
+	 * @param card the card from 0 to SIZE - 1
+	 * @return the filename of the card
+	 */
+	public static String getFilename(int card)
+	{
+		return FILENAMES[card];
+	} // End of getFilename method
+
+	/**
+	 * @param card the card from 0 to SIZE - 1
+	 * @return the card number from 1 to 13
+	 */
+	public static int getRank(int card)
+	{
+		return card / SUIT_COUNT + 1;
+	} // End of getRank method
+
+	/**
+	 * @param card the card from 0 to SIZE - 1
+	 * @return the suit character of the card
+	 */
+	public static char getSuit(int card)
+	{
+		return SUITS[card % SUIT_COUNT];
+	} // End of getSuit method
+}
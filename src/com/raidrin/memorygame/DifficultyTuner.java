@@ -0,0 +1,308 @@
+package com.raidrin.memorygame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Chooses the board and the time of the next game from how the player
+ * played the last ones.
+ * The levels go from a small board with a lot of time to a big board
+ * with little time. While a game is played the tuner keeps streaming
+ * statistics that cost a few operations for each tap and allocate
+ * nothing: the exponentially weighted tap latency, the rate of turns
+ * that were a mismatch, and the time the player took to clear the board.
+ * Between two games, chooseNextLevel predicts the time each level would
+ * take from the tap latency and the mismatch rate, corrects the
+ * prediction by how far off it was for the games already played, and
+ * picks the hardest level the player should clear in about
+ * TARGET_CLEAR_FRACTION of its time.
+ * The tuner is used by a single thread.
+ *
+ * Format of writeState: byte VERSION, byte level, int games played,
+ * then the tap latency, the mismatch rate, the clear fraction and the
+ * calibration as doubles.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class DifficultyTuner
+{
+	private static final byte VERSION = 1;		// The version of the format of writeState
+	private static final int STATE_SIZE = 2 + 4 + 4 * 8;	// The bytes written by writeState
+
+	// The levels from the easiest to the hardest: rows, columns, count of cards of a match and time in seconds
+	private static final int[][] LEVELS = {
+		{2, 4, 2, 40},
+		{3, 4, 2, 50},
+		{3, 4, 2, 40},
+		{4, 4, 2, 40},
+		{4, 4, 2, 30},	// The board of the original game
+		{4, 5, 2, 30},
+		{4, 6, 2, 30},
+		{5, 6, 2, 30},
+		{6, 6, 2, 30},
+		{6, 6, 2, 25},
+		{6, 8, 2, 30}
+	};
+	public static final int DEFAULT_LEVEL = 4;	// The level of the original game
+
+	private static final double TARGET_CLEAR_FRACTION = 0.75;	// The part of the time a good level takes to clear
+	private static final double HYSTERESIS = 0.15;		// How far over the target the current level has to be to go down
+	private static final int MAX_LEVEL_STEP = 2;		// The most levels the difficulty moves after a game
+	private static final double TAP_SMOOTHING = 0.1;	// The weight of a new tap in the tap latency
+	private static final double TURN_SMOOTHING = 0.2;	// The weight of a new turn in the mismatch rate
+	private static final double GAME_SMOOTHING = 0.5;	// The weight of a new game in the clear fraction and the calibration
+	private static final long MAX_TAP_LATENCY = 5000;	// Longer pauses, like the activity in the background, count as this
+	private static final double MAX_MISMATCH_RATE = 0.95;	// Keeps the turns a match takes finite
+	private static final double MAX_CLEAR_FRACTION = 4;	// The most a board that isn't cleared counts for
+	private static final double PRIOR_TAP_LATENCY = 1000;	// The tap latency before the first tap
+	private static final double PRIOR_MISMATCH_RATE = 0.5;	// The mismatch rate before the first turn
+
+	private final BoardConfig[] boardConfigs;	// The board of each level
+	private final long revealDelay;		// Milliseconds the last card of a turn is shown
+	private int level;					// The level of the current game
+	private int gamesPlayed;			// The count of games finished
+	private int chosenGamesPlayed;		// The count of games finished when the level was last chosen
+	private double tapLatency;			// The weighted milliseconds between two taps of a turn or since the cards could be tapped
+	private double mismatchRate;		// The weighted part of the turns that were a mismatch
+	private double clearFraction;		// The weighted part of the time taken to clear the board, more than 1 if it wasn't cleared
+	private double calibration;			// The weighted ratio of the clear times to the predicted ones
+	private long lastInputTime;			// The time of the last tap or of the moment the cards could be tapped again
+	private long activeMillis;			// The milliseconds played in the current game, without the long pauses
+
+	/**
+	 * The constructor of the DifficultyTuner class
+	 * @param revealDelay The milliseconds the last card of a turn is shown before the open cards are resolved
+	 */
+	public DifficultyTuner(long revealDelay)
+	{
+		this.revealDelay = revealDelay;
+		boardConfigs = new BoardConfig[LEVELS.length];
+		for(int i=0;i<LEVELS.length;i++)
+			boardConfigs[i] = new BoardConfig(LEVELS[i][0], LEVELS[i][1], LEVELS[i][2]);
+		level = DEFAULT_LEVEL;
+		tapLatency = PRIOR_TAP_LATENCY;
+		mismatchRate = PRIOR_MISMATCH_RATE;
+		calibration = 1;
+	} // End of Constructor
+
+	/**
+	 * A game of the current level starts.
+	 * @param time the time in milliseconds
+	 */
+	public void startGame(long time)
+	{
+		lastInputTime = time;
+		activeMillis = 0;
+	} // End of startGame method
+
+	/**
+	 * The player tapped a card.
+	 * @param time the time of the tap in milliseconds
+	 */
+	public void onTap(long time)
+	{
+		long latency = Math.min(time - lastInputTime, MAX_TAP_LATENCY);
+		tapLatency += TAP_SMOOTHING * (latency - tapLatency);
+		activeMillis += latency;
+		lastInputTime = time;
+	} // End of onTap method
+
+	/**
+	 * The last card of a turn was flipped.
+	 * @param matched true if the open cards are a match
+	 */
+	public void onTurnEnded(boolean matched)
+	{
+		mismatchRate += TURN_SMOOTHING * ((matched?0:1) - mismatchRate);
+	} // End of onTurnEnded method
+
+	/**
+	 * The open cards were resolved after their reveal delay and the cards can be tapped again.
+	 * @param time the time in milliseconds
+	 */
+	public void onResolved(long time)
+	{
+		activeMillis += Math.min(time - lastInputTime, MAX_TAP_LATENCY);
+		lastInputTime = time;
+	} // End of onResolved method
+
+	/**
+	 * The game is over.
+	 * @param score the count of matches
+	 */
+	public void finishGame(int score)
+	{
+		BoardConfig boardConfig = boardConfigs[level];
+		double fraction;
+		if(score >= boardConfig.getMatchTotal())
+			fraction = activeMillis / (getMaxTime() * 1000.0);
+		else
+		{
+			// The time the whole board would have taken at the same pace
+			fraction = (double)boardConfig.getMatchTotal() / Math.max(score, 0.5);
+		} // End of cleared If - Else
+		fraction = Math.min(fraction, MAX_CLEAR_FRACTION);
+		clearFraction = (gamesPlayed == 0)?fraction:clearFraction + GAME_SMOOTHING * (fraction - clearFraction);
+		double ratio = fraction / predictClearFraction(level, 1);
+		calibration += GAME_SMOOTHING * (ratio - calibration);
+		gamesPlayed++;
+	} // End of finishGame method
+
+	/**
+	 * Chooses the level of the next game, the hardest one that the player
+	 * should clear in TARGET_CLEAR_FRACTION of its time.
+	 * The current level is kept while it's predicted to take less than
+	 * TARGET_CLEAR_FRACTION + HYSTERESIS of its time, so the level doesn't
+	 * go back and forth between two levels that are both close to the target.
+	 * The level only changes once for each finished game, calling this
+	 * again before the next game is finished keeps the level.
+	 * @return the level of the next game
+	 */
+	public int chooseNextLevel()
+	{
+		if(gamesPlayed == chosenGamesPlayed)
+			return level;
+		chosenGamesPlayed = gamesPlayed;
+		int next = 0;
+		for(int i=LEVELS.length-1;i>0;i--)
+		{
+			if(predictClearFraction(i, calibration) <= TARGET_CLEAR_FRACTION)
+			{
+				next = i;
+				break;
+			} // End of TARGET_CLEAR_FRACTION If
+		} // End of LEVELS for loop
+		if(next < level && predictClearFraction(level, calibration) <= TARGET_CLEAR_FRACTION + HYSTERESIS)
+			next = level;
+		// Moving a few levels at a time keeps one lucky or unlucky game from changing too much
+		level = Math.max(level - MAX_LEVEL_STEP, Math.min(level + MAX_LEVEL_STEP, next));
+		return level;
+	} // End of chooseNextLevel method
+
+	/**
+	 * Predicts the part of the time of a level the player takes to clear it.
+	 * A turn takes matchCount taps and the reveal delay. The mismatches for
+	 * each match grow with the count of cards, as there are more cards to remember.
+	 * @param predictedLevel the level
+	 * @param correction the calibration the prediction is multiplied by
+	 * @return the predicted time over the time of the level
+	 */
+	private double predictClearFraction(int predictedLevel, double correction)
+	{
+		BoardConfig current = boardConfigs[level];
+		BoardConfig predicted = boardConfigs[predictedLevel];
+		double rate = Math.min(mismatchRate, MAX_MISMATCH_RATE);
+		double mismatchesPerMatch = rate / (1 - rate) * predicted.getCardCount() / current.getCardCount();
+		double turns = predicted.getMatchTotal() * (1 + mismatchesPerMatch);
+		double turnMillis = predicted.getMatchCount() * tapLatency + revealDelay;
+		return correction * turns * turnMillis / (LEVELS[predictedLevel][3] * 1000.0);
+	} // End of predictClearFraction method
+
+	/**
+	 * @return the level of the current game, from 0 to getLevelCount - 1
+	 */
+	public int getLevel()
+	{
+		return level;
+	} // End of getLevel method
+
+	/**
+	 * @return the count of levels
+	 */
+	public int getLevelCount()
+	{
+		return LEVELS.length;
+	} // End of getLevelCount method
+
+	/**
+	 * @return the board of the current level
+	 */
+	public BoardConfig getBoardConfig()
+	{
+		return boardConfigs[level];
+	} // End of getBoardConfig method
+
+	/**
+	 * @return the time of the current level in seconds
+	 */
+	public int getMaxTime()
+	{
+		return LEVELS[level][3];
+	} // End of getMaxTime method
+
+	/**
+	 * @return the weighted milliseconds between two taps
+	 */
+	public double getTapLatency()
+	{
+		return tapLatency;
+	} // End of getTapLatency method
+
+	/**
+	 * @return the weighted part of the turns that were a mismatch
+	 */
+	public double getMismatchRate()
+	{
+		return mismatchRate;
+	} // End of getMismatchRate method
+
+	/**
+	 * @return the weighted part of the time taken to clear the board, more than 1 when it isn't cleared
+	 */
+	public double getClearFraction()
+	{
+		return clearFraction;
+	} // End of getClearFraction method
+
+	/**
+	 * @return the count of games finished
+	 */
+	public int getGamesPlayed()
+	{
+		return gamesPlayed;
+	} // End of getGamesPlayed method
+
+	/**
+	 * @return the count of bytes written by writeState
+	 */
+	public int getStateSize()
+	{
+		return STATE_SIZE;
+	} // End of getStateSize method
+
+	/**
+	 * Writes the level and the statistics so the difficulty is kept between two runs of the application.
+	 * @param buffer the buffer where the state is written, at least getStateSize bytes left
+	 */
+	public void writeState(ByteBuffer buffer)
+	{
+		buffer.put(VERSION);
+		buffer.put((byte)level);
+		buffer.putInt(gamesPlayed);
+		buffer.putDouble(tapLatency);
+		buffer.putDouble(mismatchRate);
+		buffer.putDouble(clearFraction);
+		buffer.putDouble(calibration);
+	} // End of writeState method
+
+	/**
+	 * Reads a state written by writeState.
+	 * @param buffer the buffer where the state is read
+	 * @throws IllegalArgumentException if the state is invalid
+	 */
+	public void readState(ByteBuffer buffer)
+	{
+		if(buffer.remaining() < STATE_SIZE || buffer.get() != VERSION)
+			throw new IllegalArgumentException("The bytes are not a difficulty state.");
+		int readLevel = buffer.get();
+		if(readLevel < 0 || readLevel >= LEVELS.length)
+			throw new IllegalArgumentException("Unknown level " + readLevel + ".");
+		level = readLevel;
+		gamesPlayed = buffer.getInt();
+		tapLatency = buffer.getDouble();
+		mismatchRate = buffer.getDouble();
+		clearFraction = buffer.getDouble();
+		calibration = buffer.getDouble();
+		// The saved level was already chosen from the saved games
+		chosenGamesPlayed = gamesPlayed;
+	} // End of readState method
+}
@@ -0,0 +1,205 @@
+package com.raidrin.memorygame;
+
+/**
+ * The clock that counts down a game.
+ * Instead of sleeping for a second between ticks, the clock keeps the
+ * deadline of the next tick on a monotonic time source and schedules a
+ * single task at that deadline. The next deadline is always the last
+ * one plus the interval so late ticks never add up, and the time left
+ * is kept when the clock is paused.
+ * The clock has no Android dependency, the time source and the
+ * scheduler are given to it so it can run on a Handler or a virtual clock.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameClock
+{
+	/**
+	 * A monotonic time source in milliseconds.
+	 */
+	public interface TimeSource
+	{
+		/**
+		 * @return the current time in milliseconds, never goes back
+		 */
+		long now();
+	} // End of TimeSource interface
+
+	/**
+	 * Runs tasks at a time of the TimeSource.
+	 */
+	public interface Scheduler
+	{
+		/**
+		 * Schedules a task.
+		 * @param task the task to run
+		 * @param time the time of the TimeSource at which the task runs
+		 */
+		void schedule(Runnable task, long time);
+
+		/**
+		 * Cancels a task that's scheduled and not run yet.
+		 * @param task the task to cancel
+		 */
+		void cancel(Runnable task);
+	} // End of Scheduler interface
+
+	/**
+	 * Is told each time the clock ticks.
+	 */
+	public interface Listener
+	{
+		/**
+		 * One interval of the clock has passed.
+		 */
+		void onTick();
+	} // End of Listener interface
+
+	/**
+	 * The states of the clock.
+	 */
+	public enum State
+	{
+		STOPPED,	// The clock doesn't tick and has no time left
+		RUNNING,	// The clock ticks
+		PAUSED		// The clock doesn't tick but keeps the time left before the next tick
+	} // End of State enum
+
+	private final TimeSource timeSource;	// The monotonic time source
+	private final Scheduler scheduler;		// Runs the tick task
+	private final long interval;			// The time between two ticks in milliseconds
+	private final Listener listener;		// Is told each time the clock ticks
+
+	private State state;		// The current state of the clock
+	private long nextDeadline;	// The time of the next tick when the clock is running
+	private long remaining;		// The time left before the next tick when the clock is paused, negative if the tick was overdue
+
+	/**
+	 * The constructor of the GameClock class
+	 * @param timeSource The monotonic time source
+	 * @param scheduler Runs the tick task
+	 * @param interval The time between two ticks in milliseconds
+	 * @param listener Is told each time the clock ticks
+	 */
+	public GameClock(TimeSource timeSource, Scheduler scheduler, long interval, Listener listener)
+	{
+		this.timeSource = timeSource;
+		this.scheduler = scheduler;
+		this.interval = interval;
+		this.listener = listener;
+		state = State.STOPPED;
+	} // End of Constructor
+
+	/**
+	 * Getter of the state property
+	 * @return the current state of the clock
+	 */
+	public State getState()
+	{
+		return state;
+	} // End of state getter
+
+	/**
+	 * Starts the clock, the first tick is one interval from now.
+	 * If the clock was already running, it starts again.
+	 */
+	public void start()
+	{
+		scheduler.cancel(tickTask);
+		state = State.RUNNING;
+		nextDeadline = timeSource.now() + interval;
+		scheduler.schedule(tickTask, nextDeadline);
+	} // End of start method
+
+	/**
+	 * Pauses the clock and keeps the time left before the next tick.
+	 * A tick that was due but whose task hasn't run yet is kept as a
+	 * negative time left, so it runs as soon as the clock is resumed and
+	 * the ticks after it keep their deadlines.
+	 */
+	public void pause()
+	{
+		if(state != State.RUNNING)
+			return;
+		scheduler.cancel(tickTask);
+		remaining = nextDeadline - timeSource.now();
+		state = State.PAUSED;
+	} // End of pause method
+
+	/**
+	 * Resumes a paused clock, the next tick is after the time that was left.
+	 */
+	public void resume()
+	{
+		if(state != State.PAUSED)
+			return;
+		state = State.RUNNING;
+		nextDeadline = timeSource.now() + remaining;
+		scheduler.schedule(tickTask, nextDeadline);
+	} // End of resume method
+
+	/**
+	 * Gets the time left before the next tick.
+	 * @return the time left in milliseconds or -1 if the clock is stopped
+	 */
+	public long getTimeToNextTick()
+	{
+		switch(state)
+		{
+			case RUNNING:
+				return Math.max(0, nextDeadline - timeSource.now());
+			case PAUSED:
+				return Math.max(0, remaining);
+			default:
+				return -1;
+		} // End of state switch
+	} // End of getTimeToNextTick method
+
+	/**
+	 * Puts the clock in the paused state with a time left before the next tick.
+	 * Used to continue a saved game, the clock ticks once resume is called.
+	 * @param timeToNextTick the time left before the next tick in milliseconds
+	 */
+	public void restorePaused(long timeToNextTick)
+	{
+		scheduler.cancel(tickTask);
+		remaining = Math.max(0, Math.min(timeToNextTick, interval));
+		state = State.PAUSED;
+	} // End of restorePaused method
+
+	/**
+	 * Stops the clock. It only ticks again when it's started.
+	 */
+	public void stop()
+	{
+		scheduler.cancel(tickTask);
+		state = State.STOPPED;
+	} // End of stop method
+
+	/**
+	 * Runs every tick whose deadline has passed and schedules the next one.
+	 */
+	private final Runnable tickTask = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			long now = timeSource.now();
+			// If the task ran late, the ticks that were missed are run now
+				// so the game always lasts as long as it should
+			while(state == State.RUNNING && nextDeadline <= now)
+			{
+				// The next deadline is counted from the last one, not from now
+				nextDeadline += interval;
+				listener.onTick();
+			} // End of nextDeadline <= now while loop
+			// The listener may have stopped, paused or started the clock again
+				// so the task is only scheduled once at the current deadline
+			if(state == State.RUNNING)
+			{
+				scheduler.cancel(tickTask);
+				scheduler.schedule(tickTask, nextDeadline);
+			} // End of state == State.RUNNING If
+		} // End of run method
+	}; // End of tickTask anonymous inner class
+}
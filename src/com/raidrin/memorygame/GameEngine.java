@@ -0,0 +1,673 @@
+package com.raidrin.memorygame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rules of the memory game without any Android dependency.
+ * The GameEngine deals the cards, keeps the state of the board,
+ * decides whether the opened cards match, keeps the score and
+ * counts down the time. The time only changes when tick is called
+ * so the engine can be driven by a real timer or by a simulation.
+ * Every change of the board is told to a Listener which renders it.
+ * The board is an int array of Deck cards and the face up and removed
+ * cards are bitsets, so checking a match and starting a game don't
+ * allocate anything. Filenames are only looked up by the renderer.
+ * The size of the board and how many equal cards make a match are
+ * set by a BoardConfig. Every game is dealt from its own seed, so a
+ * game can be dealt again from the seed it was recorded with.
+ * The engine is only changed by the thread that runs the game. After
+ * each change its score, time and flags are published as a single
+ * GameState word that any other thread can read without a lock.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameEngine
+{
+	/**
+	 * The results of a flip.
+	 */
+	public enum FlipResult
+	{
+		IGNORED,	// The card can't be flipped now
+		FIRST_CARD,	// The card is the first card of a match
+		NEXT_CARD,	// The card is equal to the open cards but more are needed for a match
+		SAME_CARD,	// An open card was flipped again
+		MATCH,		// The card completes a match
+		MISMATCH	// The card doesn't match the open cards
+	} // End of FlipResult enum
+
+	/**
+	 * Renders the changes of the board of a GameEngine.
+	 */
+	public interface Listener
+	{
+		/**
+		 * The front of a card is shown.
+		 * @param index the index of the card on the board
+		 */
+		void onCardShown(int index);
+
+		/**
+		 * The back of a card is shown again.
+		 * @param index the index of the card on the board
+		 */
+		void onCardHidden(int index);
+
+		/**
+		 * A card is matched and removed from the board.
+		 * @param index the index of the card on the board
+		 */
+		void onCardRemoved(int index);
+
+		/**
+		 * The score changed.
+		 * @param score the new score
+		 */
+		void onScoreChanged(int score);
+
+		/**
+		 * The time left changed.
+		 * @param secondsLeft the new time left
+		 */
+		void onTimeChanged(int secondsLeft);
+
+		/**
+		 * The game is over because the time ran out or all the cards are matched.
+		 * @param score the final score
+		 */
+		void onGameOver(int score);
+	} // End of Listener interface
+
+	private final int maxTime;				// The maximum time that the game will run
+	private final BoardConfig boardConfig;	// The size of the board and the count of cards of a match
+	private final Dealer dealer;			// Deals and shuffles the cards
+	private final RandomSource seedSource;	// Gives the seed of each game
+	private final SplitMixRandom dealRandom;// Deals and shuffles a single game from its seed
+
+	private Listener listener;				// Renders the changes of the board
+	private final int[] board;		// The cards on the board
+	private final int[] nextBoard;	// The cards already dealt for the next game
+	private final BitSet faceUp;	// The cards of the board that show their front
+	private final BitSet removed;	// The cards of the board that are already matched
+	private boolean nextBoardDealt;	// States whether the nextBoard is dealt
+	private long gameSeed;		// The seed the current game was dealt from
+	private long nextGameSeed;	// The seed the next game is dealt from
+
+	private int score;			// The score of the current game
+	private int secondsLeft;	// Seconds left in the current game
+	private final int[] openIndexes;	// The indexes of the cards that are open, in the order they were flipped
+	private int openCount;		// The count of the cards that are open
+	private boolean openMatched;// States whether the open cards are a match
+	private boolean cardsOpen;	// States whether the open cards are waiting to be resolved
+	private boolean running;	// States whether the current game is still being played
+	private final AtomicLong state;	// The GameState published for the other threads
+	private GameEventLog eventLog;	// The log the changes of the state are appended to, null if none
+	private int stateSequence;		// The count of GameStates published
+
+	/**
+	 * The constructor of the GameEngine class
+	 * The cards are dealt with a generator seeded from the clock.
+	 * @param maxTime The maximum time of each game in seconds
+	 * @param boardConfig The size of the board and the count of cards of a match
+	 */
+	public GameEngine(int maxTime, BoardConfig boardConfig)
+	{
+		this(maxTime, boardConfig, new SplitMixRandom());
+	} // End of Constructor
+
+	/**
+	 * The constructor of the GameEngine class
+	 * @param maxTime The maximum time of each game in seconds
+	 * @param boardConfig The size of the board and the count of cards of a match
+	 * @param random The source of the seeds the games are dealt from
+	 */
+	public GameEngine(int maxTime, BoardConfig boardConfig, RandomSource random)
+	{
+		this.maxTime = maxTime;
+		this.boardConfig = boardConfig;
+		seedSource = random;
+		dealRandom = new SplitMixRandom(0);
+		dealer = new Dealer(dealRandom);
+		board = new int[boardConfig.getCardCount()];
+		nextBoard = new int[board.length];
+		faceUp = new BitSet(board.length);
+		removed = new BitSet(board.length);
+		openIndexes = new int[boardConfig.getMatchCount()];
+		secondsLeft = maxTime;
+		state = new AtomicLong();
+		publishState();
+	} // End of Constructor
+
+	/**
+	 * Setter of the listener property
+	 * @param listener the Listener that renders the board, can be null
+	 */
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	} // End of listener setter
+
+	/**
+	 * Setter of the eventLog property, called by GameEventLog.attach
+	 * @param eventLog the GameEventLog the events are appended to, can be null
+	 */
+	void setEventLog(GameEventLog eventLog)
+	{
+		this.eventLog = eventLog;
+	} // End of eventLog setter
+
+	/**
+	 * Getter of the eventLog property
+	 * @return the GameEventLog the events are appended to, null if none
+	 */
+	public GameEventLog getEventLog()
+	{
+		return eventLog;
+	} // End of eventLog getter
+
+	/**
+	 * Getter of the dealer property
+	 * @return the Dealer that deals the cards of this engine
+	 */
+	public Dealer getDealer()
+	{
+		return dealer;
+	} // End of dealer getter
+
+	/**
+	 * Starts a new game.
+	 * The seed of the game was already taken during the previous game
+	 * and its cards were dealt on the next board so their images could be
+	 * loaded while that game was played.
+	 */
+	public void startGame()
+	{
+		// The first game has no cards dealt in advance unless dealNextGame was called
+		dealNextGame();
+		startGame(nextGameSeed);
+	} // End of startGame method
+
+	/**
+	 * Deals the cards of the next game on the next board when they are not dealt yet.
+	 * Lets the images of the first game be loaded before it's started.
+	 */
+	public void dealNextGame()
+	{
+		if(nextBoardDealt)
+			return;
+		nextGameSeed = seedSource.nextLong();
+		dealBoard(nextBoard, nextGameSeed);
+		nextBoardDealt = true;
+	} // End of dealNextGame method
+
+	/**
+	 * Starts a new game dealt from a given seed.
+	 * The same seed always deals the same board in the same order.
+	 * The cards of the next game are then dealt so their images can be
+	 * loaded while this game is played.
+	 * @param seed the seed of the game
+	 */
+	public void startGame(long seed)
+	{
+		gameSeed = seed;
+		dealBoard(board, seed);
+		dealer.shuffle(board, board.length);
+
+		// Deal the next game now
+		nextBoardDealt = false;
+		dealNextGame();
+
+		// Set the state of the board the same as when the game was created
+		faceUp.clear();
+		removed.clear();
+		openCount = 0;
+		cardsOpen = false;
+		score = 0;
+		secondsLeft = maxTime;
+		running = true;
+		publishState();
+		appendEvent(GameEvent.DEALT, seed);
+	} // End of startGame method
+
+	/**
+	 * Deals the cards of a game from its seed.
+	 * @param target the board where the cards are dealt
+	 * @param seed the seed of the game
+	 */
+	private void dealBoard(int[] target, long seed)
+	{
+		dealRandom.setSeed(seed);
+		// Setting the random puts the deck back in order
+		dealer.setRandom(dealRandom);
+		dealer.deal(target, boardConfig.getMatchTotal(), boardConfig.getMatchCount());
+	} // End of dealBoard method
+
+	/**
+	 * Flips a card of the board.
+	 * When the card completes a match, doesn't match or is already open,
+	 * the open cards stay open until resolve is called.
+	 * @param index the index of the card on the board
+	 * @return the result of the flip
+	 */
+	public FlipResult flip(int index)
+	{
+		FlipResult result = flipCard(index);
+		if(result != FlipResult.IGNORED)
+			appendEvent(GameEvent.FLIPPED, index);
+		return result;
+	} // End of flip method
+
+	/**
+	 * Flips a card of the board, without appending the event.
+	 * @param index the index of the card on the board
+	 * @return the result of the flip
+	 */
+	private FlipResult flipCard(int index)
+	{
+		// If the open cards are waiting to be resolved, the card can't be opened.
+		// Otherwise, it will show more cards open at the same time.
+		if(!running || cardsOpen || removed.get(index))
+			return FlipResult.IGNORED;
+		// An open card that's flipped again closes the open cards without a match
+		if(faceUp.get(index))
+		{
+			cardsOpen = true;
+			openMatched = false;
+			publishState();
+			return FlipResult.SAME_CARD;
+		} // End of faceUp If
+		faceUp.set(index);
+		openIndexes[openCount++] = index;
+		if(listener != null)
+			listener.onCardShown(index);
+		// If the card is the first card, keep it open and wait for the next one
+		if(openCount == 1)
+			return FlipResult.FIRST_CARD;
+		// A card that isn't equal to the first one ends the turn
+		if(board[index] != board[openIndexes[0]])
+		{
+			cardsOpen = true;
+			openMatched = false;
+			publishState();
+			return FlipResult.MISMATCH;
+		} // End of board[index] != board[openIndexes[0]] If
+		// Keep opening equal cards until there are enough for a match
+		if(openCount < openIndexes.length)
+			return FlipResult.NEXT_CARD;
+		cardsOpen = true;
+		openMatched = true;
+		publishState();
+		return FlipResult.MATCH;
+	} // End of flipCard method
+
+	/**
+	 * Closes the open cards.
+	 * If they matched, the score is added and the cards are removed from the board.
+	 * Once the game is over nothing is resolved, so the score can't change after it.
+	 */
+	public void resolve()
+	{
+		if(!running || !cardsOpen)
+			return;
+		if(openMatched)
+		{
+			score++;
+			for(int i=0;i<openCount;i++)
+				removed.set(openIndexes[i]);
+		} // End of openMatched If
+		for(int i=0;i<openCount;i++)
+		{
+			faceUp.clear(openIndexes[i]);
+			if(listener != null)
+				listener.onCardHidden(openIndexes[i]);
+		} // End of openCount for loop
+		if(listener != null && openMatched)
+		{
+			for(int i=0;i<openCount;i++)
+				listener.onCardRemoved(openIndexes[i]);
+			listener.onScoreChanged(score);
+		} // End of listener != null && openMatched If
+		// Allow the user to select a new match
+		boolean matched = openMatched;
+		openCount = 0;
+		openMatched = false;
+		cardsOpen = false;
+		publishState();
+		if(matched)
+			appendEvent(GameEvent.MATCHED, score);
+		else
+			appendEvent(GameEvent.MISMATCHED, 0);
+	} // End of resolve method
+
+	/**
+	 * Counts down one second of the game.
+	 * The game is over when the time runs out or all the cards are matched.
+	 */
+	public void tick()
+	{
+		if(!running)
+			return;
+		--secondsLeft;
+		int tickSecondsLeft = secondsLeft;
+		boolean gameOver = secondsLeft == 0 || score == boardConfig.getMatchTotal();
+		if(gameOver)
+		{
+			running = false;
+			// Set the secondsLeft to the maximum time again for the next game
+			secondsLeft = maxTime;
+		} // End of gameOver If
+		publishState();
+		appendEvent(GameEvent.TICK, tickSecondsLeft);
+		if(gameOver)
+			appendEvent(GameEvent.GAME_OVER, score);
+		if(gameOver && listener != null)
+			listener.onGameOver(score);
+		if(listener != null)
+			listener.onTimeChanged(secondsLeft);
+	} // End of tick method
+
+	/**
+	 * @return the count of bytes written by writeState
+	 */
+	public int getStateSize()
+	{
+		// config, times and score, seeds, flags, open cards, both boards and the removed bits
+		return 3 + 6 + 16 + 2 + openIndexes.length + board.length * 2 + (board.length + 7) / 8;
+	} // End of getStateSize method
+
+	/**
+	 * Writes the whole state of the board in a compact binary form.
+	 * Each card and index takes a single byte and the removed cards a single bit.
+	 * @param buffer the buffer where the state is written, at least getStateSize bytes left
+	 */
+	public void writeState(ByteBuffer buffer)
+	{
+		buffer.put((byte)boardConfig.getRows());
+		buffer.put((byte)boardConfig.getColumns());
+		buffer.put((byte)boardConfig.getMatchCount());
+		buffer.putShort((short)maxTime);
+		buffer.putShort((short)secondsLeft);
+		buffer.putShort((short)score);
+		buffer.putLong(gameSeed);
+		buffer.putLong(nextGameSeed);
+		buffer.put((byte)((running?1:0) | (cardsOpen?2:0) | (openMatched?4:0) | (nextBoardDealt?8:0)));
+		buffer.put((byte)openCount);
+		for(int i=0;i<openIndexes.length;i++)
+			buffer.put((byte)openIndexes[i]);
+		for(int i=0;i<board.length;i++)
+			buffer.put((byte)board[i]);
+		for(int i=0;i<nextBoard.length;i++)
+			buffer.put((byte)nextBoard[i]);
+		// The removed cards, 8 cards in each byte
+		for(int i=0;i<board.length;i+=8)
+		{
+			int bits = 0;
+			for(int bit=0;bit<8 && i + bit<board.length;bit++)
+				if(removed.get(i + bit))
+					bits |= 1 << bit;
+			buffer.put((byte)bits);
+		} // End of removed for loop
+	} // End of writeState method
+
+	/**
+	 * Reads a state written by writeState and continues the game from it.
+	 * The listener isn't told anything, the renderer has to draw the whole board.
+	 * @param buffer the buffer where the state is read
+	 * @throws IllegalArgumentException if the state was written by an engine with another BoardConfig or time
+	 */
+	public void readState(ByteBuffer buffer)
+	{
+		BoardConfig stateConfig = new BoardConfig(buffer.get() & 0xff, buffer.get() & 0xff, buffer.get() & 0xff);
+		int stateMaxTime = buffer.getShort();
+		if(!boardConfig.equals(stateConfig) || maxTime != stateMaxTime)
+			throw new IllegalArgumentException("The state is of a " + stateConfig + " game of " + stateMaxTime + " seconds.");
+		secondsLeft = buffer.getShort();
+		score = buffer.getShort();
+		gameSeed = buffer.getLong();
+		nextGameSeed = buffer.getLong();
+		int flags = buffer.get();
+		running = (flags & 1) != 0;
+		cardsOpen = (flags & 2) != 0;
+		openMatched = (flags & 4) != 0;
+		nextBoardDealt = (flags & 8) != 0;
+		openCount = buffer.get() & 0xff;
+		faceUp.clear();
+		for(int i=0;i<openIndexes.length;i++)
+		{
+			openIndexes[i] = buffer.get() & 0xff;
+			// Only the open cards are face up
+			if(i < openCount)
+				faceUp.set(openIndexes[i]);
+		} // End of openIndexes for loop
+		for(int i=0;i<board.length;i++)
+			board[i] = buffer.get() & 0xff;
+		for(int i=0;i<nextBoard.length;i++)
+			nextBoard[i] = buffer.get() & 0xff;
+		removed.clear();
+		for(int i=0;i<board.length;i+=8)
+		{
+			int bits = buffer.get();
+			for(int bit=0;bit<8 && i + bit<board.length;bit++)
+				if((bits & (1 << bit)) != 0)
+					removed.set(i + bit);
+		} // End of removed for loop
+		publishState();
+	} // End of readState method
+
+	/**
+	 * Changes the state by an event read from a GameEventLog.
+	 * This is the fold of the log: each event is done again with the same
+	 * rules as when it was appended. The listener isn't told anything and
+	 * the event isn't appended again.
+	 * A DEALT event deals the next game from a new seed of the engine,
+	 * which is why the log takes a snapshot after each DEALT.
+	 * @param type the type of the event, one of the GameEvent types
+	 * @param value the value of the event
+	 * @throws IllegalStateException if the event doesn't fit the state
+	 * @throws IllegalArgumentException if the type is unknown
+	 */
+	public void apply(byte type, long value)
+	{
+		Listener savedListener = listener;
+		GameEventLog savedEventLog = eventLog;
+		listener = null;
+		eventLog = null;
+		try
+		{
+			switch(type)
+			{
+				case GameEvent.DEALT:
+					startGame(value);
+					break;
+				case GameEvent.FLIPPED:
+					if(flipCard((int)value) == FlipResult.IGNORED)
+						throw new IllegalStateException("The card " + value + " can't be flipped.");
+					break;
+				case GameEvent.MATCHED:
+				case GameEvent.MISMATCHED:
+					if(!running || !cardsOpen || openMatched != (type == GameEvent.MATCHED))
+						throw new IllegalStateException("The open cards can't be " + GameEvent.getName(type) + ".");
+					resolve();
+					break;
+				case GameEvent.TICK:
+					if(!running)
+						throw new IllegalStateException("The clock can't tick after the game is over.");
+					tick();
+					break;
+				case GameEvent.GAME_OVER:
+					if(running)
+						throw new IllegalStateException("The game isn't over.");
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown event " + type + ".");
+			} // End of type switch
+		}
+		finally
+		{
+			listener = savedListener;
+			eventLog = savedEventLog;
+		} // End of try - finally
+	} // End of apply method
+
+	/**
+	 * Appends an event to the eventLog, once the state includes it.
+	 * @param type the type of the event
+	 * @param value the value of the event
+	 */
+	private void appendEvent(byte type, long value)
+	{
+		if(eventLog != null)
+			eventLog.append(type, value);
+	} // End of appendEvent method
+
+	/**
+	 * Gets the state of the engine from any thread.
+	 * Read it with the static methods of GameState.
+	 * @return the last GameState published by the engine
+	 */
+	public long getState()
+	{
+		return state.get();
+	} // End of getState method
+
+	/**
+	 * Publishes the state of the engine for the other threads.
+	 * Only the game thread writes it so a plain set is enough, no compare and set is needed.
+	 */
+	private void publishState()
+	{
+		state.set(GameState.pack(++stateSequence, running, cardsOpen, score, secondsLeft));
+	} // End of publishState method
+
+	/**
+	 * @return the seed the current game was dealt from
+	 */
+	public long getGameSeed()
+	{
+		return gameSeed;
+	} // End of getGameSeed method
+
+	/**
+	 * @return the seed the next game is dealt from, valid once dealNextGame or startGame was called
+	 */
+	public long getNextGameSeed()
+	{
+		return nextGameSeed;
+	} // End of getNextGameSeed method
+
+	/**
+	 * @return the count of the cards on the board
+	 */
+	public int getCardCount()
+	{
+		return board.length;
+	} // End of getCardCount method
+
+	/**
+	 * Gets a card on the board.
+	 * @param index the index of the card on the board
+	 * @return the Deck card
+	 */
+	public int getCard(int index)
+	{
+		return board[index];
+	} // End of getCard method
+
+	/**
+	 * Gets a card already dealt for the next game.
+	 * @param index the index of the card on the next board
+	 * @return the Deck card
+	 */
+	public int getNextCard(int index)
+	{
+		return nextBoard[index];
+	} // End of getNextCard method
+
+	/**
+	 * Copies the cards of the board.
+	 * @param target the array where the cards are copied, at least getCardCount long
+	 */
+	public void copyBoard(int[] target)
+	{
+		System.arraycopy(board, 0, target, 0, board.length);
+	} // End of copyBoard method
+
+	/**
+	 * @return a hash of the cards on the board and their state
+	 */
+	public int hashBoard()
+	{
+		return (Arrays.hashCode(board) * 31 + faceUp.hashCode()) * 31 + removed.hashCode();
+	} // End of hashBoard method
+
+	/**
+	 * Checks if a card shows its front.
+	 * @param index the index of the card on the board
+	 * @return true if the card is face up
+	 */
+	public boolean isFaceUp(int index)
+	{
+		return faceUp.get(index);
+	} // End of isFaceUp method
+
+	/**
+	 * Checks if a card was already matched and removed from the board.
+	 * @param index the index of the card on the board
+	 * @return true if the card is removed
+	 */
+	public boolean isRemoved(int index)
+	{
+		return removed.get(index);
+	} // End of isRemoved method
+
+	/**
+	 * @return true if the open cards are waiting to be resolved
+	 */
+	public boolean isCardsOpen()
+	{
+		return cardsOpen;
+	} // End of isCardsOpen method
+
+	/**
+	 * @return true if the current game is still being played
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	} // End of isRunning method
+
+	/**
+	 * @return the score of the current game
+	 */
+	public int getScore()
+	{
+		return score;
+	} // End of getScore method
+
+	/**
+	 * @return the seconds left in the current game
+	 */
+	public int getSecondsLeft()
+	{
+		return secondsLeft;
+	} // End of getSecondsLeft method
+
+	/**
+	 * @return the maximum time of each game in seconds
+	 */
+	public int getMaxTime()
+	{
+		return maxTime;
+	} // End of getMaxTime method
+
+	/**
+	 * @return the size of the board and the count of cards of a match
+	 */
+	public BoardConfig getBoardConfig()
+	{
+		return boardConfig;
+	} // End of getBoardConfig method
+}
@@ -0,0 +1,113 @@
+package com.raidrin.memorygame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The types of the events a GameEngine appends to its GameEventLog.
+ * Every change of the state of a game is one event with one value, so
+ * the state at any point is the fold of the events before it. An event
+ * is kept as a byte for its type and a long for its value, and takes
+ * from one to nine bytes once written.
+ *
+ * DEALT       a game was dealt and started, the value is its seed
+ * FLIPPED     a card was flipped, the value is its index
+ * MATCHED     the open cards were a match and are removed, the value is the new score
+ * MISMATCHED  the open cards were closed without a match, the value is 0
+ * TICK        a second passed, the value is the seconds left
+ * GAME_OVER   the game ended, the value is the final score
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public final class GameEvent
+{
+	public static final byte DEALT = 0;
+	public static final byte FLIPPED = 1;
+	public static final byte MATCHED = 2;
+	public static final byte MISMATCHED = 3;
+	public static final byte TICK = 4;
+	public static final byte GAME_OVER = 5;
+
+	private static final String[] NAMES = {"Dealt", "Flipped", "Matched", "Mismatched", "Tick", "GameOver"};	// The names of the types
+
+	/**
+	 * The GameEvent class only has constants and static methods.
+	 */
+	private GameEvent()
+	{
+	} // End of Constructor
+
+	/**
+	 * @param type the type of an event
+	 * @return the name of the type
+	 */
+	public static String getName(byte type)
+	{
+		return (type >= 0 && type < NAMES.length)?NAMES[type]:"Unknown" + type;
+	} // End of getName method
+
+	/**
+	 * @param type the type of an event
+	 * @return the count of bytes of the value of the event once written
+	 */
+	public static int getValueSize(byte type)
+	{
+		switch(type)
+		{
+			case DEALT:
+				return 8;
+			case FLIPPED:
+				return 1;
+			case MISMATCHED:
+				return 0;
+			default:
+				return 2;
+		} // End of type switch
+	} // End of getValueSize method
+
+	/**
+	 * Writes an event.
+	 * @param buffer the buffer the event is written to
+	 * @param type the type of the event
+	 * @param value the value of the event
+	 */
+	public static void write(ByteBuffer buffer, byte type, long value)
+	{
+		buffer.put(type);
+		switch(getValueSize(type))
+		{
+			case 8:
+				buffer.putLong(value);
+				break;
+			case 2:
+				buffer.putShort((short)value);
+				break;
+			case 1:
+				buffer.put((byte)value);
+				break;
+		} // End of getValueSize switch
+	} // End of write method
+
+	/**
+	 * Reads the value of an event whose type was already read.
+	 * @param buffer the buffer the value is read from
+	 * @param type the type of the event
+	 * @return the value of the event
+	 * @throws IllegalArgumentException if the type is unknown
+	 */
+	public static long readValue(ByteBuffer buffer, byte type)
+	{
+		if(type < DEALT || type > GAME_OVER)
+			throw new IllegalArgumentException("Unknown event " + type + ".");
+		switch(getValueSize(type))
+		{
+			case 8:
+				return buffer.getLong();
+			case 2:
+				return buffer.getShort() & 0xffff;
+			case 1:
+				return buffer.get() & 0xff;
+			default:
+				return 0;
+		} // End of getValueSize switch
+	} // End of readValue method
+}
@@ -0,0 +1,263 @@
+package com.raidrin.memorygame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The stream of the GameEvents of a GameEngine.
+ * The events are kept in a ring buffer of fixed size so appending never
+ * allocates, and each event gets a sequence number that grows forever.
+ * Every snapshotInterval events, and at the start of each game, the log
+ * takes a snapshot of the engine with GameEngine.writeState. The state at
+ * the end of the log is that snapshot with the events after it folded on
+ * it, so rebuilding a game after a crash costs at most snapshotInterval
+ * events however long the game was. The same stream can be read by
+ * sequence for undo, replays and analytics, as long as the events are
+ * still in the ring.
+ *
+ * Format of write: byte MAGIC, byte VERSION, long snapshot sequence,
+ * short snapshot size, the snapshot, short event count, then each event
+ * after the snapshot written by GameEvent.write.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameEventLog
+{
+	private static final byte MAGIC = 'E';	// The first byte of a written log
+	private static final byte VERSION = 1;	// The version of the format
+
+	private final byte[] types;		// The ring buffer of the types of the events
+	private final long[] values;	// The ring buffer of the values of the events
+	private final int mask;			// The bits of a sequence that give its index in the ring
+	private final int snapshotInterval;	// The most events after the last snapshot
+	private GameEngine gameEngine;	// The engine that appends its events, null if none
+	private ByteBuffer snapshot;	// The state of the engine at snapshotSequence
+	private long snapshotSequence;	// The sequence of the first event after the snapshot
+	private long firstSequence;		// The sequence of the first event appended or read
+	private long sequence;			// The sequence of the next event
+
+	/**
+	 * The constructor of the GameEventLog class
+	 * @param capacity The count of events kept, a power of two
+	 * @param snapshotInterval The most events between two snapshots, at most the capacity
+	 */
+	public GameEventLog(int capacity, int snapshotInterval)
+	{
+		if(capacity < 1 || (capacity & (capacity - 1)) != 0)
+			throw new IllegalArgumentException("The capacity must be a power of two.");
+		if(snapshotInterval < 1 || snapshotInterval > capacity)
+			throw new IllegalArgumentException("The snapshot interval must be from 1 to the capacity.");
+		types = new byte[capacity];
+		values = new long[capacity];
+		mask = capacity - 1;
+		this.snapshotInterval = snapshotInterval;
+	} // End of Constructor
+
+	/**
+	 * Makes an engine append its events to this log and takes a snapshot of its state.
+	 * @param gameEngine the engine, null to stop appending
+	 */
+	public void attach(GameEngine gameEngine)
+	{
+		if(this.gameEngine != null)
+			this.gameEngine.setEventLog(null);
+		this.gameEngine = gameEngine;
+		if(gameEngine != null)
+		{
+			gameEngine.setEventLog(this);
+			takeSnapshot();
+		} // End of gameEngine != null If
+	} // End of attach method
+
+	/**
+	 * Appends an event of the attached engine.
+	 * The state of the engine must already include the event.
+	 * @param type the type of the event
+	 * @param value the value of the event
+	 */
+	void append(byte type, long value)
+	{
+		int index = (int)sequence & mask;
+		types[index] = type;
+		values[index] = value;
+		sequence++;
+		// A new game or a long stream starts from a new snapshot
+		if(type == GameEvent.DEALT || sequence - snapshotSequence >= snapshotInterval)
+			takeSnapshot();
+	} // End of append method
+
+	/**
+	 * Takes a snapshot of the state of the attached engine.
+	 */
+	public void takeSnapshot()
+	{
+		int size = gameEngine.getStateSize();
+		if(snapshot == null || snapshot.capacity() != size)
+			snapshot = ByteBuffer.allocate(size);
+		snapshot.clear();
+		gameEngine.writeState(snapshot);
+		snapshotSequence = sequence;
+	} // End of takeSnapshot method
+
+	/**
+	 * Rebuilds the state at the end of the log: the snapshot with the events after it folded on it.
+	 * @param target the engine whose state is replaced, of the same BoardConfig and time
+	 * @return the count of events folded
+	 * @throws IllegalArgumentException if the log has no snapshot or is of another kind of game
+	 * @throws IllegalStateException if an event doesn't fit the state it's folded on
+	 */
+	public int rebuild(GameEngine target)
+	{
+		return rebuild(target, sequence);
+	} // End of rebuild method
+
+	/**
+	 * Rebuilds the state before an event, to undo the events after it.
+	 * When the target is the attached engine the events after endSequence
+	 * are dropped and the next event of the engine follows endSequence.
+	 * @param target the engine whose state is replaced, of the same BoardConfig and time
+	 * @param endSequence the sequence of the first event that isn't folded, from the snapshot sequence to the sequence
+	 * @return the count of events folded
+	 * @throws IllegalArgumentException if the log has no snapshot, the snapshot is after endSequence or is of another kind of game
+	 * @throws IllegalStateException if an event doesn't fit the state it's folded on
+	 */
+	public int rebuild(GameEngine target, long endSequence)
+	{
+		if(snapshot == null)
+			throw new IllegalArgumentException("The log has no snapshot.");
+		if(endSequence < snapshotSequence || endSequence > sequence)
+			throw new IllegalArgumentException("The state before event " + endSequence + " can't be rebuilt from the snapshot at " + snapshotSequence + ".");
+		// The target doesn't append the events it folds
+		GameEventLog targetLog = target.getEventLog();
+		target.setEventLog(null);
+		try
+		{
+			snapshot.rewind();
+			target.readState(snapshot);
+			for(long i=snapshotSequence;i<endSequence;i++)
+				target.apply(types[(int)i & mask], values[(int)i & mask]);
+		}
+		finally
+		{
+			target.setEventLog(targetLog);
+		} // End of try - finally
+		if(targetLog == this)
+			sequence = endSequence;
+		return (int)(endSequence - snapshotSequence);
+	} // End of rebuild method
+
+	/**
+	 * @return the sequence of the next event, which is the count of events appended
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	} // End of getSequence method
+
+	/**
+	 * @return the sequence of the oldest event still in the ring
+	 */
+	public long getFirstSequence()
+	{
+		return Math.max(firstSequence, sequence - types.length);
+	} // End of getFirstSequence method
+
+	/**
+	 * @return the sequence of the first event after the last snapshot
+	 */
+	public long getSnapshotSequence()
+	{
+		return snapshotSequence;
+	} // End of getSnapshotSequence method
+
+	/**
+	 * Gets the type of an event.
+	 * @param eventSequence the sequence of the event, from getFirstSequence to getSequence - 1
+	 * @return the type of the event
+	 */
+	public byte getType(long eventSequence)
+	{
+		checkSequence(eventSequence);
+		return types[(int)eventSequence & mask];
+	} // End of getType method
+
+	/**
+	 * Gets the value of an event.
+	 * @param eventSequence the sequence of the event, from getFirstSequence to getSequence - 1
+	 * @return the value of the event
+	 */
+	public long getValue(long eventSequence)
+	{
+		checkSequence(eventSequence);
+		return values[(int)eventSequence & mask];
+	} // End of getValue method
+
+	/**
+	 * Checks that an event is still in the ring.
+	 * @param eventSequence the sequence of the event
+	 * @throws IllegalArgumentException if the event isn't in the ring
+	 */
+	private void checkSequence(long eventSequence)
+	{
+		if(eventSequence < getFirstSequence() || eventSequence >= sequence)
+			throw new IllegalArgumentException("The event " + eventSequence + " isn't in the log.");
+	} // End of checkSequence method
+
+	/**
+	 * @return the count of bytes written by write
+	 */
+	public int getWriteSize()
+	{
+		int size = 2 + 8 + 2 + snapshot.capacity() + 2;
+		for(long i=snapshotSequence;i<sequence;i++)
+			size += 1 + GameEvent.getValueSize(types[(int)i & mask]);
+		return size;
+	} // End of getWriteSize method
+
+	/**
+	 * Writes the last snapshot and the events after it.
+	 * The events before the snapshot are not needed to rebuild the state and aren't written.
+	 * @param buffer the buffer where the log is written, at least getWriteSize bytes left
+	 */
+	public void write(ByteBuffer buffer)
+	{
+		buffer.put(MAGIC);
+		buffer.put(VERSION);
+		buffer.putLong(snapshotSequence);
+		buffer.putShort((short)snapshot.capacity());
+		buffer.put(snapshot.array(), 0, snapshot.capacity());
+		buffer.putShort((short)(sequence - snapshotSequence));
+		for(long i=snapshotSequence;i<sequence;i++)
+			GameEvent.write(buffer, types[(int)i & mask], values[(int)i & mask]);
+	} // End of write method
+
+	/**
+	 * Reads a log written by write, replacing the content of this log.
+	 * Rebuild an engine from it, then attach the engine to continue the log.
+	 * @param buffer the buffer where the log is read
+	 * @throws IllegalArgumentException if the log is invalid or has more events than this one can hold
+	 */
+	public void read(ByteBuffer buffer)
+	{
+		if(buffer.get() != MAGIC || buffer.get() != VERSION)
+			throw new IllegalArgumentException("The bytes are not an event log.");
+		long readSnapshotSequence = buffer.getLong();
+		int snapshotSize = buffer.getShort() & 0xffff;
+		ByteBuffer readSnapshot = ByteBuffer.allocate(snapshotSize);
+		buffer.get(readSnapshot.array());
+		int eventCount = buffer.getShort() & 0xffff;
+		if(readSnapshotSequence < 0 || eventCount > types.length)
+			throw new IllegalArgumentException("The log has " + eventCount + " events after its snapshot.");
+		for(int i=0;i<eventCount;i++)
+		{
+			byte type = buffer.get();
+			long value = GameEvent.readValue(buffer, type);
+			int index = (int)(readSnapshotSequence + i) & mask;
+			types[index] = type;
+			values[index] = value;
+		} // End of eventCount for loop
+		snapshot = readSnapshot;
+		snapshotSequence = readSnapshotSequence;
+		firstSequence = readSnapshotSequence;
+		sequence = readSnapshotSequence + eventCount;
+	} // End of read method
+}
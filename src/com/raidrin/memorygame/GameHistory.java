@@ -0,0 +1,285 @@
+package com.raidrin.memorygame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * The history of all the finished games, saved in a memory mapped file.
+ * It only uses the Java library, so it can be checked on the JVM, and
+ * GameHistoryStore opens the one of the application.
+ * Each game is a fixed size record appended to the end of the file, so
+ * saving a game only writes its bytes into the mapped memory and the
+ * system writes them to the file later. The best games of each
+ * BoardConfig are kept in a small sorted index which is built once when
+ * the file is opened, so getting the high scores never reads the file.
+ *
+ * Format: int MAGIC, int VERSION, int count of records, int reserved,
+ * then the records of RECORD_SIZE bytes: long seed, byte rows,
+ * byte columns, byte match count, byte count of stored tap times,
+ * short score, short tap count, int time used in milliseconds,
+ * long time the game ended at, then MAX_TAPS shorts of tap times.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameHistory
+{
+	public static final int RECORD_SIZE = 128;	// The byte size of a record
+	public static final int TOP_COUNT = 10;		// The count of the best games kept for each BoardConfig
+
+	private static final int MAGIC = 0x4d474853;	// "MGHS"
+	private static final int VERSION = 1;			// The version of the format
+	private static final int HEADER_SIZE = 16;		// The byte size of the header
+	private static final int COUNT_OFFSET = 8;		// The offset of the count of records in the header
+	private static final int TAPS_OFFSET = 28;		// The offset of the tap times in a record
+	private static final int GROW_COUNT = 1024;		// The least count of records the file grows by
+	private static final int MAX_COUNT = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;	// The most records a mapping can hold
+
+	private final RandomAccessFile file;	// The file of the store
+	private final FileChannel channel;		// The channel the file is mapped with
+	private MappedByteBuffer buffer;		// The mapped file
+	private int count;						// The count of records in the file
+	private int capacity;					// The count of records the mapping can hold
+	private final HashMap<Integer, Leaderboard> leaderboards;	// The best games keyed by the BoardConfig
+	private Leaderboard lastLeaderboard;	// The last leaderboard that was used
+	private int lastConfigKey;				// The BoardConfig key of the last leaderboard
+
+	/**
+	 * Opens a store and builds the index of the best games.
+	 * The file is created when it doesn't exist.
+	 * @param path The file of the store
+	 * @throws IOException if the file can't be mapped or isn't a store
+	 */
+	public GameHistory(File path) throws IOException
+	{
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		leaderboards = new HashMap<Integer, Leaderboard>();
+		lastConfigKey = -1;
+		try
+		{
+			boolean created = file.length() < HEADER_SIZE;
+			// Only the records that were completely written are used
+			int fileCount = (int)Math.min(MAX_COUNT, Math.max(0, (file.length() - HEADER_SIZE) / RECORD_SIZE));
+			map(Math.max(GROW_COUNT, fileCount));
+			if(created)
+			{
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(COUNT_OFFSET, 0);
+			}
+			else if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+				throw new IOException(path + " is not a game history.");
+			count = Math.min(fileCount, buffer.getInt(COUNT_OFFSET));
+			// Build the index from the few fields of each record it needs
+			for(int index=0;index<count;index++)
+			{
+				int offset = getOffset(index);
+				getLeaderboard(getConfigKey(offset)).add(index,
+						buffer.getShort(offset + 12) & 0xffff, buffer.getInt(offset + 16));
+			} // End of count for loop
+		}
+		catch (IOException e) {
+			channel.close();
+			file.close();
+			throw e;
+		} // End of Try - Catch
+	} // End of Constructor
+
+	/**
+	 * Appends the record of a finished game to the end of the store.
+	 * @param record the record of the game
+	 * @throws IOException if the file can't grow
+	 */
+	public synchronized void append(GameRecord record) throws IOException
+	{
+		if(count == capacity)
+		{
+			if(capacity == MAX_COUNT)
+				throw new IOException("The game history is full.");
+			map((int)Math.min(MAX_COUNT, (long)capacity + Math.max(GROW_COUNT, capacity / 2)));
+		} // End of count == capacity If
+		int offset = getOffset(count);
+		BoardConfig boardConfig = record.getBoardConfig();
+		int storedTapCount = record.getStoredTapCount();
+		buffer.putLong(offset, record.getSeed());
+		buffer.put(offset + 8, (byte)boardConfig.getRows());
+		buffer.put(offset + 9, (byte)boardConfig.getColumns());
+		buffer.put(offset + 10, (byte)boardConfig.getMatchCount());
+		buffer.put(offset + 11, (byte)storedTapCount);
+		buffer.putShort(offset + 12, (short)record.getScore());
+		buffer.putShort(offset + 14, (short)Math.min(0xffff, record.getTapCount()));
+		buffer.putInt(offset + 16, record.getTimeUsed());
+		buffer.putLong(offset + 20, record.getFinishedAt());
+		for(int i=0;i<storedTapCount;i++)
+			buffer.putShort(offset + TAPS_OFFSET + i * 2, (short)record.getTapTime(i));
+		// The count is written last so a record that's cut short is never read
+		count++;
+		buffer.putInt(COUNT_OFFSET, count);
+		getLeaderboard(getConfigKey(offset)).add(count - 1, record.getScore(), record.getTimeUsed());
+	} // End of append method
+
+	/**
+	 * Reads a record of the store.
+	 * @param index the index of the record, in the order the games were appended
+	 * @param record the record where the game is read into
+	 */
+	public synchronized void read(int index, GameRecord record)
+	{
+		if(index < 0 || index >= count)
+			throw new IndexOutOfBoundsException("There is no record " + index + ".");
+		int offset = getOffset(index);
+		int storedTapCount = buffer.get(offset + 11) & 0xff;
+		record.set(buffer.getLong(offset),
+				new BoardConfig(buffer.get(offset + 8) & 0xff, buffer.get(offset + 9) & 0xff, buffer.get(offset + 10) & 0xff),
+				buffer.getShort(offset + 12) & 0xffff, buffer.getInt(offset + 16),
+				buffer.getLong(offset + 20), buffer.getShort(offset + 14) & 0xffff);
+		for(int i=0;i<storedTapCount;i++)
+			record.setTapTime(i, buffer.getShort(offset + TAPS_OFFSET + i * 2) & 0xffff);
+	} // End of read method
+
+	/**
+	 * Gets the best games of a BoardConfig, the highest score first
+	 * and the shortest time first for the same score.
+	 * @param boardConfig the size of the board and the count of cards of a match
+	 * @param target the array where the indexes of the records are copied
+	 * @return the count of indexes copied, at most TOP_COUNT
+	 */
+	public synchronized int getTopRecords(BoardConfig boardConfig, int[] target)
+	{
+		Leaderboard leaderboard = leaderboards.get(getConfigKey(boardConfig.getRows(),
+				boardConfig.getColumns(), boardConfig.getMatchCount()));
+		if(leaderboard == null)
+			return 0;
+		int length = Math.min(target.length, leaderboard.size);
+		System.arraycopy(leaderboard.indexes, 0, target, 0, length);
+		return length;
+	} // End of getTopRecords method
+
+	/**
+	 * @return the count of records in the store
+	 */
+	public synchronized int getCount()
+	{
+		return count;
+	} // End of getCount method
+
+	/**
+	 * Closes the file. The store can't be used anymore after this call.
+	 * @throws IOException if the file can't be closed
+	 */
+	public synchronized void close() throws IOException
+	{
+		channel.close();
+		file.close();
+	} // End of close method
+
+	/**
+	 * Maps the file again with room for more records.
+	 * Only the new mapping is kept. A MappedByteBuffer can't be unmapped
+	 * by hand, so the old mapping is released when the garbage collector
+	 * frees it. The capacity grows by half each time, so the address space
+	 * of the mappings that are not freed yet stays within a few times the file.
+	 * @param newCapacity the count of records the mapping can hold
+	 * @throws IOException if the file can't be mapped
+	 */
+	private void map(int newCapacity) throws IOException
+	{
+		// Mapping past the end of the file makes the file longer
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)newCapacity * RECORD_SIZE);
+		capacity = newCapacity;
+	} // End of map method
+
+	/**
+	 * Gets the leaderboard of a BoardConfig and creates it when needed.
+	 * @param configKey the key made by getConfigKey
+	 * @return the leaderboard
+	 */
+	private Leaderboard getLeaderboard(int configKey)
+	{
+		// Most games are of the same BoardConfig so the last one is checked first
+		if(configKey != lastConfigKey)
+		{
+			lastLeaderboard = leaderboards.get(configKey);
+			if(lastLeaderboard == null)
+			{
+				lastLeaderboard = new Leaderboard();
+				leaderboards.put(configKey, lastLeaderboard);
+			} // End of lastLeaderboard == null If
+			lastConfigKey = configKey;
+		} // End of configKey != lastConfigKey If
+		return lastLeaderboard;
+	} // End of getLeaderboard method
+
+	/**
+	 * Gets the BoardConfig key of a record.
+	 * @param offset the offset of the record in the file
+	 * @return the key
+	 */
+	private int getConfigKey(int offset)
+	{
+		return getConfigKey(buffer.get(offset + 8) & 0xff, buffer.get(offset + 9) & 0xff, buffer.get(offset + 10) & 0xff);
+	} // End of getConfigKey method
+
+	/**
+	 * Packs a BoardConfig in a single int.
+	 * @param rows the count of rows
+	 * @param columns the count of columns
+	 * @param matchCount the count of cards of a match
+	 * @return the key
+	 */
+	private static int getConfigKey(int rows, int columns, int matchCount)
+	{
+		return (rows << 16) | (columns << 8) | matchCount;
+	} // End of getConfigKey method
+
+	/**
+	 * Gets the offset of a record in the file.
+	 * @param index the index of the record
+	 * @return the offset in bytes
+	 */
+	private static int getOffset(int index)
+	{
+		return HEADER_SIZE + index * RECORD_SIZE;
+	} // End of getOffset method
+
+	/**
+	 * The best games of a BoardConfig sorted from the best one.
+	 */
+	private static class Leaderboard
+	{
+		final int[] indexes = new int[TOP_COUNT];	// The indexes of the records
+		final int[] scores = new int[TOP_COUNT];	// The scores of the records
+		final int[] times = new int[TOP_COUNT];		// The times used by the records
+		int size;									// The count of records kept
+
+		/**
+		 * Adds a game when it's one of the best ones.
+		 * @param index the index of the record
+		 * @param score the score of the game
+		 * @param time the time used by the game
+		 */
+		void add(int index, int score, int time)
+		{
+			// Find where the game goes, an equal game that was played earlier stays ahead
+			int position = size;
+			while(position > 0 && (score > scores[position - 1]
+					|| (score == scores[position - 1] && time < times[position - 1])))
+				position--;
+			if(position == TOP_COUNT)
+				return;
+			int moved = Math.min(size, TOP_COUNT - 1) - position;
+			System.arraycopy(indexes, position, indexes, position + 1, moved);
+			System.arraycopy(scores, position, scores, position + 1, moved);
+			System.arraycopy(times, position, times, position + 1, moved);
+			indexes[position] = index;
+			scores[position] = score;
+			times[position] = time;
+			if(size < TOP_COUNT)
+				size++;
+		} // End of add method
+	} // End of Leaderboard class
+}
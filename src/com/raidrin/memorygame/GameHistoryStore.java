@@ -0,0 +1,52 @@
+package com.raidrin.memorygame;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * The GameHistory of the application, kept in the FILENAME file of its
+ * files folder and shared by the whole process.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameHistoryStore extends GameHistory
+{
+	public static final String FILENAME = "history.dat";	// The file of the store in the files folder
+
+	private static final String LOG_NAME = "AndroidType";
+
+	private static GameHistoryStore instance;	// The single instance shared by the whole process
+
+	/**
+	 * Gets the single GameHistoryStore of the process and opens it when needed.
+	 * @param context Any context of the application
+	 * @return the shared GameHistoryStore or null if the file can't be opened
+	 */
+	public static synchronized GameHistoryStore getInstance(Context context)
+	{
+		if(instance == null)
+		{
+			try
+			{
+				instance = new GameHistoryStore(new File(context.getFilesDir(), FILENAME));
+			}
+			catch (IOException e) {
+				Log.e(LOG_NAME,"Error in opening the game history."+e.getMessage());
+			} // End of Try - Catch
+		} // End of instance == null If
+		return instance;
+	} // End of getInstance method
+
+	/**
+	 * The constructor of the GameHistoryStore class
+	 * @param path The file of the store
+	 * @throws IOException if the file can't be mapped or isn't a store
+	 */
+	private GameHistoryStore(File path) throws IOException
+	{
+		super(path);
+	} // End of Constructor
+}
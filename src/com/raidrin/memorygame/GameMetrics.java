@@ -0,0 +1,239 @@
+package com.raidrin.memorygame;
+
+/**
+ * The process-wide measurements of how fast the game responds.
+ * The times are kept in LatencyHistograms that cost a few nanoseconds
+ * to record, so they are always on:
+ * the time from a tap to the end of the draw that shows it, the time
+ * from an invalidate to its draw, binding a board, starting a game
+ * and decoding each image, and the time from the creation of the
+ * activity to its first draw, cold when it's the first activity of the
+ * process and warm otherwise. A draw that comes more than a frame after
+ * its invalidate counts the frames it missed. The pauses of the whole
+ * process, which are mostly garbage collections, are measured by a
+ * thread that sleeps for a short time and records how late it wakes up.
+ * That thread is only started for the debug overlay.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameMetrics
+{
+	private static final long FRAME_NANOS = 16666667;		// The time of a frame at 60 frames a second
+	private static final long PAUSE_INTERVAL_MILLIS = 5;	// How long the pause detector sleeps
+	private static final long PAUSE_THRESHOLD_NANOS = 1000000;	// The shortest wake up delay that's a pause
+
+	private static final GameMetrics instance = new GameMetrics();	// The single instance shared by the whole process
+
+	private final LatencyHistogram tapToDrawTimes;		// From a tap to the end of its draw
+	private final LatencyHistogram invalidateToDrawTimes;	// From an invalidate to the end of its draw
+	private final LatencyHistogram drawTimes;			// The time spent in onDraw
+	private final LatencyHistogram bindBoardTimes;		// The time spent binding the board of a game
+	private final LatencyHistogram startGameTimes;		// The time spent starting a game
+	private final LatencyHistogram decodeTimes;			// The time spent decoding each image
+	private final LatencyHistogram pauseTimes;			// The pauses of the whole process
+	private final LatencyHistogram coldStartTimes;		// From the creation of the first activity of the process to its first draw
+	private final LatencyHistogram warmStartTimes;		// From the creation of a later activity to its first draw
+	private final LatencyHistogram[] histograms;		// All the histograms in the order they are reported
+
+	private long tapTime;			// The time of the first tap that isn't drawn yet, 0 if none
+	private long invalidateTime;	// The time of the first invalidate that isn't drawn yet, 0 if none
+	private long createTime;		// The time the activity was created at until its first draw, 0 if none
+	private boolean started;		// States whether an activity of the process was already drawn
+	private long droppedFrameCount;	// The count of frames missed between an invalidate and its draw
+	private Thread pauseDetector;	// The thread that measures the pauses, null when stopped
+
+	/**
+	 * Gets the single GameMetrics of the process.
+	 * @return the shared GameMetrics
+	 */
+	public static GameMetrics getInstance()
+	{
+		return instance;
+	} // End of getInstance method
+
+	/**
+	 * The constructor of the GameMetrics class
+	 */
+	private GameMetrics()
+	{
+		tapToDrawTimes = new LatencyHistogram("tap to draw");
+		invalidateToDrawTimes = new LatencyHistogram("invalidate to draw");
+		drawTimes = new LatencyHistogram("draw");
+		bindBoardTimes = new LatencyHistogram("bind board");
+		startGameTimes = new LatencyHistogram("start game");
+		decodeTimes = new LatencyHistogram("decode image");
+		pauseTimes = new LatencyHistogram("pause");
+		coldStartTimes = new LatencyHistogram("cold start");
+		warmStartTimes = new LatencyHistogram("warm start");
+		histograms = new LatencyHistogram[] { tapToDrawTimes, invalidateToDrawTimes, drawTimes,
+				bindBoardTimes, startGameTimes, decodeTimes, pauseTimes, coldStartTimes, warmStartTimes };
+	} // End of Constructor
+
+	/**
+	 * The activity is being created. Only called on the UI thread.
+	 */
+	public void onCreate()
+	{
+		createTime = System.nanoTime();
+	} // End of onCreate method
+
+	/**
+	 * A card was tapped. Only called on the UI thread.
+	 */
+	public void onTap()
+	{
+		// The taps before a draw are all shown by it, the oldest one waited the most
+		if(tapTime == 0)
+			tapTime = System.nanoTime();
+	} // End of onTap method
+
+	/**
+	 * A part of the board was invalidated. Only called on the UI thread.
+	 */
+	public void onInvalidate()
+	{
+		if(invalidateTime == 0)
+			invalidateTime = System.nanoTime();
+	} // End of onInvalidate method
+
+	/**
+	 * The board was drawn. Only called on the UI thread.
+	 * @param drawStart the time onDraw started at
+	 * @param drawEnd the time onDraw ended at
+	 */
+	public void onDrawn(long drawStart, long drawEnd)
+	{
+		drawTimes.record(drawEnd - drawStart);
+		if(createTime != 0)
+		{
+			(started?warmStartTimes:coldStartTimes).record(drawEnd - createTime);
+			createTime = 0;
+			started = true;
+		} // End of createTime != 0 If
+		if(tapTime != 0)
+		{
+			tapToDrawTimes.record(drawEnd - tapTime);
+			tapTime = 0;
+		} // End of tapTime != 0 If
+		if(invalidateTime != 0)
+		{
+			long latency = drawEnd - invalidateTime;
+			invalidateToDrawTimes.record(latency);
+			// An invalidate is drawn at the next frame, so only the frames after that one are dropped
+			droppedFrameCount += Math.max(0, latency - FRAME_NANOS) / FRAME_NANOS;
+			invalidateTime = 0;
+		} // End of invalidateTime != 0 If
+	} // End of onDrawn method
+
+	/**
+	 * @return the times of binding the board of a game
+	 */
+	public LatencyHistogram getBindBoardTimes()
+	{
+		return bindBoardTimes;
+	} // End of getBindBoardTimes method
+
+	/**
+	 * @return the times of starting a game
+	 */
+	public LatencyHistogram getStartGameTimes()
+	{
+		return startGameTimes;
+	} // End of getStartGameTimes method
+
+	/**
+	 * @return the times of decoding each image
+	 */
+	public LatencyHistogram getDecodeTimes()
+	{
+		return decodeTimes;
+	} // End of getDecodeTimes method
+
+	/**
+	 * @return the count of frames missed between an invalidate and its draw
+	 */
+	public long getDroppedFrameCount()
+	{
+		return droppedFrameCount;
+	} // End of getDroppedFrameCount method
+
+	/**
+	 * Starts the thread that measures the pauses of the process.
+	 */
+	public synchronized void startPauseDetector()
+	{
+		if(pauseDetector != null)
+			return;
+		pauseDetector = new Thread(pauseDetectorRunnable, "PauseDetector");
+		pauseDetector.setDaemon(true);
+		// The detector has to wake up on time to see the pauses of the other threads
+		pauseDetector.setPriority(Thread.MAX_PRIORITY);
+		pauseDetector.start();
+	} // End of startPauseDetector method
+
+	/**
+	 * Stops the thread that measures the pauses of the process.
+	 */
+	public synchronized void stopPauseDetector()
+	{
+		if(pauseDetector == null)
+			return;
+		pauseDetector.interrupt();
+		pauseDetector = null;
+	} // End of stopPauseDetector method
+
+	/**
+	 * Writes a line for each histogram, short enough for the debug overlay.
+	 * @param builder the builder where the lines are written
+	 */
+	public void appendSummary(StringBuilder builder)
+	{
+		for(LatencyHistogram histogram : histograms)
+		{
+			histogram.appendSummary(builder);
+			builder.append('\n');
+		} // End of histograms for loop
+		builder.append("dropped frames ").append(droppedFrameCount);
+	} // End of appendSummary method
+
+	/**
+	 * Writes the whole distribution of each histogram for offline analysis.
+	 * @param builder the builder where the report is written
+	 */
+	public void appendReport(StringBuilder builder)
+	{
+		for(LatencyHistogram histogram : histograms)
+		{
+			histogram.appendDistribution(builder);
+			builder.append('\n');
+		} // End of histograms for loop
+		builder.append("dropped frames ").append(droppedFrameCount).append('\n');
+	} // End of appendReport method
+
+	/**
+	 * Sleeps for a short time again and again. When the thread wakes
+	 * up late, the whole process was paused for the extra time.
+	 */
+	private final Runnable pauseDetectorRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			long expectedNanos = PAUSE_INTERVAL_MILLIS * 1000000;
+			while(!Thread.currentThread().isInterrupted())
+			{
+				long start = System.nanoTime();
+				try
+				{
+					Thread.sleep(PAUSE_INTERVAL_MILLIS);
+				}
+				catch (InterruptedException e) {
+					return;
+				} // End of Try - Catch
+				long delay = System.nanoTime() - start - expectedNanos;
+				if(delay >= PAUSE_THRESHOLD_NANOS)
+					pauseTimes.record(delay);
+			} // End of isInterrupted while loop
+		} // End of run method
+	}; // End of pauseDetectorRunnable anonymous inner class
+}
@@ -0,0 +1,168 @@
+package com.raidrin.memorygame;
+
+/**
+ * The record of a finished game that is kept in the GameHistoryStore.
+ * A record holds the seed the game was dealt from, its BoardConfig, the
+ * score, the time used and the time between the taps. A single record
+ * is reused for every game so recording a tap doesn't allocate anything.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameRecord
+{
+	public static final int MAX_TAPS = 50;	// The count of tap times kept, later taps are only counted
+	public static final int MAX_TAP_TIME = 0xffff;	// The longest time between two taps that's kept
+
+	private long seed;				// The seed the game was dealt from
+	private BoardConfig boardConfig;// The size of the board and the count of cards of a match
+	private int score;				// The final score of the game
+	private int timeUsed;			// The time the game took in milliseconds
+	private long finishedAt;		// The wall clock time the game ended at in milliseconds
+	private int tapCount;			// The count of the taps in the game
+	private final int[] tapTimes;	// The milliseconds between each tap and the one before it
+	private long startTime;			// The time the game started at
+	private long lastTapTime;		// The time of the last tap
+
+	/**
+	 * The constructor of the GameRecord class
+	 */
+	public GameRecord()
+	{
+		tapTimes = new int[MAX_TAPS];
+		boardConfig = BoardConfig.DEFAULT;
+	} // End of Constructor
+
+	/**
+	 * Starts recording a game.
+	 * @param seed the seed the game was dealt from
+	 * @param boardConfig the size of the board and the count of cards of a match
+	 * @param time the time the game started at in milliseconds
+	 */
+	public void start(long seed, BoardConfig boardConfig, long time)
+	{
+		set(seed, boardConfig, 0, 0, 0, 0);
+		startTime = time;
+		lastTapTime = time;
+	} // End of start method
+
+	/**
+	 * Records a tap of the game.
+	 * @param time the time of the tap in milliseconds
+	 */
+	public void addTap(long time)
+	{
+		if(tapCount < MAX_TAPS)
+			tapTimes[tapCount] = (int)Math.min(MAX_TAP_TIME, time - lastTapTime);
+		tapCount++;
+		lastTapTime = time;
+	} // End of addTap method
+
+	/**
+	 * Finishes recording the game.
+	 * @param score the final score
+	 * @param time the time the game ended at in milliseconds
+	 * @param finishedAt the wall clock time the game ended at in milliseconds
+	 */
+	public void finish(int score, long time, long finishedAt)
+	{
+		this.score = score;
+		timeUsed = (int)(time - startTime);
+		this.finishedAt = finishedAt;
+	} // End of finish method
+
+	/**
+	 * Sets the whole record except the tap times.
+	 * @param seed the seed the game was dealt from
+	 * @param boardConfig the size of the board and the count of cards of a match
+	 * @param score the final score
+	 * @param timeUsed the time the game took in milliseconds
+	 * @param finishedAt the wall clock time the game ended at in milliseconds
+	 * @param tapCount the count of the taps in the game
+	 */
+	public void set(long seed, BoardConfig boardConfig, int score, int timeUsed, long finishedAt, int tapCount)
+	{
+		this.seed = seed;
+		this.boardConfig = boardConfig;
+		this.score = score;
+		this.timeUsed = timeUsed;
+		this.finishedAt = finishedAt;
+		this.tapCount = tapCount;
+	} // End of set method
+
+	/**
+	 * Sets the time between a tap and the one before it.
+	 * @param index the index of the tap, less than MAX_TAPS
+	 * @param time the time in milliseconds
+	 */
+	public void setTapTime(int index, int time)
+	{
+		tapTimes[index] = time;
+	} // End of setTapTime method
+
+	/**
+	 * Gets the time between a tap and the one before it.
+	 * The first tap is timed from the start of the game.
+	 * @param index the index of the tap, less than getStoredTapCount
+	 * @return the time in milliseconds
+	 */
+	public int getTapTime(int index)
+	{
+		return tapTimes[index];
+	} // End of getTapTime method
+
+	/**
+	 * @return the count of the taps whose time is kept
+	 */
+	public int getStoredTapCount()
+	{
+		return Math.min(tapCount, MAX_TAPS);
+	} // End of getStoredTapCount method
+
+	/**
+	 * @return the count of the taps in the game
+	 */
+	public int getTapCount()
+	{
+		return tapCount;
+	} // End of getTapCount method
+
+	/**
+	 * @return the seed the game was dealt from
+	 */
+	public long getSeed()
+	{
+		return seed;
+	} // End of getSeed method
+
+	/**
+	 * @return the size of the board and the count of cards of a match
+	 */
+	public BoardConfig getBoardConfig()
+	{
+		return boardConfig;
+	} // End of getBoardConfig method
+
+	/**
+	 * @return the final score of the game
+	 */
+	public int getScore()
+	{
+		return score;
+	} // End of getScore method
+
+	/**
+	 * @return the time the game took in milliseconds
+	 */
+	public int getTimeUsed()
+	{
+		return timeUsed;
+	} // End of getTimeUsed method
+
+	/**
+	 * @return the wall clock time the game ended at in milliseconds
+	 */
+	public long getFinishedAt()
+	{
+		return finishedAt;
+	} // End of getFinishedAt method
+}
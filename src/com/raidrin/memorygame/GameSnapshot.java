@@ -0,0 +1,88 @@
+package com.raidrin.memorygame;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The compact binary snapshot of a game in progress.
+ * A snapshot holds the GameEventLog of the GameEngine, which is the last
+ * state it saved with the few events after it, and the time left before
+ * the next tick of the GameClock. That's less than a hundred bytes for
+ * the default board. Restoring a snapshot folds those events on the
+ * state and continues the same game without dealing it again.
+ *
+ * Format: byte MAGIC, byte VERSION, int time to next tick in milliseconds,
+ * then the log written by GameEventLog.write.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public final class GameSnapshot
+{
+	private static final byte MAGIC = 'M';	// The first byte of a snapshot
+	private static final byte VERSION = 3;	// The version of the format
+
+	/**
+	 * The GameSnapshot class only has static methods.
+	 */
+	private GameSnapshot()
+	{
+	} // End of Constructor
+
+	/**
+	 * Saves a game.
+	 * @param eventLog the log of the engine whose state is saved, attached to the engine
+	 * @param gameClock the clock of the game
+	 * @return the snapshot
+	 */
+	public static byte[] save(GameEventLog eventLog, GameClock gameClock)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(6 + eventLog.getWriteSize());
+		buffer.put(MAGIC);
+		buffer.put(VERSION);
+		buffer.putInt((int)Math.max(0, gameClock.getTimeToNextTick()));
+		eventLog.write(buffer);
+		return buffer.array();
+	} // End of save method
+
+	/**
+	 * Restores a saved game. The clock is left paused until it's resumed.
+	 * The log is attached to the engine again so it continues the game.
+	 * @param snapshot the snapshot made by save
+	 * @param gameEngine the engine that continues the game
+	 * @param eventLog the log of the engine, its events are replaced by the ones of the snapshot
+	 * @param gameClock the clock of the game
+	 * @return false if the snapshot is invalid or of another kind of game, the engine isn't changed then
+	 */
+	public static boolean restore(byte[] snapshot, GameEngine gameEngine, GameEventLog eventLog, GameClock gameClock)
+	{
+		if(snapshot == null || snapshot.length < 6)
+			return false;
+		ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+		if(buffer.get() != MAGIC || buffer.get() != VERSION)
+			return false;
+		int timeToNextTick = buffer.getInt();
+		// The events are folded on a copy first so a broken log leaves the engine as it was
+		GameEngine rebuiltEngine = new GameEngine(gameEngine.getMaxTime(), gameEngine.getBoardConfig(), new SplitMixRandom(0));
+		try
+		{
+			eventLog.read(buffer);
+			eventLog.rebuild(rebuiltEngine);
+		}
+		catch (IllegalArgumentException e) {
+			eventLog.attach(gameEngine);
+			return false;
+		}
+		catch (IllegalStateException e) {
+			eventLog.attach(gameEngine);
+			return false;
+		}
+		catch (BufferUnderflowException e) {
+			eventLog.attach(gameEngine);
+			return false;
+		} // End of Try - Catch
+		eventLog.rebuild(gameEngine);
+		eventLog.attach(gameEngine);
+		gameClock.restorePaused(timeToNextTick);
+		return true;
+	} // End of restore method
+}
@@ -0,0 +1,92 @@
+package com.raidrin.memorygame;
+
+/**
+ * The state of a GameEngine that other threads can read, packed in a single long.
+ * The engine is only changed by the thread that runs the game, and after
+ * each change it publishes the whole state as one word in an AtomicLong.
+ * A reader on any thread gets the score, the time left and the flags of
+ * the same moment from one volatile read, without a lock and without
+ * ever making the game thread wait. The sequence grows with each change
+ * so a reader can tell if anything changed since its last read.
+ *
+ * Layout: bits 0-15 seconds left, bits 16-31 score, bit 32 running,
+ * bit 33 cards open, bits 34-63 sequence.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public final class GameState
+{
+	private static final int SCORE_SHIFT = 16;		// The first bit of the score
+	private static final long RUNNING_BIT = 1L << 32;	// States whether the game is still being played
+	private static final long CARDS_OPEN_BIT = 1L << 33;	// States whether the open cards are waiting to be resolved
+	private static final int SEQUENCE_SHIFT = 34;	// The first bit of the sequence
+	private static final int SEQUENCE_MASK = (1 << 30) - 1;	// The bits of the sequence
+
+	/**
+	 * The GameState class only has static methods.
+	 */
+	private GameState()
+	{
+	} // End of Constructor
+
+	/**
+	 * Packs a state in a single long.
+	 * @param sequence the count of changes, only its low 30 bits are kept
+	 * @param running true if the game is still being played
+	 * @param cardsOpen true if the open cards are waiting to be resolved
+	 * @param score the score, from 0 to 65535
+	 * @param secondsLeft the seconds left, from 0 to 65535
+	 * @return the packed state
+	 */
+	public static long pack(int sequence, boolean running, boolean cardsOpen, int score, int secondsLeft)
+	{
+		return ((long)(sequence & SEQUENCE_MASK) << SEQUENCE_SHIFT)
+				| (running?RUNNING_BIT:0) | (cardsOpen?CARDS_OPEN_BIT:0)
+				| ((long)(score & 0xffff) << SCORE_SHIFT) | (secondsLeft & 0xffff);
+	} // End of pack method
+
+	/**
+	 * @param state a packed state
+	 * @return the count of changes of the state, wrapping after 30 bits
+	 */
+	public static int getSequence(long state)
+	{
+		return (int)(state >>> SEQUENCE_SHIFT);
+	} // End of getSequence method
+
+	/**
+	 * @param state a packed state
+	 * @return true if the game is still being played
+	 */
+	public static boolean isRunning(long state)
+	{
+		return (state & RUNNING_BIT) != 0;
+	} // End of isRunning method
+
+	/**
+	 * @param state a packed state
+	 * @return true if the open cards are waiting to be resolved
+	 */
+	public static boolean isCardsOpen(long state)
+	{
+		return (state & CARDS_OPEN_BIT) != 0;
+	} // End of isCardsOpen method
+
+	/**
+	 * @param state a packed state
+	 * @return the score
+	 */
+	public static int getScore(long state)
+	{
+		return (int)(state >>> SCORE_SHIFT) & 0xffff;
+	} // End of getScore method
+
+	/**
+	 * @param state a packed state
+	 * @return the seconds left
+	 */
+	public static int getSecondsLeft(long state)
+	{
+		return (int)state & 0xffff;
+	} // End of getSecondsLeft method
+}
@@ -0,0 +1,361 @@
+package com.raidrin.memorygame;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+/**
+ * A process-wide cache of the decoded images in the assets folder.
+ * Each image is decoded only once per screen density and the decoded
+ * Bitmap is shared by every card of the BoardView that shows it. The
+ * cache is bounded by the byte size of its Bitmaps and the least recently
+ * used ones are evicted first.
+ * An image can be decoded at a fraction of its size when it's drawn
+ * smaller, and a png that can't have transparent pixels is decoded as
+ * RGB_565, which takes half the memory of ARGB_8888.
+ * The images of a ThemePack are decoded from its zip the same way and
+ * are cached apart from the images of the assets folder and of any other
+ * version of the pack. They can have any size, so each one gets the
+ * sample size of its own width.
+ * An image is decoded by one thread at a time: a thread that asks for an
+ * image another thread is decoding, like the UI thread binding the board
+ * while the AssetLoader prefetches it, waits for that decode and shares
+ * its Bitmap instead of decoding it again.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class ImageCache
+{
+	private static final String LOG_NAME = "AndroidType";
+	private static final int HEAP_FRACTION = 8;	// The cache can use up to 1/HEAP_FRACTION of the maximum heap
+
+	private static ImageCache instance;	// The single instance shared by the whole process
+
+	private final AssetManager assets;		// The assets where the images are decoded from
+	private final int density;				// The screen density the images are decoded for
+	private final LruCache<String, Bitmap> bitmapCache;	// The decoded Bitmaps keyed by filename and density
+	private final AtomicInteger decodeCount;	// Count of the images that were actually decoded
+	private final HashMap<String, FutureTask<Bitmap>> pendingDecodes;	// The decodes in progress by key, guarded by itself
+
+	/**
+	 * Gets the single ImageCache of the process and creates it when needed.
+	 * @param context Any context of the application
+	 * @return the shared ImageCache
+	 */
+	public static synchronized ImageCache getInstance(Context context)
+	{
+		// Only the application context is kept so that no Activity is leaked by the cache
+		if(instance == null)
+			instance = new ImageCache(context.getApplicationContext());
+		return instance;
+	} // End of getInstance method
+
+	/**
+	 * The constructor of the ImageCache class
+	 * @param context The application context
+	 */
+	private ImageCache(Context context)
+	{
+		assets = context.getAssets();
+		density = context.getResources().getDisplayMetrics().densityDpi;
+		decodeCount = new AtomicInteger();
+		pendingDecodes = new HashMap<String, FutureTask<Bitmap>>();
+		// Size the cache in bytes from the maximum heap the process can use
+		int maxBytes = (int)(Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+		bitmapCache = new LruCache<String, Bitmap>(maxBytes)
+		{
+			// The size of each entry is the byte count of its Bitmap
+			@Override
+			protected int sizeOf(String key, Bitmap bitmap)
+			{
+				return bitmap.getRowBytes() * bitmap.getHeight();
+			} // End of sizeOf method
+		}; // End of LruCache anonymous inner class
+	} // End of Constructor
+
+	/**
+	 * Gets the decoded Bitmap of an image in the assets folder.
+	 * The image is only decoded when it is not in the cache yet.
+	 * @param filename the filename of the image in the assets folder
+	 * @param sampleSize the image is decoded at 1/sampleSize of its width and height, a power of 2
+	 * @return the shared Bitmap or null if the image can't be decoded
+	 */
+	public Bitmap getBitmap(String filename, int sampleSize)
+	{
+		return getBitmap(null, filename, sampleSize);
+	} // End of getBitmap method
+
+	/**
+	 * Gets the decoded Bitmap of an image of a ThemePack, or of the assets folder if the pack doesn't have it.
+	 * The image is only decoded when it is not in the cache yet. If another
+	 * thread is already decoding it, this thread waits for that decode.
+	 * @param themePack the pack the image is decoded from, null for the assets folder
+	 * @param filename the filename of the image in the pack or in the assets folder
+	 * @param sampleSize the image is decoded at 1/sampleSize of its width and height, a power of 2
+	 * @return the shared Bitmap or null if the image can't be decoded
+	 */
+	public Bitmap getBitmap(ThemePack themePack, String filename, int sampleSize)
+	{
+		// Images the pack doesn't replace come from the assets folder
+		if(themePack != null && !themePack.contains(filename))
+			themePack = null;
+		final String key = createKey(themePack, filename, sampleSize);
+		FutureTask<Bitmap> decode;
+		boolean decoder = false;
+		// The cache and the pending decodes are checked together so a decode that just ended is never started again
+		synchronized(pendingDecodes)
+		{
+			Bitmap bitmap = bitmapCache.get(key);
+			if(bitmap != null)
+				return bitmap;
+			decode = pendingDecodes.get(key);
+			if(decode == null)
+			{
+				final ThemePack decodePack = themePack;
+				final String decodeFilename = filename;
+				final int decodeSampleSize = sampleSize;
+				decode = new FutureTask<Bitmap>(new Callable<Bitmap>()
+				{
+					@Override
+					public Bitmap call()
+					{
+						Bitmap decoded = null;
+						try
+						{
+							decoded = decodeBitmap(decodePack, decodeFilename, decodeSampleSize);
+						}
+						finally
+						{
+							// The Bitmap is cached before the decode stops being pending, a failed decode can be tried again
+							synchronized(pendingDecodes)
+							{
+								if(decoded != null)
+									bitmapCache.put(key, decoded);
+								pendingDecodes.remove(key);
+							} // End of pendingDecodes synchronized block
+						} // End of try - finally
+						return decoded;
+					} // End of call method
+				}); // End of Callable anonymous inner class
+				pendingDecodes.put(key, decode);
+				decoder = true;
+			} // End of decode == null If
+		} // End of pendingDecodes synchronized block
+		// The image is decoded on this thread, or this thread waits for the one decoding it
+		if(decoder)
+			decode.run();
+		return getResult(decode);
+	} // End of getBitmap method
+
+	/**
+	 * Gets the sample size that decodes an image at least as wide as it's drawn.
+	 * The images of the assets folder are as wide as a card of BoardView,
+	 * the width of an image of a ThemePack is read from its header.
+	 * @param themePack the pack of the image, null for the assets folder
+	 * @param filename the filename of the image in the pack or in the assets folder
+	 * @param targetWidth the width the image is drawn at
+	 * @return the sample size, a power of 2, or 1 if the width of the image can't be read
+	 */
+	public int getSampleSize(ThemePack themePack, String filename, int targetWidth)
+	{
+		int width = BoardView.CARD_WIDTH;
+		if(themePack != null && themePack.contains(filename))
+		{
+			try
+			{
+				width = themePack.getImageWidth(filename);
+			}
+			catch (IOException e) {
+				Log.e(LOG_NAME,"Error in reading the size of the image."+e.getMessage());
+				width = 0;
+			} // End of Try - Catch
+		} // End of themePack contains If
+		return ImageFormat.computeSampleSize(width, targetWidth);
+	} // End of getSampleSize method
+
+	/**
+	 * Checks if an image is already decoded and in the cache.
+	 * @param filename the filename of the image in the assets folder
+	 * @param sampleSize the fraction of the size the image is decoded at
+	 * @return true if the image is in the cache
+	 */
+	public boolean contains(String filename, int sampleSize)
+	{
+		return contains(null, filename, sampleSize);
+	} // End of contains method
+
+	/**
+	 * Checks if an image of a ThemePack is already decoded and in the cache.
+	 * @param themePack the pack of the image, null for the assets folder
+	 * @param filename the filename of the image in the pack or in the assets folder
+	 * @param sampleSize the fraction of the size the image is decoded at
+	 * @return true if the image is in the cache
+	 */
+	public boolean contains(ThemePack themePack, String filename, int sampleSize)
+	{
+		if(themePack != null && !themePack.contains(filename))
+			themePack = null;
+		return bitmapCache.get(createKey(themePack, filename, sampleSize)) != null;
+	} // End of contains method
+
+	/**
+	 * Removes all the images in the cache.
+	 */
+	public void clear()
+	{
+		bitmapCache.evictAll();
+	} // End of clear method
+
+	/**
+	 * @return the count of the images found in the cache
+	 */
+	public int getHitCount()
+	{
+		return bitmapCache.hitCount();
+	} // End of getHitCount method
+
+	/**
+	 * @return the count of the images that were not found in the cache
+	 */
+	public int getMissCount()
+	{
+		return bitmapCache.missCount();
+	} // End of getMissCount method
+
+	/**
+	 * @return the count of the images evicted from the cache
+	 */
+	public int getEvictionCount()
+	{
+		return bitmapCache.evictionCount();
+	} // End of getEvictionCount method
+
+	/**
+	 * @return the count of the images that were decoded
+	 */
+	public int getDecodeCount()
+	{
+		return decodeCount.get();
+	} // End of getDecodeCount method
+
+	/**
+	 * @return the bytes currently used by the cache
+	 */
+	public int getSize()
+	{
+		return bitmapCache.size();
+	} // End of getSize method
+
+	/**
+	 * Gets the bytes used by each pixel of a Bitmap.
+	 * @param bitmap the Bitmap
+	 * @return 2 for RGB_565, 4 for ARGB_8888
+	 */
+	public static int getBytesPerPixel(Bitmap bitmap)
+	{
+		return bitmap.getRowBytes() / Math.max(1, bitmap.getWidth());
+	} // End of getBytesPerPixel method
+
+	/**
+	 * Creates the key of an image in the cache.
+	 * @param themePack the pack of the image, null for the assets folder
+	 * @param filename the filename of the image
+	 * @param sampleSize the fraction of the size the image is decoded at
+	 * @return the key of the pack, the filename, the density and the sample size joined together
+	 */
+	private String createKey(ThemePack themePack, String filename, int sampleSize)
+	{
+		String key = filename + "@" + density + "/" + sampleSize;
+		// The key of a pack changes with its file, so a replaced pack never gets the Bitmaps of the old one
+		return (themePack != null)?themePack.getKey() + ":" + key:key;
+	} // End of createKey method
+
+	/**
+	 * Waits for a decode to end.
+	 * @param decode the decode
+	 * @return the decoded Bitmap, or null if the decode failed or the thread was interrupted while it waited
+	 */
+	private static Bitmap getResult(FutureTask<Bitmap> decode)
+	{
+		try
+		{
+			return decode.get();
+		}
+		catch (InterruptedException e) {
+			// Keep the interrupt so a cancelled prefetch still stops
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e) {
+			Log.e(LOG_NAME,"An error occured while decoding the image."+e.getMessage());
+			return null;
+		} // End of Try - Catch
+	} // End of getResult method
+
+	/**
+	 * Decodes an image from a ThemePack or the assets folder.
+	 * The image of a pack is inflated from the zip while it's decoded, it's never read whole in memory.
+	 * @param themePack the pack of the image, null for the assets folder
+	 * @param filename the filename of the image
+	 * @param sampleSize the image is decoded at 1/sampleSize of its width and height
+	 * @return the decoded Bitmap or null if an error occured
+	 */
+	private Bitmap decodeBitmap(ThemePack themePack, String filename, int sampleSize)
+	{
+		InputStream stream = null;	// Declare the stream on which the file will be saved to.
+		Bitmap bitmap = null;
+		long decodeStart = System.nanoTime();
+		try
+		{
+			// Buffer the stream so its header can be read before it's decoded
+			stream = new BufferedInputStream((themePack != null)?themePack.open(filename):assets.open(filename));	// Open the file with the given file name and save it to stream
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			// An image that can't have transparent pixels only needs 16 bits for each pixel
+			options.inPreferredConfig = ImageFormat.hasAlphaChannel(stream)?Bitmap.Config.ARGB_8888:Bitmap.Config.RGB_565;
+			bitmap = BitmapFactory.decodeStream(stream, null, options);	// Decode the image from the input stream
+			decodeCount.incrementAndGet();
+			GameMetrics.getInstance().getDecodeTimes().record(System.nanoTime() - decodeStart);
+		}
+		catch (IOException e) {
+			Log.e(LOG_NAME,"Error in opening the file input."+e.getMessage());
+		}
+		catch (Exception e) {
+			Log.e(LOG_NAME,"An error occured while opening the file."+e.getMessage());
+		}
+		finally {
+			closeStream(stream);
+		} // End of Try - Catch
+		return bitmap;
+	} // End of decodeBitmap method
+
+	/**
+	 * Closes a stream quietly.
+	 * @param stream the stream to close, can be null
+	 */
+	private static void closeStream(InputStream stream)
+	{
+		if(stream != null)
+		{
+			try
+			{
+				stream.close();
+			}
+			catch (IOException e) {
+				Log.e(LOG_NAME,"Error in closing the file input."+e.getMessage());
+			} // End of Try - Catch
+		} // End of stream != null If
+	} // End of closeStream method
+}
@@ -0,0 +1,216 @@
+package com.raidrin.memorygame;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * What the ImageCache needs to know about an image before it's decoded:
+ * whether a png can have transparent pixels, how wide it is and the
+ * fraction of its size it's decoded at.
+ * A png can have transparent pixels when its color type has an alpha
+ * channel, or when a tRNS chunk before its pixel data makes some colors
+ * of its palette or some gray or RGB values transparent. Only the chunks
+ * before the pixel data are read, and the stream is reset to where it
+ * was so it can still be decoded.
+ * This class has no Android dependency so it can be checked on the JVM.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public final class ImageFormat
+{
+	private static final int MAX_HEADER_SIZE = 64 * 1024;	// The most bytes read before the pixel data, a png with more may have alpha
+	private static final int PNG_SIGNATURE_SIZE = 8;	// The bytes of the signature at the start of a png
+	private static final int PNG_COLOR_TYPE_OFFSET = 9;	// The offset of the color type in the IHDR chunk
+	private static final int PNG_COLOR_TYPE_ALPHA = 4;	// The bit of the png color type that states it has alpha
+	private static final int PNG_CHUNK_IHDR = 0x49484452;	// "IHDR", the header chunk
+	private static final int PNG_CHUNK_TRNS = 0x74524e53;	// "tRNS", the chunk of the transparent colors
+	private static final int PNG_CHUNK_IDAT = 0x49444154;	// "IDAT", the first chunk of the pixel data
+
+	/**
+	 * The ImageFormat class only has static methods.
+	 */
+	private ImageFormat()
+	{
+	} // End of Constructor
+
+	/**
+	 * Checks if a png can have transparent pixels from the chunks before its pixel data.
+	 * The stream is reset to where it was so it can still be decoded.
+	 * @param stream the stream of the png, which has to support mark
+	 * @return true if the image can have transparent pixels, isn't a png, or has more than MAX_HEADER_SIZE bytes before its pixel data
+	 * @throws IOException if the stream can't be reset
+	 */
+	public static boolean hasAlphaChannel(InputStream stream) throws IOException
+	{
+		stream.mark(MAX_HEADER_SIZE);
+		try
+		{
+			DataInputStream data = new DataInputStream(stream);
+			// The signature is 0x89 followed by "PNG", then a line ending and a stop
+			if(data.readInt() != 0x89504e47)
+				return true;
+			data.readInt();
+			long read = PNG_SIGNATURE_SIZE;
+			int colorType = -1;
+			while(read + 8 <= MAX_HEADER_SIZE)
+			{
+				int length = data.readInt();
+				int type = data.readInt();
+				read += 8;
+				// Without a tRNS chunk, only the color types with an alpha channel have transparent pixels
+				if(type == PNG_CHUNK_IDAT)
+					return colorType == -1 || (colorType & PNG_COLOR_TYPE_ALPHA) != 0;
+				if(type == PNG_CHUNK_TRNS)
+					return true;
+				if(length < 0 || read + length + 4 > MAX_HEADER_SIZE)
+					break;
+				if(type == PNG_CHUNK_IHDR && length > PNG_COLOR_TYPE_OFFSET)
+				{
+					skipFully(data, PNG_COLOR_TYPE_OFFSET);
+					colorType = data.readUnsignedByte();
+					skipFully(data, length - PNG_COLOR_TYPE_OFFSET - 1);
+				}
+				else
+					skipFully(data, length);
+				// The CRC of the chunk
+				data.readInt();
+				read += length + 4;
+			} // End of MAX_HEADER_SIZE while loop
+			return true;
+		}
+		catch (EOFException e) {
+			// A png cut before its pixel data is decoded the safe way
+			return true;
+		}
+		finally
+		{
+			stream.reset();
+		} // End of try - finally
+	} // End of hasAlphaChannel method
+
+	/**
+	 * Reads the width of a png, jpg or webp image from its header.
+	 * Only the bytes before the size are read, the stream isn't reset.
+	 * @param stream the stream of the image
+	 * @return the width in pixels, 0 if the image isn't one of these formats or its header can't be read
+	 * @throws IOException if the stream can't be read
+	 */
+	public static int getWidth(InputStream stream) throws IOException
+	{
+		DataInputStream data = new DataInputStream(stream);
+		try
+		{
+			int magic = data.readInt();
+			// A png starts with its signature and the IHDR chunk, whose data starts with the width
+			if(magic == 0x89504e47)
+			{
+				skipFully(data, 4 + 4);
+				return (data.readInt() == PNG_CHUNK_IHDR)?data.readInt():0;
+			} // End of png If
+			// A jpg is a list of segments, the width is in the first start of frame segment
+			if((magic >>> 16) == 0xffd8)
+				return getJpgWidth(data, magic & 0xffff);
+			// A webp is a RIFF file whose first chunk tells how its size is written
+			if(magic == 0x52494646)
+				return getWebpWidth(data);
+			return 0;
+		}
+		catch (EOFException e) {
+			return 0;
+		} // End of try - catch
+	} // End of getWidth method
+
+	/**
+	 * Gets the biggest sample size that still decodes an image at least as big as it's drawn.
+	 * @param sourceSize the width of the image
+	 * @param targetSize the width the image is drawn at
+	 * @return the sample size, a power of 2
+	 */
+	public static int computeSampleSize(int sourceSize, int targetSize)
+	{
+		int sampleSize = 1;
+		while(targetSize > 0 && sourceSize / (sampleSize * 2) >= targetSize)
+			sampleSize *= 2;
+		return sampleSize;
+	} // End of computeSampleSize method
+
+	/**
+	 * Reads the width of a jpg from the segments after its start of image marker.
+	 * @param data the stream, after the start of image marker
+	 * @param marker the marker of the first segment, already read
+	 * @return the width in pixels, 0 if no start of frame segment is found
+	 * @throws IOException if the stream can't be read
+	 */
+	private static int getJpgWidth(DataInputStream data, int marker) throws IOException
+	{
+		long read = 4;
+		while(read < MAX_HEADER_SIZE && (marker >>> 8) == 0xff)
+		{
+			int length = data.readUnsignedShort();
+			if(length < 2)
+				return 0;
+			// The start of frame markers, apart from the huffman and arithmetic tables that share their range
+			if(marker >= 0xffc0 && marker <= 0xffcf && marker != 0xffc4 && marker != 0xffc8 && marker != 0xffcc)
+			{
+				// The precision, the height, then the width
+				skipFully(data, 1 + 2);
+				return data.readUnsignedShort();
+			} // End of start of frame If
+			skipFully(data, length - 2);
+			read += 2 + length;
+			marker = data.readUnsignedShort();
+		} // End of marker while loop
+		return 0;
+	} // End of getJpgWidth method
+
+	/**
+	 * Reads the width of a webp from its first chunk.
+	 * @param data the stream, after the RIFF tag
+	 * @return the width in pixels, 0 if it isn't a webp
+	 * @throws IOException if the stream can't be read
+	 */
+	private static int getWebpWidth(DataInputStream data) throws IOException
+	{
+		// The size of the file, then the WEBP tag and the type of the first chunk and its size
+		skipFully(data, 4);
+		if(data.readInt() != 0x57454250)
+			return 0;
+		int chunk = data.readInt();
+		skipFully(data, 4);
+		byte[] header = new byte[10];
+		data.readFully(header);
+		// A lossy image: the frame tag and the start code, then the width in 14 bits
+		if(chunk == 0x56503820)
+			return ((header[6] & 0xff) | (header[7] & 0xff) << 8) & 0x3fff;
+		// A lossless image: the signature, then the width minus 1 in 14 bits
+		if(chunk == 0x5650384c)
+			return (((header[1] & 0xff) | (header[2] & 0xff) << 8) & 0x3fff) + 1;
+		// An extended image: the flags, then the width minus 1 in 24 bits
+		if(chunk == 0x56503858)
+			return ((header[4] & 0xff) | (header[5] & 0xff) << 8 | (header[6] & 0xff) << 16) + 1;
+		return 0;
+	} // End of getWebpWidth method
+
+	/**
+	 * Skips bytes of a stream.
+	 * @param stream the stream
+	 * @param count the count of bytes to skip
+	 * @throws IOException if the stream ends first
+	 */
+	private static void skipFully(DataInputStream stream, int count) throws IOException
+	{
+		while(count > 0)
+		{
+			int skipped = stream.skipBytes(count);
+			// skipBytes may stop early, reading a byte tells the end of the stream apart
+			if(skipped == 0)
+			{
+				stream.readByte();
+				skipped = 1;
+			} // End of skipped == 0 If
+			count -= skipped;
+		} // End of count > 0 while loop
+	} // End of skipFully method
+}
@@ -0,0 +1,211 @@
+package com.raidrin.memorygame;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed relative precision,
+ * in the style of HdrHistogram. Each power of two is split in SUB_BUCKET_COUNT
+ * linear buckets so a value is counted within about 3% of its real value,
+ * from a nanosecond up to MAX_VALUE, in a fixed array of counts.
+ * Recording a value is a few shifts and an atomic increment, it never
+ * allocates or locks, so any thread can record while another one reads.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 5;	// The bits of precision of a bucket
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;	// The buckets in each power of two
+	private static final int MAX_MAGNITUDE = 40;	// The highest power of two that's counted
+	public static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;	// The highest value, about 18 minutes, higher ones are counted as it
+
+	private final String name;			// The name shown in the reports
+	private final AtomicLongArray counts;	// The count of values in each bucket
+	private final AtomicLong totalCount;	// The count of all the values
+	private final AtomicLong totalValue;	// The sum of all the values
+	private final AtomicLong maxValue;		// The highest value
+
+	/**
+	 * The constructor of the LatencyHistogram class
+	 * @param name The name shown in the reports
+	 */
+	public LatencyHistogram(String name)
+	{
+		this.name = name;
+		counts = new AtomicLongArray(getIndex(MAX_VALUE) + 1);
+		totalCount = new AtomicLong();
+		totalValue = new AtomicLong();
+		maxValue = new AtomicLong();
+	} // End of Constructor
+
+	/**
+	 * Counts a duration.
+	 * @param nanos the duration in nanoseconds, negative ones are counted as 0
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.min(MAX_VALUE, Math.max(0, nanos));
+		counts.incrementAndGet(getIndex(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		long max;
+		while(value > (max = maxValue.get()) && !maxValue.compareAndSet(max, value))
+			;	// Another thread changed the max, check it again
+	} // End of record method
+
+	/**
+	 * Gets the value under which a percentage of the values are.
+	 * @param percentile the percentage, from 0 to 100
+	 * @return the highest value of the bucket of the percentile in nanoseconds, 0 when empty
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long total = totalCount.get();
+		if(total == 0)
+			return 0;
+		long target = Math.max(1, (long)Math.ceil(total * Math.min(100, percentile) / 100));
+		long seen = 0;
+		for(int index=0;index<counts.length();index++)
+		{
+			seen += counts.get(index);
+			if(seen >= target)
+				return Math.min(getHighestValue(index), maxValue.get());
+		} // End of counts for loop
+		return maxValue.get();
+	} // End of getValueAtPercentile method
+
+	/**
+	 * @return the name shown in the reports
+	 */
+	public String getName()
+	{
+		return name;
+	} // End of getName method
+
+	/**
+	 * @return the count of values
+	 */
+	public long getCount()
+	{
+		return totalCount.get();
+	} // End of getCount method
+
+	/**
+	 * @return the mean of the values in nanoseconds, 0 when empty
+	 */
+	public long getMean()
+	{
+		long total = totalCount.get();
+		return (total == 0)?0:totalValue.get() / total;
+	} // End of getMean method
+
+	/**
+	 * @return the highest value in nanoseconds
+	 */
+	public long getMax()
+	{
+		return maxValue.get();
+	} // End of getMax method
+
+	/**
+	 * Removes all the values.
+	 */
+	public void reset()
+	{
+		for(int index=0;index<counts.length();index++)
+			counts.set(index, 0);
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	} // End of reset method
+
+	/**
+	 * Writes the count, the mean, the main percentiles and the max in milliseconds on one line.
+	 * @param builder the builder where the line is written
+	 */
+	public void appendSummary(StringBuilder builder)
+	{
+		builder.append(name).append(" n=").append(getCount());
+		appendMillis(builder.append(" mean="), getMean());
+		appendMillis(builder.append(" p50="), getValueAtPercentile(50));
+		appendMillis(builder.append(" p99="), getValueAtPercentile(99));
+		appendMillis(builder.append(" max="), getMax());
+	} // End of appendSummary method
+
+	/**
+	 * Writes the distribution of the values, one line for each percentile
+	 * from 0 up to 100 with twice the lines near the top each time, like
+	 * the percentile output of HdrHistogram.
+	 * @param builder the builder where the distribution is written
+	 */
+	public void appendDistribution(StringBuilder builder)
+	{
+		appendSummary(builder);
+		builder.append('\n');
+		builder.append("     value(ms)   percentile        count\n");
+		long total = totalCount.get();
+		if(total == 0)
+			return;
+		double percentile = 0;
+		for(double step=25;percentile<100 && step>=0.0001;step/=2)
+		{
+			// Each half of the rest of the values gets as many lines as the half before it
+			for(int i=0;i<2;i++,percentile+=step)
+				appendDistributionLine(builder, percentile, total);
+		} // End of step for loop
+		appendDistributionLine(builder, 100, total);
+	} // End of appendDistribution method
+
+	/**
+	 * Writes a line of the distribution.
+	 * @param builder the builder where the line is written
+	 * @param percentile the percentile of the line
+	 * @param total the count of values
+	 */
+	private void appendDistributionLine(StringBuilder builder, double percentile, long total)
+	{
+		builder.append(String.format("%14.3f %12.5f %12d\n",
+				getValueAtPercentile(percentile) / 1e6, percentile, (long)Math.ceil(total * percentile / 100)));
+	} // End of appendDistributionLine method
+
+	/**
+	 * Writes a duration in milliseconds with a tenth of precision.
+	 * @param builder the builder where the duration is written
+	 * @param nanos the duration in nanoseconds
+	 */
+	private static void appendMillis(StringBuilder builder, long nanos)
+	{
+		long tenths = (nanos + 50000) / 100000;
+		builder.append(tenths / 10).append('.').append(tenths % 10).append("ms");
+	} // End of appendMillis method
+
+	/**
+	 * Gets the bucket of a value.
+	 * Values under 2 * SUB_BUCKET_COUNT each have their own bucket, higher
+	 * values share a bucket with the ones that have the same top bits.
+	 * @param value the value, from 0 to MAX_VALUE
+	 * @return the index of the bucket
+	 */
+	private static int getIndex(long value)
+	{
+		if(value < SUB_BUCKET_COUNT)
+			return (int)value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int)(value >>> shift) - SUB_BUCKET_COUNT;
+	} // End of getIndex method
+
+	/**
+	 * Gets the highest value counted in a bucket.
+	 * @param index the index of the bucket
+	 * @return the value
+	 */
+	private static long getHighestValue(int index)
+	{
+		if(index < SUB_BUCKET_COUNT)
+			return index;
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lowest = (long)(index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	} // End of getHighestValue method
+}
@@ -1,17 +1,23 @@
 package com.raidrin.memorygame;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Random;
 
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.Context;
 import android.content.DialogInterface;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
-import android.view.View;
-import android.view.View.OnClickListener;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 
 /**
@@ -22,36 +28,59 @@ import android.widget.TextView;
  * Date: October 13, 2012 
  * Description: A game that tests the memory of the user by matching the cards.
  * 				The game can be played as many times as wanted by the user. 
+ * 				The rules of the game are in the GameEngine, this Activity only
+ * 				renders the board and passes the clicks and the timer to it.
  * 
  */
 public class MemoryGame extends Activity {
 	// Constants used by the Program, static is used to avoid
 		// making a copy of the variable in each instance (Just good programming practice).
-	private static final int MAX_TIME = 30;				// The maximum time that the game will run
-	private static final int COLUMN_COUNT = 4;			// Count of columns the game has.
-	private static final int NUM_CARD_TYPE = 13;		// The count of the type of cards. 1 - 13
-//	private static final int TOTAL_CARD_NUM = 52;		// The total distinct card numbers the application can choose from
-	private static final int DUPLICATE_COUNT = 2;		// The number of card duplicates.
-	private static final int NUM_OF_DISTINCT_CARDS = 8;	// The number of distinct cards that the application will use in each game.
+	private static final long CARD_REVEAL_DELAY = 300;	// Milliseconds that the last card is shown before the open cards are resolved
+	private static final long TICK_INTERVAL = 1000;		// Milliseconds between two ticks of the gameClock
+	private static final int TAP_QUEUE_CAPACITY = 8;	// The most taps that can wait to be given to the gameEngine
+	private static final int EVENT_LOG_CAPACITY = 256;	// The most events kept by the eventLog
+	private static final int EVENT_SNAPSHOT_INTERVAL = 32;	// The most events folded to rebuild a saved game
+	private static final String SNAPSHOT_KEY = "gameSnapshot";			// The key of the GameSnapshot in the saved state
+	private static final String SNAPSHOT_FILENAME = "game.snapshot";	// The file that keeps the GameSnapshot if the process is killed
+	private static final boolean RECORD_REPLAYS = true;				// States whether each game is recorded so it can be replayed
+	private static final String REPLAY_FILENAME = "last_game.replay";	// The file that keeps the replay log of the last finished game
+	private static final String METRICS_FILENAME = "metrics.txt";		// The file the GameMetrics are written to in a debug build
+	private static final String DIFFICULTY_FILENAME = "difficulty.state";	// The file that keeps the level and the statistics of the difficultyTuner
+	private static final String THEME_PACK_FILENAME = "theme.zip";	// The ThemePack in the files of the application that replaces the playing cards
 	
 	private static final String LOG_NAME = "AndroidType";
-	
-	private int score;			// A variable that stores all the score of the user
-	private int secondsLeft;	// Seconds left in the game thats currently on
-	private boolean firstCard;	// States whether the card thats currently selected is the first card
-	private boolean cardsOpen;	// States whether both cards are still open
 
 	private TextView scoreTextView;			// TextView that stores the current score of the user.
 	private TextView messageTextView;		// TextView that shows a message to the user about its card interactions.
 	private TextView timeLeftValueTextView;	// TextView that stores how much time is left in the game. 
-	private LinearLayout cardsLinearLayout;	// The LinearLayout that holds all the card rows in the game.
-	
-	private Card firstCardSelected;	// A reference to the first card that's selected is stored here.
+	private BoardView boardView;			// The view that draws all the cards in the game.
+
+	// The messages and numbers shown while the game is played are prepared once
+		// so that a click or a tick never allocates
+	private CharSequence pickACardText;			// "Pick a card, any card"
+	private CharSequence pickAnotherCardText;	// "Now pick another card"
+	private CharSequence rightText;				// "Right!"
+	private CharSequence wrongText;				// "Wrong! Pick Again..."
+	private CharSequence shownMessage;			// The message in the messageTextView
+	private NumberText scoreText;				// The digits of the score
+	private NumberText timeLeftText;			// The digits of the time left
 
 	private Handler handler;					// The handler that is used by the application to delay call or call anonymous runnable classes
-	private CountdownThread countdownThread;	// An inner class created to make a CountDown.
-	private ArrayList<String> cardFileNames;	// The filenames of the cards that were currently in use in the game.
-	private ArrayList<String> gameCardNames;	// A list containing all the filenames that were all distinct.
+	private GameClock gameClock;				// Counts down the game on the handler
+	private GameEngine gameEngine;				// The rules and the state of the game
+	private TapQueue tapQueue;					// The taps of the user waiting to be given to the gameEngine
+	private long turnEndedAt;					// The uptime the last card of the open cards was flipped at
+	private AssetLoader assetLoader;			// Decodes the images of the next game in the background
+	private GameHistoryStore historyStore;		// Keeps the records of the finished games, null until it is opened in the background
+	private GameRecord gameRecord;				// The record of the game being played
+	private ReplayRecorder replayRecorder;		// Records the inputs of the game being played
+	private GameEventLog eventLog;				// Keeps the changes of the game and the snapshots of its state
+	private GameMetrics gameMetrics;			// Measures how fast the game responds
+	private DifficultyTuner difficultyTuner;	// Chooses the board and the time of each game from how the user plays
+	private ThemePack themePack;				// The faces of the cards, null for the playing cards until a pack is opened in the background
+	private RetainedState retainedState;		// The assetLoader, the themePack and the historyStore, kept when the activity is recreated
+	private boolean retained;					// States whether the retainedState was given to the next activity
+	private boolean showMetrics;				// States whether the metrics overlay is shown, only in a debug build
 	
 	
 	/**
@@ -65,360 +94,703 @@ public class MemoryGame extends Activity {
 	{
 		// In order for this override to be valid. A call to the super method must be done.
         super.onCreate(savedInstanceState);
+		gameMetrics = GameMetrics.getInstance();
+		gameMetrics.onCreate();	// measure the time until the first draw
         setContentView(R.layout.main); // Set the content view to main which is the app's main layout.
         
         // Make a reference from the resources to this java program and cast them to their appropriate View types
-		cardsLinearLayout = (LinearLayout) findViewById(R.id.cardsLinearLayout);
+		boardView = (BoardView) findViewById(R.id.boardView);
 		timeLeftValueTextView = (TextView) findViewById(R.id.timeLeftValueTextView);
 		scoreTextView = (TextView)findViewById(R.id.scoreValueTextView);
 		messageTextView = (TextView) findViewById(R.id.messageTextView);
 
+		// Get the messages from the resources once
+		pickACardText = getText(R.string.pick_a_card);
+		pickAnotherCardText = getText(R.string.pick_another_card);
+		rightText = getText(R.string.right);
+		wrongText = getText(R.string.wrong);
+		shownMessage = pickACardText;	// The layout starts with "Pick a card, any card"
+		scoreText = new NumberText();
+		timeLeftText = new NumberText();
+
 		// Instantiate Objects that will be needed by the application
 		handler = new Handler();				// instantiate handler
-		gameCardNames = new ArrayList<String>();// instantiate gameCardNames
-        cardFileNames = new ArrayList<String>();// instantiate cardFileNames
-		countdownThread = new CountdownThread();// instantiate the countdownThread
-        
-        firstCard = true;			// set the firstCard to true to make sure that when the game starts, firstCard will be the firstCard
-        cardsOpen = false;			// set the cardsOpen to false because when the game starts, both cards are not open
-        firstCardSelected = null;	// set the firstCardSelected to null because there is no card selected yet.
-		score = 0;					// score is set to 0 because the user doesn't have a score yet
-
-		// Call the showAlertDialog method with the appropriate string values used at the game start
-		showAlertDialog(getString(R.string.start), 
-				getString(R.string.start_msg), 
-				getString(R.string.start),alertDialogInitialOnClickListener);
-		
-		// make sure countdownThread is the only Thread that runs the processes inside synchronized
-		synchronized (countdownThread) 
+        boardView.setOnCardClickListener(cardClickedListener);
+		// A rotation keeps the loader, the theme pack and the history of the last activity
+		retainedState = (RetainedState) getLastNonConfigurationInstance();
+		if(retainedState == null)
 		{
-			countdownThread.start();			// Start the Thread.
-			countdownThread.setWaiting(true);	// Pause the Thread
-		}	// end of timerThread's synchronize
+			retainedState = new RetainedState(new AssetLoader(this));	// instantiate the assetLoader
+			retainedState.open(getApplicationContext());	// index the theme pack and open the history in the background
+		} // End of retainedState == null If
+		retainedState.activity = this;
+		assetLoader = retainedState.assetLoader;
+		themePack = retainedState.themePack;
+		historyStore = retainedState.historyStore;
+		gameClock = new GameClock(uptimeTimeSource, handlerScheduler, TICK_INTERVAL, gameClockListener);
+		gameRecord = new GameRecord();
+		replayRecorder = new ReplayRecorder();
+		eventLog = new GameEventLog(EVENT_LOG_CAPACITY, EVENT_SNAPSHOT_INTERVAL);
+		difficultyTuner = new DifficultyTuner(CARD_REVEAL_DELAY);
+		readDifficultyFile();
+		// The game in progress, if any, was started at the level that was saved
+		createGameEngine();
+		showMetrics = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+
+		// If a game was in progress when the activity was recreated or the process was killed,
+			// continue it instead of starting a new one
+		byte[] snapshot = (savedInstanceState != null)?savedInstanceState.getByteArray(SNAPSHOT_KEY):readFile(SNAPSHOT_FILENAME);
+		if(snapshot != null && GameSnapshot.restore(snapshot, gameEngine, eventLog, gameClock) && gameEngine.isRunning())
+			continueGame();
+		else
+		{
+			// Call the showAlertDialog method with the appropriate string values used at the game start
+			showAlertDialog(getString(R.string.start), 
+					getString(R.string.start_msg), 
+					getString(R.string.start),alertDialogInitialOnClickListener);
+			// Nothing is decoded before the first draw, the cards of the first game
+				// are dealt now and decoded in the background while the dialog is shown
+			gameEngine.dealNextGame();
+			prefetchNextGame(true);
+		} // End of snapshot If - Else
 		
     } // End of onCreate method
 
 	/**
-	 * Sets the filenames of the images as a collection of strings.
-	 * Makes the access of image filenames easier. 
+	 * Saves the game in progress so a recreated activity continues it.
+	 * @param outState The state of the activity
 	 */
-	private void setAllCardFilenames() 
+	@Override
+	protected void onSaveInstanceState(Bundle outState)
 	{
-		cardFileNames.clear();	// make sure that the cardFileNames collection is always empty before
-									// setting the cardFileNames
-		// The suit array represents the suits in a playing card deck
-		// c = clover, s = spade, h = heart, d = diamond
-        char[] suit = {'c','s','h','d'};
-        
-        // build card's filenames by concatenating their card number and their suit
-        	// and add .png at the bottom. (this is how the files in the assets folder are named)
-        	// then add each of the generated String in the cardFileNames ArrayList
-        for(int i=1;i<=NUM_CARD_TYPE;i++)
-        	for(int a=0;a<suit.length;a++)
-        		cardFileNames.add(i + Character.toString(suit[a]) + ".png");
-	} // End of setAllCardFilenames method
-
-	/**
-	 * Sets the gameCardFilenames randomly from the cardFileNames collection.
-	 * Duplicates the cards too and add them to the gameCardNames collection.
-	 */
-	private void setGameCardFilenames() {
-		gameCardNames.clear();	// clear the collection to make sure that the collection is initially empty
-									// before adding card names on it
-		Random rand = new Random();	// declare and initialize the Random class that generates a random number
-										// Used to get a random card from the deck
-		// take a distinct card the same times as the value of NUM_OF_DISTINCT_CARDS
-		for(int i = 0;i<NUM_OF_DISTINCT_CARDS;i++)
+		super.onSaveInstanceState(outState);
+		if(gameEngine.isRunning())
+			outState.putByteArray(SNAPSHOT_KEY, GameSnapshot.save(eventLog, gameClock));
+	} // End of onSaveInstanceState method
+
+	/**
+	 * When the activity isn't visible anymore, the game is paused
+	 * and keeps the time that was left. The game is also saved in a file
+	 * in case the process is killed while it's in the background.
+	 */
+	@Override
+	protected void onPause()
+	{
+		super.onPause();
+		gameClock.pause();
+		writeSnapshotFile();
+		writeDifficultyFile();
+		if(showMetrics)
+		{
+			gameMetrics.stopPauseDetector();
+			// Keep the metrics for offline analysis
+			StringBuilder report = new StringBuilder();
+			gameMetrics.appendReport(report);
+			writeFile(METRICS_FILENAME, report.toString().getBytes());
+		} // End of showMetrics If
+	} // End of onPause method
+
+	/**
+	 * When the activity is visible again, the paused game continues.
+	 * A game that is over or not started yet stays stopped.
+	 */
+	@Override
+	protected void onResume()
+	{
+		super.onResume();
+		gameClock.resume();
+		if(showMetrics)
 		{
-			// Grab a cardFileName from the cardFilenames collection randomly
-			String cardFilename = cardFileNames.remove(rand.nextInt(cardFileNames.size()));
-			// Create duplicates by the value of the DUPLICATE_COUNT then add it in the gameCardNames collection
-			for(int a=0;a<DUPLICATE_COUNT;a++)
-				gameCardNames.add(cardFilename);
-		} // End of NUM_OF_DISTINCT_CARDS for loop
-	} // End of setGameCardFilenames method
+			gameMetrics.startPauseDetector();
+			showMetrics();
+		} // End of showMetrics If
+	} // End of onResume method
 
 	/**
-	 * Randomly shuffles the cardFileNames collection.
+	 * @return the loader that decodes the images of the next game in the background
 	 */
-	private void shuffleCardFilenames() {
-		Random rand = new Random();	// declare and initialize the Random class that generates a random number
-		final int SHUFFLE_COUNT = 100;	// The times that the order of the gameCardNames is changed
-		// To shuffle the gameCardNames collection, randomly remove a card from the collection and 
-			// add it to the beginning. Shuffle it as many times as the value of SHUFFLE_COUNT
-		for(int i = 0;i<SHUFFLE_COUNT ;i++)
-			gameCardNames.add(gameCardNames.remove(rand.nextInt(gameCardNames.size())));
-	} // End of shuffleCardFilenames method
+	public AssetLoader getAssetLoader()
+	{
+		return assetLoader;
+	} // End of getAssetLoader method
 
 	/**
-	 * Create the cards and add them on the cardsLinearLayout.
+	 * Gives the loader, the theme pack and the history to the activity
+	 * created for the new configuration, so they aren't opened again.
+	 * @return the retainedState
 	 */
-	private void createCards() {
-		// For each LinearLayout child of cardsLinearLayout, add a Card object which is a subclass of ImageButton
-		for(int i=0;i<cardsLinearLayout.getChildCount();i++)
+	@Override
+	public Object onRetainNonConfigurationInstance()
+	{
+		retained = true;
+		return retainedState;
+	} // End of onRetainNonConfigurationInstance method
+
+	/**
+	 * When the activity is destroyed, the clock isn't needed anymore.
+	 * Unless the activity is recreated, the images that are still being
+	 * decoded in the background and the theme pack aren't needed either.
+	 */
+	@Override
+	protected void onDestroy()
+	{
+		super.onDestroy();
+		// Make sure no tick or resolve is run after the activity is gone
+		gameClock.stop();
+		handler.removeCallbacks(resolveCardsRunnable);
+		tapQueue.clear();
+		retainedState.activity = null;
+		// Stop decoding the images of the next game
+		if(!retained)
+			retainedState.release();
+	} // End of onDestroy method
+
+	/**
+	 * 	Give the boardView the images of the cards of the game that starts.
+	 */
+	private void bindBoard() 
+	{
+		long bindStart = System.nanoTime();
+		// A pack opened during the last game is only used from this game on
+		boardView.setThemePack(themePack);
+		boardView.bindCards();
+		// Decode the images of the next game in the background while this game is played
+		prefetchNextGame(false);
+		gameMetrics.getBindBoardTimes().record(System.nanoTime() - bindStart);
+	} // End of bindBoard method
+
+	/**
+	 * Decodes the images of the cards dealt for the next game in the background.
+	 * @param firstGame true to also decode the back and the glow of the cards, which the first game needs
+	 */
+	private void prefetchNextGame(boolean firstGame) 
+	{
+		ArrayList<String> nextCardNames = new ArrayList<String>();
+		if(firstGame)
 		{
-			// Get the cardsLinearLayout with the current index and save it as a tempLinearLayout variable
-			LinearLayout tempLinearLayout = ((LinearLayout)cardsLinearLayout.getChildAt(i));
-			// If tempLinearLayout is existing, continue the adding of Cards.
-			if(tempLinearLayout != null)
-				// Add cards to the tempLinearLayout with the amount of columns it has
-				for(int a=0;a<COLUMN_COUNT;a++)
-					// Add the cards as a view. The context will be this activity.
-					tempLinearLayout.addView(new Card(this));
-		} // End of cardsLinearLayout for loop
-	} // End of createCards methods
+			nextCardNames.add(BoardView.getBackFilename(themePack));
+			nextCardNames.add(BoardView.GLOW_BACKGROUND_FILENAME);
+		} // End of firstGame If
+		// Only the faces of the next board are decoded, never the whole pack
+		int[] cardFaces = new int[Deck.SIZE];
+		if(themePack != null)
+			themePack.selectFaces(gameEngine.getNextGameSeed(), cardFaces);
+		for(int i = 0; i < gameEngine.getCardCount();i++)
+			nextCardNames.add(BoardView.getFaceFilename(themePack, cardFaces, gameEngine.getNextCard(i)));
+		assetLoader.prefetch(themePack, nextCardNames, boardView.getTargetWidth());
+	} // End of prefetchNextGame method
 
 	/**
-	 * 	Set the card's in the cardsLinearLayout's properties and listeners.
+	 * The ThemePack was opened in the background, its faces are decoded for the next game.
+	 * @param pack the pack
 	 */
-	private void setImageButtons() 
+	private void onThemePackOpened(ThemePack pack)
 	{
-		// Initialize the gameCardNamesIndex. each time a card gets its filename,
-			// the gameCardNamesIndex will increment by 1
-		int gameCardNamesIndex = 0;
-		// For each child of the cardsLinearLayout, get a reference of it
-			// and save it on a tempLinearLayout
-		for(int i = 0; i < cardsLinearLayout.getChildCount();i++)
+		themePack = pack;
+		prefetchNextGame(true);
+	} // End of onThemePackOpened method
+
+	/**
+	 * Closes a ThemePack quietly.
+	 * @param pack the pack to close, can be null
+	 */
+	private static void closeThemePack(ThemePack pack)
+	{
+		if(pack != null)
 		{
-			LinearLayout tempLinearLayout = (LinearLayout)cardsLinearLayout.getChildAt(i);
-			// go through each child of the tempLinearLayout and use its initial methods
-			for(int a=0;a<tempLinearLayout.getChildCount();a++)
+			try
 			{
-				Card tempCard = (Card)tempLinearLayout.getChildAt(a);
-				if(tempCard != null)
-				{
-					tempCard.initialState();
-					tempCard.setFileName(gameCardNames.get(gameCardNamesIndex));
-					tempCard.setOnClickListener(cardClickedListener);
-					gameCardNamesIndex++;	// Increment the index
-				} // End of tempCard If
-			} // End of tempLinearLayout for loop
-		} // End of cardsLinearLayout for loop
-	} // End of setImageButtons method
-	
+				pack.close();
+			}
+			catch (IOException e) {
+				Log.e(LOG_NAME,"Error in closing the theme pack."+e.getMessage());
+			} // End of Try - Catch
+		} // End of pack != null If
+	} // End of closeThemePack method
+
 	/**
 	 * The click listener that listens to when a card is clicked.
-	 * Also used to show and hide cards, make card glow and unglow, 
-	 * and checking if two cards match.
-	 * If matched, the two cards will be invisible and the score will be
-	 * updated.
+	 * The tap is queued and given to the gameEngine right away unless the
+	 * open cards are waiting for their reveal delay. Then it waits in the
+	 * tapQueue and the open cards are resolved once they were shown for
+	 * TapQueue.MIN_REVEAL_DELAY, so the tap isn't lost.
 	 */
-	private OnClickListener cardClickedListener = new OnClickListener() 
+	private BoardView.OnCardClickListener cardClickedListener = new BoardView.OnCardClickListener() 
 	{
 		/**
-		 * Overridden onClick method of the OnClickListener anonymous class.
+		 * Overridden onCardClick method of the OnCardClickListener anonymous class.
 		 */
 		@Override
-		public void onClick(View v) 
+		public void onCardClick(int index) 
 		{
-			// Check if the cards are currently open.
-			// If cards are still open, the cards shouldn't be allowed
-				// to open. 
-			// Otherwise, it will show three cards open at the same time.
-			if(!cardsOpen)
+			gameMetrics.onTap();
+			long time = SystemClock.uptimeMillis();
+			gameRecord.addTap(time);
+			replayRecorder.onTap(index, time);
+			difficultyTuner.onTap(time);
+			if(!tapQueue.offer(index))
+				return;
+			if(gameEngine.isCardsOpen())
+				scheduleResolve();
+			else
+				tapQueue.drain();
+		} // End of onCardClick method
+	}; // End of cardClickedListener anonymous inner class
+
+	/**
+	 * Shows the right message to the user for each tap that flipped a card.
+	 * When the turn ends, the open cards are resolved after a delay so
+	 * the user can see the last card.
+	 */
+	private TapQueue.Listener tapQueueListener = new TapQueue.Listener() 
+	{
+		@Override
+		public void onFlipped(int index, GameEngine.FlipResult result)
+		{
+			switch(result)
 			{
-				// The view that got clicked is casted to Card and saved in a variable
-				final Card tempCard = (Card)v;
-				// Everytime a card is clicked, the card's front will be shown
-				// The only time it doesn't show up is when two cards are already open
-				tempCard.showFront();
-				// If the card that's clicked is the first card
-				if(firstCard)
-				{
-					// Set its selected state to true
-					firstCardSelected = tempCard;
-					// Save a reference to the object that just got clicked to the firstCardSelected field
-					tempCard.setSelected(true);
-					// Set the firstCard to false because the next card will be the second one
-					firstCard = false;
+				case FIRST_CARD:
+				case NEXT_CARD:
 					// Show a message to the user that say's "Pick another card"
-					messageTextView.setText(getText(R.string.pick_another_card));
-				}
-				else
-				{
-					// If it is not the first card then, it is the second card
-					
-					// compare the file name of the two cards and save the boolean result to cardMatched
-					// cardMatched is declared as final because it will be used on the showCardBackRunnable
-					final boolean cardMatched = firstCardSelected.getFileName().equals(tempCard.getFileName());
-					// Set the right message to be shown in the messageTextView
-						// If the card that is currently selected is already selected before, show a "Pick a card, any card"
-						// If not, show either a right or wrong message depending on whether the cards matched
-					messageTextView.setText((tempCard.getSelected())?getString(R.string.pick_a_card):(cardMatched)?getText(R.string.right):getText(R.string.wrong));
-
-					// Set the cardsOpen to true to prevent the user from clicking a third part
-						// until both cards are closed
-					cardsOpen = true;
-					// Create an anonymous inner class of the Runnable class
-					// This will be called by the handler.
-					Runnable showCardBackRunnable = new Runnable() 
-					{
-						// run gets called when we call the postDelayed method
-						@Override
-						public void run() 
-						{
-							// If the tempCard is not the one that is recently selected and both cards matched
-								// then add score and make both cards invisible,
-							if(!tempCard.getSelected() && cardMatched)
-							{
-								// Add a score to the score
-								addScore();
-								// Set cards invisible
-								firstCardSelected.setVisibility(View.INVISIBLE);
-								tempCard.setVisibility(View.INVISIBLE);
-							}
-							// If the firstCard object is not the one that just clicked.
-								// then make the firstCard unselected and show it's back
-							if(firstCardSelected != tempCard)
-							{
-								firstCardSelected.showBack();
-								firstCardSelected.setSelected(false);								
-							} // End of firstCardSelected != tempCard If
-							// Always show the back of the card and set it to not selected
-								// After showing the value of it to the screen
-							tempCard.showBack();
-							tempCard.setSelected(false);
-							// Set the cardsOpen to false to allow the user to select a new match
-							cardsOpen = false;
-							// Set the firstCard to true because the second card is just selected now so it
-								// will be the second card soon.
-							firstCard = true;
-						} // End of run method
-					}; // End of runnable inner class
-					// Delay the call to the showCardBackRunnable by 300 milliseconds
-					// The reason is to show the user what the second card is.
-					handler.postDelayed(showCardBackRunnable, 300);
-				} // End of firstCard If
-			} // End of cardsOpen If		
-		} // End of onClick method
-	}; // End of cardClickedListener anonymous inner class
+					showMessage(pickAnotherCardText);
+					break;
+				case SAME_CARD:
+					// The card that is currently selected is already open
+					showMessage(pickACardText);
+					onTurnEnded();
+					break;
+				case MATCH:
+					difficultyTuner.onTurnEnded(true);
+					showMessage(rightText);
+					onTurnEnded();
+					break;
+				case MISMATCH:
+					difficultyTuner.onTurnEnded(false);
+					showMessage(wrongText);
+					onTurnEnded();
+					break;
+				default:
+					// The game is over, the card isn't allowed to open.
+					break;
+			} // End of flip result switch
+		} // End of onFlipped method
+	}; // End of tapQueueListener anonymous inner class
 
 	/**
-	 * Add 1 to the score property and then show the score to the user.
+	 * The last card of a turn was flipped, the open cards are resolved
+	 * after their reveal delay.
 	 */
-	private void addScore() {
-		// increment the score by 1
-		score++;
-		// show the score
-		showScore();
-	} // End of addScore method
+	private void onTurnEnded() {
+		turnEndedAt = SystemClock.uptimeMillis();
+		scheduleResolve();
+	} // End of onTurnEnded method
+
+	/**
+	 * Posts the resolve of the open cards at the end of their reveal delay.
+	 * The delay is shortened to TapQueue.MIN_REVEAL_DELAY when taps are
+	 * waiting in the tapQueue.
+	 */
+	private void scheduleResolve() {
+		handler.removeCallbacks(resolveCardsRunnable);
+		long delay = (tapQueue.size() > 0)?TapQueue.MIN_REVEAL_DELAY:CARD_REVEAL_DELAY;
+		handler.postAtTime(resolveCardsRunnable, turnEndedAt + delay);
+	} // End of scheduleResolve method
+
+	/**
+	 * Closes the open cards after the user has seen the last card, then
+	 * gives the gameEngine the taps that waited for them.
+	 * Delayed by the handler when the turn ends. The same Runnable is
+	 * posted for every turn so nothing is allocated.
+	 */
+	private Runnable resolveCardsRunnable = new Runnable() 
+	{
+		// run gets called when we call the postDelayed method
+		@Override
+		public void run() 
+		{
+			long time = SystemClock.uptimeMillis();
+			replayRecorder.onResolve(time);
+			gameEngine.resolve();
+			difficultyTuner.onResolved(time);
+			tapQueue.drain();
+		} // End of run method
+	}; // End of resolveCardsRunnable anonymous inner class
+
+	/**
+	 * Renders the changes of the board that are made by the gameEngine.
+	 */
+	private GameEngine.Listener gameEngineListener = new GameEngine.Listener() 
+	{
+		@Override
+		public void onCardShown(int index)
+		{
+			boardView.invalidateCard(index);
+		} // End of onCardShown method
+
+		@Override
+		public void onCardHidden(int index)
+		{
+			boardView.invalidateCard(index);
+		} // End of onCardHidden method
+
+		@Override
+		public void onCardRemoved(int index)
+		{
+			// Matched cards are not drawn until the next game
+			boardView.invalidateCard(index);
+		} // End of onCardRemoved method
+
+		@Override
+		public void onScoreChanged(int score)
+		{
+			showScore();
+		} // End of onScoreChanged method
+
+		@Override
+		public void onTimeChanged(int secondsLeft)
+		{
+			showTimeRemaining();
+		} // End of onTimeChanged method
+
+		@Override
+		public void onGameOver(int score)
+		{
+			// Stop the gameClock until the next game starts
+			gameClock.stop();
+			// The open cards and the waiting taps of the game that is over are never resolved
+			handler.removeCallbacks(resolveCardsRunnable);
+			tapQueue.clear();
+			saveGameRecord(score);
+			difficultyTuner.finishGame(score);
+			// The level changes once for each finished game, reset gives the next game an engine of that level
+			difficultyTuner.chooseNextLevel();
+			// Call the showAlertDialog method that shows an AlertDialog
+				// Send the texts to be shown as arguments
+			showAlertDialog(
+					getString(R.string.play_again),
+					getString(R.string.score_text) +" "+ Integer.toString(score),
+					getString(R.string.play_again),alertDialogResetOnClickListener);
+		} // End of onGameOver method
+	}; // End of gameEngineListener anonymous inner class
+
+	/**
+	 * Appends the record of the game that is over to the historyStore
+	 * and writes its replay log in the replay file.
+	 * Only the mapped memory is written, the file is written later by the system.
+	 * @param score the final score
+	 */
+	private void saveGameRecord(int score) {
+		long time = SystemClock.uptimeMillis();
+		if(replayRecorder.finish(score, time))
+			writeFile(REPLAY_FILENAME, replayRecorder.toByteArray());
+		if(historyStore == null)
+			return;
+		gameRecord.finish(score, time, System.currentTimeMillis());
+		try
+		{
+			historyStore.append(gameRecord);
+		}
+		catch (IOException e) {
+			Log.e(LOG_NAME,"Error in saving the game record."+e.getMessage());
+		} // End of Try - Catch
+	} // End of saveGameRecord method
+
+	/**
+	 * Starts recording the game that was just started or continued.
+	 */
+	private void startGameRecord() {
+		// A continued game already used part of its time
+		long usedTime = (gameEngine.getMaxTime() - gameEngine.getSecondsLeft()) * TICK_INTERVAL;
+		gameRecord.start(gameEngine.getGameSeed(), gameEngine.getBoardConfig(), SystemClock.uptimeMillis() - usedTime);
+		// The time of a continued game before it was saved isn't counted by the difficultyTuner
+		difficultyTuner.startGame(SystemClock.uptimeMillis());
+		if(RECORD_REPLAYS)
+			replayRecorder.start(gameEngine, SystemClock.uptimeMillis());
+	} // End of startGameRecord method
+
+	/**
+	 * Shows a message to the user.
+	 * The TextView is only changed when the message is a different one.
+	 * @param message one of the prepared messages
+	 */
+	private void showMessage(CharSequence message) {
+		if(message != shownMessage)
+		{
+			shownMessage = message;
+			messageTextView.setText(message);
+		} // End of message != shownMessage If
+	} // End of showMessage method
 
 	/**
 	 * Shows the score to the user
 	 */
 	private void showScore() {
-		// Set the text in the scoreTextView as the parsed integer score field
-		scoreTextView.setText(Integer.toString(score));
+		// Write the score of the gameEngine in the reused scoreText and show it
+		scoreText.set(gameEngine.getScore());
+		scoreTextView.setText(scoreText.getChars(), scoreText.getStart(), scoreText.getLength());
 	} // End of showScore method
 
 	/**
+	 * Count down one second of the game each time the gameClock ticks.
+	 * When the game is over, the gameEngine tells its listener to stop
+	 * the clock and show the dialog box with the score and a button to play again
+	 */
+	private GameClock.Listener gameClockListener = new GameClock.Listener() 
+	{
+		@Override
+		public void onTick()
+		{
+			replayRecorder.onTick(SystemClock.uptimeMillis());
+			gameEngine.tick();
+			if(showMetrics)
+				showMetrics();
+		} // End of onTick method
+	}; // End of gameClockListener anonymous inner class
+
+	/**
+	 * The monotonic time source of the gameClock.
+	 * The uptime is the time base used by the handler.
 	 */
-	private void updateTime() {
-		// Run the timerUpdateRunnable
-		handler.post(timerUpdateRunnable);
-	}
+	private GameClock.TimeSource uptimeTimeSource = new GameClock.TimeSource() 
+	{
+		@Override
+		public long now()
+		{
+			return SystemClock.uptimeMillis();
+		} // End of now method
+	}; // End of uptimeTimeSource anonymous inner class
+
 	/**
-	 * Update the time, reduce the secondsLeft, pause the game and show the
-	 * dialog box with the score and a button to play again
+	 * Runs the ticks of the gameClock on the handler at their deadline.
 	 */
-	private Runnable timerUpdateRunnable = new Runnable() 
+	private GameClock.Scheduler handlerScheduler = new GameClock.Scheduler() 
 	{
-		// Method run is run when timerUpdateRunnable is called by the handler 
 		@Override
-		public void run() {	
-			// Make sure countdownThread only does these processes
-			synchronized (countdownThread) 
-			{
-				// Decrement the seconds left
-				--secondsLeft;
-				// If the time runs out or the max score is taken
-				if(secondsLeft == 0 || score == NUM_OF_DISTINCT_CARDS)
-				{
-					// Pause the countdownThread
-					countdownThread.setWaiting(true);
-					// Set the secondsLeft to 30 again
-					secondsLeft = MAX_TIME;
-					// Call the showAlertDialog method that shows an AlertDialog
-						// Send the texts to be shown as arguments
-					showAlertDialog(
-							getString(R.string.play_again),
-							getString(R.string.score_text) +" "+ Integer.toString(score),
-							getString(R.string.play_again),alertDialogResetOnClickListener);
-				} // End of secondsLeft == 0 || score == NUM_OF_DISTINCT_CARDS If
-				// Show the remaining time
-				showTimeRemaining();
-			} // End of countdownThread synchronized
-		} // End of run method
-	}; // End of timerUpdateRunnable anonymous inner class
+		public void schedule(Runnable task, long time)
+		{
+			handler.postAtTime(task, time);
+		} // End of schedule method
+
+		@Override
+		public void cancel(Runnable task)
+		{
+			handler.removeCallbacks(task);
+		} // End of cancel method
+	}; // End of handlerScheduler anonymous inner class
 
 	/**
 	 * Show the time remaining to the user
 	 */
 	private void showTimeRemaining() 
 	{
-		// Set the text in the timeLeftValueTextView as the parsed integer secondsLeft field		
-		timeLeftValueTextView.setText(Integer.toString(secondsLeft));
+		// Write the secondsLeft of the gameEngine in the reused timeLeftText and show it
+		timeLeftText.set(gameEngine.getSecondsLeft());
+		timeLeftValueTextView.setText(timeLeftText.getChars(), timeLeftText.getStart(), timeLeftText.getLength());
 	} // End of showTimeRemaining method
 
+	/**
+	 * Shows the summary of the GameMetrics in the overlay of the boardView.
+	 * Only used in a debug build, it allocates the text each time.
+	 */
+	private void showMetrics() 
+	{
+		StringBuilder summary = new StringBuilder();
+		gameMetrics.appendSummary(summary);
+		summary.append("\ncard bytes ").append(boardView.getCardByteCount(0))
+				.append(" sample size ").append(boardView.getSampleSize());
+		boardView.setOverlayText(summary.toString());
+	} // End of showMetrics method
+
+	/**
+	 * Continues a game restored from a GameSnapshot.
+	 * The cards are not dealt again, the board is only drawn as it was.
+	 * The clock is paused and continues when the activity is resumed.
+	 */
+	private void continueGame() {
+		bindBoard();
+		showScore();
+		showTimeRemaining();
+		startGameRecord();
+		// The inputs before the snapshot are lost so the continued game can't be replayed
+		replayRecorder.cancel();
+		// The open cards were waiting for their reveal delay
+		if(gameEngine.isCardsOpen())
+			onTurnEnded();
+	} // End of continueGame method
+
+	/**
+	 * Writes the game in progress in the snapshot file.
+	 * When there is no game in progress or the activity is finishing, the file is deleted.
+	 */
+	private void writeSnapshotFile() {
+		if(!gameEngine.isRunning() || isFinishing())
+		{
+			deleteFile(SNAPSHOT_FILENAME);
+			return;
+		} // End of isRunning If
+		writeFile(SNAPSHOT_FILENAME, GameSnapshot.save(eventLog, gameClock));
+	} // End of writeSnapshotFile method
+
+	/**
+	 * Writes bytes in a private file of the application, replacing the file.
+	 * @param filename the name of the file
+	 * @param bytes the bytes to write
+	 */
+	private void writeFile(String filename, byte[] bytes) {
+		FileOutputStream stream = null;
+		try
+		{
+			stream = openFileOutput(filename, MODE_PRIVATE);
+			stream.write(bytes);
+		}
+		catch (IOException e) {
+			Log.e(LOG_NAME,"Error in writing "+filename+"."+e.getMessage());
+		}
+		finally {
+			if(stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e) {
+					Log.e(LOG_NAME,"Error in closing "+filename+"."+e.getMessage());
+				}
+			} // End of stream != null If
+		} // End of Try - Catch
+	} // End of writeFile method
+
+	/**
+	 * Reads a private file of the application, like the snapshot file written by writeSnapshotFile.
+	 * @param filename the name of the file
+	 * @return the bytes of the file or null if there is none
+	 */
+	private byte[] readFile(String filename) {
+		FileInputStream stream = null;
+		try
+		{
+			stream = openFileInput(filename);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[256];
+			int count;
+			while((count = stream.read(buffer)) != -1)
+				bytes.write(buffer, 0, count);
+			return bytes.toByteArray();
+		}
+		catch (FileNotFoundException e) {
+			// There is no game to continue or nothing was saved yet
+			return null;
+		}
+		catch (IOException e) {
+			Log.e(LOG_NAME,"Error in reading "+filename+"."+e.getMessage());
+			return null;
+		}
+		finally {
+			if(stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e) {
+					Log.e(LOG_NAME,"Error in closing "+filename+"."+e.getMessage());
+				}
+			} // End of stream != null If
+		} // End of Try - Catch
+	} // End of readFile method
+
+	/**
+	 * Writes the level and the statistics of the difficultyTuner so the
+	 * difficulty is kept when the application is started again.
+	 */
+	private void writeDifficultyFile() {
+		ByteBuffer buffer = ByteBuffer.allocate(difficultyTuner.getStateSize());
+		difficultyTuner.writeState(buffer);
+		writeFile(DIFFICULTY_FILENAME, buffer.array());
+	} // End of writeDifficultyFile method
+
+	/**
+	 * Reads the difficulty file written by writeDifficultyFile.
+	 * The first run, or an invalid file, starts at the level of the original game.
+	 */
+	private void readDifficultyFile() {
+		byte[] state = readFile(DIFFICULTY_FILENAME);
+		if(state == null)
+			return;
+		try
+		{
+			difficultyTuner.readState(ByteBuffer.wrap(state));
+		}
+		catch (IllegalArgumentException e) {
+			Log.e(LOG_NAME,"Error in reading the difficulty."+e.getMessage());
+		} // End of Try - Catch
+	} // End of readDifficultyFile method
+
+	/**
+	 * Makes sure the gameEngine has the board and the time of the level of the difficultyTuner.
+	 * A new level needs an engine of its own size and time.
+	 */
+	private void matchEngineToLevel() {
+		if(gameEngine.getMaxTime() != difficultyTuner.getMaxTime()
+				|| !gameEngine.getBoardConfig().equals(difficultyTuner.getBoardConfig()))
+			createGameEngine();
+	} // End of matchEngineToLevel method
+
+	/**
+	 * Creates the gameEngine of the level of the difficultyTuner and
+	 * gives it to the tapQueue, the boardView and the eventLog.
+	 */
+	private void createGameEngine() {
+		gameEngine = new GameEngine(difficultyTuner.getMaxTime(), difficultyTuner.getBoardConfig());	// instantiate the gameEngine
+		gameEngine.setListener(gameEngineListener);	// render the changes of the board
+		tapQueue = new TapQueue(gameEngine, TAP_QUEUE_CAPACITY);	// instantiate the tapQueue
+		tapQueue.setListener(tapQueueListener);	// show the results of the taps
+		boardView.setGameEngine(gameEngine);		// draw the board of the gameEngine
+		eventLog.attach(gameEngine);				// keep the changes of the game
+	} // End of createGameEngine method
+
 	/**
 	 * Initialize the game properties.
 	 * Gets called at the beginning of the game.
 	 */
 	private void initialize() {
-		// Make sure countdownThread only does these processes
-		synchronized (countdownThread) 
-		{
-			secondsLeft = MAX_TIME;				// set the seconds left to the maximum time at the start of each game
-			showTimeRemaining();				// show the time remaining to the user
-		} // End of countdownThread synchronized
-		// Call the methods that creates and sets the cards
-		setAllCardFilenames();
-        setGameCardFilenames();
-        shuffleCardFilenames();
-        createCards();
-        setImageButtons();
-
-		resumecountdownThread();
+		long startTime = System.nanoTime();
+		gameEngine.startGame();			// deal the cards and set the time to the maximum time
+		startGameRecord();
+		showTimeRemaining();				// show the time remaining to the user
+		// Call the method that sets the cards
+        bindBoard();
+
+		gameClock.start();
+		gameMetrics.getStartGameTimes().record(System.nanoTime() - startTime);
 	} // End of initialize method
 
 	/**
 	 * Resets the properties to be ready for the next game.
+	 * Has to be called on the UI thread.
 	 */
-	private void reset() 
+	public void reset() 
 	{		
+		long startTime = System.nanoTime();
+		// The level chosen when the last game ended gives the board and the time of this game
+		matchEngineToLevel();
+		// The cards of this game were dealt and decoded in the background during the last game
+			// unless the level changed
+		gameEngine.startGame();
+		startGameRecord();
+		tapQueue.clear();
+		handler.removeCallbacks(resolveCardsRunnable);
 		// Call the methods that only sets the cards
-		setAllCardFilenames();
-        setGameCardFilenames();
-        shuffleCardFilenames();
-        setImageButtons();
+        bindBoard();
         
-        // set the state of the properties needed in the game
-        	// the same as when they were initialized 
-        firstCard = true;
-        cardsOpen = false;
-        firstCardSelected = null;
-        // Set the score to 0 and show it to the user
-		score = 0;
+		// Show the score which is 0 again to the user
 		showScore();
-		messageTextView.setText(getText(R.string.pick_a_card));
+		showMessage(pickACardText);
 
-		resumecountdownThread();
+		gameClock.start();
+		gameMetrics.getStartGameTimes().record(System.nanoTime() - startTime);
 	} // End of reset method
 	
-	/**
-	 * Resumes the countdownThread.
-	 */
-	private void resumecountdownThread() {
-		// Make sure countdownThread only does these processes
-		synchronized (countdownThread) 
-		{
-			// Set the waiting property of the countdownThread to false.
-			countdownThread.setWaiting(false);
-			// And tell the thread to stop the wait.
-			countdownThread.notify();
-		} // End of countdownThread synchronized
-	} // End of resumecountdownThread method
-
 	/**
 	 * The AlertDialog that will be shown on the screen is created and shown.
 	 * 
@@ -477,95 +849,105 @@ public class MemoryGame extends Activity {
 			reset();
 		} // End of onClick method
 	}; // End of alertDialogResetOnClickListener anonymous inner class
-	
+
 	/**
-	 * Private class that extends Thread which is the class
-	 *  that runs processes that belongs to its own. This thread though
-	 *  is used as a count down by using the Thread.sleep method of the Thread class.
-	 * @author Aldrin Jerome Almacin
-	 *
+	 * The objects of MemoryGame that are kept when the activity is
+	 * recreated for a new configuration, like a rotation, so the zip of
+	 * the theme pack isn't indexed again and no thread is started again.
+	 * The ThemePack and the GameHistoryStore are opened in the background
+	 * on the threads of the AssetLoader, because the zip is indexed and
+	 * every record of the history is read when they are opened, then they
+	 * are given to the activity that is attached on the UI thread.
 	 */
-	private class CountdownThread extends Thread
+	private static class RetainedState
 	{
-		private boolean waiting; // States whether the thread is on pause
+		final AssetLoader assetLoader;		// Decodes the images of the next game and opens the pack and the history
+		final Handler handler;				// Gives the opened pack and history to the UI thread
+		MemoryGame activity;				// The activity the pack and the history are given to, null between two activities
+		ThemePack themePack;				// The faces of the cards, null until the pack is opened or if there is none
+		GameHistoryStore historyStore;		// The records of the finished games, null until it is opened
+		boolean released;					// States whether the last activity finished, a pack opened after it is closed
 
 		/**
-		 * Constructor of the CountdownThread object
-		 * waiting is set to false initially causing the Thread.sleep to run when
-		 * the thread is started.
+		 * The constructor of the RetainedState class, called on the UI thread
+		 * @param assetLoader The loader of the images
 		 */
-		public CountdownThread()
+		RetainedState(AssetLoader assetLoader)
 		{
-			waiting = false;
+			this.assetLoader = assetLoader;
+			handler = new Handler();
 		} // End of Constructor
-		
-		/**
-		 * Getter of the waiting field
-		 * @return the wait state of the Thread
-		 */
-		public boolean getWaiting() 
-		{
-			return waiting;
-		} // End of the getWaiting getter
 
 		/**
-		 * Setter of the waiting field
-		 * @param waiting the new state of the wait
+		 * Opens the ThemePack and the GameHistoryStore of the application in the background.
+		 * The playing cards of the assets folder are used when there is no pack or it can't be read.
+		 * A game that ends before the store is open isn't saved in it.
+		 * @param context the application context
 		 */
-		public void setWaiting(boolean waiting) 
+		void open(final Context context)
 		{
-			this.waiting = waiting;
-		} // End of the getWaiting setter
-		
-		/**
-		 * This method will be run when the Thread is started.
-		 */
-		public void run()
-		{
-			// This loop will be run forever by this Thread.
-			// It doesn't need to stop because it can only
-				// pause and run again
-			while(true)
+			assetLoader.execute(new Runnable()
 			{
-				// If the thread is not paused then
-					// Update the time and sleep for a second then 
-					// update again.
-				// Repeat the same process until the thread gets paused.
-				// In which the waiting will be set to true.
-				if(!getWaiting())
+				@Override
+				public void run()
 				{
-					try 
-					{
-						updateTime();
-						Thread.sleep(1000);
-					} 
-					catch (InterruptedException e) 
+					File file = new File(context.getFilesDir(), THEME_PACK_FILENAME);
+					if(!file.exists())
+						return;
+					try
 					{
-						Log.e(LOG_NAME, "An error occured while trying to make the thread sleep."+e.getMessage());
-						e.printStackTrace();
+						final ThemePack pack = new ThemePack(file);
+						handler.post(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								if(released)
+								{
+									closeThemePack(pack);
+									return;
+								} // End of released If
+								themePack = pack;
+								if(activity != null)
+									activity.onThemePackOpened(pack);
+							} // End of run method
+						}); // End of Runnable anonymous inner class
 					}
-					catch (Exception e)
-					{
-						Log.e(LOG_NAME, "An error occured while trying to make the thread sleep."+e.getMessage());
-						e.printStackTrace();
-					} // End of try - catch
-				}
-				else
+					catch (IOException e) {
+						Log.e(LOG_NAME,"Error in opening the theme pack."+e.getMessage());
+					} // End of Try - Catch
+				} // End of run method
+			}); // End of Runnable anonymous inner class
+			assetLoader.execute(new Runnable()
+			{
+				@Override
+				public void run()
 				{
-					try 
+					final GameHistoryStore store = GameHistoryStore.getInstance(context);
+					handler.post(new Runnable()
 					{
-						synchronized (this) 
+						@Override
+						public void run()
 						{
-							this.wait();
-						} // End of synchronized
-					} catch (InterruptedException e) 
-					{
-						e.printStackTrace();
-					} // End of try - catch
-				} // End of waiting if else
-			} // End of while true loop
-		} // End of run method
-	} // End of CountdownThread private class
+							historyStore = store;
+							if(activity != null)
+								activity.historyStore = store;
+						} // End of run method
+					}); // End of Runnable anonymous inner class
+				} // End of run method
+			}); // End of Runnable anonymous inner class
+		} // End of open method
+
+		/**
+		 * The last activity finished: stops the loader and closes the pack.
+		 */
+		void release()
+		{
+			released = true;
+			assetLoader.shutdown();
+			closeThemePack(themePack);
+		} // End of release method
+	} // End of RetainedState class
 } // End of MemoryGame class
 
 
@@ -0,0 +1,109 @@
+package com.raidrin.memorygame;
+
+/**
+ * A Player that remembers the last cards it has seen.
+ * When it remembers a whole match it flips it, when it remembers a
+ * card equal to the one it just flipped it flips that one, and
+ * otherwise it flips a card it doesn't remember. A player with a
+ * memory as big as the board never forgets and plays perfectly.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class MemoryPlayer implements Player
+{
+	public static final int PERFECT_MEMORY = Integer.MAX_VALUE;	// The memory of a player that never forgets
+
+	private final int memorySize;		// The most cards the player remembers
+	private final RandomSource random;	// Picks the cards the player doesn't remember
+	private final int[] cardCounts;		// Reused to count the remembered cards of each Deck card
+	private GameEngine gameEngine;		// The engine of the game being played
+	private int[] knownCards;			// The Deck card remembered at each index, -1 if none
+	private boolean[] remembered;		// States whether the card at each index is remembered
+	private int[] memory;				// The ring buffer of the remembered indexes, oldest first
+	private int memoryHead;				// The index in memory of the oldest remembered index
+	private int memoryCount;			// The count of remembered indexes
+
+	/**
+	 * The constructor of the MemoryPlayer class
+	 * @param memorySize The most cards the player remembers, PERFECT_MEMORY to never forget
+	 * @param random The source of the random numbers used to pick the cards the player doesn't remember
+	 */
+	public MemoryPlayer(int memorySize, RandomSource random)
+	{
+		if(memorySize < 1)
+			throw new IllegalArgumentException("The memory must hold at least one card.");
+		this.memorySize = memorySize;
+		this.random = random;
+		cardCounts = new int[Deck.SIZE];
+	} // End of Constructor
+
+	@Override
+	public void startGame(GameEngine gameEngine)
+	{
+		this.gameEngine = gameEngine;
+		int cardCount = gameEngine.getCardCount();
+		if(knownCards == null || knownCards.length != cardCount)
+		{
+			knownCards = new int[cardCount];
+			remembered = new boolean[cardCount];
+			memory = new int[Math.min(memorySize, cardCount)];
+		} // End of knownCards == null If
+		for(int i=0;i<cardCount;i++)
+		{
+			knownCards[i] = -1;
+			remembered[i] = false;
+		} // End of cardCount for loop
+		memoryHead = 0;
+		memoryCount = 0;
+	} // End of startGame method
+
+	@Override
+	public int chooseCard(int[] openIndexes, int openCount)
+	{
+		int cardCount = gameEngine.getCardCount();
+		if(openCount == 0)
+		{
+			// Flip the first card of a whole match that's remembered
+			int matchCount = gameEngine.getBoardConfig().getMatchCount();
+			for(int card=0;card<cardCounts.length;card++)
+				cardCounts[card] = 0;
+			for(int i=0;i<cardCount;i++)
+				if(knownCards[i] != -1 && !gameEngine.isRemoved(i))
+					cardCounts[knownCards[i]]++;
+			for(int i=0;i<cardCount;i++)
+				if(knownCards[i] != -1 && !gameEngine.isRemoved(i) && cardCounts[knownCards[i]] >= matchCount)
+					return i;
+		}
+		else
+		{
+			// Flip a remembered card equal to the open ones
+			int openCard = gameEngine.getCard(openIndexes[0]);
+			for(int i=0;i<cardCount;i++)
+				if(knownCards[i] == openCard && !gameEngine.isRemoved(i) && !gameEngine.isFaceUp(i))
+					return i;
+		} // End of openCount == 0 If - Else
+		// Learn a new card
+		return RandomPlayer.pickHiddenCard(gameEngine, random, remembered);
+	} // End of chooseCard method
+
+	@Override
+	public void onCardSeen(int index, int card)
+	{
+		if(!remembered[index])
+		{
+			// Forget the oldest card to make room for this one
+			if(memoryCount == memory.length)
+			{
+				int forgotten = memory[memoryHead];
+				remembered[forgotten] = false;
+				knownCards[forgotten] = -1;
+				memoryHead = (memoryHead + 1) % memory.length;
+				memoryCount--;
+			} // End of memoryCount == memory.length If
+			memory[(memoryHead + memoryCount) % memory.length] = index;
+			memoryCount++;
+			remembered[index] = true;
+		} // End of !remembered If
+		knownCards[index] = card;
+	} // End of onCardSeen method
+}
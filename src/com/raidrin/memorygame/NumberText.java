@@ -0,0 +1,78 @@
+package com.raidrin.memorygame;
+
+/**
+ * A reusable buffer that holds the digits of an int.
+ * Integer.toString makes a new String each time, so the score and the
+ * time are written in this buffer instead and shown with
+ * TextView.setText(char[], int, int), which doesn't allocate.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class NumberText
+{
+	private static final int MAX_LENGTH = 11;	// The length of Integer.MIN_VALUE
+
+	private final char[] chars;	// The digits, written from the end of the buffer
+	private int start;			// The index of the first char of the number
+	private int value;			// The number in the buffer
+
+	/**
+	 * The constructor of the NumberText class, the buffer starts with 0.
+	 */
+	public NumberText()
+	{
+		chars = new char[MAX_LENGTH];
+		set(0);
+	} // End of Constructor
+
+	/**
+	 * Writes a number in the buffer.
+	 * @param value the number to write
+	 */
+	public void set(int value)
+	{
+		this.value = value;
+		start = chars.length;
+		// The digits are taken from a negative number so Integer.MIN_VALUE doesn't overflow
+		int remaining = (value < 0)?value:-value;
+		do
+		{
+			chars[--start] = (char)('0' - remaining % 10);
+			remaining /= 10;
+		} while(remaining != 0);
+		if(value < 0)
+			chars[--start] = '-';
+	} // End of set method
+
+	/**
+	 * @return the number in the buffer
+	 */
+	public int getValue()
+	{
+		return value;
+	} // End of getValue method
+
+	/**
+	 * @return the buffer that holds the digits, only valid from getStart for getLength chars
+	 */
+	public char[] getChars()
+	{
+		return chars;
+	} // End of getChars method
+
+	/**
+	 * @return the index of the first char of the number in the buffer
+	 */
+	public int getStart()
+	{
+		return start;
+	} // End of getStart method
+
+	/**
+	 * @return the count of chars of the number
+	 */
+	public int getLength()
+	{
+		return chars.length - start;
+	} // End of getLength method
+}
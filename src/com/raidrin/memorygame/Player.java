@@ -0,0 +1,33 @@
+package com.raidrin.memorygame;
+
+/**
+ * A model of a player used by the Simulator.
+ * A player only learns a card when it's flipped face up, the same as
+ * a person playing the game, and picks the next card to flip from what
+ * it remembers.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public interface Player
+{
+	/**
+	 * A new game started, everything seen before is forgotten.
+	 * @param gameEngine the engine of the game
+	 */
+	void startGame(GameEngine gameEngine);
+
+	/**
+	 * Picks the next card to flip.
+	 * @param openIndexes the indexes of the cards already flipped in this turn
+	 * @param openCount the count of cards already flipped in this turn
+	 * @return the index of a card that isn't removed and isn't open
+	 */
+	int chooseCard(int[] openIndexes, int openCount);
+
+	/**
+	 * A card was flipped face up.
+	 * @param index the index of the card on the board
+	 * @param card the Deck card that was seen
+	 */
+	void onCardSeen(int index, int card);
+}
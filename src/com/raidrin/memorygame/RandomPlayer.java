@@ -0,0 +1,95 @@
+package com.raidrin.memorygame;
+
+/**
+ * A Player that remembers nothing and flips a random card each time.
+ * Gives the lowest scores a board can get, which is the baseline the
+ * other players are compared against.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class RandomPlayer implements Player
+{
+	private final RandomSource random;	// Picks the cards
+	private GameEngine gameEngine;		// The engine of the game being played
+
+	/**
+	 * The constructor of the RandomPlayer class
+	 * @param random The source of the random numbers used to pick the cards
+	 */
+	public RandomPlayer(RandomSource random)
+	{
+		this.random = random;
+	} // End of Constructor
+
+	@Override
+	public void startGame(GameEngine gameEngine)
+	{
+		this.gameEngine = gameEngine;
+	} // End of startGame method
+
+	@Override
+	public int chooseCard(int[] openIndexes, int openCount)
+	{
+		return pickHiddenCard(gameEngine, random, null);
+	} // End of chooseCard method
+
+	@Override
+	public void onCardSeen(int index, int card)
+	{
+		// Nothing is remembered
+	} // End of onCardSeen method
+
+	/**
+	 * Picks a random card that isn't removed or face up, each one with the same chance.
+	 * @param gameEngine the engine of the game
+	 * @param random the source of the random numbers
+	 * @param excluded the cards that are only picked when no other card can be, indexed by their index on the board, can be null
+	 * @return the index of the card or -1 if every card is removed or face up
+	 */
+	static int pickHiddenCard(GameEngine gameEngine, RandomSource random, boolean[] excluded)
+	{
+		int count = countHiddenCards(gameEngine, excluded);
+		if(count == 0)
+		{
+			// Every card that can be flipped is excluded so any of them is picked
+			excluded = null;
+			count = countHiddenCards(gameEngine, null);
+			if(count == 0)
+				return -1;
+		} // End of count == 0 If
+		int pick = random.nextInt(count);
+		for(int index=0;index<gameEngine.getCardCount();index++)
+		{
+			if(isPickable(gameEngine, excluded, index) && pick-- == 0)
+				return index;
+		} // End of getCardCount for loop
+		return -1;
+	} // End of pickHiddenCard method
+
+	/**
+	 * Counts the cards that can be picked.
+	 * @param gameEngine the engine of the game
+	 * @param excluded the cards that are not counted, can be null
+	 * @return the count of cards that aren't removed, face up or excluded
+	 */
+	private static int countHiddenCards(GameEngine gameEngine, boolean[] excluded)
+	{
+		int count = 0;
+		for(int index=0;index<gameEngine.getCardCount();index++)
+			if(isPickable(gameEngine, excluded, index))
+				count++;
+		return count;
+	} // End of countHiddenCards method
+
+	/**
+	 * Checks if a card can be picked.
+	 * @param gameEngine the engine of the game
+	 * @param excluded the cards that can't be picked, can be null
+	 * @param index the index of the card on the board
+	 * @return true if the card isn't removed, face up or excluded
+	 */
+	private static boolean isPickable(GameEngine gameEngine, boolean[] excluded, int index)
+	{
+		return !gameEngine.isRemoved(index) && !gameEngine.isFaceUp(index) && (excluded == null || !excluded[index]);
+	} // End of isPickable method
+}
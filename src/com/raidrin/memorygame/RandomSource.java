@@ -0,0 +1,22 @@
+package com.raidrin.memorygame;
+
+/**
+ * The source of the random numbers used to deal and shuffle the cards.
+ * Games can be reproduced by giving them a seeded RandomSource.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public interface RandomSource
+{
+	/**
+	 * Gets a uniformly distributed random int.
+	 * @param bound the upper bound, exclusive, must be positive
+	 * @return a random int from 0 to bound - 1
+	 */
+	int nextInt(int bound);
+
+	/**
+	 * @return the next random long, used as the seed of a deal
+	 */
+	long nextLong();
+}
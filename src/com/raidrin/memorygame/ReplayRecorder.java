@@ -0,0 +1,188 @@
+package com.raidrin.memorygame;
+
+/**
+ * Records a game as a compact binary log that the Replayer can play again.
+ * The log holds the seed the game was dealt from and every input given
+ * to the game in order: the taps, the delayed resolves of the open cards
+ * and the ticks of the clock, each with the milliseconds since the input
+ * before it. The final score is written at the end so a replay can be
+ * checked against it. A tap takes about three bytes.
+ *
+ * Format: byte MAGIC, byte VERSION, long seed, byte rows, byte columns,
+ * byte match count, short maxTime, then the events. Each event is a type
+ * byte, a card index byte for a TAP, and the time since the last event as
+ * an unsigned variable length int of 7 bits per byte. The END event is
+ * followed by the short final score.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class ReplayRecorder
+{
+	static final byte MAGIC = 'R';		// The first byte of a log
+	static final byte VERSION = 1;		// The version of the format
+	static final int HEADER_SIZE = 15;	// The byte size of the header
+	static final byte TAP = 0;		// A card was tapped
+	static final byte RESOLVE = 1;	// The open cards were resolved after their reveal delay
+	static final byte TICK = 2;		// The clock ticked
+	static final byte END = 3;		// The game is over
+
+	private static final int INITIAL_CAPACITY = 256;	// The byte size the log starts with
+
+	private byte[] log;			// The bytes of the log
+	private int length;			// The count of bytes written in the log
+	private long lastTime;		// The time of the last event
+	private boolean recording;	// States whether a game is being recorded
+
+	/**
+	 * The constructor of the ReplayRecorder class
+	 */
+	public ReplayRecorder()
+	{
+		log = new byte[INITIAL_CAPACITY];
+	} // End of Constructor
+
+	/**
+	 * Starts recording a game that was just started.
+	 * @param gameEngine the engine of the game
+	 * @param time the time the game started at in milliseconds
+	 */
+	public void start(GameEngine gameEngine, long time)
+	{
+		BoardConfig boardConfig = gameEngine.getBoardConfig();
+		long seed = gameEngine.getGameSeed();
+		length = 0;
+		writeByte(MAGIC);
+		writeByte(VERSION);
+		for(int shift=56;shift>=0;shift-=8)
+			writeByte((int)(seed >>> shift));
+		writeByte(boardConfig.getRows());
+		writeByte(boardConfig.getColumns());
+		writeByte(boardConfig.getMatchCount());
+		writeShort(gameEngine.getMaxTime());
+		lastTime = time;
+		recording = true;
+	} // End of start method
+
+	/**
+	 * Stops recording without finishing the log.
+	 * Used for a game that can't be replayed, like a game continued from a snapshot.
+	 */
+	public void cancel()
+	{
+		recording = false;
+	} // End of cancel method
+
+	/**
+	 * Records a tap given to the TapQueue.
+	 * @param index the index of the card on the board
+	 * @param time the time of the tap in milliseconds
+	 */
+	public void onTap(int index, long time)
+	{
+		if(!recording)
+			return;
+		writeByte(TAP);
+		writeByte(index);
+		writeTime(time);
+	} // End of onTap method
+
+	/**
+	 * Records a resolve of the open cards after their reveal delay.
+	 * @param time the time of the resolve in milliseconds
+	 */
+	public void onResolve(long time)
+	{
+		if(!recording)
+			return;
+		writeByte(RESOLVE);
+		writeTime(time);
+	} // End of onResolve method
+
+	/**
+	 * Records a tick of the clock.
+	 * @param time the time of the tick in milliseconds
+	 */
+	public void onTick(long time)
+	{
+		if(!recording)
+			return;
+		writeByte(TICK);
+		writeTime(time);
+	} // End of onTick method
+
+	/**
+	 * Finishes the log with the final score of the game.
+	 * @param score the final score
+	 * @param time the time the game ended at in milliseconds
+	 * @return false if no game was being recorded
+	 */
+	public boolean finish(int score, long time)
+	{
+		if(!recording)
+			return false;
+		writeByte(END);
+		writeTime(time);
+		writeShort(score);
+		recording = false;
+		return true;
+	} // End of finish method
+
+	/**
+	 * @return true if a game is being recorded
+	 */
+	public boolean isRecording()
+	{
+		return recording;
+	} // End of isRecording method
+
+	/**
+	 * @return a copy of the log
+	 */
+	public byte[] toByteArray()
+	{
+		byte[] copy = new byte[length];
+		System.arraycopy(log, 0, copy, 0, length);
+		return copy;
+	} // End of toByteArray method
+
+	/**
+	 * Writes the time since the last event, 7 bits in each byte.
+	 * @param time the time of the event in milliseconds
+	 */
+	private void writeTime(long time)
+	{
+		long delta = Math.max(0, time - lastTime);
+		lastTime = time;
+		while(delta >= 0x80)
+		{
+			writeByte((int)(delta & 0x7f) | 0x80);
+			delta >>>= 7;
+		} // End of delta >= 0x80 while loop
+		writeByte((int)delta);
+	} // End of writeTime method
+
+	/**
+	 * Writes a short at the end of the log.
+	 * @param value the value of the short
+	 */
+	private void writeShort(int value)
+	{
+		writeByte(value >>> 8);
+		writeByte(value);
+	} // End of writeShort method
+
+	/**
+	 * Writes a byte at the end of the log, the log grows when it's full.
+	 * @param value the value of the byte
+	 */
+	private void writeByte(int value)
+	{
+		if(length == log.length)
+		{
+			byte[] grown = new byte[log.length * 2];
+			System.arraycopy(log, 0, grown, 0, length);
+			log = grown;
+		} // End of length == log.length If
+		log[length++] = (byte)value;
+	} // End of writeByte method
+}
@@ -0,0 +1,118 @@
+package com.raidrin.memorygame;
+
+/**
+ * Plays a game recorded by the ReplayRecorder again without any UI.
+ * The game is dealt again from its seed and the recorded inputs are
+ * given to a GameEngine through a TapQueue as fast as the CPU can, the
+ * times between them are skipped. The score of the replay must be the
+ * same as the recorded score, so a log can be used to check a reported
+ * score or as a regression test and a benchmark of the engine.
+ * The engine is kept between replays of the same kind of game so
+ * replaying many logs doesn't allocate.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class Replayer
+{
+	private static final int TAP_QUEUE_CAPACITY = 8;	// The most taps that can wait to be given to the engine
+
+	private GameEngine gameEngine;	// The engine the last log was replayed on
+	private TapQueue tapQueue;		// The taps in front of the gameEngine
+	private int eventCount;			// The count of events in the last replay
+
+	/**
+	 * Replays a log.
+	 * @param log the log made by a ReplayRecorder
+	 * @return the score at the end of the replay
+	 * @throws IllegalArgumentException if the log is invalid or not finished
+	 */
+	public int replay(byte[] log)
+	{
+		if(log.length < ReplayRecorder.HEADER_SIZE || log[0] != ReplayRecorder.MAGIC || log[1] != ReplayRecorder.VERSION)
+			throw new IllegalArgumentException("The log is not a replay.");
+		long seed = 0;
+		for(int i=2;i<10;i++)
+			seed = (seed << 8) | (log[i] & 0xff);
+		BoardConfig boardConfig = new BoardConfig(log[10] & 0xff, log[11] & 0xff, log[12] & 0xff);
+		int maxTime = ((log[13] & 0xff) << 8) | (log[14] & 0xff);
+		// Only create an engine when the kind of game changed
+		if(gameEngine == null || gameEngine.getMaxTime() != maxTime || !gameEngine.getBoardConfig().equals(boardConfig))
+		{
+			gameEngine = new GameEngine(maxTime, boardConfig, new SplitMixRandom(0));
+			tapQueue = new TapQueue(gameEngine, TAP_QUEUE_CAPACITY);
+		} // End of gameEngine == null If
+		tapQueue.clear();
+		gameEngine.startGame(seed);
+		eventCount = 0;
+
+		int position = ReplayRecorder.HEADER_SIZE;
+		while(position < log.length)
+		{
+			byte type = log[position++];
+			eventCount++;
+			switch(type)
+			{
+				case ReplayRecorder.TAP:
+					tapQueue.offer(log[position++] & 0xff);
+					tapQueue.drain();
+					break;
+				case ReplayRecorder.RESOLVE:
+					// The taps that waited for the open cards are given to the engine after them, like MemoryGame does
+					gameEngine.resolve();
+					tapQueue.drain();
+					break;
+				case ReplayRecorder.TICK:
+					gameEngine.tick();
+					break;
+				case ReplayRecorder.END:
+					return gameEngine.getScore();
+				default:
+					throw new IllegalArgumentException("Unknown event " + type + " at " + (position - 1) + ".");
+			} // End of type switch
+			position = skipTime(log, position);
+		} // End of position < log.length while loop
+		throw new IllegalArgumentException("The log is not finished.");
+	} // End of replay method
+
+	/**
+	 * Replays a log and checks its score.
+	 * @param log the log made by a ReplayRecorder
+	 * @return true if the replay ends with the recorded score
+	 * @throws IllegalArgumentException if the log is invalid or not finished
+	 */
+	public boolean verify(byte[] log)
+	{
+		return replay(log) == getRecordedScore(log);
+	} // End of verify method
+
+	/**
+	 * @return the count of events in the last replay
+	 */
+	public int getEventCount()
+	{
+		return eventCount;
+	} // End of getEventCount method
+
+	/**
+	 * Gets the final score written at the end of a log.
+	 * @param log the log made by a ReplayRecorder
+	 * @return the recorded score
+	 */
+	public static int getRecordedScore(byte[] log)
+	{
+		return ((log[log.length - 2] & 0xff) << 8) | (log[log.length - 1] & 0xff);
+	} // End of getRecordedScore method
+
+	/**
+	 * Skips the time of an event, the replay doesn't wait.
+	 * @param log the log
+	 * @param position the position of the time in the log
+	 * @return the position after the time
+	 */
+	private static int skipTime(byte[] log, int position)
+	{
+		while(position < log.length && (log[position] & 0x80) != 0)
+			position++;
+		return position + 1;
+	} // End of skipTime method
+}
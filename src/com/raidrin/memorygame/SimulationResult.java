@@ -0,0 +1,128 @@
+package com.raidrin.memorygame;
+
+/**
+ * The distributions of the scores and of the times of the games played by the Simulator.
+ * Results of games played on different threads are merged with add.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class SimulationResult
+{
+	private final int[] scoreCounts;	// The count of games that ended with each score
+	private final int[] clearCounts;	// The count of cleared games for each count of seconds used
+	private long gameCount;				// The count of games played
+	private long tapCount;				// The count of taps of all the games
+
+	/**
+	 * The constructor of the SimulationResult class
+	 * @param matchTotal The highest score of a game
+	 * @param maxTime The maximum time of a game in seconds
+	 */
+	public SimulationResult(int matchTotal, int maxTime)
+	{
+		scoreCounts = new int[matchTotal + 1];
+		clearCounts = new int[maxTime + 1];
+	} // End of Constructor
+
+	/**
+	 * Counts a game that ended.
+	 * @param score the final score
+	 * @param clearSeconds the seconds used to match all the cards, -1 if the time ran out
+	 * @param taps the count of taps of the game
+	 */
+	public void addGame(int score, int clearSeconds, int taps)
+	{
+		scoreCounts[score]++;
+		if(clearSeconds >= 0)
+			clearCounts[clearSeconds]++;
+		gameCount++;
+		tapCount += taps;
+	} // End of addGame method
+
+	/**
+	 * Adds all the games of another result.
+	 * @param other a result of the same BoardConfig and maximum time
+	 */
+	public void add(SimulationResult other)
+	{
+		for(int i=0;i<scoreCounts.length;i++)
+			scoreCounts[i] += other.scoreCounts[i];
+		for(int i=0;i<clearCounts.length;i++)
+			clearCounts[i] += other.clearCounts[i];
+		gameCount += other.gameCount;
+		tapCount += other.tapCount;
+	} // End of add method
+
+	/**
+	 * @return the count of games played
+	 */
+	public long getGameCount()
+	{
+		return gameCount;
+	} // End of getGameCount method
+
+	/**
+	 * @return the count of taps of all the games
+	 */
+	public long getTapCount()
+	{
+		return tapCount;
+	} // End of getTapCount method
+
+	/**
+	 * Gets the count of games that ended with a score.
+	 * @param score the score, from 0 to the match total
+	 * @return the count of games
+	 */
+	public int getScoreCount(int score)
+	{
+		return scoreCounts[score];
+	} // End of getScoreCount method
+
+	/**
+	 * Gets the count of games that matched all the cards in a count of seconds.
+	 * @param seconds the seconds used, from 0 to the maximum time
+	 * @return the count of games
+	 */
+	public int getClearCount(int seconds)
+	{
+		return clearCounts[seconds];
+	} // End of getClearCount method
+
+	/**
+	 * @return the mean score of the games
+	 */
+	public double getMeanScore()
+	{
+		long total = 0;
+		for(int score=0;score<scoreCounts.length;score++)
+			total += (long)score * scoreCounts[score];
+		return (gameCount == 0)?0:(double)total / gameCount;
+	} // End of getMeanScore method
+
+	/**
+	 * @return the part of the games that matched all the cards, from 0 to 1
+	 */
+	public double getClearRate()
+	{
+		return (gameCount == 0)?0:(double)scoreCounts[scoreCounts.length - 1] / gameCount;
+	} // End of getClearRate method
+
+	/**
+	 * Writes both distributions, one line for each score and each count of seconds.
+	 * @param builder the builder where the distributions are written
+	 */
+	public void appendDistributions(StringBuilder builder)
+	{
+		builder.append("games ").append(gameCount).append(", mean score ")
+				.append(String.format("%.3f", getMeanScore())).append(", cleared ")
+				.append(String.format("%.2f%%", getClearRate() * 100)).append('\n');
+		builder.append("score        games\n");
+		for(int score=0;score<scoreCounts.length;score++)
+			builder.append(String.format("%5d %12d\n", score, scoreCounts[score]));
+		builder.append("clear seconds        games\n");
+		for(int seconds=0;seconds<clearCounts.length;seconds++)
+			if(clearCounts[seconds] != 0)
+				builder.append(String.format("%13d %12d\n", seconds, clearCounts[seconds]));
+	} // End of appendDistributions method
+}
@@ -0,0 +1,203 @@
+package com.raidrin.memorygame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many games with a model of a Player and counts their scores and times.
+ * Time is simulated: each tap takes tapMillis, the last card of a turn is
+ * shown for the reveal delay before the open cards are resolved, and the
+ * clock ticks every second of simulated time, so a game takes microseconds.
+ * The games are split in chunks and each chunk runs on its own thread with
+ * its own GameEngine, Player and generators seeded from the master seed.
+ * The threads share nothing until their results are merged, so the games
+ * per second grow with the count of cores, and the same master seed gives
+ * the same result with any count of threads.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class Simulator
+{
+	public static final long CARD_REVEAL_DELAY = 300;	// Milliseconds that the last card is shown before the open cards are resolved
+	private static final long TICK_MILLIS = 1000;		// Milliseconds between the ticks of the clock
+	private static final long CHUNK_SIZE = 4096;		// The count of games played by each task
+
+	/**
+	 * Creates the Players of the Simulator, one for each thread.
+	 */
+	public interface PlayerFactory
+	{
+		/**
+		 * Creates a Player.
+		 * @param random the source of the random numbers of the player
+		 * @return the new player
+		 */
+		Player createPlayer(RandomSource random);
+	} // End of PlayerFactory interface
+
+	private final BoardConfig boardConfig;	// The size of the board and the count of cards of a match
+	private final int maxTime;				// The maximum time of each game in seconds
+	private final long tapMillis;			// The simulated milliseconds between two taps
+	private final PlayerFactory playerFactory;	// Creates the players
+
+	/**
+	 * The constructor of the Simulator class
+	 * @param boardConfig The size of the board and the count of cards of a match
+	 * @param maxTime The maximum time of each game in seconds
+	 * @param tapMillis The simulated milliseconds between two taps
+	 * @param playerFactory Creates the players
+	 */
+	public Simulator(BoardConfig boardConfig, int maxTime, long tapMillis, PlayerFactory playerFactory)
+	{
+		if(tapMillis < 1)
+			throw new IllegalArgumentException("A tap must take at least a millisecond.");
+		this.boardConfig = boardConfig;
+		this.maxTime = maxTime;
+		this.tapMillis = tapMillis;
+		this.playerFactory = playerFactory;
+	} // End of Constructor
+
+	/**
+	 * Plays games on a pool of threads.
+	 * @param gameCount the count of games to play
+	 * @param seed the master seed, the same seed gives the same result
+	 * @param threadCount the count of threads
+	 * @return the merged result of all the games
+	 * @throws InterruptedException if the thread is interrupted while waiting for the games
+	 */
+	public SimulationResult run(long gameCount, long seed, int threadCount) throws InterruptedException
+	{
+		// Every chunk gets its seeds from the master seed in order so the threads don't change the result
+		SplitMixRandom seeds = new SplitMixRandom(seed);
+		List<Callable<SimulationResult>> chunks = new ArrayList<Callable<SimulationResult>>();
+		for(long start=0;start<gameCount;start+=CHUNK_SIZE)
+		{
+			final long count = Math.min(CHUNK_SIZE, gameCount - start);
+			final long dealSeed = seeds.nextLong();
+			final long playerSeed = seeds.nextLong();
+			chunks.add(new Callable<SimulationResult>()
+			{
+				@Override
+				public SimulationResult call()
+				{
+					return runChunk(count, dealSeed, playerSeed);
+				}
+			});
+		} // End of gameCount for loop
+
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try
+		{
+			SimulationResult result = new SimulationResult(boardConfig.getMatchTotal(), maxTime);
+			for(Future<SimulationResult> future : executor.invokeAll(chunks))
+				result.add(future.get());
+			return result;
+		}
+		catch(ExecutionException e)
+		{
+			throw new IllegalStateException("A simulated game failed.", e.getCause());
+		}
+		finally
+		{
+			executor.shutdown();
+		} // End of try - catch - finally
+	} // End of run method
+
+	/**
+	 * Plays games on the calling thread.
+	 * @param gameCount the count of games to play
+	 * @param dealSeed the seed the games are dealt from
+	 * @param playerSeed the seed of the random numbers of the player
+	 * @return the result of the games
+	 */
+	public SimulationResult runChunk(long gameCount, long dealSeed, long playerSeed)
+	{
+		GameEngine gameEngine = new GameEngine(maxTime, boardConfig, new SplitMixRandom(dealSeed));
+		Player player = playerFactory.createPlayer(new SplitMixRandom(playerSeed));
+		Game game = new Game(gameEngine, player);
+		SimulationResult result = new SimulationResult(boardConfig.getMatchTotal(), maxTime);
+		for(long i=0;i<gameCount;i++)
+			game.play(result);
+		return result;
+	} // End of runChunk method
+
+	/**
+	 * The state of the games played on one thread.
+	 */
+	private class Game
+	{
+		private final GameEngine gameEngine;	// The engine of the games
+		private final Player player;			// The player of the games
+		private final int[] openIndexes;		// The indexes of the cards open in this turn
+		private long time;		// The simulated milliseconds since the start of the game
+		private long nextTick;	// The simulated time of the next tick
+		private int ticks;		// The count of ticks of the game
+
+		Game(GameEngine gameEngine, Player player)
+		{
+			this.gameEngine = gameEngine;
+			this.player = player;
+			openIndexes = new int[boardConfig.getMatchCount()];
+		}
+
+		/**
+		 * Plays one game and adds it to a result.
+		 * @param result the result of the games
+		 */
+		void play(SimulationResult result)
+		{
+			gameEngine.startGame();
+			player.startGame(gameEngine);
+			time = 0;
+			nextTick = TICK_MILLIS;
+			ticks = 0;
+			int openCount = 0;
+			int taps = 0;
+			while(advance(tapMillis))
+			{
+				// Every card is matched, wait for the clock to end the game
+				if(gameEngine.getScore() == boardConfig.getMatchTotal())
+					continue;
+				int index = player.chooseCard(openIndexes, openCount);
+				GameEngine.FlipResult flipResult = gameEngine.flip(index);
+				taps++;
+				if(flipResult == GameEngine.FlipResult.IGNORED || flipResult == GameEngine.FlipResult.SAME_CARD)
+					throw new IllegalStateException("The player flipped the card " + index + " that can't be flipped.");
+				player.onCardSeen(index, gameEngine.getCard(index));
+				openIndexes[openCount++] = index;
+				if(flipResult == GameEngine.FlipResult.MATCH || flipResult == GameEngine.FlipResult.MISMATCH)
+				{
+					// The game can end while the last card is shown
+					if(!advance(CARD_REVEAL_DELAY))
+						break;
+					gameEngine.resolve();
+					openCount = 0;
+				} // End of MATCH || MISMATCH If
+			} // End of advance while loop
+			int score = gameEngine.getScore();
+			result.addGame(score, (score == boardConfig.getMatchTotal())?ticks:-1, taps);
+		} // End of play method
+
+		/**
+		 * Moves the simulated time forward and ticks the clock of each second that passed.
+		 * @param millis the milliseconds that passed
+		 * @return true if the game is still running
+		 */
+		boolean advance(long millis)
+		{
+			time += millis;
+			while(time >= nextTick && gameEngine.isRunning())
+			{
+				gameEngine.tick();
+				ticks++;
+				nextTick += TICK_MILLIS;
+			} // End of time >= nextTick while loop
+			return gameEngine.isRunning();
+		} // End of advance method
+	} // End of Game class
+}
@@ -0,0 +1,106 @@
+package com.raidrin.memorygame;
+
+/**
+ * A small, fast and seedable RandomSource based on the SplitMix64
+ * generator. The same seed always gives the same numbers so a game
+ * can be replayed, and split gives an independent generator that can
+ * be used by another thread or another game.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class SplitMixRandom implements RandomSource
+{
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;	// The increment of the state
+
+	private long seed;			// The seed the generator started from
+	private long state;			// The current state of the generator
+
+	/**
+	 * Creates a generator with a seed taken from the clock.
+	 */
+	public SplitMixRandom()
+	{
+		this(mix64(System.nanoTime() ^ System.currentTimeMillis()));
+	} // End of Constructor
+
+	/**
+	 * Creates a generator that always gives the same numbers for the same seed.
+	 * @param seed The seed of the generator
+	 */
+	public SplitMixRandom(long seed)
+	{
+		this.seed = seed;
+		state = seed;
+	} // End of Constructor
+
+	/**
+	 * Getter of the seed property
+	 * @return the seed the generator started from
+	 */
+	public long getSeed()
+	{
+		return seed;
+	} // End of seed getter
+
+	/**
+	 * Starts the generator again from another seed.
+	 * This lets a single generator deal many seeded games without allocating.
+	 * @param seed The new seed of the generator
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+		state = seed;
+	} // End of seed setter
+
+	/**
+	 * @return the next random long
+	 */
+	@Override
+	public long nextLong()
+	{
+		state += GOLDEN_GAMMA;
+		return mix64(state);
+	} // End of nextLong method
+
+	/**
+	 * Gets a uniformly distributed random int.
+	 * Values that would make some results more likely are rejected.
+	 * @param bound the upper bound, exclusive, must be positive
+	 * @return a random int from 0 to bound - 1
+	 */
+	@Override
+	public int nextInt(int bound)
+	{
+		if(bound <= 0)
+			throw new IllegalArgumentException("bound must be positive");
+		int bits, value;
+		do
+		{
+			bits = (int)(nextLong() >>> 33);	// 31 random bits
+			value = bits % bound;
+		} while(bits - value + (bound - 1) < 0);	// reject the last incomplete range
+		return value;
+	} // End of nextInt method
+
+	/**
+	 * Creates a new generator whose numbers are independent of this one.
+	 * @return the new generator
+	 */
+	public SplitMixRandom split()
+	{
+		return new SplitMixRandom(nextLong());
+	} // End of split method
+
+	/**
+	 * The finalizer of SplitMix64 that spreads the bits of a state.
+	 * @param z the state
+	 * @return the mixed value
+	 */
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	} // End of mix64 method
+}
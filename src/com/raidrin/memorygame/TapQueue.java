@@ -0,0 +1,134 @@
+package com.raidrin.memorygame;
+
+/**
+ * The taps of the user in front of a GameEngine.
+ * Taps are queued in a bounded ring buffer and drained in the order
+ * they were made. A tap made while the open cards are waiting for their
+ * reveal delay stays in the queue instead of being ignored: the owner of
+ * the queue then shortens the reveal delay to MIN_REVEAL_DELAY, resolves
+ * the open cards and drains the queue, so a fast player never loses a
+ * tap and still sees the last card of the turn. Draining stops as soon as
+ * a turn ends, the taps after it wait for the next resolve.
+ * A tap on a card that is already queued or still open is dropped.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class TapQueue
+{
+	public static final long MIN_REVEAL_DELAY = 100;	// The least milliseconds the last card of a turn is shown when a tap is waiting
+
+	/**
+	 * Is told the results of the drained taps.
+	 */
+	public interface Listener
+	{
+		/**
+		 * A queued tap flipped a card.
+		 * @param index the index of the card on the board
+		 * @param result the result of the flip
+		 */
+		void onFlipped(int index, GameEngine.FlipResult result);
+	} // End of Listener interface
+
+	private final GameEngine gameEngine;	// The engine the taps are given to
+	private final int[] taps;	// The ring buffer of the queued card indexes
+	private int head;			// The index in taps of the oldest tap
+	private int size;			// The count of queued taps
+	private int droppedCount;	// The count of taps that were dropped
+	private Listener listener;	// Is told the results of the drained taps
+
+	/**
+	 * The constructor of the TapQueue class
+	 * @param gameEngine The engine the taps are given to
+	 * @param capacity The most taps that can wait in the queue
+	 */
+	public TapQueue(GameEngine gameEngine, int capacity)
+	{
+		this.gameEngine = gameEngine;
+		taps = new int[capacity];
+	} // End of Constructor
+
+	/**
+	 * Setter of the listener property
+	 * @param listener the Listener told the results of the drained taps, can be null
+	 */
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	} // End of listener setter
+
+	/**
+	 * Adds a tap at the end of the queue.
+	 * @param index the index of the tapped card on the board
+	 * @return false if the tap was dropped because it's a duplicate or the queue is full
+	 */
+	public boolean offer(int index)
+	{
+		// Tapping one of the open cards again is a double tap, not a new card
+		if(gameEngine.isCardsOpen() && gameEngine.isFaceUp(index))
+		{
+			droppedCount++;
+			return false;
+		} // End of isFaceUp If
+		// A card that's already waiting in the queue is only flipped once
+		for(int i=0;i<size;i++)
+		{
+			if(taps[(head + i) % taps.length] == index)
+			{
+				droppedCount++;
+				return false;
+			} // End of duplicate If
+		} // End of size for loop
+		if(size == taps.length)
+		{
+			droppedCount++;
+			return false;
+		} // End of size == taps.length If
+		taps[(head + size) % taps.length] = index;
+		size++;
+		return true;
+	} // End of offer method
+
+	/**
+	 * Gives the queued taps to the engine in the order they were made
+	 * until the open cards have to be resolved. Call it again after the
+	 * open cards are resolved to give it the taps that are still waiting.
+	 */
+	public void drain()
+	{
+		while(size > 0 && !gameEngine.isCardsOpen())
+		{
+			int index = taps[head];
+			head = (head + 1) % taps.length;
+			size--;
+			GameEngine.FlipResult result = gameEngine.flip(index);
+			if(listener != null)
+				listener.onFlipped(index, result);
+		} // End of size > 0 while loop
+	} // End of drain method
+
+	/**
+	 * Removes every queued tap, used when a new game starts.
+	 */
+	public void clear()
+	{
+		head = 0;
+		size = 0;
+	} // End of clear method
+
+	/**
+	 * @return the count of queued taps
+	 */
+	public int size()
+	{
+		return size;
+	} // End of size method
+
+	/**
+	 * @return the count of taps that were dropped
+	 */
+	public int getDroppedCount()
+	{
+		return droppedCount;
+	} // End of getDroppedCount method
+}
@@ -0,0 +1,448 @@
+package com.raidrin.memorygame;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A deck of card faces read from a zip file instead of the 52 playing
+ * cards of the assets folder.
+ * The faces are the images in the FACES_FOLDER of the zip and the back
+ * of the cards can be replaced by a BACK_FILENAME image at its root.
+ * The central directory of the zip is read once when the pack is opened
+ * and the pack keeps its own index of it: the sorted names of the images
+ * and, in arrays beside them, where the bytes of each image start in the
+ * zip, how many there are and whether they are deflated. A ZipFile would
+ * also keep an entry object for every file of the zip, so a pack of
+ * thousands of images costs a few bytes for each of them instead. The
+ * images themselves are streamed from the zip and decoded only when a
+ * card of the board shows them, so the memory used by a pack grows with
+ * the board and not with the pack. The width of an image is read from
+ * its header the first time it's asked for, so each image is decoded at
+ * a sample size that fits its own size.
+ * Each game shows its own faces: the Deck cards dealt by the GameEngine
+ * are given distinct faces of the pack chosen from the seed of the game,
+ * so the same seed always shows the same faces.
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class ThemePack
+{
+	public static final String FACES_FOLDER = "faces/";		// The folder of the zip that holds the faces
+	public static final String BACK_FILENAME = "back.png";	// The image of the zip that replaces the back of the cards
+	private static final long FACE_SEED_SALT = 0x5deece66dL;	// Makes the faces of a game independent of its deal
+	private static final int END_SIGNATURE = 0x06054b50;		// The signature of the end of the central directory
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;	// The signature of an entry of the central directory
+	private static final int LOCAL_SIGNATURE = 0x04034b50;		// The signature of the local header of an entry
+	private static final int END_SIZE = 22;				// The bytes of the end of the central directory without its comment
+	private static final int CENTRAL_HEADER_SIZE = 46;	// The bytes of an entry of the central directory without its name, extra field and comment
+	private static final int LOCAL_HEADER_SIZE = 30;	// The bytes of a local header without its name and extra field
+	private static final int MAX_COMMENT_SIZE = 0xffff;	// The longest comment of a zip
+	private static final int STORED = 0;				// The method of an entry that isn't compressed
+	private static final int DEFLATED = 8;				// The method of a deflated entry
+	private static final int HEADER_BUFFER_SIZE = 512;	// The bytes read at a time while the header of an image is read
+	private static final int UNKNOWN_WIDTH = -1;		// The width of an image whose header can't be read
+
+	private final File file;			// The zip file of the pack
+	private final String key;			// Tells this version of the file apart from a pack replaced at the same path
+	private final RandomAccessFile zip;	// The open zip the images are streamed from
+	private final String[] faceNames;	// The names of the faces in the zip, sorted
+	private final long[] faceOffsets;	// The offset of the local header of each face in faceNames
+	private final int[] faceSizes;		// The compressed bytes of each face in faceNames
+	private final boolean[] faceDeflated;	// States whether each face in faceNames is deflated or stored
+	private final long backOffset;		// The offset of the local header of the BACK_FILENAME image, -1 if the zip has none
+	private final int backSize;			// The compressed bytes of the BACK_FILENAME image
+	private final boolean backDeflated;	// States whether the BACK_FILENAME image is deflated or stored
+	private final int[] faceWidths;		// The width of each face in faceNames, 0 until it's read
+	private int backWidth;				// The width of the BACK_FILENAME image, 0 until it's read
+	private final int[] faceOrder;		// The faces shuffled by selectFaces
+	private final SplitMixRandom random;	// Chooses the faces of a game
+
+	/**
+	 * The constructor of the ThemePack class
+	 * @param file The zip file of the pack
+	 * @throws IOException if the zip can't be read or has less than Deck.SIZE faces
+	 */
+	public ThemePack(File file) throws IOException
+	{
+		this.file = file;
+		key = file.getName() + "/" + file.length() + "/" + file.lastModified();
+		zip = new RandomAccessFile(file, "r");
+		ArrayList<Entry> faces = new ArrayList<Entry>();
+		Entry back = null;
+		try
+		{
+			byte[] directory = readCentralDirectory();
+			int position = 0;
+			while(position + CENTRAL_HEADER_SIZE <= directory.length && getInt(directory, position) == CENTRAL_SIGNATURE)
+			{
+				int flags = getShort(directory, position + 8);
+				int method = getShort(directory, position + 10);
+				long size = getInt(directory, position + 20) & 0xffffffffL;
+				int nameLength = getShort(directory, position + 28);
+				int extraLength = getShort(directory, position + 30);
+				int commentLength = getShort(directory, position + 32);
+				long offset = getInt(directory, position + 42) & 0xffffffffL;
+				String name = new String(directory, position + CENTRAL_HEADER_SIZE, nameLength, "UTF-8");
+				position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+				// Only the images that can be read without a password or a zip64 record are kept
+				if(!isImage(name) || (flags & 1) != 0 || (method != STORED && method != DEFLATED)
+						|| size == 0xffffffffL || offset == 0xffffffffL)
+					continue;
+				Entry entry = new Entry(name, offset, (int)size, method == DEFLATED);
+				if(name.equals(BACK_FILENAME))
+					back = entry;
+				else if(name.startsWith(FACES_FOLDER))
+					faces.add(entry);
+			} // End of CENTRAL_SIGNATURE while loop
+			// Every card of the deck needs its own face
+			if(faces.size() < Deck.SIZE)
+				throw new IOException("The theme pack " + file.getName() + " has " + faces.size()
+						+ " faces, it needs at least " + Deck.SIZE + ".");
+		}
+		catch (IOException e) {
+			zip.close();
+			throw e;
+		} // End of try - catch
+		// Sort the names so the faces of a seed don't depend on the order of the zip
+		Collections.sort(faces);
+		faceNames = new String[faces.size()];
+		faceOffsets = new long[faces.size()];
+		faceSizes = new int[faces.size()];
+		faceDeflated = new boolean[faces.size()];
+		for(int i=0;i<faceNames.length;i++)
+		{
+			Entry entry = faces.get(i);
+			faceNames[i] = entry.name;
+			faceOffsets[i] = entry.offset;
+			faceSizes[i] = entry.size;
+			faceDeflated[i] = entry.deflated;
+		} // End of faceNames for loop
+		backOffset = (back != null)?back.offset:-1;
+		backSize = (back != null)?back.size:0;
+		backDeflated = back != null && back.deflated;
+		faceWidths = new int[faceNames.length];
+		faceOrder = new int[faceNames.length];
+		random = new SplitMixRandom(0);
+	} // End of Constructor
+
+	/**
+	 * @return the name of the zip file of the pack
+	 */
+	public String getName()
+	{
+		return file.getName();
+	} // End of getName method
+
+	/**
+	 * Gets what tells the images of this pack apart from the images of another pack.
+	 * A pack replaced at the same path has another length or time, so its images get other keys.
+	 * @return the name, length and last modified time of the zip file when the pack was opened
+	 */
+	public String getKey()
+	{
+		return key;
+	} // End of getKey method
+
+	/**
+	 * @return the count of faces in the pack
+	 */
+	public int getFaceCount()
+	{
+		return faceNames.length;
+	} // End of getFaceCount method
+
+	/**
+	 * Gets the name of a face in the zip.
+	 * @param face the face from 0 to getFaceCount - 1
+	 * @return the name of the face
+	 */
+	public String getFaceName(int face)
+	{
+		return faceNames[face];
+	} // End of getFaceName method
+
+	/**
+	 * @return the name of the image of the back of the cards in the zip, or null if the pack keeps the default back
+	 */
+	public String getBackFilename()
+	{
+		return (backOffset >= 0)?BACK_FILENAME:null;
+	} // End of getBackFilename method
+
+	/**
+	 * Checks if an image is in the pack.
+	 * @param filename the name of the image in the zip
+	 * @return true if the image is a face or the back of the pack
+	 */
+	public boolean contains(String filename)
+	{
+		if(filename.equals(BACK_FILENAME))
+			return backOffset >= 0;
+		return filename.startsWith(FACES_FOLDER) && Arrays.binarySearch(faceNames, filename) >= 0;
+	} // End of contains method
+
+	/**
+	 * Gets the width of an image of the pack, read from its header the first time.
+	 * @param filename the name of the image in the zip
+	 * @return the width in pixels, 0 if its header can't be read
+	 * @throws IOException if the image isn't in the pack or can't be read
+	 */
+	public int getImageWidth(String filename) throws IOException
+	{
+		int face = filename.startsWith(FACES_FOLDER)?Arrays.binarySearch(faceNames, filename):-1;
+		int width = (face >= 0)?faceWidths[face]:(filename.equals(BACK_FILENAME))?backWidth:0;
+		if(width == 0)
+		{
+			// Two threads may both read it, they read the same width
+			InputStream stream = new BufferedInputStream(open(filename), HEADER_BUFFER_SIZE);
+			try
+			{
+				width = ImageFormat.getWidth(stream);
+			}
+			finally
+			{
+				stream.close();
+			} // End of try - finally
+			if(width <= 0)
+				width = UNKNOWN_WIDTH;
+			if(face >= 0)
+				faceWidths[face] = width;
+			else
+				backWidth = width;
+		} // End of width == 0 If
+		return (width == UNKNOWN_WIDTH)?0:width;
+	} // End of getImageWidth method
+
+	/**
+	 * Chooses the faces of the Deck cards of a game.
+	 * Only the first Deck.SIZE faces of a shuffle are drawn, so the cost
+	 * is the same for any size of pack apart from resetting the order.
+	 * @param seed the seed of the game
+	 * @param cardFaces the array where the face of each Deck card is saved, Deck.SIZE long
+	 */
+	public synchronized void selectFaces(long seed, int[] cardFaces)
+	{
+		for(int i=0;i<faceOrder.length;i++)
+			faceOrder[i] = i;
+		random.setSeed(seed ^ FACE_SEED_SALT);
+		// A partial Fisher-Yates shuffle that stops after the faces of the deck
+		for(int card=0;card<Deck.SIZE;card++)
+		{
+			int other = card + random.nextInt(faceOrder.length - card);
+			int face = faceOrder[other];
+			faceOrder[other] = faceOrder[card];
+			faceOrder[card] = face;
+			cardFaces[card] = face;
+		} // End of Deck.SIZE for loop
+	} // End of selectFaces method
+
+	/**
+	 * Opens a stream that inflates an image of the pack.
+	 * Only the bytes of that image are read from the zip.
+	 * @param filename the name of the image in the zip
+	 * @return the stream of the image, which has to be closed
+	 * @throws IOException if the image isn't in the pack or can't be read
+	 */
+	public InputStream open(String filename) throws IOException
+	{
+		long offset;
+		int size;
+		boolean deflated;
+		int face = filename.startsWith(FACES_FOLDER)?Arrays.binarySearch(faceNames, filename):-1;
+		if(face >= 0)
+		{
+			offset = faceOffsets[face];
+			size = faceSizes[face];
+			deflated = faceDeflated[face];
+		}
+		else if(filename.equals(BACK_FILENAME) && backOffset >= 0)
+		{
+			offset = backOffset;
+			size = backSize;
+			deflated = backDeflated;
+		}
+		else
+			throw new IOException("The theme pack " + getName() + " has no image " + filename + ".");
+
+		// The data starts after the local header, whose extra field can differ from the central directory
+		byte[] header = new byte[LOCAL_HEADER_SIZE];
+		synchronized(zip)
+		{
+			zip.seek(offset);
+			zip.readFully(header);
+		} // End of zip synchronized block
+		if(getInt(header, 0) != LOCAL_SIGNATURE)
+			throw new IOException("The theme pack " + getName() + " has no local header for " + filename + ".");
+		long start = offset + LOCAL_HEADER_SIZE + getShort(header, 26) + getShort(header, 28);
+		InputStream stream = new EntryStream(zip, start, size, deflated);
+		if(!deflated)
+			return stream;
+		final Inflater inflater = new Inflater(true);
+		return new InflaterInputStream(stream, inflater, 4096)
+		{
+			@Override
+			public void close() throws IOException
+			{
+				super.close();
+				inflater.end();
+			} // End of close method
+		}; // End of InflaterInputStream anonymous inner class
+	} // End of open method
+
+	/**
+	 * Closes the zip. Nothing can be opened from the pack after this call.
+	 * @throws IOException if the zip can't be closed
+	 */
+	public void close() throws IOException
+	{
+		zip.close();
+	} // End of close method
+
+	/**
+	 * Reads the central directory of the zip from the offset given by its end record.
+	 * @return the bytes of the central directory
+	 * @throws IOException if the zip can't be read or isn't a zip
+	 */
+	private byte[] readCentralDirectory() throws IOException
+	{
+		// The end record is at the end of the zip, followed by a comment of up to MAX_COMMENT_SIZE bytes
+		long length = zip.length();
+		int tailSize = (int)Math.min(length, END_SIZE + MAX_COMMENT_SIZE);
+		byte[] tail = new byte[tailSize];
+		zip.seek(length - tailSize);
+		zip.readFully(tail);
+		int end = tailSize - END_SIZE;
+		while(end >= 0 && getInt(tail, end) != END_SIGNATURE)
+			end--;
+		if(end < 0)
+			throw new IOException("The theme pack " + file.getName() + " isn't a zip.");
+		long size = getInt(tail, end + 12) & 0xffffffffL;
+		long offset = getInt(tail, end + 16) & 0xffffffffL;
+		if(offset + size > length - tailSize + end)
+			throw new IOException("The theme pack " + file.getName() + " has a central directory out of the zip.");
+		byte[] directory = new byte[(int)size];
+		zip.seek(offset);
+		zip.readFully(directory);
+		return directory;
+	} // End of readCentralDirectory method
+
+	/**
+	 * @param bytes the bytes of a zip record
+	 * @param offset the offset of the value
+	 * @return the little endian unsigned 16 bit value at the offset
+	 */
+	private static int getShort(byte[] bytes, int offset)
+	{
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+	} // End of getShort method
+
+	/**
+	 * @param bytes the bytes of a zip record
+	 * @param offset the offset of the value
+	 * @return the little endian 32 bit value at the offset
+	 */
+	private static int getInt(byte[] bytes, int offset)
+	{
+		return getShort(bytes, offset) | getShort(bytes, offset + 2) << 16;
+	} // End of getInt method
+
+	/**
+	 * Checks if an entry of the zip is an image that can be decoded.
+	 * @param name the name of the entry
+	 * @return true for a png, jpg or webp file
+	 */
+	private static boolean isImage(String name)
+	{
+		String lowerName = name.toLowerCase();
+		return lowerName.endsWith(".png") || lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg")
+				|| lowerName.endsWith(".webp");
+	} // End of isImage method
+
+	/**
+	 * An image of the central directory while the pack is indexed.
+	 */
+	private static class Entry implements Comparable<Entry>
+	{
+		final String name;		// The name of the image in the zip
+		final long offset;		// The offset of its local header
+		final int size;			// Its compressed bytes
+		final boolean deflated;	// States whether it's deflated or stored
+
+		Entry(String name, long offset, int size, boolean deflated)
+		{
+			this.name = name;
+			this.offset = offset;
+			this.size = size;
+			this.deflated = deflated;
+		}
+
+		@Override
+		public int compareTo(Entry other)
+		{
+			return name.compareTo(other.name);
+		}
+	} // End of Entry class
+
+	/**
+	 * Reads the bytes of one image from the zip, which every stream of the pack shares.
+	 * A deflated image is followed by one more zero byte, which the Inflater
+	 * may need to finish without a zlib header.
+	 */
+	private static class EntryStream extends InputStream
+	{
+		private final RandomAccessFile zip;	// The zip of the pack
+		private long position;				// The offset of the next byte in the zip
+		private long remaining;				// The bytes of the image left
+		private boolean padding;			// States whether the zero byte after a deflated image is still to be read
+
+		EntryStream(RandomAccessFile zip, long start, int size, boolean deflated)
+		{
+			this.zip = zip;
+			position = start;
+			remaining = size & 0xffffffffL;
+			padding = deflated;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] single = new byte[1];
+			return (read(single, 0, 1) == 1)?single[0] & 0xff:-1;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			if(length == 0)
+				return 0;
+			if(remaining == 0)
+			{
+				if(!padding)
+					return -1;
+				padding = false;
+				buffer[offset] = 0;
+				return 1;
+			} // End of remaining == 0 If
+			int read;
+			synchronized(zip)
+			{
+				zip.seek(position);
+				read = zip.read(buffer, offset, (int)Math.min(length, remaining));
+			} // End of zip synchronized block
+			if(read <= 0)
+				throw new EOFException("The theme pack ends inside an image.");
+			position += read;
+			remaining -= read;
+			return read;
+		}
+	} // End of EntryStream class
+}
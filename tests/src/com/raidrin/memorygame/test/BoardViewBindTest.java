@@ -0,0 +1,91 @@
+package com.raidrin.memorygame.test;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.raidrin.memorygame.AssetLoader;
+import com.raidrin.memorygame.BoardView;
+import com.raidrin.memorygame.ImageCache;
+import com.raidrin.memorygame.MemoryGame;
+import com.raidrin.memorygame.R;
+
+/**
+ * Instrumentation check that the images of the cards are decoded in the
+ * background and then shared: once the game is warm, starting a new game
+ * with MemoryGame.reset deals new cards whose images the AssetLoader
+ * already decoded during the last game, so the reset decodes nothing on
+ * the UI thread.
+ * Run on a connected device with:
+ *   android update test-project -m .. -p tests && ant -f tests/build.xml debug install test
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class BoardViewBindTest extends ActivityInstrumentationTestCase2<MemoryGame>
+{
+	private static final long LOADER_TIMEOUT_MILLIS = 10000;	// The longest wait for the AssetLoader
+	private static final long LOADER_POLL_MILLIS = 20;			// The time between two checks of the AssetLoader
+
+	/**
+	 * The constructor of the BoardViewBindTest class
+	 */
+	public BoardViewBindTest()
+	{
+		super(MemoryGame.class);
+	} // End of Constructor
+
+	/**
+	 * Starts a new game twice on the UI thread, each time after the
+	 * AssetLoader has decoded its cards, and checks the second one decodes no image.
+	 * @throws Throwable if the resets fail
+	 */
+	public void testWarmResetDecodesNothing() throws Throwable
+	{
+		final MemoryGame memoryGame = getActivity();
+		BoardView boardView = (BoardView) memoryGame.findViewById(R.id.boardView);
+		final ImageCache imageCache = ImageCache.getInstance(memoryGame);
+		final int[] decodeCounts = new int[4];
+		Runnable reset = new Runnable()
+		{
+			private int cycle;	// The count of resets that were run
+
+			@Override
+			public void run()
+			{
+				decodeCounts[cycle * 2] = imageCache.getDecodeCount();
+				memoryGame.reset();
+				decodeCounts[cycle * 2 + 1] = imageCache.getDecodeCount();
+				cycle++;
+			} // End of run method
+		}; // End of Runnable anonymous inner class
+
+		// The first cycle warms up the cache with the back, the glow and the sheet
+		waitForLoader(memoryGame.getAssetLoader());
+		runTestOnUiThread(reset);
+		waitForLoader(memoryGame.getAssetLoader());
+		runTestOnUiThread(reset);
+		assertTrue("The board has no card image.", boardView.getCardByteCount(0) > 0);
+		assertEquals("The warm reset decoded " + (decodeCounts[3] - decodeCounts[2]) + " images after the first decoded "
+				+ (decodeCounts[1] - decodeCounts[0]) + ".", decodeCounts[2], decodeCounts[3]);
+	} // End of testWarmResetDecodesNothing method
+
+	/**
+	 * Waits until the UI thread and the AssetLoader both have no work left.
+	 * The UI thread can give the loader more work, like when the theme pack is opened, so both are checked again.
+	 * @param assetLoader the loader of the activity
+	 * @throws InterruptedException if the test is interrupted
+	 */
+	private void waitForLoader(AssetLoader assetLoader) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + LOADER_TIMEOUT_MILLIS;
+		do
+		{
+			getInstrumentation().waitForIdleSync();
+			while(!assetLoader.isIdle())
+			{
+				assertTrue("The AssetLoader is still busy after " + LOADER_TIMEOUT_MILLIS + " ms.",
+						System.currentTimeMillis() < deadline);
+				Thread.sleep(LOADER_POLL_MILLIS);
+			} // End of isIdle while loop
+			getInstrumentation().waitForIdleSync();
+		} while(!assetLoader.isIdle());
+	} // End of waitForLoader method
+}
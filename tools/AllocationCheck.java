@@ -0,0 +1,345 @@
+import java.lang.management.ManagementFactory;
+
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.DifficultyTuner;
+import com.raidrin.memorygame.GameClock;
+import com.raidrin.memorygame.GameEngine;
+import com.raidrin.memorygame.GameEventLog;
+import com.raidrin.memorygame.GameRecord;
+import com.raidrin.memorygame.NumberText;
+import com.raidrin.memorygame.ReplayRecorder;
+import com.raidrin.memorygame.Simulator;
+import com.raidrin.memorygame.SplitMixRandom;
+import com.raidrin.memorygame.TapQueue;
+
+/**
+ * Build time tool that checks that the tap, resolve and tick path of the
+ * game allocates nothing once it's warmed up.
+ * The GameEngine, TapQueue, GameEventLog, GameRecord, ReplayRecorder,
+ * DifficultyTuner, GameClock and the NumberText of the score and the
+ * time are wired the way MemoryGame wires them, on a virtual clock, and a
+ * scripted player that allocates nothing plays games on them. The bytes
+ * the thread allocates while the games are played are read from
+ * com.sun.management.ThreadMXBean, without the start and the end of each
+ * game, which show a dialog and write files on a device.
+ * Run it with -Xint too: the interpreter doesn't remove any allocation
+ * the way the escape analysis of the compiler does.
+ * Fails with an exception when a check doesn't hold.
+ *
+ * Usage: javac -d /tmp/alloc -sourcepath src tools/AllocationCheck.java
+ *        && java -cp /tmp/alloc AllocationCheck [games] [warm up games]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class AllocationCheck
+{
+	private static final int MAX_TIME = 30;				// The time of a game in seconds, like the original game
+	private static final long TICK_INTERVAL = 1000;		// Like MemoryGame, a tick each second
+	private static final int TAP_QUEUE_CAPACITY = 8;	// Like MemoryGame
+	private static final int EVENT_LOG_CAPACITY = 256;	// Like MemoryGame
+	private static final int EVENT_SNAPSHOT_INTERVAL = 32;	// Like MemoryGame
+	private static final long TAP_MILLIS = 150;			// The time between two taps of the player
+	private static final long NEVER = Long.MAX_VALUE;	// The time of a task that isn't scheduled
+
+	public static void main(String[] args)
+	{
+		int games = (args.length > 0)?Integer.parseInt(args[0]):20000;
+		int warmUpGames = (args.length > 1)?Integer.parseInt(args[1]):20000;
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		check(threadBean.isThreadAllocatedMemorySupported(), "The JVM doesn't count the allocated bytes of a thread.");
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		Game game = new Game();
+		for(int i=0;i<warmUpGames;i++)
+			game.play(null, threadId, null);
+		// Reading the count may allocate, which is measured without a game and taken off
+		long[] allocated = new long[1];
+		long overhead = Long.MAX_VALUE;
+		for(int i=0;i<100;i++)
+		{
+			long before = threadBean.getThreadAllocatedBytes(threadId);
+			overhead = Math.min(overhead, threadBean.getThreadAllocatedBytes(threadId) - before);
+		} // End of overhead for loop
+		long taps = 0, resolves = 0, ticks = 0;
+		for(int i=0;i<games;i++)
+		{
+			allocated[0] -= overhead;
+			game.play(threadBean, threadId, allocated);
+			taps += game.taps;
+			resolves += game.resolves;
+			ticks += game.ticks;
+		} // End of games for loop
+		System.out.println(String.format("%d games after %d to warm up: %d taps, %d resolves, %d ticks,"
+				+ " %d bytes allocated (%d bytes read overhead)", games, warmUpGames, taps, resolves, ticks, allocated[0], overhead));
+		check(allocated[0] <= 0, "The games allocated " + allocated[0] + " bytes, " + (double)allocated[0] / taps + " for each tap.");
+		System.out.println("ok");
+	}
+
+	/**
+	 * @param condition the condition that has to hold
+	 * @param message the message of the failure
+	 */
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+			throw new IllegalStateException(message);
+	} // End of check method
+
+	/**
+	 * The objects of the game wired like MemoryGame, a virtual clock and a scripted player.
+	 */
+	private static class Game implements GameEngine.Listener, TapQueue.Listener, GameClock.TimeSource, GameClock.Scheduler
+	{
+		private final GameEngine gameEngine;	// The engine of the games
+		private final TapQueue tapQueue;		// The taps waiting for the open cards
+		private final GameRecord gameRecord;	// The record of the game
+		private final ReplayRecorder replayRecorder;	// The replay of the game
+		private final DifficultyTuner difficultyTuner;	// Measures the player
+		private final GameClock gameClock;		// Counts the game down
+		private final NumberText scoreText;		// The text of the score
+		private final NumberText timeLeftText;	// The text of the time left
+		private final int[] seen;				// The Deck card seen at each index, -1 if not seen yet
+		private final Runnable resolveCardsRunnable;	// Resolves the open cards, the same one for every turn
+		private long now;						// The virtual time
+		private long turnEndedAt;				// The time the last turn ended
+		private long resolveAt;					// The time the open cards are resolved, NEVER if not scheduled
+		private Runnable clockTask;				// The task scheduled by the gameClock, null if none
+		private long clockTaskAt;				// The time the clock task runs
+		private boolean over;					// States whether the game is over
+		long taps, resolves, ticks;				// The counts of the last game
+
+		Game()
+		{
+			gameEngine = new GameEngine(MAX_TIME, BoardConfig.DEFAULT, new SplitMixRandom(1));
+			gameEngine.setListener(this);
+			tapQueue = new TapQueue(gameEngine, TAP_QUEUE_CAPACITY);
+			tapQueue.setListener(this);
+			new GameEventLog(EVENT_LOG_CAPACITY, EVENT_SNAPSHOT_INTERVAL).attach(gameEngine);
+			gameRecord = new GameRecord();
+			replayRecorder = new ReplayRecorder();
+			difficultyTuner = new DifficultyTuner(Simulator.CARD_REVEAL_DELAY);
+			gameClock = new GameClock(this, this, TICK_INTERVAL, new GameClock.Listener()
+			{
+				@Override
+				public void onTick()
+				{
+					ticks++;
+					replayRecorder.onTick(now);
+					gameEngine.tick();
+				} // End of onTick method
+			}); // End of Listener anonymous inner class
+			scoreText = new NumberText();
+			timeLeftText = new NumberText();
+			seen = new int[gameEngine.getCardCount()];
+			clockTaskAt = NEVER;
+			resolveCardsRunnable = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					resolves++;
+					replayRecorder.onResolve(now);
+					gameEngine.resolve();
+					difficultyTuner.onResolved(now);
+					tapQueue.drain();
+				} // End of run method
+			}; // End of Runnable anonymous inner class
+		}
+
+		/**
+		 * Plays a game until it's over.
+		 * @param threadBean the bean that counts the allocated bytes, null to not measure
+		 * @param threadId the id of this thread
+		 * @param allocated the array whose first value gets the bytes allocated during the game
+		 */
+		void play(com.sun.management.ThreadMXBean threadBean, long threadId, long[] allocated)
+		{
+			// The start of a game, like MemoryGame.reset
+			gameEngine.startGame();
+			gameRecord.start(gameEngine.getGameSeed(), gameEngine.getBoardConfig(), now);
+			difficultyTuner.startGame(now);
+			replayRecorder.start(gameEngine, now);
+			tapQueue.clear();
+			resolveAt = NEVER;
+			over = false;
+			taps = resolves = ticks = 0;
+			for(int i=0;i<seen.length;i++)
+				seen[i] = -1;
+			gameClock.start();
+
+			long before = (threadBean != null)?threadBean.getThreadAllocatedBytes(threadId):0;
+			long nextTap = now + TAP_MILLIS;
+			while(!over)
+			{
+				// Run whatever comes first, like the handler of the UI thread
+				if(resolveAt <= nextTap && resolveAt <= clockTaskAt)
+				{
+					now = resolveAt;
+					resolveAt = NEVER;
+					resolveCardsRunnable.run();
+				}
+				else if(clockTaskAt <= nextTap)
+				{
+					now = clockTaskAt;
+					Runnable task = clockTask;
+					clockTask = null;
+					clockTaskAt = NEVER;
+					task.run();
+				}
+				else
+				{
+					now = nextTap;
+					nextTap += TAP_MILLIS;
+					tap(choose());
+				} // End of next task If - Else
+			} // End of over while loop
+			if(threadBean != null)
+				allocated[0] += threadBean.getThreadAllocatedBytes(threadId) - before;
+			// The end of the game, like onGameOver
+			difficultyTuner.finishGame(gameEngine.getScore());
+			replayRecorder.finish(gameEngine.getScore(), now);
+		} // End of play method
+
+		/**
+		 * Taps a card, like the cardClickedListener of MemoryGame.
+		 * @param index the index of the card
+		 */
+		private void tap(int index)
+		{
+			taps++;
+			gameRecord.addTap(now);
+			replayRecorder.onTap(index, now);
+			difficultyTuner.onTap(now);
+			if(!tapQueue.offer(index))
+				return;
+			if(gameEngine.isCardsOpen())
+				scheduleResolve();
+			else
+				tapQueue.drain();
+		} // End of tap method
+
+		/**
+		 * Schedules the resolve of the open cards, like MemoryGame.scheduleResolve.
+		 */
+		private void scheduleResolve()
+		{
+			long delay = (tapQueue.size() > 0)?TapQueue.MIN_REVEAL_DELAY:Simulator.CARD_REVEAL_DELAY;
+			resolveAt = Math.max(now, turnEndedAt + delay);
+		} // End of scheduleResolve method
+
+		/**
+		 * Chooses a seen pair, or the next card that wasn't seen, or any card left.
+		 * @return the index of the card
+		 */
+		private int choose()
+		{
+			int open = -1;
+			for(int i=0;i<seen.length;i++)
+				if(gameEngine.isFaceUp(i) && !gameEngine.isRemoved(i))
+					open = i;
+			for(int i=0;i<seen.length;i++)
+			{
+				if(seen[i] == -1 || gameEngine.isRemoved(i) || gameEngine.isFaceUp(i))
+					continue;
+				for(int j=0;j<seen.length;j++)
+					if(j != i && seen[j] == seen[i] && !gameEngine.isRemoved(j) && (open == -1 || j == open))
+						return i;
+			} // End of seen for loop
+			for(int i=0;i<seen.length;i++)
+				if(seen[i] == -1 && !gameEngine.isFaceUp(i))
+					return i;
+			for(int i=0;i<seen.length;i++)
+				if(!gameEngine.isRemoved(i) && !gameEngine.isFaceUp(i))
+					return i;
+			return 0;
+		} // End of choose method
+
+		@Override
+		public void onFlipped(int index, GameEngine.FlipResult result)
+		{
+			switch(result)
+			{
+				case SAME_CARD:
+					onTurnEnded();
+					break;
+				case MATCH:
+				case MISMATCH:
+					difficultyTuner.onTurnEnded(result == GameEngine.FlipResult.MATCH);
+					onTurnEnded();
+					break;
+				default:
+					break;
+			} // End of flip result switch
+		} // End of onFlipped method
+
+		/**
+		 * The last card of a turn was flipped, like MemoryGame.onTurnEnded.
+		 */
+		private void onTurnEnded()
+		{
+			turnEndedAt = now;
+			scheduleResolve();
+		} // End of onTurnEnded method
+
+		@Override
+		public void onCardShown(int index)
+		{
+			seen[index] = gameEngine.getCard(index);
+		}
+
+		@Override
+		public void onCardHidden(int index)
+		{
+		}
+
+		@Override
+		public void onCardRemoved(int index)
+		{
+		}
+
+		@Override
+		public void onScoreChanged(int score)
+		{
+			scoreText.set(score);
+		}
+
+		@Override
+		public void onTimeChanged(int secondsLeft)
+		{
+			timeLeftText.set(secondsLeft);
+		}
+
+		@Override
+		public void onGameOver(int score)
+		{
+			gameClock.stop();
+			over = true;
+		}
+
+		@Override
+		public long now()
+		{
+			return now;
+		}
+
+		@Override
+		public void schedule(Runnable task, long time)
+		{
+			clockTask = task;
+			clockTaskAt = Math.max(time, now);
+		}
+
+		@Override
+		public void cancel(Runnable task)
+		{
+			if(clockTask == task)
+			{
+				clockTask = null;
+				clockTaskAt = NEVER;
+			} // End of clockTask == task If
+		}
+	} // End of Game class
+}
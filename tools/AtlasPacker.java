@@ -0,0 +1,136 @@
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Build time tool that packs the card images of the assets folder into
+ * a single sprite sheet and writes a binary index of the region of each
+ * image in the sheet. The sheet and the index are read by CardAtlas.
+ * Only the images whose pixels are all opaque are packed, so the sheet
+ * has no alpha and can be decoded in the compact RGB_565 format. Images
+ * with translucent pixels stay in their own files.
+ *
+ * Usage: javac -d /tmp tools/AtlasPacker.java && java -cp /tmp AtlasPacker assets
+ *
+ * Index format (big endian, DataOutputStream):
+ *   int magic ("ATLS"), short entry count,
+ *   then per entry: UTF filename, short x, short y, short width, short height
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class AtlasPacker
+{
+	public static final String SHEET_FILENAME = "cards_atlas.png";	// The filename of the packed sprite sheet
+	public static final String INDEX_FILENAME = "cards_atlas.idx";	// The filename of the binary index
+	public static final int MAGIC = 0x41544C53;	// "ATLS", the first int of the index
+	private static final int SHEET_WIDTH = 1024;	// The width of the sheet, the images are packed in shelves
+	private static final int PADDING = 1;			// Empty pixels between images so filtering never bleeds
+
+	/**
+	 * Packs every opaque png of the folder except a sheet from a previous run.
+	 * @param args the folder that holds the images, assets by default
+	 * @throws IOException if an image can't be read or the output can't be written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		File folder = new File(args.length > 0 ? args[0] : "assets");
+		File[] files = folder.listFiles();
+		if(files == null)
+			throw new IOException("Not a folder: " + folder);
+		Arrays.sort(files);
+
+		// Read all the images that are going to be packed
+		final ArrayList<String> names = new ArrayList<String>();
+		final ArrayList<BufferedImage> images = new ArrayList<BufferedImage>();
+		for(File file : files)
+		{
+			String name = file.getName();
+			if(!name.endsWith(".png") || name.equals(SHEET_FILENAME))
+				continue;
+			BufferedImage image = ImageIO.read(file);
+			// An image with translucent pixels would make the whole sheet need alpha
+			if(!isOpaque(image))
+				continue;
+			names.add(name);
+			images.add(image);
+		} // End of files for loop
+
+		// Pack the tallest images first so that each shelf wastes as little height as possible
+		Integer[] order = new Integer[names.size()];
+		for(int i=0;i<order.length;i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return images.get(b).getHeight() - images.get(a).getHeight();
+			}
+		});
+
+		int[][] rects = new int[names.size()][];
+		int x = 0, y = 0, shelfHeight = 0;
+		for(int index : order)
+		{
+			BufferedImage image = images.get(index);
+			// Start a new shelf when the image doesn't fit in the current one
+			if(x + image.getWidth() > SHEET_WIDTH)
+			{
+				x = 0;
+				y += shelfHeight + PADDING;
+				shelfHeight = 0;
+			}
+			rects[index] = new int[] {x, y, image.getWidth(), image.getHeight()};
+			x += image.getWidth() + PADDING;
+			shelfHeight = Math.max(shelfHeight, image.getHeight());
+		} // End of order for loop
+
+		// Draw every image in its region of the sheet
+		BufferedImage sheet = new BufferedImage(SHEET_WIDTH, y + shelfHeight, BufferedImage.TYPE_INT_RGB);
+		for(int i=0;i<names.size();i++)
+			sheet.getGraphics().drawImage(images.get(i), rects[i][0], rects[i][1], null);
+		ImageIO.write(sheet, "png", new File(folder, SHEET_FILENAME));
+
+		// Write the index in the order of the filenames so the output is stable
+		DataOutputStream index = new DataOutputStream(new FileOutputStream(new File(folder, INDEX_FILENAME)));
+		try
+		{
+			index.writeInt(MAGIC);
+			index.writeShort(names.size());
+			for(int i=0;i<names.size();i++)
+			{
+				index.writeUTF(names.get(i));
+				for(int value : rects[i])
+					index.writeShort(value);
+			}
+		}
+		finally
+		{
+			index.close();
+		}
+		System.out.println("Packed " + names.size() + " images into a " + SHEET_WIDTH + "x" + sheet.getHeight() + " sheet");
+	} // End of main method
+
+	/**
+	 * Checks if every pixel of an image is opaque.
+	 * @param image the image
+	 * @return true if no pixel is translucent
+	 */
+	private static boolean isOpaque(BufferedImage image)
+	{
+		if(!image.getColorModel().hasAlpha())
+			return true;
+		for(int y=0;y<image.getHeight();y++)
+			for(int x=0;x<image.getWidth();x++)
+				if((image.getRGB(x, y) >>> 24) != 0xff)
+					return false;
+		return true;
+	} // End of isOpaque method
+}
@@ -0,0 +1,418 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.Dealer;
+import com.raidrin.memorygame.Deck;
+import com.raidrin.memorygame.GameEngine;
+import com.raidrin.memorygame.ReplayRecorder;
+import com.raidrin.memorygame.Replayer;
+import com.raidrin.memorygame.SplitMixRandom;
+import com.raidrin.memorygame.TapQueue;
+
+/**
+ * Build time tool that measures the hot paths of the game on the JVM:
+ * dealing and shuffling the cards, checking a match, whole simulated
+ * games, replays and decoding the images of the assets folder.
+ * Only the classes of the game that don't use Android are compiled with it.
+ *
+ * Usage: javac -d /tmp/bench -sourcepath src tools/Benchmarks.java
+ *        && java -cp /tmp/bench Benchmarks [assets folder] [name filter]
+ *
+ * Each benchmark is warmed up, then measured for MEASURE_ITERATIONS
+ * iterations of about ITERATION_MILLIS each. The result is the mean time
+ * of an operation with its standard deviation over the iterations. Every
+ * result of an operation is added to a sink so no work can be removed by
+ * the JIT. The results on the reference machine are kept in
+ * tools/benchmark_baseline.txt, compare a new run against it after
+ * changing the engine.
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class Benchmarks
+{
+	private static final int WARMUP_ITERATIONS = 5;		// Iterations run before measuring
+	private static final int MEASURE_ITERATIONS = 10;	// Iterations that are measured
+	private static final long ITERATION_MILLIS = 200;	// The least time of an iteration
+
+	private static long sink;	// The results of the operations
+
+	/**
+	 * A benchmark that runs one operation at a time.
+	 */
+	private static abstract class Benchmark
+	{
+		final String name;	// The name shown in the results
+
+		Benchmark(String name)
+		{
+			this.name = name;
+		}
+
+		/**
+		 * Runs the operation once.
+		 * @return a result that is added to the sink
+		 */
+		abstract long run();
+	} // End of Benchmark class
+
+	/**
+	 * Runs the benchmarks whose name contains the filter.
+	 * @param args the assets folder, assets by default, and an optional name filter
+	 * @throws IOException if the images can't be read
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		File assets = new File(args.length > 0 ? args[0] : "assets");
+		String filter = args.length > 1 ? args[1] : "";
+
+		ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		addDealBenchmarks(benchmarks, BoardConfig.DEFAULT);
+		addDealBenchmarks(benchmarks, new BoardConfig(8, 13, 2));
+		addMatchBenchmarks(benchmarks);
+		addGameBenchmarks(benchmarks, BoardConfig.DEFAULT);
+		addGameBenchmarks(benchmarks, new BoardConfig(6, 6, 3));
+		addDecodeBenchmarks(benchmarks, assets);
+
+		System.out.println(String.format("%-32s %14s %12s", "Benchmark", "ns/op", "error"));
+		for(Benchmark benchmark : benchmarks)
+		{
+			if(benchmark.name.contains(filter))
+				measure(benchmark);
+		} // End of benchmarks for loop
+		// Printing the sink keeps every result alive
+		System.out.println("sink " + sink);
+	} // End of main method
+
+	/**
+	 * Adds the benchmarks of dealing the cards.
+	 * @param benchmarks the list of benchmarks
+	 * @param boardConfig the size of the board
+	 */
+	private static void addDealBenchmarks(ArrayList<Benchmark> benchmarks, final BoardConfig boardConfig)
+	{
+		final Dealer dealer = new Dealer(new SplitMixRandom(1));
+		final int[] board = new int[boardConfig.getCardCount()];
+		benchmarks.add(new Benchmark("deal " + boardConfig)
+		{
+			long run()
+			{
+				dealer.deal(board, boardConfig.getMatchTotal(), boardConfig.getMatchCount());
+				return board[0];
+			}
+		});
+		benchmarks.add(new Benchmark("shuffle " + boardConfig)
+		{
+			long run()
+			{
+				dealer.shuffle(board, board.length);
+				return board[0];
+			}
+		});
+		// The deal of the first version of the game: the filenames of the deck in an ArrayList,
+			// distinct cards removed from it at random, then Collections.shuffle
+		final ArrayList<String> deck = new ArrayList<String>(Deck.SIZE);
+		final ArrayList<String> legacyBoard = new ArrayList<String>(board.length);
+		final Random random = new Random(1);
+		benchmarks.add(new Benchmark("legacy deal+shuffle " + boardConfig)
+		{
+			long run()
+			{
+				deck.clear();
+				for(int card=0;card<Deck.SIZE;card++)
+					deck.add(Deck.getFilename(card));
+				legacyBoard.clear();
+				for(int i=0;i<boardConfig.getMatchTotal();i++)
+				{
+					String filename = deck.remove(random.nextInt(deck.size()));
+					for(int a=0;a<boardConfig.getMatchCount();a++)
+						legacyBoard.add(filename);
+				} // End of getMatchTotal for loop
+				Collections.shuffle(legacyBoard, random);
+				return legacyBoard.get(0).length();
+			}
+		});
+		final GameEngine gameEngine = new GameEngine(30, boardConfig, new SplitMixRandom(1));
+		benchmarks.add(new Benchmark("startGame " + boardConfig)
+		{
+			long run()
+			{
+				gameEngine.startGame();
+				return gameEngine.getCard(0);
+			}
+		});
+	} // End of addDealBenchmarks method
+
+	/**
+	 * Adds the benchmarks of flipping cards and checking the matches.
+	 * @param benchmarks the list of benchmarks
+	 */
+	private static void addMatchBenchmarks(ArrayList<Benchmark> benchmarks)
+	{
+		final GameEngine gameEngine = new GameEngine(30, BoardConfig.DEFAULT, new SplitMixRandom(1));
+		gameEngine.startGame();
+		// Find a pair of different cards, a mismatch never removes them so the board never ends
+		int other = 1;
+		while(gameEngine.getCard(other) == gameEngine.getCard(0))
+			other++;
+		final int first = 0, second = other;
+		benchmarks.add(new Benchmark("turn mismatch")
+		{
+			long run()
+			{
+				gameEngine.flip(first);
+				GameEngine.FlipResult result = gameEngine.flip(second);
+				gameEngine.resolve();
+				return result.ordinal();
+			}
+		});
+		final TapQueue tapQueue = new TapQueue(gameEngine, 8);
+		benchmarks.add(new Benchmark("turn mismatch through TapQueue")
+		{
+			long run()
+			{
+				tapQueue.offer(first);
+				tapQueue.offer(second);
+				tapQueue.drain();
+				gameEngine.resolve();
+				return tapQueue.size();
+			}
+		});
+	} // End of addMatchBenchmarks method
+
+	/**
+	 * Adds the benchmarks of whole games and their replays.
+	 * @param benchmarks the list of benchmarks
+	 * @param boardConfig the size of the board
+	 */
+	private static void addGameBenchmarks(ArrayList<Benchmark> benchmarks, final BoardConfig boardConfig)
+	{
+		final GameEngine gameEngine = new GameEngine(30, boardConfig, new SplitMixRandom(1));
+		final int[] counts = new int[Deck.SIZE];
+		final int[] matchIndexes = new int[boardConfig.getCardCount()];
+		benchmarks.add(new Benchmark("perfect game " + boardConfig)
+		{
+			long run()
+			{
+				gameEngine.startGame();
+				playPerfectGame(gameEngine, counts, matchIndexes);
+				return gameEngine.getScore();
+			}
+		});
+		final SplitMixRandom random = new SplitMixRandom(2);
+		benchmarks.add(new Benchmark("random game " + boardConfig)
+		{
+			long run()
+			{
+				gameEngine.startGame();
+				// Tap random cards and tick after every few taps until the time runs out
+				for(int taps=0;gameEngine.isRunning();taps++)
+				{
+					gameEngine.flip(random.nextInt(gameEngine.getCardCount()));
+					gameEngine.resolve();
+					if(taps % 4 == 3)
+						gameEngine.tick();
+				} // End of taps for loop
+				return gameEngine.getScore();
+			}
+		});
+
+		// Record some games to replay
+		final byte[][] logs = new byte[64][];
+		for(int i=0;i<logs.length;i++)
+			logs[i] = recordRandomGame(boardConfig, random);
+		final Replayer replayer = new Replayer();
+		benchmarks.add(new Benchmark("replay " + boardConfig)
+		{
+			int next;
+
+			long run()
+			{
+				next = (next + 1) % logs.length;
+				return replayer.replay(logs[next]);
+			}
+		});
+	} // End of addGameBenchmarks method
+
+	/**
+	 * Adds the benchmarks of decoding the images of the assets folder.
+	 * @param benchmarks the list of benchmarks
+	 * @param assets the assets folder
+	 * @throws IOException if the images can't be read
+	 */
+	private static void addDecodeBenchmarks(ArrayList<Benchmark> benchmarks, File assets) throws IOException
+	{
+		final File[] files = assets.listFiles();
+		if(files == null)
+			throw new IOException("Not a folder: " + assets);
+		Arrays.sort(files);
+		final ArrayList<File> cards = new ArrayList<File>();
+		for(File file : files)
+		{
+			if(file.getName().endsWith(".png") && !file.getName().startsWith("cards_atlas"))
+				cards.add(file);
+		} // End of files for loop
+		benchmarks.add(new Benchmark("decode card png")
+		{
+			int next;
+
+			long run()
+			{
+				next = (next + 1) % cards.size();
+				return decode(cards.get(next));
+			}
+		});
+		final File sheet = new File(assets, "cards_atlas.png");
+		benchmarks.add(new Benchmark("decode atlas sheet")
+		{
+			long run()
+			{
+				return decode(sheet);
+			}
+		});
+	} // End of addDecodeBenchmarks method
+
+	/**
+	 * Plays a game without any mistake until all the cards are matched.
+	 * @param gameEngine the engine of a started game
+	 * @param counts the count of each Deck card, Deck.SIZE long
+	 * @param matchIndexes the indexes of the cards sorted by match, getCardCount long
+	 */
+	private static void playPerfectGame(GameEngine gameEngine, int[] counts, int[] matchIndexes)
+	{
+		int matchCount = gameEngine.getBoardConfig().getMatchCount();
+		Arrays.fill(counts, 0);
+		// Count the cards so each match gets its own part of matchIndexes
+		for(int i=0;i<gameEngine.getCardCount();i++)
+			counts[gameEngine.getCard(i)]++;
+		int start = 0;
+		for(int card=0;card<Deck.SIZE;card++)
+		{
+			int count = counts[card];
+			counts[card] = start;
+			start += count;
+		} // End of Deck.SIZE for loop
+		for(int i=0;i<gameEngine.getCardCount();i++)
+			matchIndexes[counts[gameEngine.getCard(i)]++] = i;
+		for(int i=0;i<matchIndexes.length;i+=matchCount)
+		{
+			for(int a=0;a<matchCount;a++)
+				gameEngine.flip(matchIndexes[i + a]);
+			gameEngine.resolve();
+		} // End of matchIndexes for loop
+		gameEngine.tick();
+	} // End of playPerfectGame method
+
+	/**
+	 * Records a game of random taps.
+	 * @param boardConfig the size of the board
+	 * @param random the source of the taps
+	 * @return the log of the game
+	 */
+	private static byte[] recordRandomGame(BoardConfig boardConfig, SplitMixRandom random)
+	{
+		GameEngine gameEngine = new GameEngine(30, boardConfig, random.split());
+		TapQueue tapQueue = new TapQueue(gameEngine, 8);
+		ReplayRecorder recorder = new ReplayRecorder();
+		gameEngine.startGame();
+		long time = 0;
+		recorder.start(gameEngine, time);
+		while(gameEngine.isRunning())
+		{
+			time += random.nextInt(400);
+			int event = random.nextInt(10);
+			if(event < 6)
+			{
+				int index = random.nextInt(gameEngine.getCardCount());
+				recorder.onTap(index, time);
+				tapQueue.offer(index);
+				tapQueue.drain();
+			}
+			else if(event < 9)
+			{
+				recorder.onResolve(time);
+				gameEngine.resolve();
+				tapQueue.drain();
+			}
+			else
+			{
+				recorder.onTick(time);
+				gameEngine.tick();
+			} // End of event If - Else
+		} // End of isRunning while loop
+		recorder.finish(gameEngine.getScore(), time);
+		return recorder.toByteArray();
+	} // End of recordRandomGame method
+
+	/**
+	 * Decodes an image.
+	 * @param file the png file
+	 * @return a pixel of the image
+	 */
+	private static long decode(File file)
+	{
+		try
+		{
+			BufferedImage image = ImageIO.read(file);
+			return image.getRGB(0, 0);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Error in decoding " + file, e);
+		} // End of Try - Catch
+	} // End of decode method
+
+	/**
+	 * Warms up and measures a benchmark, then prints its result.
+	 * @param benchmark the benchmark
+	 */
+	private static void measure(Benchmark benchmark)
+	{
+		for(int i=0;i<WARMUP_ITERATIONS;i++)
+			runIteration(benchmark);
+		double[] results = new double[MEASURE_ITERATIONS];
+		double mean = 0;
+		for(int i=0;i<MEASURE_ITERATIONS;i++)
+		{
+			results[i] = runIteration(benchmark);
+			mean += results[i];
+		} // End of MEASURE_ITERATIONS for loop
+		mean /= results.length;
+		double variance = 0;
+		for(double result : results)
+			variance += (result - mean) * (result - mean);
+		double deviation = Math.sqrt(variance / (results.length - 1));
+		System.out.println(String.format("%-32s %14.1f %12.1f", benchmark.name, mean, deviation));
+	} // End of measure method
+
+	/**
+	 * Runs a benchmark for about ITERATION_MILLIS.
+	 * The clock is only read after batches of operations that double in size.
+	 * @param benchmark the benchmark
+	 * @return the mean time of an operation in nanoseconds
+	 */
+	private static double runIteration(Benchmark benchmark)
+	{
+		long limit = ITERATION_MILLIS * 1000000L;
+		long operations = 0;
+		long start = System.nanoTime();
+		long elapsed = 0;
+		long result = 0;
+		for(long batch=1;elapsed < limit;batch*=2)
+		{
+			for(long i=0;i<batch;i++)
+				result += benchmark.run();
+			operations += batch;
+			elapsed = System.nanoTime() - start;
+		} // End of batch for loop
+		sink += result;
+		return (double)elapsed / operations;
+	} // End of runIteration method
+}
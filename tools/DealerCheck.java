@@ -0,0 +1,167 @@
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.Dealer;
+import com.raidrin.memorygame.Deck;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * Build time tool that checks with chi-square tests that the cards are
+ * dealt and shuffled uniformly:
+ * SplitMixRandom.nextInt gives every value the same chance, including a
+ * bound where taking the remainder without the rejection would make the
+ * low values twice as likely; Dealer.deal deals every card of the deck as
+ * often, from one generator and from consecutive seeds like the games
+ * use; Dealer.shuffle sends every card to every position as often and
+ * gives each order of a few cards the same chance.
+ * A test fails when its statistic is over the critical value of its
+ * degrees of freedom at a significance of 0.0001, so a correct generator
+ * fails about once in 10000 runs of a test.
+ * Fails with an exception when a check doesn't hold.
+ *
+ * Usage: javac -d /tmp/dealer -sourcepath src tools/DealerCheck.java
+ *        && java -cp /tmp/dealer DealerCheck [samples] [seed]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class DealerCheck
+{
+	private static final double Z = 3.719;	// The normal quantile of a significance of 0.0001
+	private static final int ORDER_LENGTH = 5;	// The count of cards whose 120 orders are counted
+
+	public static void main(String[] args)
+	{
+		int samples = (args.length > 0)?Integer.parseInt(args[0]):1000000;
+		long seed = (args.length > 1)?Long.parseLong(args[1]):1;
+
+		SplitMixRandom random = new SplitMixRandom(seed);
+		int[] bounds = {2, 3, 7, Deck.SIZE, 1000};
+		for(int bound : bounds)
+		{
+			long[] counts = new long[bound];
+			for(int i=0;i<samples;i++)
+				counts[random.nextInt(bound)]++;
+			test("nextInt(" + bound + ")", counts);
+		} // End of bounds for loop
+		// The remainder of 31 bits by this bound hits the first half twice as often without the rejection
+		int bound = (int)((1L << 31) * 2 / 3);
+		long[] halves = new long[2];
+		for(int i=0;i<samples;i++)
+			halves[random.nextInt(bound) < bound / 2 ? 0 : 1]++;
+		test("nextInt(" + bound + ") halves", halves);
+
+		BoardConfig boardConfig = BoardConfig.DEFAULT;
+		int[] board = new int[boardConfig.getCardCount()];
+		Dealer dealer = new Dealer(random);
+		long[] dealt = new long[Deck.SIZE];
+		for(int i=0;i<samples / boardConfig.getMatchTotal();i++)
+		{
+			dealer.deal(board, boardConfig.getMatchTotal(), boardConfig.getMatchCount());
+			for(int card=0;card<boardConfig.getMatchTotal();card++)
+				dealt[board[card * boardConfig.getMatchCount()]]++;
+		} // End of deals for loop
+		test("deal " + boardConfig, dealt);
+
+		// Each game sets the seed of the dealer again, like GameEngine.startGame
+		SplitMixRandom seedRandom = new SplitMixRandom(0);
+		long[] seeded = new long[Deck.SIZE];
+		long[] firstCard = new long[Deck.SIZE];
+		for(int game=0;game<samples / boardConfig.getMatchTotal();game++)
+		{
+			seedRandom.setSeed(seed + game);
+			dealer.setRandom(seedRandom);
+			dealer.deal(board, boardConfig.getMatchTotal(), boardConfig.getMatchCount());
+			firstCard[board[0]]++;
+			for(int card=0;card<boardConfig.getMatchTotal();card++)
+				seeded[board[card * boardConfig.getMatchCount()]]++;
+		} // End of games for loop
+		test("deal from consecutive seeds", seeded);
+		test("first card from consecutive seeds", firstCard);
+
+		dealer.setRandom(random);
+		long[] positions = new long[board.length * board.length];
+		for(int i=0;i<samples / board.length;i++)
+		{
+			for(int card=0;card<board.length;card++)
+				board[card] = card;
+			dealer.shuffle(board, board.length);
+			for(int position=0;position<board.length;position++)
+				positions[board[position] * board.length + position]++;
+		} // End of shuffles for loop
+		// Each card is at one position and each position has one card, which leaves (n - 1)^2 degrees
+		test("shuffle card x position", positions, (board.length - 1) * (board.length - 1));
+
+		int[] cards = new int[ORDER_LENGTH];
+		long[] orders = new long[factorial(ORDER_LENGTH)];
+		for(int i=0;i<samples;i++)
+		{
+			for(int card=0;card<cards.length;card++)
+				cards[card] = card;
+			dealer.shuffle(cards, cards.length);
+			orders[rank(cards)]++;
+		} // End of samples for loop
+		test("shuffle orders of " + ORDER_LENGTH + " cards", orders);
+		System.out.println("ok");
+	}
+
+	/**
+	 * Runs a chi-square test of counts that should all be equal and prints the result.
+	 * @param name the name of the test
+	 * @param counts the counts of each value
+	 */
+	private static void test(String name, long[] counts)
+	{
+		test(name, counts, counts.length - 1);
+	} // End of test method
+
+	/**
+	 * Runs a chi-square test of counts that should all be equal and prints the result.
+	 * @param name the name of the test
+	 * @param counts the counts of each value
+	 * @param degrees the degrees of freedom of the counts
+	 */
+	private static void test(String name, long[] counts, int degrees)
+	{
+		long total = 0;
+		for(long count : counts)
+			total += count;
+		double expected = (double)total / counts.length;
+		double statistic = 0;
+		for(long count : counts)
+			statistic += (count - expected) * (count - expected) / expected;
+		// The Wilson-Hilferty approximation of the quantile of the chi-square distribution
+		double h = 2.0 / (9 * degrees);
+		double critical = degrees * Math.pow(1 - h + Z * Math.sqrt(h), 3);
+		System.out.println(String.format("%-36s %12d samples, chi-square %10.1f, %5d degrees, critical %8.1f",
+				name, total, statistic, degrees, critical));
+		if(statistic > critical)
+			throw new IllegalStateException("The " + name + " aren't uniform.");
+	} // End of test method
+
+	/**
+	 * @param cards an order of the cards from 0 to cards.length - 1
+	 * @return the rank of the order, from 0 to cards.length! - 1
+	 */
+	private static int rank(int[] cards)
+	{
+		// The Lehmer code of the order
+		int rank = 0;
+		for(int i=0;i<cards.length;i++)
+		{
+			int smaller = 0;
+			for(int j=i+1;j<cards.length;j++)
+				if(cards[j] < cards[i])
+					smaller++;
+			rank = rank * (cards.length - i) + smaller;
+		} // End of cards for loop
+		return rank;
+	} // End of rank method
+
+	/**
+	 * @param n a small count
+	 * @return n!
+	 */
+	private static int factorial(int n)
+	{
+		return (n <= 1)?1:n * factorial(n - 1);
+	} // End of factorial method
+}
@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+
+import com.raidrin.memorygame.GameClock;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * Build time tool that runs a GameClock on a virtual clock and checks
+ * that it never drifts. The scheduler of the virtual clock runs each task
+ * late by a random delay, and now and then by a stall of a few intervals,
+ * like a busy UI thread. The clock is paused and resumed at random times.
+ * After each tick the time the clock ran is compared with the count of
+ * ticks times the interval: the tick is never early and never later than
+ * the longest delay, however many ticks and pauses came before it.
+ * The same delays are given to a clock that waits an interval after each
+ * tick, the way the game counted down before, to show how much it drifts.
+ * Fails with an exception when a check doesn't hold.
+ *
+ * Usage: javac -d /tmp/clock -sourcepath src tools/GameClockCheck.java
+ *        && java -cp /tmp/clock GameClockCheck [ticks] [seed]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameClockCheck
+{
+	private static final long INTERVAL = 1000;		// The interval of the clock in milliseconds, a second like the game
+	private static final int MAX_DELAY = 40;		// The most a task usually runs late in milliseconds
+	private static final long STALL = 2500;			// How late a task runs when the thread stalls
+	private static final int STALL_ODDS = 500;		// One task in this many stalls
+	private static final int PAUSE_ODDS = 20;		// One tick in this many is followed by a pause
+
+	public static void main(String[] args)
+	{
+		int tickCount = (args.length > 0)?Integer.parseInt(args[0]):1000000;
+		long seed = (args.length > 1)?Long.parseLong(args[1]):1;
+
+		final VirtualClock virtualClock = new VirtualClock(new SplitMixRandom(seed));
+		final long[] ticks = new long[1];
+		GameClock gameClock = new GameClock(virtualClock, virtualClock, INTERVAL, new GameClock.Listener()
+		{
+			@Override
+			public void onTick()
+			{
+				ticks[0]++;
+			} // End of onTick method
+		}); // End of Listener anonymous inner class
+
+		SplitMixRandom pauses = new SplitMixRandom(seed + 1);
+		long runStart = virtualClock.now();
+		long ranBefore = 0;		// The time the clock ran before the last resume
+		long maxLate = 0, pauseCount = 0;
+		gameClock.start();
+		while(ticks[0] < tickCount)
+		{
+			long before = ticks[0];
+			virtualClock.runNext();
+			if(ticks[0] == before)
+				continue;
+			// The clock ran for this long and has ticked once for each interval of it
+			long late = ranBefore + virtualClock.now() - runStart - ticks[0] * INTERVAL;
+			check(late >= 0, "The tick " + ticks[0] + " is " + -late + " ms early.");
+			check(late <= STALL + MAX_DELAY, "The tick " + ticks[0] + " is " + late + " ms late.");
+			maxLate = Math.max(maxLate, late);
+			if(pauses.nextInt(PAUSE_ODDS) == 0)
+			{
+				// Pause part of the way to the next tick, or while the tick task waits to run
+				virtualClock.advance(pauses.nextInt((int)INTERVAL + MAX_DELAY));
+				ranBefore += virtualClock.now() - runStart;
+				gameClock.pause();
+				virtualClock.advance(pauses.nextInt(60000));
+				gameClock.resume();
+				runStart = virtualClock.now();
+				pauseCount++;
+			} // End of PAUSE_ODDS If
+		} // End of tickCount while loop
+		long ran = ranBefore + virtualClock.now() - runStart;
+		System.out.println(String.format("%d ticks and %d pauses, the clock ran %d ms, %d ms after the last tick,"
+				+ " at most %d ms late", tickCount, pauseCount, ran, ran - tickCount * INTERVAL, maxLate));
+
+		// A clock that waits an interval after each tick adds the delay of every tick
+		SplitMixRandom delays = new SplitMixRandom(seed);
+		long time = 0;
+		for(int tick=0;tick<tickCount;tick++)
+			time += INTERVAL + nextDelay(delays);
+		System.out.println(String.format("waiting an interval after each tick drifts %d ms (%.1f%%) over the same ticks",
+				time - tickCount * INTERVAL, 100.0 * (time - tickCount * INTERVAL) / (tickCount * INTERVAL)));
+		System.out.println("ok");
+	}
+
+	/**
+	 * @param random the source of the delays
+	 * @return how late a task runs in milliseconds
+	 */
+	private static long nextDelay(SplitMixRandom random)
+	{
+		if(random.nextInt(STALL_ODDS) == 0)
+			return STALL;
+		return random.nextInt(MAX_DELAY + 1);
+	} // End of nextDelay method
+
+	/**
+	 * @param condition the condition that has to hold
+	 * @param message the message of the failure
+	 */
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+			throw new IllegalStateException(message);
+	} // End of check method
+
+	/**
+	 * A time source and a scheduler whose time only moves when a task is run or advance is called.
+	 * Each task runs late by a random delay.
+	 */
+	private static class VirtualClock implements GameClock.TimeSource, GameClock.Scheduler
+	{
+		private final SplitMixRandom random;		// The source of the delays
+		private final ArrayList<Runnable> tasks;	// The scheduled tasks
+		private final ArrayList<Long> times;		// The time each task runs at, delay included
+		private long now;							// The current time
+
+		VirtualClock(SplitMixRandom random)
+		{
+			this.random = random;
+			tasks = new ArrayList<Runnable>();
+			times = new ArrayList<Long>();
+		}
+
+		@Override
+		public long now()
+		{
+			return now;
+		}
+
+		@Override
+		public void schedule(Runnable task, long time)
+		{
+			tasks.add(task);
+			times.add(Math.max(time, now) + nextDelay(random));
+		}
+
+		@Override
+		public void cancel(Runnable task)
+		{
+			int index = tasks.indexOf(task);
+			if(index != -1)
+			{
+				tasks.remove(index);
+				times.remove(index);
+			} // End of index != -1 If
+		}
+
+		/**
+		 * Moves the time forward without running the tasks whose time passed.
+		 * @param millis the milliseconds to move
+		 */
+		void advance(long millis)
+		{
+			now += millis;
+		} // End of advance method
+
+		/**
+		 * Moves the time to the first scheduled task and runs it.
+		 */
+		void runNext()
+		{
+			check(!tasks.isEmpty(), "The clock has no task scheduled.");
+			int first = 0;
+			for(int i=1;i<times.size();i++)
+				if(times.get(i) < times.get(first))
+					first = i;
+			now = Math.max(now, times.remove(first));
+			tasks.remove(first).run();
+		} // End of runNext method
+	} // End of VirtualClock class
+}
@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.GameHistory;
+import com.raidrin.memorygame.GameRecord;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * Build time tool that fills a GameHistory with a million records the way
+ * the game appends them and checks that the file keeps them: the count
+ * and every record read back match what was appended, the best games of
+ * each BoardConfig match the ones found by reading every record, and a
+ * record that's cut short by the end of the file is left out when the
+ * file is opened again. It prints the time of the appends, of the
+ * reopening that builds the index and of the high score lookups.
+ * Fails with an exception when a check doesn't hold.
+ *
+ * Usage: javac -d /tmp/history -sourcepath src tools/GameHistoryCheck.java
+ *        && java -cp /tmp/history GameHistoryCheck [records] [seed]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameHistoryCheck
+{
+	private static final int HEADER_SIZE = 16;	// The byte size of the header of the file, before the records
+
+	// The boards of the records, most of them the default one like in the game
+	private static final BoardConfig[] BOARD_CONFIGS = {
+		BoardConfig.DEFAULT, BoardConfig.DEFAULT, BoardConfig.DEFAULT,
+		new BoardConfig(4, 5, 2), new BoardConfig(6, 6, 2)
+	};
+
+	public static void main(String[] args) throws IOException
+	{
+		int recordCount = (args.length > 0)?Integer.parseInt(args[0]):1000000;
+		long seed = (args.length > 1)?Long.parseLong(args[1]):1;
+
+		File file = File.createTempFile("history", ".dat");
+		file.deleteOnExit();
+		// The store creates the file when it's missing
+		check(file.delete(), "The temporary file can't be deleted.");
+
+		GameHistory history = new GameHistory(file);
+		GameRecord record = new GameRecord();
+		SplitMixRandom random = new SplitMixRandom(seed);
+		long start = System.nanoTime();
+		for(int index=0;index<recordCount;index++)
+		{
+			fill(record, random, index);
+			history.append(record);
+		} // End of recordCount for loop
+		double appendMillis = (System.nanoTime() - start) / 1e6;
+		check(history.getCount() == recordCount, "The history has " + history.getCount() + " records.");
+		System.out.println(String.format("appended %d records in %.0f ms, %.0f ns each, %d MB file", recordCount,
+				appendMillis, appendMillis * 1e6 / recordCount, file.length() / (1024 * 1024)));
+		history.close();
+
+		start = System.nanoTime();
+		history = new GameHistory(file);
+		double openMillis = (System.nanoTime() - start) / 1e6;
+		System.out.println(String.format("reopened and indexed in %.0f ms", openMillis));
+		check(history.getCount() == recordCount, "The reopened history has " + history.getCount() + " records.");
+		checkRecords(history, seed, recordCount);
+		checkTopRecords(history);
+		history.close();
+
+		// A record whose bytes are cut by the end of the file is never read
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		raw.setLength(HEADER_SIZE + (long)(recordCount - 1) * GameHistory.RECORD_SIZE + GameHistory.RECORD_SIZE / 2);
+		raw.close();
+		history = new GameHistory(file);
+		check(history.getCount() == recordCount - 1, "The cut history has " + history.getCount() + " records.");
+		history.append(record);
+		check(history.getCount() == recordCount, "The record after the cut one isn't appended.");
+		history.close();
+		System.out.println("ok");
+	}
+
+	/**
+	 * Fills a record with a random game.
+	 * @param record the record
+	 * @param random the source of the game
+	 * @param index the index of the record in the history
+	 */
+	private static void fill(GameRecord record, SplitMixRandom random, int index)
+	{
+		BoardConfig boardConfig = BOARD_CONFIGS[random.nextInt(BOARD_CONFIGS.length)];
+		long gameSeed = random.nextLong();
+		int score = random.nextInt(boardConfig.getMatchTotal() + 1);
+		int timeUsed = 1000 + random.nextInt(60000);
+		int tapCount = random.nextInt(2 * GameRecord.MAX_TAPS);
+		record.set(gameSeed, boardConfig, score, timeUsed, 1000L * index, tapCount);
+		for(int i=0;i<record.getStoredTapCount();i++)
+			record.setTapTime(i, random.nextInt(GameRecord.MAX_TAP_TIME + 1));
+	} // End of fill method
+
+	/**
+	 * Reads every record back and compares it with the one that was appended.
+	 * @param history the history
+	 * @param seed the seed the records were made from
+	 * @param recordCount the count of records
+	 */
+	private static void checkRecords(GameHistory history, long seed, int recordCount)
+	{
+		GameRecord expected = new GameRecord();
+		GameRecord actual = new GameRecord();
+		SplitMixRandom random = new SplitMixRandom(seed);
+		long start = System.nanoTime();
+		for(int index=0;index<recordCount;index++)
+		{
+			fill(expected, random, index);
+			history.read(index, actual);
+			boolean same = actual.getSeed() == expected.getSeed()
+					&& actual.getBoardConfig().equals(expected.getBoardConfig())
+					&& actual.getScore() == expected.getScore() && actual.getTimeUsed() == expected.getTimeUsed()
+					&& actual.getFinishedAt() == expected.getFinishedAt() && actual.getTapCount() == expected.getTapCount();
+			for(int i=0;same && i<expected.getStoredTapCount();i++)
+				same = actual.getTapTime(i) == expected.getTapTime(i);
+			check(same, "The record " + index + " isn't the one that was appended.");
+		} // End of recordCount for loop
+		System.out.println(String.format("read back every record in %.0f ms", (System.nanoTime() - start) / 1e6));
+	} // End of checkRecords method
+
+	/**
+	 * Compares the best games of each BoardConfig with the ones found by reading every record.
+	 * @param history the history
+	 */
+	private static void checkTopRecords(GameHistory history)
+	{
+		GameRecord record = new GameRecord();
+		int[] indexes = new int[GameHistory.TOP_COUNT];
+		for(int config=2;config<BOARD_CONFIGS.length;config++)
+		{
+			BoardConfig boardConfig = BOARD_CONFIGS[config];
+			// The best games by a scan, an equal game that was played earlier stays ahead
+			int[] best = new int[GameHistory.TOP_COUNT];
+			int[] bestScores = new int[GameHistory.TOP_COUNT];
+			int[] bestTimes = new int[GameHistory.TOP_COUNT];
+			int size = 0;
+			for(int index=0;index<history.getCount();index++)
+			{
+				history.read(index, record);
+				if(!record.getBoardConfig().equals(boardConfig))
+					continue;
+				int position = size;
+				while(position > 0 && (record.getScore() > bestScores[position - 1]
+						|| (record.getScore() == bestScores[position - 1] && record.getTimeUsed() < bestTimes[position - 1])))
+					position--;
+				if(position == GameHistory.TOP_COUNT)
+					continue;
+				for(int i=Math.min(size, GameHistory.TOP_COUNT - 1);i>position;i--)
+				{
+					best[i] = best[i - 1];
+					bestScores[i] = bestScores[i - 1];
+					bestTimes[i] = bestTimes[i - 1];
+				} // End of position for loop
+				best[position] = index;
+				bestScores[position] = record.getScore();
+				bestTimes[position] = record.getTimeUsed();
+				if(size < GameHistory.TOP_COUNT)
+					size++;
+			} // End of getCount for loop
+
+			long start = System.nanoTime();
+			int count = 0;
+			for(int i=0;i<1000;i++)
+				count = history.getTopRecords(boardConfig, indexes);
+			double lookupMicros = (System.nanoTime() - start) / 1e3 / 1000;
+			check(count == size, "The history has " + count + " best games of " + boardConfig + ".");
+			for(int i=0;i<count;i++)
+				check(indexes[i] == best[i], "The best game " + i + " of " + boardConfig + " is " + indexes[i]
+						+ " instead of " + best[i] + ".");
+			System.out.println(String.format("best games of %dx%d match the scan, %.2f us a lookup",
+					boardConfig.getRows(), boardConfig.getColumns(), lookupMicros));
+		} // End of BOARD_CONFIGS for loop
+	} // End of checkTopRecords method
+
+	/**
+	 * @param condition the condition that has to hold
+	 * @param message the message of the failure
+	 */
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+			throw new IllegalStateException(message);
+	} // End of check method
+}
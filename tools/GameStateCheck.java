@@ -0,0 +1,210 @@
+import java.util.concurrent.CountDownLatch;
+
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.GameEngine;
+import com.raidrin.memorygame.GameState;
+import com.raidrin.memorygame.MemoryPlayer;
+import com.raidrin.memorygame.Player;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * Build time tool that checks the GameState words a GameEngine publishes
+ * while other threads read them, the way a renderer or the server reads
+ * the state of a game it doesn't run.
+ * One thread plays games as fast as it can and keeps every word it
+ * published by its sequence. Several reader threads spin on getState at
+ * the same time and check each word they get: the sequence never goes
+ * back, the score and the time left are in their ranges, and once the
+ * writer is done every word a reader saw is exactly the word the writer
+ * published with that sequence, so no reader ever saw a torn word or the
+ * fields of two different moments.
+ * Fails with an exception when a check doesn't hold.
+ *
+ * Usage: javac -d /tmp/state -sourcepath src tools/GameStateCheck.java
+ *        && java -cp /tmp/state GameStateCheck [states] [readers] [seed]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class GameStateCheck
+{
+	private static final int MAX_TIME = 30;		// The time of a game in seconds
+	private static final int FLIPS_PER_TICK = 6;	// The flips played between two ticks of the clock
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int stateCount = (args.length > 0)?Integer.parseInt(args[0]):2000000;
+		int readerCount = (args.length > 1)?Integer.parseInt(args[1]):Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+		long seed = (args.length > 2)?Long.parseLong(args[2]):1;
+
+		final GameEngine gameEngine = new GameEngine(MAX_TIME, BoardConfig.DEFAULT, new SplitMixRandom(seed));
+		final long[] published = new long[stateCount + 1];
+		final CountDownLatch started = new CountDownLatch(readerCount);
+		final Reader[] readers = new Reader[readerCount];
+		for(int i=0;i<readerCount;i++)
+		{
+			readers[i] = new Reader(gameEngine, started, stateCount);
+			readers[i].start();
+		} // End of readerCount for loop
+		started.await();
+
+		long start = System.nanoTime();
+		int games = play(gameEngine, new MemoryPlayer(8, new SplitMixRandom(seed + 1)), published);
+		double writeMillis = (System.nanoTime() - start) / 1e6;
+		for(Reader reader : readers)
+			reader.finish();
+
+		// The join makes every word the writer kept visible to this thread
+		long reads = 0, samples = 0;
+		for(Reader reader : readers)
+		{
+			if(reader.failure != null)
+				throw new IllegalStateException(reader.failure);
+			for(int i=0;i<reader.sampleCount;i++)
+			{
+				long word = reader.samples[i];
+				int sequence = GameState.getSequence(word);
+				check(sequence < published.length && published[sequence] == word, "A reader saw " + Long.toHexString(word)
+						+ " but the writer published " + Long.toHexString(published[Math.min(sequence, stateCount)])
+						+ " with the sequence " + sequence + ".");
+			} // End of sampleCount for loop
+			reads += reader.reads;
+			samples += reader.sampleCount;
+		} // End of readers for loop
+		System.out.println(String.format("%d games, %d states published in %.0f ms, %d readers read %d words"
+				+ " and compared %d distinct ones", games, stateCount, writeMillis, readerCount, reads, samples));
+		System.out.println("ok");
+	}
+
+	/**
+	 * Plays games until the engine published a count of states and keeps each word by its sequence.
+	 * @param gameEngine the engine
+	 * @param player the player
+	 * @param published the array where each word is saved at its sequence, the count of states + 1 long
+	 * @return the count of games played
+	 */
+	private static int play(GameEngine gameEngine, Player player, long[] published)
+	{
+		int[] openIndexes = new int[gameEngine.getBoardConfig().getMatchCount()];
+		int games = 0;
+		keep(gameEngine, published);
+		while(keep(gameEngine, published))
+		{
+			gameEngine.startGame();
+			player.startGame(gameEngine);
+			games++;
+			int openCount = 0, flips = 0;
+			while(gameEngine.isRunning() && keep(gameEngine, published))
+			{
+				if(++flips % FLIPS_PER_TICK == 0)
+				{
+					gameEngine.tick();
+					continue;
+				} // End of FLIPS_PER_TICK If
+				if(gameEngine.getScore() == gameEngine.getBoardConfig().getMatchTotal())
+					continue;
+				int index = player.chooseCard(openIndexes, openCount);
+				GameEngine.FlipResult flipResult = gameEngine.flip(index);
+				player.onCardSeen(index, gameEngine.getCard(index));
+				openIndexes[openCount++] = index;
+				if(keep(gameEngine, published) && GameState.isCardsOpen(gameEngine.getState()))
+				{
+					gameEngine.resolve();
+					openCount = 0;
+				} // End of isCardsOpen If
+				check(flipResult != GameEngine.FlipResult.IGNORED, "The player flipped a card that can't be flipped.");
+			} // End of isRunning while loop
+		} // End of keep while loop
+		return games;
+	} // End of play method
+
+	/**
+	 * Keeps the last word published by the engine.
+	 * @param gameEngine the engine
+	 * @param published the array where each word is saved at its sequence
+	 * @return false once the engine published the whole array
+	 */
+	private static boolean keep(GameEngine gameEngine, long[] published)
+	{
+		long word = gameEngine.getState();
+		int sequence = GameState.getSequence(word);
+		if(sequence >= published.length)
+			return false;
+		// Each call of the engine publishes at most once, so every word is kept
+		check(published[sequence] == 0 || published[sequence] == word, "The sequence " + sequence + " was published twice.");
+		check(sequence == 1 || published[sequence - 1] != 0, "The sequence " + (sequence - 1) + " wasn't kept.");
+		published[sequence] = word;
+		return sequence < published.length - 1;
+	} // End of keep method
+
+	/**
+	 * @param condition the condition that has to hold
+	 * @param message the message of the failure
+	 */
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+			throw new IllegalStateException(message);
+	} // End of check method
+
+	/**
+	 * A thread that reads the state of the engine without a lock and checks every word it gets.
+	 */
+	private static class Reader extends Thread
+	{
+		private final GameEngine gameEngine;	// The engine whose state is read
+		private final CountDownLatch started;	// Counted down once the reader spins
+		private final int matchTotal;			// The highest score of a game
+		private volatile boolean done;			// States whether the writer is done
+		final long[] samples;					// The distinct words read, in the order they were read
+		int sampleCount;						// The count of samples kept
+		long reads;								// The count of words read
+		String failure;							// The first check that failed, null if none
+
+		Reader(GameEngine gameEngine, CountDownLatch started, int stateCount)
+		{
+			this.gameEngine = gameEngine;
+			this.started = started;
+			matchTotal = gameEngine.getBoardConfig().getMatchTotal();
+			samples = new long[stateCount];
+			setDaemon(true);
+		}
+
+		@Override
+		public void run()
+		{
+			long last = gameEngine.getState();
+			started.countDown();
+			while(!done)
+			{
+				long word = gameEngine.getState();
+				reads++;
+				if(word == last)
+					continue;
+				int score = GameState.getScore(word);
+				int secondsLeft = GameState.getSecondsLeft(word);
+				if(GameState.getSequence(word) <= GameState.getSequence(last))
+					failure = "The sequence went back from " + GameState.getSequence(last) + " to " + GameState.getSequence(word) + ".";
+				else if(score > matchTotal)
+					failure = "The score " + score + " is higher than " + matchTotal + ".";
+				else if(secondsLeft < 1 || secondsLeft > MAX_TIME)
+					failure = "The time left " + secondsLeft + " isn't between 1 and " + MAX_TIME + ".";
+				if(failure != null)
+					return;
+				// A word with a higher sequence than the last one is never read twice, so every word fits
+				samples[sampleCount++] = word;
+				last = word;
+			} // End of done while loop
+		}
+
+		/**
+		 * Stops the reader and waits for it.
+		 * @throws InterruptedException if the wait is interrupted
+		 */
+		void finish() throws InterruptedException
+		{
+			done = true;
+			join();
+		} // End of finish method
+	} // End of Reader class
+}
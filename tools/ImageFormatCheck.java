@@ -0,0 +1,288 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.raidrin.memorygame.Deck;
+import com.raidrin.memorygame.ImageFormat;
+
+/**
+ * Build time tool that checks what ImageFormat tells the ImageCache about
+ * an image and how much memory it saves.
+ * hasAlphaChannel is checked on pngs written for each color type: an RGB,
+ * gray or palette png without a tRNS chunk is opaque, and one with an
+ * alpha channel or a tRNS chunk, like a palette with a transparent color,
+ * can have transparent pixels. Pngs it can't read, like a jpg, a png cut
+ * before its pixel data or a png with more chunks before its pixel data
+ * than it reads, are decoded the safe way. After each check the same
+ * stream still decodes the whole image. getWidth is checked on a png, a
+ * jpg and the headers of the three kinds of webp.
+ * Then every card face of the assets folder is decoded for the width its
+ * cell has with 4, 5, 6 and 8 columns on screens from 240 to 1080 pixels,
+ * with the sample size BoardView asks for and 16 bits for each pixel of an
+ * opaque face, and compared with the full size 32 bit decode of the first
+ * version of the game. A face that has transparent pixels is never decoded
+ * with 16 bits, and a sampled face is never narrower than it's drawn.
+ * Fails with an exception when a check doesn't hold.
+ *
+ * Usage: javac -d /tmp/imageformat -sourcepath src tools/ImageFormatCheck.java
+ *        && java -cp /tmp/imageformat ImageFormatCheck [assets folder]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class ImageFormatCheck
+{
+	private static final int[] SCREEN_WIDTHS = {240, 320, 480, 720, 1080};	// The widths of ldpi to xxhdpi phones
+	private static final int[] COLUMN_COUNTS = {4, 5, 6, 8};	// The columns of the boards of DifficultyTuner
+	private static final int GLOW_PADDING_DIVISOR = 15;	// Like BoardView, the glow takes 1/15 of each side of the cell
+	private static final int SIZE = 16;		// The width and height of the written pngs
+
+	public static void main(String[] args) throws IOException
+	{
+		File folder = new File((args.length > 0)?args[0]:"assets");
+
+		checkFormats();
+
+		// The faces as the first version decoded them, full size with 32 bits
+		BufferedImage[] faces = new BufferedImage[Deck.SIZE];
+		boolean[] alpha = new boolean[Deck.SIZE];
+		long fullBytes = 0;
+		int opaqueCount = 0;
+		for(int card=0;card<Deck.SIZE;card++)
+		{
+			File file = new File(folder, Deck.getFilename(card));
+			InputStream stream = new BufferedInputStream(new FileInputStream(file));
+			try
+			{
+				alpha[card] = ImageFormat.hasAlphaChannel(stream);
+				faces[card] = ImageIO.read(stream);
+			}
+			finally
+			{
+				stream.close();
+			} // End of try - finally
+			check(faces[card] != null, "The stream of " + file + " doesn't decode after the check.");
+			check(alpha[card] || !faces[card].getColorModel().hasAlpha(), file + " has transparent pixels but would be decoded with 16 bits.");
+			if(!alpha[card])
+				opaqueCount++;
+			fullBytes += 4L * faces[card].getWidth() * faces[card].getHeight();
+		} // End of Deck.SIZE for loop
+		System.out.println(String.format("%d of the %d faces are opaque, decoded full size with 32 bits they take %d KB",
+				opaqueCount, Deck.SIZE, fullBytes / 1024));
+
+		System.out.println(String.format("%8s %8s %8s %8s %10s %10s", "screen", "columns", "drawn", "sample", "KB", "of full"));
+		for(int screenWidth : SCREEN_WIDTHS)
+		{
+			for(int columns : COLUMN_COUNTS)
+			{
+				// The width a face is drawn at in its cell, like BoardView.getSampleSize
+				int cellWidth = screenWidth / columns;
+				int drawnWidth = cellWidth - 2 * (cellWidth / GLOW_PADDING_DIVISOR);
+				int sampleSize = ImageFormat.computeSampleSize(faces[0].getWidth(), drawnWidth);
+				long bytes = 0, expected = 0;
+				for(int card=0;card<Deck.SIZE;card++)
+				{
+					File file = new File(folder, Deck.getFilename(card));
+					BufferedImage face = decode(file, sampleSize);
+					int bytesPerPixel = alpha[card]?4:2;
+					check(face.getWidth() >= Math.min(drawnWidth, faces[card].getWidth()), file + " is decoded " + face.getWidth()
+							+ " wide for " + drawnWidth + " drawn pixels.");
+					bytes += (long)bytesPerPixel * face.getWidth() * face.getHeight();
+					expected += (long)bytesPerPixel * faces[card].getWidth() * faces[card].getHeight() / (sampleSize * sampleSize);
+				} // End of Deck.SIZE for loop
+				// A sampled face is rounded up to whole pixels, which adds less than a row and a column
+				check(bytes <= expected * 11 / 10, "The faces at a sample size of " + sampleSize + " take " + bytes
+						+ " bytes instead of about " + expected + ".");
+				System.out.println(String.format("%8d %8d %8d %8d %10d %9.1f%%", screenWidth, columns, drawnWidth, sampleSize,
+						bytes / 1024, 100.0 * bytes / fullBytes));
+			} // End of COLUMN_COUNTS for loop
+		} // End of SCREEN_WIDTHS for loop
+		System.out.println("ok");
+	}
+
+	/**
+	 * Checks hasAlphaChannel on pngs of every color type and on images it can't read.
+	 * @throws IOException if a png can't be written
+	 */
+	private static void checkFormats() throws IOException
+	{
+		byte[] rgb = write(new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB));
+		checkFormat("RGB", rgb, false);
+		checkFormat("RGBA", write(new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB)), true);
+		checkFormat("gray", write(new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY)), false);
+		byte[] levels = {0, (byte)255};
+		IndexColorModel palette = new IndexColorModel(8, 2, levels, levels, levels);
+		checkFormat("palette", write(new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_INDEXED, palette)), false);
+		IndexColorModel transparentPalette = new IndexColorModel(8, 2, levels, levels, levels, 0);
+		checkFormat("palette with a transparent color", write(new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_INDEXED,
+				transparentPalette)), true);
+		// An RGB png whose tRNS chunk makes black transparent
+		checkFormat("RGB with a tRNS chunk", insertChunk(rgb, "tRNS", new byte[6]), true);
+		checkFormat("RGB with a text chunk", insertChunk(rgb, "tEXt", "Title\0Card".getBytes("ISO-8859-1")), false);
+		checkFormat("RGB with a 100 KB chunk", insertChunk(rgb, "zTXt", new byte[100 * 1024]), true);
+
+		BufferedImage jpg = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(jpg, "jpg", output);
+		checkFormat("jpg", output.toByteArray(), true);
+		// The signature, the IHDR chunk and half of the next one
+		byte[] cut = new byte[40];
+		System.arraycopy(rgb, 0, cut, 0, cut.length);
+		check(ImageFormat.hasAlphaChannel(new ByteArrayInputStream(cut)), "A png cut before its pixel data isn't decoded the safe way.");
+
+		// The width is read from the header of each format
+		checkWidth("png", write(new BufferedImage(300, SIZE, BufferedImage.TYPE_INT_RGB)), 300);
+		output.reset();
+		ImageIO.write(new BufferedImage(300, SIZE, BufferedImage.TYPE_INT_RGB), "jpg", output);
+		checkWidth("jpg", output.toByteArray(), 300);
+		// A lossy webp: the frame tag, the start code, then the width and its scale in 16 bits
+		checkWidth("lossy webp", webpHeader("VP8 ", new byte[] {0, 0, 0, (byte)0x9d, 0x01, 0x2a, 0x2c, (byte)0x41, 16, 0}), 300);
+		// A lossless webp: the signature, then the width minus 1 in 14 bits
+		checkWidth("lossless webp", webpHeader("VP8L", new byte[] {0x2f, 0x2b, 0x01, 0, 0, 0, 0, 0, 0, 0}), 300);
+		// An extended webp: the flags and 3 reserved bytes, then the width minus 1 in 24 bits
+		checkWidth("extended webp", webpHeader("VP8X", new byte[] {0, 0, 0, 0, 0x2b, 0x01, 0, 0, 0, 0}), 300);
+		checkWidth("png cut in its signature", new byte[] {(byte)0x89, 0x50}, 0);
+		checkWidth("text", "Not an image at all".getBytes("ISO-8859-1"), 0);
+	} // End of checkFormats method
+
+	/**
+	 * Checks that getWidth reads the width of an image.
+	 * @param name the name of the image
+	 * @param image the bytes of the image
+	 * @param width the width getWidth has to return
+	 * @throws IOException if the image can't be read
+	 */
+	private static void checkWidth(String name, byte[] image, int width) throws IOException
+	{
+		int result = ImageFormat.getWidth(new ByteArrayInputStream(image));
+		System.out.println(String.format("%-36s %6d bytes, width: %d", name, image.length, result));
+		check(result == width, "The width of the " + name + " image is read as " + result + " instead of " + width + ".");
+	} // End of checkWidth method
+
+	/**
+	 * Writes the start of a webp up to the data of its first chunk.
+	 * @param chunk the type of the first chunk
+	 * @param data the first bytes of the data of the chunk
+	 * @return the bytes of the header
+	 * @throws IOException never, the header is written to memory
+	 */
+	private static byte[] webpHeader(String chunk, byte[] data) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		output.write("RIFF".getBytes("ISO-8859-1"));
+		output.write(new byte[4]);
+		output.write("WEBP".getBytes("ISO-8859-1"));
+		output.write(chunk.getBytes("ISO-8859-1"));
+		output.write(new byte[4]);
+		output.write(data);
+		return output.toByteArray();
+	} // End of webpHeader method
+
+	/**
+	 * Checks hasAlphaChannel on an image and that the stream still decodes it.
+	 * @param name the name of the image
+	 * @param image the bytes of the image
+	 * @param hasAlpha what hasAlphaChannel has to return
+	 * @throws IOException if the image can't be read
+	 */
+	private static void checkFormat(String name, byte[] image, boolean hasAlpha) throws IOException
+	{
+		InputStream stream = new BufferedInputStream(new ByteArrayInputStream(image));
+		boolean result = ImageFormat.hasAlphaChannel(stream);
+		System.out.println(String.format("%-36s %6d bytes, can have transparent pixels: %b", name, image.length, result));
+		check(result == hasAlpha, "The " + name + " image isn't " + (hasAlpha?"":"not ") + "seen as transparent.");
+		BufferedImage decoded = ImageIO.read(stream);
+		check(decoded != null && decoded.getWidth() == SIZE, "The stream of the " + name + " image doesn't decode after the check.");
+	} // End of checkFormat method
+
+	/**
+	 * @param image an image
+	 * @return the bytes of the image written as a png
+	 * @throws IOException if it can't be written
+	 */
+	private static byte[] write(BufferedImage image) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", output);
+		return output.toByteArray();
+	} // End of write method
+
+	/**
+	 * Inserts a chunk right after the IHDR chunk of a png.
+	 * @param png the bytes of the png
+	 * @param type the type of the chunk
+	 * @param data the data of the chunk
+	 * @return the bytes of the new png
+	 * @throws IOException never, the png is written to memory
+	 */
+	private static byte[] insertChunk(byte[] png, String type, byte[] data) throws IOException
+	{
+		// The signature, then the length, type, 13 bytes and CRC of the IHDR chunk
+		int ihdrEnd = 8 + 4 + 4 + 13 + 4;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		DataOutputStream chunk = new DataOutputStream(output);
+		chunk.write(png, 0, ihdrEnd);
+		byte[] typeBytes = type.getBytes("ISO-8859-1");
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+		chunk.writeInt(data.length);
+		chunk.write(typeBytes);
+		chunk.write(data);
+		chunk.writeInt((int)crc.getValue());
+		chunk.write(png, ihdrEnd, png.length - ihdrEnd);
+		return output.toByteArray();
+	} // End of insertChunk method
+
+	/**
+	 * Decodes an image with a sample size, keeping one pixel in sampleSize on each side.
+	 * @param file the image
+	 * @param sampleSize the sample size
+	 * @return the decoded image
+	 * @throws IOException if the image can't be read
+	 */
+	private static BufferedImage decode(File file, int sampleSize) throws IOException
+	{
+		ImageInputStream stream = ImageIO.createImageInputStream(file);
+		try
+		{
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			check(readers.hasNext(), "No reader for " + file + ".");
+			ImageReader reader = readers.next();
+			reader.setInput(stream);
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+			BufferedImage image = reader.read(0, param);
+			reader.dispose();
+			return image;
+		}
+		finally
+		{
+			stream.close();
+		} // End of try - finally
+	} // End of decode method
+
+	/**
+	 * @param condition the condition that has to hold
+	 * @param message the message of the failure
+	 */
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+			throw new IllegalStateException(message);
+	} // End of check method
+}
@@ -0,0 +1,85 @@
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.DifficultyTuner;
+import com.raidrin.memorygame.MemoryPlayer;
+import com.raidrin.memorygame.Player;
+import com.raidrin.memorygame.RandomPlayer;
+import com.raidrin.memorygame.RandomSource;
+import com.raidrin.memorygame.SimulationResult;
+import com.raidrin.memorygame.Simulator;
+
+/**
+ * Build time tool that plays many games with a model of a player and
+ * prints the distributions of their scores and clear times.
+ * Only the classes of the game that don't use Android are compiled with it.
+ *
+ * Usage: javac -d /tmp/sim -sourcepath src tools/Simulate.java
+ *        && java -cp /tmp/sim Simulate [games] [perfect|random|memory:N] [rows] [columns] [match] [max time] [tap millis] [threads] [seed]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class Simulate
+{
+	public static void main(String[] args) throws InterruptedException
+	{
+		long games = (args.length > 0)?Long.parseLong(args[0]):1000000;
+		String playerName = (args.length > 1)?args[1]:"perfect";
+		int rows = (args.length > 2)?Integer.parseInt(args[2]):BoardConfig.DEFAULT.getRows();
+		int columns = (args.length > 3)?Integer.parseInt(args[3]):BoardConfig.DEFAULT.getColumns();
+		int match = (args.length > 4)?Integer.parseInt(args[4]):BoardConfig.DEFAULT.getMatchCount();
+		// The time of a game defaults to the time of the level a new player starts at
+		int maxTime = (args.length > 5)?Integer.parseInt(args[5]):new DifficultyTuner(Simulator.CARD_REVEAL_DELAY).getMaxTime();
+		long tapMillis = (args.length > 6)?Long.parseLong(args[6]):700;
+		int threads = (args.length > 7)?Integer.parseInt(args[7]):Runtime.getRuntime().availableProcessors();
+		long seed = (args.length > 8)?Long.parseLong(args[8]):1;
+
+		BoardConfig boardConfig = new BoardConfig(rows, columns, match);
+		Simulator simulator = new Simulator(boardConfig, maxTime, tapMillis, createFactory(playerName));
+		long start = System.nanoTime();
+		SimulationResult result = simulator.run(games, seed, threads);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		StringBuilder builder = new StringBuilder();
+		builder.append(playerName).append(" on ").append(boardConfig).append(", ").append(maxTime)
+				.append(" s, ").append(tapMillis).append(" ms a tap, ").append(threads).append(" threads\n");
+		result.appendDistributions(builder);
+		builder.append(String.format("%.0f games/s, %.1f taps a game%n", games / seconds,
+				(double)result.getTapCount() / result.getGameCount()));
+		System.out.print(builder);
+	}
+
+	/**
+	 * Creates the factory of a player model.
+	 * @param name perfect, random or memory:N for a player that remembers N cards
+	 * @return the factory of the players
+	 */
+	private static Simulator.PlayerFactory createFactory(String name)
+	{
+		if(name.equals("random"))
+		{
+			return new Simulator.PlayerFactory()
+			{
+				@Override
+				public Player createPlayer(RandomSource random)
+				{
+					return new RandomPlayer(random);
+				}
+			};
+		} // End of random If
+		final int memorySize;
+		if(name.equals("perfect"))
+			memorySize = MemoryPlayer.PERFECT_MEMORY;
+		else if(name.startsWith("memory:"))
+			memorySize = Integer.parseInt(name.substring("memory:".length()));
+		else
+			throw new IllegalArgumentException("Unknown player " + name + ".");
+		return new Simulator.PlayerFactory()
+		{
+			@Override
+			public Player createPlayer(RandomSource random)
+			{
+				return new MemoryPlayer(memorySize, random);
+			}
+		};
+	} // End of createFactory method
+}
@@ -0,0 +1,147 @@
+import com.raidrin.memorygame.DifficultyTuner;
+import com.raidrin.memorygame.GameEngine;
+import com.raidrin.memorygame.MemoryPlayer;
+import com.raidrin.memorygame.Player;
+import com.raidrin.memorygame.Simulator;
+import com.raidrin.memorygame.SplitMixRandom;
+
+/**
+ * Build time tool that lets a DifficultyTuner choose the games of models
+ * of players of different skill and prints how the chosen level moves
+ * round after round.
+ * A model remembers a count of cards and takes a random time around its
+ * tap time for each tap. Each model is played by many players that each
+ * have their own tuner starting at the default level. For each round the
+ * tool prints the mean level of the players, the part of them whose level
+ * changed and the part that cleared the board, so a level that settles
+ * shows as a mean that stops moving and few changes. It also checks that
+ * the level doesn't move when it's chosen twice for the same game.
+ *
+ * Usage: javac -d /tmp/sim -sourcepath src tools/SimulateDifficulty.java
+ *        && java -cp /tmp/sim SimulateDifficulty [players] [rounds] [seed]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class SimulateDifficulty
+{
+	private static final long TICK_MILLIS = 1000;	// Milliseconds between the ticks of the clock
+
+	// The models of the players: name, count of cards remembered and mean milliseconds of a tap
+	private static final String[] MODEL_NAMES = {"beginner", "casual", "good", "expert"};
+	private static final int[] MODEL_MEMORY = {2, 4, 8, MemoryPlayer.PERFECT_MEMORY};
+	private static final long[] MODEL_TAP_MILLIS = {1400, 1000, 700, 450};
+
+	public static void main(String[] args)
+	{
+		int players = (args.length > 0)?Integer.parseInt(args[0]):500;
+		int rounds = (args.length > 1)?Integer.parseInt(args[1]):12;
+		long seed = (args.length > 2)?Long.parseLong(args[2]):1;
+
+		SplitMixRandom seeds = new SplitMixRandom(seed);
+		for(int model=0;model<MODEL_NAMES.length;model++)
+		{
+			double[] levelSums = new double[rounds];
+			int[] changes = new int[rounds];
+			int[] clears = new int[rounds];
+			double[] fractionSums = new double[rounds];
+			for(int p=0;p<players;p++)
+			{
+				SplitMixRandom random = seeds.split();
+				DifficultyTuner tuner = new DifficultyTuner(Simulator.CARD_REVEAL_DELAY);
+				Player player = new MemoryPlayer(MODEL_MEMORY[model], random.split());
+				for(int round=0;round<rounds;round++)
+				{
+					int level = tuner.getLevel();
+					levelSums[round] += level;
+					if(play(tuner, player, random, MODEL_TAP_MILLIS[model]))
+						clears[round]++;
+					fractionSums[round] += tuner.getClearFraction();
+					int next = tuner.chooseNextLevel();
+					if(next != level)
+						changes[round]++;
+					// Asking again before another game ends, like a recreated activity would, keeps the level
+					if(tuner.chooseNextLevel() != next)
+						throw new IllegalStateException("The level moved without a finished game.");
+				} // End of rounds for loop
+			} // End of players for loop
+
+			StringBuilder builder = new StringBuilder();
+			builder.append(MODEL_NAMES[model]).append(": memory of ")
+					.append(MODEL_MEMORY[model] == MemoryPlayer.PERFECT_MEMORY?"every":Integer.toString(MODEL_MEMORY[model]))
+					.append(" cards, ").append(MODEL_TAP_MILLIS[model]).append(" ms a tap, ").append(players).append(" players\n");
+			builder.append(String.format("%6s %10s %10s %10s %14s%n", "round", "level", "changed", "cleared", "clear fraction"));
+			for(int round=0;round<rounds;round++)
+			{
+				builder.append(String.format("%6d %10.2f %9.1f%% %9.1f%% %14.2f%n", round + 1, levelSums[round] / players,
+						100.0 * changes[round] / players, 100.0 * clears[round] / players, fractionSums[round] / players));
+			} // End of rounds for loop
+			System.out.println(builder);
+		} // End of MODEL_NAMES for loop
+	}
+
+	/**
+	 * Plays one game of the level of a tuner and tells it every tap, like MemoryGame does.
+	 * @param tuner the tuner
+	 * @param player the player
+	 * @param random the source of the tap times and of the deal
+	 * @param tapMillis the mean milliseconds of a tap
+	 * @return true if the board was cleared
+	 */
+	private static boolean play(DifficultyTuner tuner, Player player, SplitMixRandom random, long tapMillis)
+	{
+		GameEngine gameEngine = new GameEngine(tuner.getMaxTime(), tuner.getBoardConfig(), random.split());
+		int matchTotal = gameEngine.getBoardConfig().getMatchTotal();
+		int[] openIndexes = new int[gameEngine.getBoardConfig().getMatchCount()];
+		int openCount = 0;
+		gameEngine.startGame();
+		player.startGame(gameEngine);
+		long time = 0;
+		long nextTick = TICK_MILLIS;
+		tuner.startGame(time);
+		while(gameEngine.isRunning())
+		{
+			boolean cleared = gameEngine.getScore() == matchTotal;
+			// A cleared board waits for the clock to end the game
+			time += cleared?TICK_MILLIS:tapMillis / 2 + random.nextInt((int)tapMillis);
+			nextTick = tick(gameEngine, time, nextTick);
+			if(cleared || !gameEngine.isRunning())
+				continue;
+			int index = player.chooseCard(openIndexes, openCount);
+			tuner.onTap(time);
+			GameEngine.FlipResult flipResult = gameEngine.flip(index);
+			player.onCardSeen(index, gameEngine.getCard(index));
+			openIndexes[openCount++] = index;
+			if(flipResult == GameEngine.FlipResult.MATCH || flipResult == GameEngine.FlipResult.MISMATCH)
+			{
+				tuner.onTurnEnded(flipResult == GameEngine.FlipResult.MATCH);
+				time += Simulator.CARD_REVEAL_DELAY;
+				nextTick = tick(gameEngine, time, nextTick);
+				if(!gameEngine.isRunning())
+					break;
+				gameEngine.resolve();
+				tuner.onResolved(time);
+				openCount = 0;
+			} // End of MATCH || MISMATCH If
+		} // End of isRunning while loop
+		tuner.finishGame(gameEngine.getScore());
+		return gameEngine.getScore() == matchTotal;
+	} // End of play method
+
+	/**
+	 * Ticks the clock of each second that passed.
+	 * @param gameEngine the engine
+	 * @param time the simulated time
+	 * @param nextTick the time of the next tick
+	 * @return the time of the next tick after the ones that passed
+	 */
+	private static long tick(GameEngine gameEngine, long time, long nextTick)
+	{
+		while(time >= nextTick && gameEngine.isRunning())
+		{
+			gameEngine.tick();
+			nextTick += TICK_MILLIS;
+		} // End of time >= nextTick while loop
+		return nextTick;
+	} // End of tick method
+}
@@ -0,0 +1,252 @@
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.GameEngine;
+import com.raidrin.memorygame.Simulator;
+import com.raidrin.memorygame.SplitMixRandom;
+import com.raidrin.memorygame.TapQueue;
+
+/**
+ * Build time tool that measures how many pairs a second fast players
+ * clear with three ways of handling a tap made while the open cards wait
+ * for their reveal delay:
+ * drop, the first version of the game, ignores the tap so the player has
+ * to tap the card again; early resolves the open cards as soon as the tap
+ * is made; queue keeps the tap in the TapQueue and resolves the open
+ * cards once they were shown for TapQueue.MIN_REVEAL_DELAY, the way
+ * MemoryGame does.
+ * The players are scripted and tap at a steady pace. A player flips the
+ * cards it hasn't seen in order and flips a pair as soon as it has seen
+ * both of its cards. It only knows a card once the card is flipped, so a
+ * tap that waits in the queue is chosen from what was seen before it. A
+ * tap that doesn't flip its card is wasted and the player taps the same
+ * card at the next beat. The time of a game is the time it takes to
+ * clear the board, the clock never ends it.
+ *
+ * Usage: javac -d /tmp/taps -sourcepath src tools/SimulateTaps.java
+ *        && java -cp /tmp/taps SimulateTaps [games] [seed]
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class SimulateTaps
+{
+	private static final String[] MODE_NAMES = {"drop", "early", "queue"};
+	private static final int DROP = 0;		// A tap on a board whose open cards wait is ignored
+	private static final int EARLY = 1;		// A tap on a board whose open cards wait resolves them right away
+	private static final int QUEUE = 2;		// A tap on a board whose open cards wait waits in the TapQueue
+	private static final long[] TAP_MILLIS = {80, 120, 160, 200, 250, 300, 400};	// The paces of the players
+	private static final int MAX_TIME = 3600;	// Long enough for any game to be cleared
+	private static final long NEVER = Long.MAX_VALUE;	// The time of a resolve that isn't scheduled
+
+	public static void main(String[] args)
+	{
+		int games = (args.length > 0)?Integer.parseInt(args[0]):2000;
+		long seed = (args.length > 1)?Long.parseLong(args[1]):1;
+
+		System.out.println(String.format("%d games of %s for each pace, reveal delay %d ms, shortened to %d ms when a tap waits",
+				games, BoardConfig.DEFAULT, Simulator.CARD_REVEAL_DELAY, TapQueue.MIN_REVEAL_DELAY));
+		StringBuilder header = new StringBuilder(String.format("%10s", "ms a tap"));
+		for(String name : MODE_NAMES)
+			header.append(String.format(" %12s %12s", name + " pairs/s", name + " wasted"));
+		System.out.println(header);
+		for(long tapMillis : TAP_MILLIS)
+		{
+			StringBuilder line = new StringBuilder(String.format("%10d", tapMillis));
+			for(int mode=0;mode<MODE_NAMES.length;mode++)
+			{
+				// Every mode plays the same boards
+				Game game = new Game(mode, tapMillis, new SplitMixRandom(seed));
+				long millis = 0, wasted = 0;
+				for(int i=0;i<games;i++)
+				{
+					millis += game.play();
+					wasted += game.wastedTaps;
+				} // End of games for loop
+				line.append(String.format(" %12.2f %12.2f", 1000.0 * games * BoardConfig.DEFAULT.getMatchTotal() / millis,
+						(double)wasted / games));
+			} // End of MODE_NAMES for loop
+			System.out.println(line);
+		} // End of TAP_MILLIS for loop
+	}
+
+	/**
+	 * A scripted player playing games in one of the modes on simulated time.
+	 */
+	private static class Game implements TapQueue.Listener
+	{
+		private final int mode;				// How a tap on a board whose open cards wait is handled
+		private final long tapMillis;		// The time between two taps of the player
+		private final GameEngine gameEngine;	// The engine of the games
+		private final TapQueue tapQueue;	// The taps waiting for the open cards in the QUEUE mode
+		private final int[] seen;			// The Deck card seen at each index, -1 if not seen yet
+		private final boolean[] queued;		// States whether a tap on the card waits in the tapQueue
+		private final int[] picks;			// The cards the player tapped in its current turn
+		private int pickCount;				// The count of picks of the current turn
+		private long time;					// The simulated time
+		private long turnEndedAt;			// The time the last turn ended
+		private long resolveAt;				// The time the open cards are resolved, NEVER if they aren't open
+		int wastedTaps;						// The taps of the last game that didn't flip a card
+
+		Game(int mode, long tapMillis, SplitMixRandom random)
+		{
+			this.mode = mode;
+			this.tapMillis = tapMillis;
+			gameEngine = new GameEngine(MAX_TIME, BoardConfig.DEFAULT, random);
+			tapQueue = new TapQueue(gameEngine, 8);
+			tapQueue.setListener(this);
+			seen = new int[gameEngine.getCardCount()];
+			queued = new boolean[seen.length];
+			picks = new int[gameEngine.getBoardConfig().getMatchCount()];
+		}
+
+		/**
+		 * Plays a game until the board is cleared.
+		 * @return the milliseconds it took to clear the board
+		 */
+		long play()
+		{
+			gameEngine.startGame();
+			tapQueue.clear();
+			for(int i=0;i<seen.length;i++)
+			{
+				seen[i] = -1;
+				queued[i] = false;
+			} // End of seen for loop
+			pickCount = 0;
+			time = 0;
+			resolveAt = NEVER;
+			wastedTaps = 0;
+			long nextTap = tapMillis;
+			int matchTotal = gameEngine.getBoardConfig().getMatchTotal();
+			while(gameEngine.getScore() < matchTotal)
+			{
+				if(resolveAt <= nextTap)
+				{
+					time = resolveAt;
+					resolveAt = NEVER;
+					gameEngine.resolve();
+					tapQueue.drain();
+					continue;
+				} // End of resolveAt <= nextTap If
+				time = nextTap;
+				nextTap += tapMillis;
+				tap(choose());
+			} // End of getScore < matchTotal while loop
+			return time;
+		} // End of play method
+
+		/**
+		 * Taps a card the way the mode handles it.
+		 * @param index the index of the card
+		 */
+		private void tap(int index)
+		{
+			picks[pickCount++] = index;
+			if(mode == QUEUE)
+			{
+				if(!tapQueue.offer(index))
+					wasted();
+				else if(gameEngine.isCardsOpen())
+				{
+					queued[index] = true;
+					resolveAt = Math.max(time, turnEndedAt + TapQueue.MIN_REVEAL_DELAY);
+				}
+				else
+					tapQueue.drain();
+			}
+			else if(gameEngine.isCardsOpen() && (mode == DROP || gameEngine.isFaceUp(index)))
+				wasted();
+			else
+			{
+				if(gameEngine.isCardsOpen())
+				{
+					gameEngine.resolve();
+					resolveAt = NEVER;
+				} // End of isCardsOpen If
+				onFlipped(index, gameEngine.flip(index));
+			} // End of mode If - Else
+			// The player starts a new turn after the last card of its turn, whether it flipped yet or not
+			if(pickCount == picks.length)
+				pickCount = 0;
+		} // End of tap method
+
+		/**
+		 * The last tap didn't flip its card, the player taps it again at the next beat.
+		 */
+		private void wasted()
+		{
+			wastedTaps++;
+			pickCount--;
+		} // End of wasted method
+
+		/**
+		 * Chooses the next card from the cards seen so far.
+		 * @return the index of the card
+		 */
+		private int choose()
+		{
+			if(pickCount == 0)
+			{
+				// The first card of a pair that was seen whole
+				for(int i=0;i<seen.length;i++)
+					if(seen[i] != -1 && !gameEngine.isRemoved(i) && findPartner(i) != -1)
+						return i;
+			}
+			else
+			{
+				int partner = findPartner(picks[0]);
+				if(partner != -1)
+					return partner;
+			} // End of pickCount == 0 If - Else
+			// The next card that wasn't seen or tapped yet
+			for(int i=0;i<seen.length;i++)
+				if(seen[i] == -1 && !isPicked(i) && !queued[i])
+					return i;
+			// Every card was seen, the open ones wait to be resolved
+			for(int i=0;i<seen.length;i++)
+				if(!gameEngine.isRemoved(i) && !isPicked(i))
+					return i;
+			throw new IllegalStateException("The player has no card to tap.");
+		} // End of choose method
+
+		/**
+		 * @param index the index of a card
+		 * @return the index of a seen card equal to it that isn't removed or picked, -1 if none
+		 */
+		private int findPartner(int index)
+		{
+			if(seen[index] == -1)
+				return -1;
+			for(int i=0;i<seen.length;i++)
+				if(i != index && seen[i] == seen[index] && !gameEngine.isRemoved(i) && !isPicked(i))
+					return i;
+			return -1;
+		} // End of findPartner method
+
+		/**
+		 * @param index the index of a card
+		 * @return true if the card was tapped in the current turn
+		 */
+		private boolean isPicked(int index)
+		{
+			for(int i=0;i<pickCount;i++)
+				if(picks[i] == index)
+					return true;
+			return false;
+		} // End of isPicked method
+
+		@Override
+		public void onFlipped(int index, GameEngine.FlipResult result)
+		{
+			queued[index] = false;
+			if(result == GameEngine.FlipResult.IGNORED)
+				return;
+			seen[index] = gameEngine.getCard(index);
+			if(gameEngine.isCardsOpen())
+			{
+				turnEndedAt = time;
+				boolean waiting = mode == QUEUE && tapQueue.size() > 0;
+				resolveAt = time + (waiting?TapQueue.MIN_REVEAL_DELAY:Simulator.CARD_REVEAL_DELAY);
+			} // End of isCardsOpen If
+		} // End of onFlipped method
+	} // End of Game class
+}
@@ -0,0 +1,416 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.raidrin.memorygame.BoardConfig;
+import com.raidrin.memorygame.Deck;
+import com.raidrin.memorygame.GameEngine;
+import com.raidrin.memorygame.ImageFormat;
+import com.raidrin.memorygame.SplitMixRandom;
+import com.raidrin.memorygame.ThemePack;
+
+/**
+ * Build time tool that writes a synthetic ThemePack of thousands of
+ * images and checks that it's indexed and dealt the way the game uses it:
+ * every face is found, each seed gives the same distinct faces, a deal
+ * only inflates and decodes the faces of its board, stored and deflated
+ * images are both read, and a pack written again at the same path gets
+ * another key so the ImageCache doesn't show the old images. It prints
+ * the time and the heap used to index the pack, next to the heap of a
+ * ZipFile of the same zip, and the cost of a deal.
+ * Then a pack of large png and jpg faces is dealt for cards of several
+ * widths: the width of each face is read from its header, like
+ * ImageCache.getSampleSize does, and the face is decoded at its own
+ * sample size, so it's never narrower than the card nor twice as wide,
+ * and the pixels of a deal stay bounded by the size of the cards.
+ * Fails with an exception when a check doesn't hold.
+ *
+ * Usage: javac -d /tmp/theme -sourcepath src tools/ThemePackCheck.java
+ *        && java -XX:+UseSerialGC -cp /tmp/theme ThemePackCheck [faces] [deals]
+ * The serial collector gives a steady count of the heap used by the index.
+ *
+ * @author Aldrin Jerome Almacin
+ *
+ */
+public class ThemePackCheck
+{
+	private static final int FACE_WIDTH = 65;	// The width of the synthetic faces, the size of the playing cards
+	private static final int FACE_HEIGHT = 87;	// The height of the synthetic faces
+	private static final int LARGE_FACE_WIDTH = 512;	// The width of the faces of the large pack
+	private static final int LARGE_FACE_HEIGHT = 684;	// The height of the faces of the large pack
+	private static final int[] TARGET_WIDTHS = {38, 52, 71, 104, 200};	// The widths the faces are drawn at, from small phones to tablets
+
+	public static void main(String[] args) throws IOException
+	{
+		int faceCount = (args.length > 0)?Integer.parseInt(args[0]):5000;
+		int dealCount = (args.length > 1)?Integer.parseInt(args[1]):200;
+
+		File file = File.createTempFile("theme", ".zip");
+		file.deleteOnExit();
+		long start = System.nanoTime();
+		writePack(file, faceCount);
+		System.out.println(String.format("wrote %d faces, %d KB in %.0f ms", faceCount, file.length() / 1024,
+				(System.nanoTime() - start) / 1e6));
+
+		usedHeap();
+		long heapBefore = usedHeap();
+		start = System.nanoTime();
+		ThemePack pack = new ThemePack(file);
+		double openMillis = (System.nanoTime() - start) / 1e6;
+		long heapAfter = usedHeap();
+		System.out.println(String.format("indexed in %.1f ms, %d KB of heap, %.0f bytes for each face", openMillis,
+				(heapAfter - heapBefore) / 1024, (double)(heapAfter - heapBefore) / faceCount));
+		heapBefore = usedHeap();
+		ZipFile zipFile = new ZipFile(file);
+		heapAfter = usedHeap();
+		System.out.println(String.format("a ZipFile of the same zip keeps %d KB of heap, %.0f bytes for each face",
+				(heapAfter - heapBefore) / 1024, (double)(heapAfter - heapBefore) / faceCount));
+		zipFile.close();
+
+		check(pack.getFaceCount() == faceCount, "The pack has " + pack.getFaceCount() + " faces.");
+		check(ThemePack.BACK_FILENAME.equals(pack.getBackFilename()), "The back isn't found.");
+		for(int face=0;face<faceCount;face++)
+			check(pack.contains(pack.getFaceName(face)), "The face " + face + " isn't found.");
+		check(!pack.contains("1c.png") && !pack.contains(ThemePack.FACES_FOLDER + "missing.png"), "A missing image is found.");
+		InputStream backStream = pack.open(ThemePack.BACK_FILENAME);
+		check(ImageIO.read(backStream).getRGB(0, 0) == 0xff000000, "The back has the wrong image.");
+		backStream.close();
+		checkSelection(pack);
+
+		// Deal games and decode only the faces of each board, like BoardView.bindCards
+		GameEngine gameEngine = new GameEngine(30, BoardConfig.DEFAULT, new SplitMixRandom(1));
+		int[] cardFaces = new int[Deck.SIZE];
+		boolean[] decoded = new boolean[Deck.SIZE];
+		long decodedBytes = 0, readBytes = 0;
+		int decodedCount = 0;
+		start = System.nanoTime();
+		for(int deal=0;deal<dealCount;deal++)
+		{
+			gameEngine.startGame();
+			pack.selectFaces(gameEngine.getGameSeed(), cardFaces);
+			Arrays.fill(decoded, false);
+			for(int i=0;i<gameEngine.getCardCount();i++)
+			{
+				int card = gameEngine.getCard(i);
+				if(decoded[card])
+					continue;
+				decoded[card] = true;
+				String name = pack.getFaceName(cardFaces[card]);
+				InputStream stream = pack.open(name);
+				CountingStream counting = new CountingStream(stream);
+				BufferedImage image = ImageIO.read(counting);
+				stream.close();
+				check(image.getRGB(0, 0) == faceColor(faceIndexOf(name)), "The face " + name + " has the wrong image.");
+				decodedBytes += (long)image.getWidth() * image.getHeight() * 4;
+				readBytes += counting.count;
+				decodedCount++;
+			} // End of getCardCount for loop
+		} // End of dealCount for loop
+		double dealMillis = (System.nanoTime() - start) / 1e6 / dealCount;
+		int perDeal = decodedCount / dealCount;
+		check(perDeal == BoardConfig.DEFAULT.getMatchTotal(), "A deal decoded " + perDeal + " faces.");
+		System.out.println(String.format("%d deals, %d faces decoded each, %.2f ms each, %d KB inflated and %d KB of pixels each"
+				+ " (%.2f%% of the pack)", dealCount, perDeal, dealMillis, readBytes / dealCount / 1024,
+				decodedBytes / dealCount / 1024, 100.0 * perDeal / faceCount));
+		String key = pack.getKey();
+		pack.close();
+
+		// A pack written again at the same path, with the same names, is cached apart from the old one
+		writePack(file, faceCount + 1);
+		file.setLastModified(file.lastModified() + 1000);
+		pack = new ThemePack(file);
+		check(pack.getName().equals(file.getName()), "The name of the pack changed.");
+		check(!pack.getKey().equals(key), "The pack written again has the key " + key + " of the old one.");
+		pack.close();
+
+		checkLargeFaces(file);
+		System.out.println("ok");
+	}
+
+	/**
+	 * Deals a pack of large faces for cards of each of the TARGET_WIDTHS and
+	 * checks that each face is decoded at the sample size of its own width.
+	 * @param file the zip file the pack is written to
+	 * @throws IOException if the pack can't be written or read
+	 */
+	private static void checkLargeFaces(File file) throws IOException
+	{
+		writeLargePack(file);
+		ThemePack pack = new ThemePack(file);
+		check(pack.getImageWidth(ThemePack.BACK_FILENAME) == LARGE_FACE_WIDTH, "The width of the large back isn't read.");
+		for(int face=0;face<pack.getFaceCount();face++)
+			check(pack.getImageWidth(pack.getFaceName(face)) == LARGE_FACE_WIDTH, "The width of "
+					+ pack.getFaceName(face) + " isn't read.");
+
+		GameEngine gameEngine = new GameEngine(30, BoardConfig.DEFAULT, new SplitMixRandom(2));
+		int[] cardFaces = new int[Deck.SIZE];
+		System.out.println(String.format("%8s %8s %12s %12s", "drawn", "sample", "KB a deal", "KB at 65"));
+		for(int targetWidth : TARGET_WIDTHS)
+		{
+			gameEngine.startGame();
+			pack.selectFaces(gameEngine.getGameSeed(), cardFaces);
+			boolean[] decoded = new boolean[Deck.SIZE];
+			long bytes = 0, sizedFor65Bytes = 0;
+			int sampleSize = 0;
+			for(int i=0;i<gameEngine.getCardCount();i++)
+			{
+				int card = gameEngine.getCard(i);
+				if(decoded[card])
+					continue;
+				decoded[card] = true;
+				String name = pack.getFaceName(cardFaces[card]);
+				sampleSize = ImageFormat.computeSampleSize(pack.getImageWidth(name), targetWidth);
+				BufferedImage image = decode(pack, name, sampleSize);
+				check(image.getWidth() >= targetWidth && image.getWidth() <= 2 * targetWidth, name + " is decoded "
+						+ image.getWidth() + " wide for " + targetWidth + " drawn pixels.");
+				bytes += 4L * image.getWidth() * image.getHeight();
+				// The sample size the faces had when every image was taken to be as wide as a playing card
+				int sizedFor65 = ImageFormat.computeSampleSize(FACE_WIDTH, targetWidth);
+				sizedFor65Bytes += 4L * ((LARGE_FACE_WIDTH + sizedFor65 - 1) / sizedFor65)
+						* ((LARGE_FACE_HEIGHT + sizedFor65 - 1) / sizedFor65);
+			} // End of getCardCount for loop
+			// A face is less than twice as wide and as high as it's drawn, plus the pixel it's rounded up to
+			long maxBytes = BoardConfig.DEFAULT.getMatchTotal() * 4L * (2 * targetWidth)
+					* (2 * targetWidth * LARGE_FACE_HEIGHT / LARGE_FACE_WIDTH + 1);
+			check(bytes <= maxBytes, "A deal for " + targetWidth + " drawn pixels takes " + bytes + " bytes, more than "
+					+ maxBytes + ".");
+			System.out.println(String.format("%8d %8d %12d %12d", targetWidth, sampleSize, bytes / 1024, sizedFor65Bytes / 1024));
+		} // End of TARGET_WIDTHS for loop
+		pack.close();
+	} // End of checkLargeFaces method
+
+	/**
+	 * Decodes an image of a pack with a sample size, keeping one pixel in sampleSize on each side.
+	 * @param pack the pack
+	 * @param name the name of the image
+	 * @param sampleSize the sample size
+	 * @return the decoded image
+	 * @throws IOException if the image can't be read
+	 */
+	private static BufferedImage decode(ThemePack pack, String name, int sampleSize) throws IOException
+	{
+		InputStream stream = pack.open(name);
+		ImageInputStream imageStream = ImageIO.createImageInputStream(stream);
+		try
+		{
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(imageStream);
+			check(readers.hasNext(), "No reader for " + name + ".");
+			ImageReader reader = readers.next();
+			reader.setInput(imageStream);
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+			BufferedImage image = reader.read(0, param);
+			reader.dispose();
+			return image;
+		}
+		finally
+		{
+			imageStream.close();
+			stream.close();
+		} // End of try - finally
+	} // End of decode method
+
+	/**
+	 * Checks that the faces of a seed are distinct, the same every time, and spread over the whole pack.
+	 * @param pack the pack
+	 */
+	private static void checkSelection(ThemePack pack)
+	{
+		int[] first = new int[Deck.SIZE];
+		int[] second = new int[Deck.SIZE];
+		boolean[] used = new boolean[pack.getFaceCount()];
+		int usedCount = 0;
+		for(long seed=0;seed<1000;seed++)
+		{
+			pack.selectFaces(seed, first);
+			pack.selectFaces(seed, second);
+			check(Arrays.equals(first, second), "The seed " + seed + " gives other faces the second time.");
+			boolean[] seen = new boolean[pack.getFaceCount()];
+			for(int face : first)
+			{
+				check(!seen[face], "The seed " + seed + " gives the face " + face + " to two cards.");
+				seen[face] = true;
+				if(!used[face])
+					usedCount++;
+				used[face] = true;
+			} // End of first for loop
+		} // End of seed for loop
+		// 52000 draws leave about e^-10.4 of 5000 faces unused
+		check(usedCount > pack.getFaceCount() * 9 / 10, "Only " + usedCount + " faces are ever chosen.");
+		System.out.println("1000 seeds chose " + usedCount + " of " + pack.getFaceCount() + " faces");
+	} // End of checkSelection method
+
+	/**
+	 * Writes a pack of faces of a different color each and a back.
+	 * @param file the zip file
+	 * @param faceCount the count of faces
+	 * @throws IOException if the file can't be written
+	 */
+	private static void writePack(File file, int faceCount) throws IOException
+	{
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+		try
+		{
+			BufferedImage image = new BufferedImage(FACE_WIDTH, FACE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = image.createGraphics();
+			for(int face=0;face<=faceCount;face++)
+			{
+				boolean back = face == faceCount;
+				graphics.setColor(new Color(back?0:faceColor(face)));
+				graphics.fillRect(0, 0, FACE_WIDTH, FACE_HEIGHT);
+				graphics.setColor(Color.WHITE);
+				graphics.drawString(back?"back":Integer.toString(face), 8, FACE_HEIGHT / 2);
+				// Directories and other files are skipped when the pack is indexed
+				if(face % 1000 == 0)
+					zip.putNextEntry(new ZipEntry(ThemePack.FACES_FOLDER + "readme" + face + ".txt"));
+				ZipEntry entry = new ZipEntry(back?ThemePack.BACK_FILENAME:ThemePack.FACES_FOLDER + "face" + face + ".png");
+				ByteArrayOutputStream png = new ByteArrayOutputStream();
+				ImageIO.write(image, "png", png);
+				// A png hardly deflates, so some packs store their images as they are
+				if(face % 3 == 0)
+				{
+					CRC32 crc = new CRC32();
+					crc.update(png.toByteArray());
+					entry.setMethod(ZipEntry.STORED);
+					entry.setSize(png.size());
+					entry.setCrc(crc.getValue());
+				} // End of face % 3 == 0 If
+				zip.putNextEntry(entry);
+				png.writeTo(zip);
+				zip.closeEntry();
+			} // End of faceCount for loop
+			graphics.dispose();
+			// The end of the central directory is found before the comment
+			zip.setComment("A synthetic theme pack of " + faceCount + " faces");
+		}
+		finally
+		{
+			zip.close();
+		} // End of try - finally
+	} // End of writePack method
+
+	/**
+	 * Writes a pack of Deck.SIZE large faces, every other one a jpg, and a large back.
+	 * @param file the zip file
+	 * @throws IOException if the file can't be written
+	 */
+	private static void writeLargePack(File file) throws IOException
+	{
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+		try
+		{
+			BufferedImage image = new BufferedImage(LARGE_FACE_WIDTH, LARGE_FACE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = image.createGraphics();
+			for(int face=0;face<=Deck.SIZE;face++)
+			{
+				boolean back = face == Deck.SIZE;
+				String format = (face % 2 == 0)?"png":"jpg";
+				graphics.setColor(new Color(back?0:faceColor(face)));
+				graphics.fillRect(0, 0, LARGE_FACE_WIDTH, LARGE_FACE_HEIGHT);
+				zip.putNextEntry(new ZipEntry(back?ThemePack.BACK_FILENAME:ThemePack.FACES_FOLDER + "face" + face + "." + format));
+				ImageIO.write(image, back?"png":format, zip);
+				zip.closeEntry();
+			} // End of Deck.SIZE for loop
+			graphics.dispose();
+		}
+		finally
+		{
+			zip.close();
+		} // End of try - finally
+	} // End of writeLargePack method
+
+	/**
+	 * @param face the index a synthetic face was written with
+	 * @return the color of the face
+	 */
+	private static int faceColor(int face)
+	{
+		return 0xff000000 | (int)(face * 2654435761L & 0xffffff) | 0x404040;
+	} // End of faceColor method
+
+	/**
+	 * @param name the name of a synthetic face in the zip
+	 * @return the index it was written with
+	 */
+	private static int faceIndexOf(String name)
+	{
+		return Integer.parseInt(name.substring(ThemePack.FACES_FOLDER.length() + 4, name.length() - 4));
+	} // End of faceIndexOf method
+
+	/**
+	 * @return the bytes of the heap in use once the garbage is collected
+	 */
+	private static long usedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		// Collect until the heap stops shrinking, running the cleanups of the streams of the zip in between
+		long used = Long.MAX_VALUE, last;
+		do
+		{
+			last = used;
+			System.gc();
+			System.runFinalization();
+			System.gc();
+			used = runtime.totalMemory() - runtime.freeMemory();
+		} while(used < last);
+		return used;
+	} // End of usedHeap method
+
+	/**
+	 * @param condition the condition that has to hold
+	 * @param message the message of the failure
+	 */
+	private static void check(boolean condition, String message)
+	{
+		if(!condition)
+			throw new IllegalStateException(message);
+	} // End of check method
+
+	/**
+	 * Counts the bytes inflated from an entry of the zip.
+	 */
+	private static class CountingStream extends FilterInputStream
+	{
+		long count;	// The bytes read
+
+		CountingStream(InputStream stream)
+		{
+			super(stream);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int value = super.read();
+			if(value != -1)
+				count++;
+			return value;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			int read = super.read(buffer, offset, length);
+			if(read > 0)
+				count += read;
+			return read;
+		}
+	} // End of CountingStream class
+}
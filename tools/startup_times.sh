@@ -0,0 +1,27 @@
+#!/bin/sh
+# Measures the cold and warm start times of the installed game on a device.
+# A cold start force stops the process first, a warm start only finishes the
+# activity so the process and its caches stay alive. The TotalTime of each
+# launch is printed by "am start -W", the time to the first draw of the board
+# is also kept in files/metrics.txt of a debug build.
+#
+# Usage: tools/startup_times.sh [count of launches, 10 by default]
+
+COMPONENT=com.raidrin.memorygame/.MemoryGame
+COUNT=${1:-10}
+
+launch() {
+	adb shell am start -W $1 $COMPONENT | tr -d '\r' | sed -n 's/^TotalTime: //p'
+}
+
+echo "cold start (ms)"
+for i in $(seq $COUNT); do
+	launch -S
+done
+
+echo "warm start (ms)"
+for i in $(seq $COUNT); do
+	adb shell input keyevent KEYCODE_BACK
+	sleep 1
+	launch ""
+done